@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.benchmark;
+
+import com.github.tmyroadctfig.icloud4j.DriveNode;
+import com.github.tmyroadctfig.icloud4j.DriveService;
+import com.github.tmyroadctfig.icloud4j.ICloudService;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures download throughput against the {@link ICloudSimulator}, including the 'download/by_id' content
+ * URL lookup. The {@code bytes} counter reports the bytes downloaded per second. Each target is measured through both
+ * the stream path, {@link DriveNode#downloadFileData}, and the channel path, {@link DriveNode#downloadTo}; run with
+ * '-prof gc' to compare the allocation rates.
+ *
+ * <pre>
+ * ./gradlew jmh -PjmhArgs="DownloadBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DownloadBenchmark
+{
+    /**
+     * The file size in bytes.
+     */
+    @Param({"65536", "16777216"})
+    public int fileSize;
+
+    private ICloudSimulator simulator;
+    private ICloudService iCloudService;
+    private DriveNode fileNode;
+    private Path targetFile;
+
+    /**
+     * Counts the downloaded bytes per thread.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ByteCounter
+    {
+        /**
+         * The bytes downloaded in the current iteration.
+         */
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        simulator = ICloudSimulator.builder().folderFanOut(0).filesPerFolder(1).depth(0).fileSize(fileSize).start();
+        iCloudService = simulator.login();
+        DriveService driveService = new DriveService(iCloudService);
+        fileNode = driveService.getChildren(SyntheticDriveTree.ROOT_ID).get(0);
+        targetFile = Files.createTempFile("icloud4j-download", ".bin");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        iCloudService.close();
+        simulator.close();
+        Files.deleteIfExists(targetFile);
+    }
+
+    /**
+     * Downloads the file, discarding the content.
+     *
+     * @param counter the byte counter.
+     */
+    @Benchmark
+    public void downloadFileData(ByteCounter counter)
+    {
+        CountingOutputStream outputStream = new CountingOutputStream(NullOutputStream.INSTANCE);
+        fileNode.downloadFileData(outputStream);
+        counter.bytes += outputStream.getByteCount();
+    }
+
+    /**
+     * Downloads the file through a stream into a file.
+     *
+     * @param counter the byte counter.
+     * @throws IOException if the file can't be written.
+     */
+    @Benchmark
+    public void downloadFileDataToFile(ByteCounter counter) throws IOException
+    {
+        try (CountingOutputStream outputStream = new CountingOutputStream(Files.newOutputStream(targetFile)))
+        {
+            fileNode.downloadFileData(outputStream);
+            counter.bytes += outputStream.getByteCount();
+        }
+    }
+
+    /**
+     * Downloads the file into a channel which discards the content, copying through pooled direct buffers.
+     *
+     * @param counter the byte counter.
+     */
+    @Benchmark
+    public void downloadToChannel(ByteCounter counter)
+    {
+        counter.bytes += fileNode.downloadTo(NullChannel.INSTANCE);
+    }
+
+    /**
+     * Downloads the file into a file channel, copying through pooled direct buffers.
+     *
+     * @param counter the byte counter.
+     * @throws IOException if the file can't be written.
+     */
+    @Benchmark
+    public void downloadToFileChannel(ByteCounter counter) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(targetFile, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            counter.bytes += fileNode.downloadTo(channel);
+        }
+    }
+
+    /**
+     * A channel which discards everything written to it.
+     */
+    private static class NullChannel implements WritableByteChannel
+    {
+        private static final NullChannel INSTANCE = new NullChannel();
+
+        @Override
+        public int write(ByteBuffer src)
+        {
+            int remaining = src.remaining();
+            src.position(src.limit());
+            return remaining;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
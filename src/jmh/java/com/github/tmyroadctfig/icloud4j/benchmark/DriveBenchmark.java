@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.benchmark;
+
+import com.github.tmyroadctfig.icloud4j.DriveNode;
+import com.github.tmyroadctfig.icloud4j.DriveService;
+import com.github.tmyroadctfig.icloud4j.ICloudService;
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
+import com.github.tmyroadctfig.icloud4j.util.ICloudUtils;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the iCloud Drive listing path against the {@link ICloudSimulator}: parsing a
+ * 'retrieveItemDetailsInFolders' response, mapping it to {@link DriveNode}s, and the per-node constructor cost.
+ *
+ * <pre>
+ * ./gradlew jmh -PjmhArgs="DriveBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DriveBenchmark
+{
+    /**
+     * The number of child items in the folder listing.
+     */
+    @Param({"100", "10000"})
+    public int itemCount;
+
+    private ICloudSimulator simulator;
+    private ICloudService iCloudService;
+    private DriveService driveService;
+    private String rootId;
+    private String listingRequestJson;
+    private DriveNodeDetails childDetails;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        simulator = ICloudSimulator.builder().folderFanOut(0).filesPerFolder(itemCount).depth(0).start();
+        iCloudService = simulator.login();
+        driveService = new DriveService(iCloudService);
+
+        rootId = SyntheticDriveTree.ROOT_ID;
+        childDetails = driveService.getNodeDetails(rootId).items[0];
+        listingRequestJson = String.format("[{\"drivewsid\":\"%s\",\"partialData\":false}]", rootId);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        iCloudService.close();
+        simulator.close();
+    }
+
+    /**
+     * Fetches and parses a folder listing with {@link ICloudUtils#parseJsonResponse}.
+     *
+     * @return the parsed listing.
+     */
+    @Benchmark
+    public DriveNodeDetails[] parseJsonResponse()
+    {
+        HttpPost post = new HttpPost(driveService.getServiceUrl() + "/retrieveItemDetailsInFolders");
+        iCloudService.populateRequestHeadersParameters(post);
+        post.setEntity(new StringEntity(listingRequestJson, ContentType.APPLICATION_JSON));
+
+        return ICloudUtils.parseJsonResponse(iCloudService.getHttpClient(), post, DriveNodeDetails[].class);
+    }
+
+    /**
+     * Fetches a folder listing and maps each item to a {@link DriveNode}.
+     *
+     * @return the children.
+     */
+    @Benchmark
+    public List<DriveNode> getChildren()
+    {
+        return driveService.getChildren(rootId);
+    }
+
+    /**
+     * Constructs a single {@link DriveNode}, which is done once per item when listing a folder.
+     *
+     * @return the node.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public DriveNode driveNodeConstructor()
+    {
+        return new DriveNode(iCloudService, driveService, childDetails.drivewsid, childDetails);
+    }
+}
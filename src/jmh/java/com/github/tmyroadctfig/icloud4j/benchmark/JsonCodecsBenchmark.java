@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.benchmark;
+
+import com.github.tmyroadctfig.icloud4j.json.AppleDevice;
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.github.tmyroadctfig.icloud4j.json.FindMyIPhoneResponse;
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
+import com.github.tmyroadctfig.icloud4j.json.Location;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the handwritten {@link JsonCodecs} adapters with Gson's reflective adapters on large folder listings and
+ * device lists. Run with {@code -prof gc} to see the allocation rate per operation:
+ *
+ * <pre>
+ * ./gradlew jmh -PjmhArgs="JsonCodecsBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecsBenchmark
+{
+    /**
+     * The number of items in the folder listing and the device list.
+     */
+    @Param({"1000", "20000"})
+    public int itemCount;
+
+    private final Gson reflectiveGson = new Gson();
+    private final Gson codecGson = JsonCodecs.gson();
+
+    private byte[] folderListing;
+    private byte[] deviceList;
+
+    @Setup
+    public void setUp()
+    {
+        DriveNodeDetails folder = new DriveNodeDetails();
+        folder.drivewsid = "FOLDER::com.apple.CloudDocs::root";
+        folder.docwsid = "root";
+        folder.zone = "com.apple.CloudDocs";
+        folder.name = "root";
+        folder.etag = "1a2b";
+        folder.type = "FOLDER";
+        folder.numberOfItems = itemCount;
+        folder.items = new DriveNodeDetails[itemCount];
+        for (int i = 0; i < itemCount; i++)
+        {
+            DriveNodeDetails item = new DriveNodeDetails();
+            item.drivewsid = "FILE::com.apple.CloudDocs::" + i;
+            item.docwsid = Integer.toString(i);
+            item.parentId = folder.drivewsid;
+            item.zone = folder.zone;
+            item.name = "file-" + i;
+            item.extension = "jpg";
+            item.etag = Integer.toHexString(i);
+            item.type = "FILE";
+            item.dateModified = "2016-08-01T12:00:00Z";
+            item.dateChanged = "2016-08-01T12:00:00Z";
+            item.size = 1000L * i;
+            folder.items[i] = item;
+        }
+        folderListing = codecGson.toJson(new DriveNodeDetails[]{folder}).getBytes(StandardCharsets.UTF_8);
+
+        FindMyIPhoneResponse response = new FindMyIPhoneResponse();
+        response.content = new AppleDevice[itemCount];
+        for (int i = 0; i < itemCount; i++)
+        {
+            AppleDevice device = new AppleDevice();
+            device.id = "device-" + i;
+            device.name = "iPhone " + i;
+            device.deviceDisplayName = "iPhone 7";
+            device.modelDisplayName = "iPhone";
+            device.rawDeviceModel = "iPhone9,3";
+            device.deviceClass = "iPhone";
+            device.batteryLevel = 0.75;
+            device.batteryStatus = "NotCharging";
+            device.deviceStatus = 200;
+            device.locationEnabled = true;
+            device.location = new Location();
+            device.location.latitude = -33.86;
+            device.location.longitude = 151.21;
+            device.location.positionType = "GPS";
+            device.location.timeStamp = "1470000000000";
+            response.content[i] = device;
+        }
+        deviceList = codecGson.toJson(response).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public DriveNodeDetails[] folderListingReflective()
+    {
+        return reflectiveGson.fromJson(reader(folderListing), DriveNodeDetails[].class);
+    }
+
+    @Benchmark
+    public DriveNodeDetails[] folderListingCodec()
+    {
+        return codecGson.fromJson(reader(folderListing), DriveNodeDetails[].class);
+    }
+
+    @Benchmark
+    public FindMyIPhoneResponse deviceListReflective()
+    {
+        return reflectiveGson.fromJson(reader(deviceList), FindMyIPhoneResponse.class);
+    }
+
+    @Benchmark
+    public FindMyIPhoneResponse deviceListCodec()
+    {
+        return codecGson.fromJson(reader(deviceList), FindMyIPhoneResponse.class);
+    }
+
+    private static InputStreamReader reader(byte[] content)
+    {
+        return new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.benchmark;
+
+import com.github.tmyroadctfig.icloud4j.ICloudService;
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.util.JsonToMapResponseHandler;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the login path: {@link JsonToMapResponseHandler} on a login response, and a full
+ * {@link ICloudService#authenticate} round trip against the {@link ICloudSimulator}.
+ *
+ * <pre>
+ * ./gradlew jmh -PjmhArgs="LoginBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginBenchmark
+{
+    private final JsonToMapResponseHandler responseHandler = new JsonToMapResponseHandler();
+
+    private ICloudSimulator simulator;
+    private ICloudService iCloudService;
+    private byte[] loginResponse;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        simulator = ICloudSimulator.builder().start();
+        iCloudService = simulator.login();
+        loginResponse = JsonCodecs.gson().toJson(iCloudService.getLoginInfo()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        iCloudService.close();
+        simulator.close();
+    }
+
+    /**
+     * Converts a login response to a map, without any network IO.
+     *
+     * @return the map.
+     * @throws IOException if the response can't be read.
+     */
+    @Benchmark
+    public Map<String, Object> handleLoginResponse() throws IOException
+    {
+        BasicClassicHttpResponse response = new BasicClassicHttpResponse(200);
+        response.setEntity(new ByteArrayEntity(loginResponse, ContentType.APPLICATION_JSON));
+        return responseHandler.handleResponse(response);
+    }
+
+    /**
+     * Logs in to the simulator.
+     *
+     * @return the login info.
+     */
+    @Benchmark
+    public Map<String, Object> authenticate()
+    {
+        return iCloudService.authenticate("john@example.com", "password".toCharArray());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.benchmark;
+
+import com.github.tmyroadctfig.icloud4j.DriveNode;
+import com.github.tmyroadctfig.icloud4j.DriveService;
+import com.github.tmyroadctfig.icloud4j.ICloudService;
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.RouteBehaviour;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput and tail latency of concurrent listings and downloads against the {@link ICloudSimulator}, with
+ * simulated server latency. Sample-time mode reports the latency percentiles:
+ *
+ * <pre>
+ * ./gradlew jmh -PjmhArgs="SimulatorLoadBenchmark -p serverLatencyMillis=50"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(32)
+@Fork(1)
+public class SimulatorLoadBenchmark
+{
+    /**
+     * The mean latency added by the simulator to each request.
+     */
+    @Param({"0", "20"})
+    public int serverLatencyMillis;
+
+    /**
+     * The number of items in each folder.
+     */
+    @Param({"200"})
+    public int itemsPerFolder;
+
+    private ICloudSimulator simulator;
+    private ICloudService iCloudService;
+    private DriveService driveService;
+    private DriveNode fileNode;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        RouteBehaviour behaviour = RouteBehaviour.builder()
+            .latency(Duration.ofMillis(serverLatencyMillis / 2), Duration.ofMillis(serverLatencyMillis))
+            .tailLatency(0.01, Duration.ofMillis(serverLatencyMillis * 10L))
+            .build();
+
+        simulator = ICloudSimulator.builder()
+            .folderFanOut(20).filesPerFolder(itemsPerFolder - 20).depth(3).fileSize(1 << 20)
+            .behaviour(SimulatorRoute.DRIVE_ITEM_DETAILS, behaviour)
+            .behaviour(SimulatorRoute.DOCS_DOWNLOAD_BY_ID, behaviour)
+            .start();
+        iCloudService = simulator.login(simulator.configBuilder().maxConnectionsPerRoute(64).build());
+        driveService = new DriveService(iCloudService);
+
+        DriveNodeDetails details = new DriveNodeDetails();
+        details.drivewsid = "FILE::" + SyntheticDriveTree.ZONE + "::F0_0";
+        details.docwsid = "F0_0";
+        details.zone = SyntheticDriveTree.ZONE;
+        details.type = "FILE";
+        fileNode = new DriveNode(iCloudService, driveService, details.drivewsid, details);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        iCloudService.close();
+        simulator.close();
+    }
+
+    /**
+     * Lists a random folder in the second level of the tree.
+     *
+     * @return the children.
+     */
+    @Benchmark
+    public List<DriveNode> listFolder()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return driveService.getChildren(SyntheticDriveTree.folderId(random.nextInt(20), random.nextInt(20)));
+    }
+
+    /**
+     * Downloads a 1 MiB file.
+     */
+    @Benchmark
+    public void downloadFile()
+    {
+        fileNode.downloadFileData(NullOutputStream.INSTANCE);
+    }
+}
@@ -0,0 +1,563 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits the requests in flight to each host, adapting the limit to how the host responds.
+ * <p>
+ * The limit grows additively, by one for each window of responses that found it fully used, while responses are
+ * healthy. It is halved when the host answers '429 Too Many Requests' or '503 Service Unavailable', or when a response
+ * takes more than twice the smoothed latency, at most once per smoothed latency so that the requests already in flight
+ * count as a single signal. A 'Retry-After' header also holds back every request to the host until it has passed.
+ * <p>
+ * The handler sits inside the client's retry handling, so each attempt waits for a permit and is measured. The permit
+ * is held until the response headers arrive, not while the body is read. The same limits apply to the classic and the
+ * async client: a classic request blocks its thread for a permit, while an async request is queued without holding a
+ * thread and proceeds on the thread that frees a permit.
+ */
+class AdaptiveConcurrencyLimiter implements ExecChainHandler, AsyncExecChainHandler
+{
+    /**
+     * The factor applied to the limit on a throttling response or latency spike.
+     */
+    static final double BACKOFF_RATIO = 0.5;
+
+    /**
+     * The multiple of the smoothed latency above which a response counts as a latency spike.
+     */
+    static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * The weight of each new sample in the smoothed latency.
+     */
+    static final double LATENCY_SMOOTHING = 0.1;
+
+    /**
+     * The number of latency samples taken before latency spikes are acted on.
+     */
+    static final int MIN_LATENCY_SAMPLES = 10;
+
+    /**
+     * The longest 'Retry-After' delay honoured, so that a misconfigured server cannot stall the client indefinitely.
+     */
+    static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(5);
+
+    /**
+     * Starts the queued async requests of each host once its 'Retry-After' delay has passed.
+     */
+    private static final ScheduledExecutorService WAKE_UP_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder()
+            .setNameFormat("icloud4j-concurrency-limiter-%d")
+            .setDaemon(true)
+            .build());
+
+    /**
+     * The limit for a host before any response has been seen.
+     */
+    private final int initialLimit;
+
+    /**
+     * The largest limit for any host.
+     */
+    private final int maxLimit;
+
+    /**
+     * The limits, keyed by lower-case host name.
+     */
+    private final Map<String, HostLimit> hostLimits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new limiter.
+     *
+     * @param initialLimit the limit for a host before any response has been seen.
+     * @param maxLimit     the largest limit for any host.
+     */
+    AdaptiveConcurrencyLimiter(int initialLimit, int maxLimit)
+    {
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Gets the current limit for each host a request has been sent to.
+     *
+     * @return the limits, keyed by lower-case host name.
+     */
+    Map<String, Integer> getLimits()
+    {
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        hostLimits.forEach((host, hostLimit) -> limits.put(host, hostLimit.getLimit()));
+        return limits;
+    }
+
+    /**
+     * Gets the limit for a host, creating it if needed.
+     *
+     * @param host the host name.
+     * @return the limit.
+     */
+    HostLimit getHostLimit(String host)
+    {
+        return hostLimits.computeIfAbsent(host.toLowerCase(Locale.ROOT),
+            key -> new HostLimit(initialLimit, maxLimit));
+    }
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+        throws IOException, HttpException
+    {
+        HostLimit hostLimit = getHostLimit(scope.route.getTargetHost().getHostName());
+        hostLimit.acquire();
+
+        long startNanos = System.nanoTime();
+        ClassicHttpResponse response = null;
+        try
+        {
+            response = chain.proceed(request, scope);
+            return response;
+        }
+        finally
+        {
+            if (response != null)
+            {
+                hostLimit.release(response.getCode(), System.nanoTime() - startNanos, getRetryAfterNanos(response));
+            } else
+            {
+                // A failure to connect or read the response says nothing reliable about the server's load
+                hostLimit.release();
+            }
+        }
+    }
+
+    @Override
+    public void execute(HttpRequest request, AsyncEntityProducer entityProducer, AsyncExecChain.Scope scope,
+                        AsyncExecChain chain, AsyncExecCallback asyncExecCallback)
+    {
+        HostLimit hostLimit = getHostLimit(scope.route.getTargetHost().getHostName());
+        hostLimit.acquireAsync(() -> proceed(hostLimit, request, entityProducer, scope, chain, asyncExecCallback));
+    }
+
+    /**
+     * Sends an async request that holds a permit, releasing the permit when the response headers arrive or the request
+     * fails.
+     *
+     * @param hostLimit      the limit of the request's host.
+     * @param request        the request.
+     * @param entityProducer the request body, or {@code null} if there is none.
+     * @param scope          the execution scope.
+     * @param chain          the rest of the execution chain.
+     * @param callback       the callback of the request.
+     */
+    private static void proceed(HostLimit hostLimit, HttpRequest request, AsyncEntityProducer entityProducer,
+                                AsyncExecChain.Scope scope, AsyncExecChain chain, AsyncExecCallback callback)
+    {
+        if (scope.cancellableDependency.isCancelled())
+        {
+            // Cancelled while waiting for the permit, so there is nothing left to send
+            hostLimit.release();
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        try
+        {
+            chain.proceed(request, entityProducer, scope, new AsyncExecCallback()
+            {
+                @Override
+                public AsyncDataConsumer handleResponse(HttpResponse response, EntityDetails entityDetails)
+                    throws HttpException, IOException
+                {
+                    if (released.compareAndSet(false, true))
+                    {
+                        hostLimit.release(response.getCode(), System.nanoTime() - startNanos,
+                            getRetryAfterNanos(response));
+                    }
+                    return callback.handleResponse(response, entityDetails);
+                }
+
+                @Override
+                public void handleInformationResponse(HttpResponse response) throws HttpException, IOException
+                {
+                    callback.handleInformationResponse(response);
+                }
+
+                @Override
+                public void completed()
+                {
+                    if (released.compareAndSet(false, true))
+                    {
+                        hostLimit.release();
+                    }
+                    callback.completed();
+                }
+
+                @Override
+                public void failed(Exception cause)
+                {
+                    if (released.compareAndSet(false, true))
+                    {
+                        // As for the classic client, a failure without a response leaves the limit unchanged
+                        hostLimit.release();
+                    }
+                    callback.failed(cause);
+                }
+            });
+        }
+        catch (HttpException | IOException | RuntimeException e)
+        {
+            if (released.compareAndSet(false, true))
+            {
+                hostLimit.release();
+            }
+            callback.failed(e);
+        }
+    }
+
+    /**
+     * Gets the delay requested by a response's 'Retry-After' header, given in seconds or as an HTTP date.
+     *
+     * @param response the response.
+     * @return the delay in nanoseconds, or zero if there is none.
+     */
+    static long getRetryAfterNanos(HttpResponse response)
+    {
+        Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        return header != null ? parseRetryAfterNanos(header.getValue()) : 0;
+    }
+
+    /**
+     * Parses a 'Retry-After' header value, given in seconds or as an HTTP date.
+     *
+     * @param retryAfter the header value, or {@code null}.
+     * @return the delay in nanoseconds, or zero if there is none.
+     */
+    static long parseRetryAfterNanos(String retryAfter)
+    {
+        if (retryAfter == null)
+        {
+            return 0;
+        }
+
+        String value = retryAfter.trim();
+        Duration delay;
+        try
+        {
+            delay = Duration.ofSeconds(Long.parseLong(value));
+        }
+        catch (NumberFormatException e)
+        {
+            Instant date = DateUtils.parseStandardDate(value);
+            if (date == null)
+            {
+                return 0;
+            }
+            delay = Duration.between(Instant.now(), date);
+        }
+
+        if (delay.isNegative())
+        {
+            return 0;
+        }
+        return (delay.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : delay).toNanos();
+    }
+
+    /**
+     * The adaptive limit for a single host.
+     */
+    static class HostLimit
+    {
+        /**
+         * The largest limit.
+         */
+        private final int maxLimit;
+
+        /**
+         * The current limit, kept fractional so that it can grow by less than one request per response. Guarded by
+         * {@code this}.
+         */
+        private double limit;
+
+        /**
+         * The number of requests in flight. Guarded by {@code this}.
+         */
+        private int inFlight;
+
+        /**
+         * The time before which no request may start, from a 'Retry-After' header. Guarded by {@code this}.
+         */
+        private long blockedUntilNanos = System.nanoTime();
+
+        /**
+         * The smoothed latency of healthy responses in nanoseconds. Guarded by {@code this}.
+         */
+        private double smoothedLatencyNanos;
+
+        /**
+         * The number of latency samples taken. Guarded by {@code this}.
+         */
+        private int latencySamples;
+
+        /**
+         * Whether the limit has been decreased. Guarded by {@code this}.
+         */
+        private boolean decreased;
+
+        /**
+         * The time of the last decrease. Guarded by {@code this}.
+         */
+        private long lastDecreaseNanos;
+
+        /**
+         * The async requests waiting for a permit, in arrival order. Guarded by {@code this}.
+         */
+        private final Deque<Runnable> waiters = new ArrayDeque<>();
+
+        /**
+         * Whether a wake-up is scheduled for the end of a 'Retry-After' delay. Guarded by {@code this}.
+         */
+        private boolean wakeUpScheduled;
+
+        /**
+         * Creates a new limit.
+         *
+         * @param initialLimit the initial limit.
+         * @param maxLimit     the largest limit.
+         */
+        HostLimit(int initialLimit, int maxLimit)
+        {
+            this.limit = initialLimit;
+            this.maxLimit = maxLimit;
+        }
+
+        /**
+         * Gets the current limit.
+         *
+         * @return the number of requests allowed in flight.
+         */
+        synchronized int getLimit()
+        {
+            return (int) limit;
+        }
+
+        /**
+         * Gets the number of requests in flight.
+         *
+         * @return the number of requests.
+         */
+        synchronized int getInFlight()
+        {
+            return inFlight;
+        }
+
+        /**
+         * Waits until a request may start, then counts it as in flight.
+         *
+         * @throws InterruptedIOException if the thread is interrupted while waiting.
+         */
+        synchronized void acquire() throws InterruptedIOException
+        {
+            try
+            {
+                while (true)
+                {
+                    long blockedNanos = blockedUntilNanos - System.nanoTime();
+                    if (blockedNanos > 0)
+                    {
+                        TimeUnit.NANOSECONDS.timedWait(this, blockedNanos);
+                    } else if (inFlight < (int) limit)
+                    {
+                        inFlight++;
+                        return;
+                    } else
+                    {
+                        wait();
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request permit");
+            }
+        }
+
+        /**
+         * Queues an async request for a permit without blocking. The request is started on this thread if a permit is
+         * free, or otherwise on the thread that frees one.
+         *
+         * @param onPermit starts the request once it holds a permit.
+         */
+        void acquireAsync(Runnable onPermit)
+        {
+            synchronized (this)
+            {
+                waiters.add(onPermit);
+            }
+            startWaiters();
+        }
+
+        /**
+         * Hands free permits to the queued async requests and starts them outside the lock, or schedules a wake-up if
+         * the host is held back by a 'Retry-After' delay.
+         */
+        private void startWaiters()
+        {
+            List<Runnable> started = new ArrayList<>();
+            synchronized (this)
+            {
+                long blockedNanos = blockedUntilNanos - System.nanoTime();
+                if (blockedNanos > 0)
+                {
+                    if (!waiters.isEmpty() && !wakeUpScheduled)
+                    {
+                        wakeUpScheduled = true;
+                        WAKE_UP_SCHEDULER.schedule(this::wakeUp, blockedNanos, TimeUnit.NANOSECONDS);
+                    }
+                } else
+                {
+                    while (!waiters.isEmpty() && inFlight < (int) limit)
+                    {
+                        inFlight++;
+                        started.add(waiters.poll());
+                    }
+                }
+            }
+            started.forEach(Runnable::run);
+        }
+
+        /**
+         * Starts the queued async requests once a 'Retry-After' delay has passed.
+         */
+        private void wakeUp()
+        {
+            synchronized (this)
+            {
+                wakeUpScheduled = false;
+            }
+            startWaiters();
+        }
+
+        /**
+         * Ends a request which failed without a response, leaving the limit unchanged.
+         */
+        void release()
+        {
+            synchronized (this)
+            {
+                inFlight--;
+                notifyAll();
+            }
+            startWaiters();
+        }
+
+        /**
+         * Ends a request, adjusting the limit to its response.
+         *
+         * @param status          the response status code.
+         * @param latencyNanos    the time until the response headers arrived.
+         * @param retryAfterNanos the delay requested by the server, or zero if none.
+         */
+        void release(int status, long latencyNanos, long retryAfterNanos)
+        {
+            synchronized (this)
+            {
+                // Whether this request found the limit fully used, so that a larger limit would have been used too
+                boolean saturated = inFlight >= (int) limit;
+                inFlight--;
+                long now = System.nanoTime();
+
+                if (status == HttpStatus.SC_TOO_MANY_REQUESTS || status == HttpStatus.SC_SERVICE_UNAVAILABLE)
+                {
+                    decrease(now);
+                    if (retryAfterNanos > 0 && now + retryAfterNanos - blockedUntilNanos > 0)
+                    {
+                        blockedUntilNanos = now + retryAfterNanos;
+                    }
+                } else if (status < HttpStatus.SC_SERVER_ERROR)
+                {
+                    if (latencySamples >= MIN_LATENCY_SAMPLES
+                        && latencyNanos > smoothedLatencyNanos * LATENCY_TOLERANCE)
+                    {
+                        decrease(now);
+                    } else if (saturated)
+                    {
+                        limit = Math.min(maxLimit, limit + 1 / limit);
+                    }
+
+                    smoothedLatencyNanos = latencySamples == 0
+                        ? latencyNanos
+                        : smoothedLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - smoothedLatencyNanos);
+                    latencySamples++;
+                }
+
+                notifyAll();
+            }
+            startWaiters();
+        }
+
+        /**
+         * Shrinks the limit, unless it was already shrunk within the last smoothed latency.
+         *
+         * @param now the current time.
+         */
+        private void decrease(long now)
+        {
+            if (!decreased || now - lastDecreaseNanos >= (long) smoothedLatencyNanos)
+            {
+                limit = Math.max(1, limit * BACKOFF_RATIO);
+                decreased = true;
+                lastDecreaseNanos = now;
+            }
+        }
+    }
+}
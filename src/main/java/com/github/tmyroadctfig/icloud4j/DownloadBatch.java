@@ -0,0 +1,590 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A group of downloads submitted to a {@link DownloadManager} together, sharing a priority and a {@link Listener}.
+ * Create one with {@link DownloadManager#batch()}:
+ *
+ * <pre>
+ * DownloadBatch batch = manager.batch()
+ *     .add(node, Paths.get("backup", node.getNodeDetails().name))
+ *     .priority(DownloadManager.Priority.HIGH)
+ *     .listener(progress -&gt; System.out.println(progress.getEstimatedTimeRemaining()))
+ *     .submit();
+ * batch.getFuture().join();
+ * </pre>
+ */
+public class DownloadBatch
+{
+    /**
+     * The manager running the batch.
+     */
+    private final DownloadManager manager;
+
+    /**
+     * The priority of the jobs.
+     */
+    private final DownloadManager.Priority priority;
+
+    /**
+     * The listener, or {@code null}.
+     */
+    private final Listener listener;
+
+    /**
+     * The manifest of the mirror, or {@code null}.
+     */
+    private final DownloadManifest manifest;
+
+    /**
+     * The jobs.
+     */
+    private final List<DownloadJob> jobs;
+
+    /**
+     * The sum of the known file sizes.
+     */
+    private final long totalBytes;
+
+    /**
+     * The number of bytes written by all jobs.
+     */
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * The number of finished jobs, whatever their outcome.
+     */
+    private final AtomicInteger finishedJobs = new AtomicInteger();
+
+    /**
+     * The number of failed jobs.
+     */
+    private final AtomicInteger failedJobs = new AtomicInteger();
+
+    /**
+     * The number of cancelled jobs.
+     */
+    private final AtomicInteger cancelledJobs = new AtomicInteger();
+
+    /**
+     * The number of jobs skipped as unchanged.
+     */
+    private final AtomicInteger skippedJobs = new AtomicInteger();
+
+    /**
+     * The {@link System#nanoTime()} at submission.
+     */
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * The {@link System#nanoTime()} of the last progress report.
+     */
+    private final AtomicLong lastProgressNanos = new AtomicLong(startNanos);
+
+    /**
+     * Completes once every job has finished.
+     */
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    /**
+     * Creates a new batch from the builder.
+     *
+     * @param builder the builder.
+     */
+    private DownloadBatch(Builder builder)
+    {
+        this.manager = builder.manager;
+        this.priority = builder.priority;
+        this.listener = builder.listener;
+        this.manifest = builder.manifest;
+
+        List<DownloadJob> jobs = new ArrayList<>(builder.jobFactories.size());
+        long totalBytes = 0;
+        for (Function<DownloadBatch, DownloadJob> jobFactory : builder.jobFactories)
+        {
+            DownloadJob job = jobFactory.apply(this);
+            jobs.add(job);
+            totalBytes += Math.max(0, job.getSize());
+        }
+        this.jobs = Collections.unmodifiableList(jobs);
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @param manager the manager to submit to.
+     * @return the builder.
+     */
+    static Builder builder(DownloadManager manager)
+    {
+        return new Builder(manager);
+    }
+
+    /**
+     * Cancels every job in the batch which has not finished yet.
+     */
+    public void cancel()
+    {
+        for (DownloadJob job : jobs)
+        {
+            job.cancel();
+        }
+    }
+
+    /**
+     * Gets a snapshot of the batch's progress.
+     *
+     * @return the progress.
+     */
+    public Progress getProgress()
+    {
+        return new Progress(jobs.size(), finishedJobs.get(), failedJobs.get(), cancelledJobs.get(), skippedJobs.get(),
+            totalBytes, bytesWritten.get(), System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Gets a future which completes once every job has finished. It completes normally even if some jobs failed or
+     * were cancelled; check {@link DownloadJob#getState()} or {@link Progress#getFailedJobs()}.
+     *
+     * @return the future.
+     */
+    public CompletableFuture<Void> getFuture()
+    {
+        return future;
+    }
+
+    /**
+     * Gets the jobs, in the order they were added.
+     *
+     * @return the jobs.
+     */
+    public List<DownloadJob> getJobs()
+    {
+        return jobs;
+    }
+
+    /**
+     * Gets the priority of the jobs.
+     *
+     * @return the priority.
+     */
+    public DownloadManager.Priority getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * Gets the manifest that unchanged files are skipped by and downloads are recorded in.
+     *
+     * @return the manifest, or {@code null} if every file is downloaded.
+     */
+    @Nullable
+    public DownloadManifest getManifest()
+    {
+        return manifest;
+    }
+
+    /**
+     * Gets the manager running the batch.
+     *
+     * @return the manager.
+     */
+    DownloadManager getManager()
+    {
+        return manager;
+    }
+
+    /**
+     * Called when a job starts downloading.
+     *
+     * @param job the job.
+     */
+    void onJobStarted(DownloadJob job)
+    {
+        if (listener != null)
+        {
+            listener.onJobStarted(job);
+        }
+    }
+
+    /**
+     * Records written bytes, reporting progress if the interval has passed since the last report.
+     *
+     * @param count                 the number of bytes.
+     * @param progressIntervalNanos the minimum interval between reports, in nanoseconds.
+     */
+    void onBytesWritten(long count, long progressIntervalNanos)
+    {
+        bytesWritten.addAndGet(count);
+
+        long last = lastProgressNanos.get();
+        long now = System.nanoTime();
+        if (listener != null && now - last >= progressIntervalNanos && lastProgressNanos.compareAndSet(last, now))
+        {
+            listener.onProgress(getProgress());
+        }
+    }
+
+    /**
+     * Called when a job has finished, completing the batch after the last one.
+     *
+     * @param job the job.
+     */
+    void onJobFinished(DownloadJob job)
+    {
+        if (job.getState() == DownloadJob.State.FAILED)
+        {
+            failedJobs.incrementAndGet();
+        }
+        else if (job.getState() == DownloadJob.State.CANCELLED)
+        {
+            cancelledJobs.incrementAndGet();
+        }
+        else if (job.getState() == DownloadJob.State.SKIPPED)
+        {
+            skippedJobs.incrementAndGet();
+        }
+        boolean last = finishedJobs.incrementAndGet() == jobs.size();
+
+        if (listener != null)
+        {
+            listener.onJobFinished(job);
+            lastProgressNanos.set(System.nanoTime());
+            listener.onProgress(getProgress());
+        }
+        if (last)
+        {
+            complete();
+        }
+    }
+
+    /**
+     * Saves the manifest, if there is one, and completes the batch.
+     */
+    private void complete()
+    {
+        if (manifest != null)
+        {
+            try
+            {
+                manifest.save();
+            }
+            catch (RuntimeException e)
+            {
+                future.completeExceptionally(e);
+                return;
+            }
+        }
+        future.complete(null);
+    }
+
+    /**
+     * Completes an empty batch.
+     */
+    void completeIfEmpty()
+    {
+        if (jobs.isEmpty())
+        {
+            complete();
+        }
+    }
+
+    /**
+     * Receives progress for a batch. Callbacks are made on the download threads, possibly concurrently, and should
+     * return quickly.
+     */
+    @FunctionalInterface
+    public interface Listener
+    {
+        /**
+         * Called periodically while the batch is downloading, and after each job finishes.
+         *
+         * @param progress the progress.
+         */
+        void onProgress(Progress progress);
+
+        /**
+         * Called when a job starts downloading.
+         *
+         * @param job the job.
+         */
+        default void onJobStarted(DownloadJob job)
+        {
+        }
+
+        /**
+         * Called when a job completes, fails or is cancelled.
+         *
+         * @param job the job.
+         */
+        default void onJobFinished(DownloadJob job)
+        {
+        }
+    }
+
+    /**
+     * A snapshot of a batch's progress.
+     */
+    public static class Progress
+    {
+        private final int totalJobs;
+        private final int finishedJobs;
+        private final int failedJobs;
+        private final int cancelledJobs;
+        private final int skippedJobs;
+        private final long totalBytes;
+        private final long bytesWritten;
+        private final long elapsedNanos;
+
+        Progress(int totalJobs, int finishedJobs, int failedJobs, int cancelledJobs, int skippedJobs, long totalBytes,
+                 long bytesWritten, long elapsedNanos)
+        {
+            this.totalJobs = totalJobs;
+            this.finishedJobs = finishedJobs;
+            this.failedJobs = failedJobs;
+            this.cancelledJobs = cancelledJobs;
+            this.skippedJobs = skippedJobs;
+            this.totalBytes = totalBytes;
+            this.bytesWritten = bytesWritten;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Gets the number of jobs in the batch.
+         *
+         * @return the job count.
+         */
+        public int getTotalJobs()
+        {
+            return totalJobs;
+        }
+
+        /**
+         * Gets the number of finished jobs, whatever their outcome.
+         *
+         * @return the finished job count.
+         */
+        public int getFinishedJobs()
+        {
+            return finishedJobs;
+        }
+
+        /**
+         * Gets the number of failed jobs.
+         *
+         * @return the failed job count.
+         */
+        public int getFailedJobs()
+        {
+            return failedJobs;
+        }
+
+        /**
+         * Gets the number of cancelled jobs.
+         *
+         * @return the cancelled job count.
+         */
+        public int getCancelledJobs()
+        {
+            return cancelledJobs;
+        }
+
+        /**
+         * Gets the number of jobs skipped because the batch's manifest showed the local copy to be up to date.
+         *
+         * @return the skipped job count.
+         */
+        public int getSkippedJobs()
+        {
+            return skippedJobs;
+        }
+
+        /**
+         * Gets the sum of the known file sizes.
+         *
+         * @return the total in bytes.
+         */
+        public long getTotalBytes()
+        {
+            return totalBytes;
+        }
+
+        /**
+         * Gets the number of bytes written by all jobs.
+         *
+         * @return the byte count.
+         */
+        public long getBytesWritten()
+        {
+            return bytesWritten;
+        }
+
+        /**
+         * Gets the time since the batch was submitted.
+         *
+         * @return the elapsed time.
+         */
+        public Duration getElapsed()
+        {
+            return Duration.ofNanos(elapsedNanos);
+        }
+
+        /**
+         * Gets the average download rate since the batch was submitted.
+         *
+         * @return the rate in bytes per second.
+         */
+        public double getBytesPerSecond()
+        {
+            return elapsedNanos <= 0 ? 0 : bytesWritten * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        /**
+         * Estimates the time until the remaining bytes are written at the average rate so far.
+         *
+         * @return the estimate, or {@code null} if nothing has been written yet.
+         */
+        @Nullable
+        public Duration getEstimatedTimeRemaining()
+        {
+            double bytesPerSecond = getBytesPerSecond();
+            if (bytesPerSecond <= 0)
+            {
+                return null;
+            }
+
+            long remaining = Math.max(0, totalBytes - bytesWritten);
+            return Duration.ofNanos((long) (remaining / bytesPerSecond * TimeUnit.SECONDS.toNanos(1)));
+        }
+    }
+
+    /**
+     * A builder for {@link DownloadBatch}.
+     */
+    public static class Builder
+    {
+        private final DownloadManager manager;
+        private final List<Function<DownloadBatch, DownloadJob>> jobFactories = new ArrayList<>();
+        private DownloadManager.Priority priority = DownloadManager.Priority.NORMAL;
+        private Listener listener;
+        private DownloadManifest manifest;
+
+        private Builder(DownloadManager manager)
+        {
+            this.manager = manager;
+        }
+
+        /**
+         * Adds an iCloud Drive file.
+         *
+         * @param node   the file node.
+         * @param target the file to write.
+         * @return this builder.
+         */
+        public Builder add(DriveNode node, Path target)
+        {
+            Preconditions.checkNotNull(target, "target");
+            jobFactories.add(batch -> new DownloadJob(batch, node.getId(), node.getDownloadHost(),
+                node.getNodeDetails().size, DownloadManifest.Version.of(node), target, node::newDownload,
+                node::prefetchContentUrl));
+            return this;
+        }
+
+        /**
+         * Adds a ubiquity file.
+         *
+         * @param node   the file node.
+         * @param target the file to write.
+         * @return this builder.
+         */
+        public Builder add(UbiquityNode node, Path target)
+        {
+            Preconditions.checkNotNull(target, "target");
+            jobFactories.add(batch -> new DownloadJob(batch, node.getId(), node.getDownloadHost(),
+                node.getNodeDetails().size, DownloadManifest.Version.of(node), target, node::newDownload, () -> {
+            }));
+            return this;
+        }
+
+        /**
+         * Sets the priority of the jobs. Pending jobs of a higher priority start before those of a lower one,
+         * whichever batch they belong to.
+         *
+         * @param priority the priority.
+         * @return this builder.
+         */
+        public Builder priority(DownloadManager.Priority priority)
+        {
+            this.priority = Preconditions.checkNotNull(priority, "priority");
+            return this;
+        }
+
+        /**
+         * Sets the listener to report progress to.
+         *
+         * @param listener the listener, or {@code null} for none.
+         * @return this builder.
+         */
+        public Builder listener(@Nullable Listener listener)
+        {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Makes the batch incremental. Files whose local copy the manifest shows to be up to date are skipped without
+         * any request; the rest are downloaded with {@link DownloadOptions#isComputeDigests()} set and recorded in the
+         * manifest, which is saved once the batch finishes.
+         *
+         * @param manifest the manifest, or {@code null} to download every file.
+         * @return this builder.
+         */
+        public Builder manifest(@Nullable DownloadManifest manifest)
+        {
+            this.manifest = manifest;
+            return this;
+        }
+
+        /**
+         * Queues the jobs in the manager.
+         *
+         * @return the batch.
+         * @throws IllegalStateException if the manager has been closed.
+         */
+        public DownloadBatch submit()
+        {
+            DownloadBatch batch = new DownloadBatch(this);
+            manager.submit(batch);
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
+import com.google.gson.JsonParseException;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * The progress of a partial download, persisted next to the file being written so that a failed download can be
+ * resumed, see {@link DownloadOptions.Builder#resumable(boolean)}.
+ * <p>
+ * A checkpoint records the node ID, etag and size of the file being downloaded, and the byte ranges already written.
+ * A download refuses to resume from a checkpoint whose etag or size no longer match the node.
+ */
+public class DownloadCheckpoint
+{
+    /**
+     * The suffix added to the target file name to form the checkpoint file name.
+     */
+    public static final String FILE_SUFFIX = ".checkpoint";
+
+    /**
+     * The node ID.
+     */
+    private final String nodeId;
+
+    /**
+     * The etag of the node when the download started.
+     */
+    private final String etag;
+
+    /**
+     * The file size.
+     */
+    private final long size;
+
+    /**
+     * The completed byte ranges, as start offset to end offset (exclusive). Guarded by {@code this}.
+     */
+    private final TreeMap<Long, Long> completed = new TreeMap<>();
+
+    /**
+     * Creates a new, empty checkpoint.
+     *
+     * @param nodeId the node ID.
+     * @param etag   the etag of the node.
+     * @param size   the file size.
+     */
+    DownloadCheckpoint(String nodeId, String etag, long size)
+    {
+        this.nodeId = nodeId;
+        this.etag = etag;
+        this.size = size;
+    }
+
+    /**
+     * Gets the path of the checkpoint for a download target.
+     *
+     * @param target the file being downloaded.
+     * @return the checkpoint path.
+     */
+    public static Path pathFor(Path target)
+    {
+        return target.resolveSibling(target.getFileName() + FILE_SUFFIX);
+    }
+
+    /**
+     * Deletes the checkpoint for a download target, so that the next download starts from scratch.
+     *
+     * @param target the file being downloaded.
+     */
+    public static void delete(Path target)
+    {
+        try
+        {
+            Files.deleteIfExists(pathFor(target));
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads the checkpoint for a download target.
+     *
+     * @param target the file being downloaded.
+     * @return the checkpoint, or {@code null} if there is none or it can't be read.
+     */
+    @Nullable
+    public static DownloadCheckpoint load(Path target)
+    {
+        Snapshot snapshot;
+        try (Reader reader = Files.newBufferedReader(pathFor(target), StandardCharsets.UTF_8))
+        {
+            snapshot = JsonCodecs.gson().fromJson(reader, Snapshot.class);
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+        catch (IOException | JsonParseException e)
+        {
+            // A torn or corrupt checkpoint is treated as no checkpoint
+            return null;
+        }
+
+        if (snapshot == null)
+        {
+            return null;
+        }
+
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(snapshot.nodeId, snapshot.etag, snapshot.size);
+        if (snapshot.completed != null)
+        {
+            for (long[] range : snapshot.completed)
+            {
+                if (range != null && range.length == 2)
+                {
+                    checkpoint.markCompleted(range[0], range[1]);
+                }
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Writes this checkpoint for a download target, replacing any previous one atomically.
+     *
+     * @param target the file being downloaded.
+     */
+    synchronized void save(Path target)
+    {
+        Snapshot snapshot = new Snapshot();
+        snapshot.nodeId = nodeId;
+        snapshot.etag = etag;
+        snapshot.size = size;
+        snapshot.completed = new long[completed.size()][];
+        int i = 0;
+        for (Map.Entry<Long, Long> range : completed.entrySet())
+        {
+            snapshot.completed[i++] = new long[]{range.getKey(), range.getValue()};
+        }
+
+        Path path = pathFor(target);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try
+        {
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8))
+            {
+                JsonCodecs.gson().toJson(snapshot, writer);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks whether this checkpoint was written for the given version of a node.
+     *
+     * @param nodeId the node ID.
+     * @param etag   the current etag of the node.
+     * @param size   the current file size.
+     * @return {@code true} if the download can resume from this checkpoint.
+     */
+    boolean matches(String nodeId, String etag, long size)
+    {
+        return Objects.equals(this.nodeId, nodeId) && Objects.equals(this.etag, etag) && this.size == size;
+    }
+
+    /**
+     * Records a byte range as written, merging it with adjacent and overlapping ranges.
+     *
+     * @param start the first byte.
+     * @param end   the byte after the last one.
+     */
+    synchronized void markCompleted(long start, long end)
+    {
+        if (end <= start)
+        {
+            return;
+        }
+
+        Map.Entry<Long, Long> before = completed.floorEntry(start);
+        if (before != null && before.getValue() >= start)
+        {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+
+        Map.Entry<Long, Long> after;
+        while ((after = completed.ceilingEntry(start)) != null && after.getKey() <= end)
+        {
+            end = Math.max(end, after.getValue());
+            completed.remove(after.getKey());
+        }
+        completed.put(start, end);
+    }
+
+    /**
+     * Checks whether a byte range has been written.
+     *
+     * @param start the first byte.
+     * @param end   the byte after the last one.
+     * @return {@code true} if the whole range is within a completed range.
+     */
+    synchronized boolean isCompleted(long start, long end)
+    {
+        if (end <= start)
+        {
+            return true;
+        }
+
+        Map.Entry<Long, Long> range = completed.floorEntry(start);
+        return range != null && range.getValue() >= end;
+    }
+
+    /**
+     * Gets the byte ranges not yet written.
+     *
+     * @return the missing ranges, in file order.
+     */
+    synchronized List<SegmentedDownload.Segment> getMissing()
+    {
+        List<SegmentedDownload.Segment> missing = new ArrayList<>();
+        long offset = 0;
+        for (Map.Entry<Long, Long> range : completed.entrySet())
+        {
+            if (range.getKey() > offset)
+            {
+                missing.add(new SegmentedDownload.Segment(offset, range.getKey() - offset));
+            }
+            offset = Math.max(offset, range.getValue());
+        }
+        if (offset < size)
+        {
+            missing.add(new SegmentedDownload.Segment(offset, size - offset));
+        }
+        return missing;
+    }
+
+    /**
+     * Gets the number of bytes written.
+     *
+     * @return the completed byte count.
+     */
+    public synchronized long getCompletedBytes()
+    {
+        long total = 0;
+        for (Map.Entry<Long, Long> range : completed.entrySet())
+        {
+            total += range.getValue() - range.getKey();
+        }
+        return total;
+    }
+
+    /**
+     * Gets the node ID.
+     *
+     * @return the node ID.
+     */
+    public String getNodeId()
+    {
+        return nodeId;
+    }
+
+    /**
+     * Gets the etag of the node when the download started.
+     *
+     * @return the etag.
+     */
+    public String getEtag()
+    {
+        return etag;
+    }
+
+    /**
+     * Gets the file size.
+     *
+     * @return the size in bytes.
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * The persisted form of a checkpoint.
+     */
+    private static class Snapshot
+    {
+        String nodeId;
+        String etag;
+        long size;
+        long[][] completed;
+    }
+}
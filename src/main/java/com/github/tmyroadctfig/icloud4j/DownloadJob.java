@@ -0,0 +1,320 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.LongConsumer;
+
+/**
+ * A single file download queued in a {@link DownloadManager}, as part of a {@link DownloadBatch}.
+ */
+public class DownloadJob
+{
+    /**
+     * The lifecycle of a job.
+     */
+    public enum State
+    {
+        /**
+         * Waiting for a free download slot.
+         */
+        PENDING,
+
+        /**
+         * Downloading.
+         */
+        RUNNING,
+
+        /**
+         * The file was downloaded.
+         */
+        COMPLETED,
+
+        /**
+         * The download failed, see {@link #getFuture()} for the cause.
+         */
+        FAILED,
+
+        /**
+         * The job was cancelled before it completed.
+         */
+        CANCELLED,
+
+        /**
+         * The batch's {@link DownloadManifest} showed the local copy to be up to date, so nothing was downloaded.
+         */
+        SKIPPED
+    }
+
+    /**
+     * The batch the job belongs to.
+     */
+    private final DownloadBatch batch;
+
+    /**
+     * The node ID.
+     */
+    private final String nodeId;
+
+    /**
+     * The host serving the download.
+     */
+    private final String host;
+
+    /**
+     * The expected file size, or zero or less if unknown.
+     */
+    private final long size;
+
+    /**
+     * The version of the node, checked against and recorded in the batch's manifest.
+     */
+    private final DownloadManifest.Version version;
+
+    /**
+     * The file to write.
+     */
+    private final Path target;
+
+    /**
+     * Resolves the content URL and prepares the download, given the options and a progress callback.
+     */
+    private final BiFunction<DownloadOptions, LongConsumer, SegmentedDownload> downloadFactory;
+
+    /**
+     * Starts resolving the content URL ahead of the download.
+     */
+    private final Runnable prefetcher;
+
+    /**
+     * Completes with the target once the file is downloaded.
+     */
+    private final CompletableFuture<Path> future = new CompletableFuture<>();
+
+    /**
+     * The number of bytes written so far.
+     */
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * The order of submission to the manager, used to keep jobs of the same priority first-in first-out.
+     */
+    long sequence;
+
+    /**
+     * The current state. Changed only by the manager, under its lock.
+     */
+    volatile State state = State.PENDING;
+
+    /**
+     * Whether a running download should stop at its next write.
+     */
+    volatile boolean cancelRequested;
+
+    /**
+     * Whether the content URL has been prefetched. Changed only by the manager, under its lock.
+     */
+    boolean prefetched;
+
+    /**
+     * The digest of the downloaded file, set when the batch has a manifest.
+     */
+    private volatile FileDigest digest;
+
+    /**
+     * Creates a new job.
+     *
+     * @param batch           the batch the job belongs to.
+     * @param nodeId          the node ID.
+     * @param host            the host serving the download.
+     * @param size            the expected file size, or zero or less if unknown.
+     * @param version         the version of the node.
+     * @param target          the file to write.
+     * @param downloadFactory prepares the download.
+     * @param prefetcher      starts resolving the content URL ahead of the download.
+     */
+    DownloadJob(DownloadBatch batch, String nodeId, String host, long size, DownloadManifest.Version version, Path target,
+                BiFunction<DownloadOptions, LongConsumer, SegmentedDownload> downloadFactory, Runnable prefetcher)
+    {
+        this.batch = batch;
+        this.nodeId = nodeId;
+        this.host = host;
+        this.size = size;
+        this.version = version;
+        this.target = target;
+        this.downloadFactory = downloadFactory;
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * Cancels the job. A pending job is removed from the queue; a running job stops at its next write, leaving a
+     * partial file (and, for resumable downloads, its checkpoint) behind.
+     *
+     * @return {@code false} if the job had already finished.
+     */
+    public boolean cancel()
+    {
+        return batch.getManager().cancel(this);
+    }
+
+    /**
+     * Prepares the download.
+     *
+     * @param options   the download options.
+     * @param onWritten called with the number of bytes after each write to the file.
+     * @return the download.
+     */
+    SegmentedDownload newDownload(DownloadOptions options, LongConsumer onWritten)
+    {
+        return downloadFactory.apply(options, onWritten);
+    }
+
+    /**
+     * Starts resolving the content URL ahead of the download.
+     */
+    void prefetch()
+    {
+        prefetcher.run();
+    }
+
+    /**
+     * Gets the version of the node.
+     *
+     * @return the version.
+     */
+    DownloadManifest.Version getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Sets the digest of the downloaded file.
+     *
+     * @param digest the digest.
+     */
+    void setDigest(FileDigest digest)
+    {
+        this.digest = digest;
+    }
+
+    /**
+     * Records written bytes.
+     *
+     * @param count the number of bytes.
+     */
+    void addBytesWritten(long count)
+    {
+        bytesWritten.addAndGet(count);
+    }
+
+    /**
+     * Gets the batch the job belongs to.
+     *
+     * @return the batch.
+     */
+    public DownloadBatch getBatch()
+    {
+        return batch;
+    }
+
+    /**
+     * Gets the node ID.
+     *
+     * @return the node ID.
+     */
+    public String getNodeId()
+    {
+        return nodeId;
+    }
+
+    /**
+     * Gets the host serving the download, which per-host limits apply to.
+     *
+     * @return the host name.
+     */
+    public String getHost()
+    {
+        return host;
+    }
+
+    /**
+     * Gets the expected file size.
+     *
+     * @return the size in bytes, or zero or less if unknown.
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Gets the file to write.
+     *
+     * @return the target path.
+     */
+    public Path getTarget()
+    {
+        return target;
+    }
+
+    /**
+     * Gets the digest of the file, when the batch has a {@link DownloadManifest}. For a skipped job this is the digest
+     * recorded when the file was last downloaded.
+     *
+     * @return the digest, or {@code null} if the job has no manifest or has not completed.
+     */
+    @Nullable
+    public FileDigest getDigest()
+    {
+        return digest;
+    }
+
+    /**
+     * Gets the current state.
+     *
+     * @return the state.
+     */
+    public State getState()
+    {
+        return state;
+    }
+
+    /**
+     * Gets the number of bytes written so far, including any written before a failure.
+     *
+     * @return the byte count.
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten.get();
+    }
+
+    /**
+     * Gets a future which completes with the target once the file is downloaded, completes exceptionally if the
+     * download fails, and is cancelled if the job is. Cancelling the future does not stop the job; use
+     * {@link #cancel()}.
+     *
+     * @return the future.
+     */
+    public CompletableFuture<Path> getFuture()
+    {
+        return future;
+    }
+}
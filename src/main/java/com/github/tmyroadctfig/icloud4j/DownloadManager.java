@@ -0,0 +1,669 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hc.core5.util.TimeValue;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs large numbers of file downloads with bounded concurrency.
+ * <p>
+ * Downloads are submitted as {@link DownloadBatch}es of {@link DriveNode}s and {@link UbiquityNode}s with target paths,
+ * see {@link #batch()}. At most {@link Builder#maxConcurrentDownloads(int)} jobs run at once, and at most
+ * {@link Builder#maxConcurrentDownloadsPerHost(int)} of those against the same host. When a slot frees up, the pending
+ * job with the highest {@link Priority} that fits within the limits starts next; jobs of the same priority start in the
+ * order they were submitted. An optional bandwidth cap is shared by all jobs.
+ * <p>
+ * Each job is a {@link DriveNode#downloadTo(java.nio.file.Path, DownloadOptions)} with the manager's
+ * {@link DownloadOptions}, so resumable options apply to every job.
+ */
+public class DownloadManager implements Closeable
+{
+    /**
+     * The default number of jobs running at once.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+
+    /**
+     * The default minimum interval between progress reports.
+     */
+    public static final TimeValue DEFAULT_PROGRESS_INTERVAL = TimeValue.ofSeconds(1);
+
+    /**
+     * The default number of pending jobs per host whose content URLs are resolved ahead of their start.
+     */
+    public static final int DEFAULT_PREFETCH_DEPTH = 16;
+
+    /**
+     * The order pending jobs start in.
+     */
+    private static final Comparator<DownloadJob> START_ORDER = Comparator
+        .comparing((DownloadJob job) -> job.getBatch().getPriority())
+        .thenComparingLong(job -> job.sequence);
+
+    /**
+     * The scheduling priority of a batch's jobs.
+     */
+    public enum Priority
+    {
+        /**
+         * Started before any normal or low priority job.
+         */
+        HIGH,
+
+        /**
+         * The default priority.
+         */
+        NORMAL,
+
+        /**
+         * Started only when no higher priority job is pending.
+         */
+        LOW
+    }
+
+    /**
+     * The maximum number of jobs running at once.
+     */
+    private final int maxConcurrentDownloads;
+
+    /**
+     * The maximum number of jobs running at once against a single host.
+     */
+    private final int maxConcurrentDownloadsPerHost;
+
+    /**
+     * Caps the combined download rate, in bytes per second, or {@code null} if unlimited.
+     */
+    private final RateLimiter bandwidthLimiter;
+
+    /**
+     * The options for each download.
+     */
+    private final DownloadOptions downloadOptions;
+
+    /**
+     * The minimum interval between progress reports, in nanoseconds.
+     */
+    private final long progressIntervalNanos;
+
+    /**
+     * The number of pending jobs per host to prefetch content URLs for.
+     */
+    private final int prefetchDepth;
+
+    /**
+     * Runs the jobs.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The pending jobs of each host, in start order. Guarded by {@code this}.
+     */
+    private final Map<String, TreeSet<DownloadJob>> pendingByHost = new LinkedHashMap<>();
+
+    /**
+     * The number of running jobs for each host. Guarded by {@code this}.
+     */
+    private final Map<String, Integer> runningByHost = new HashMap<>();
+
+    /**
+     * The running jobs. Guarded by {@code this}.
+     */
+    private final Set<DownloadJob> running = new HashSet<>();
+
+    /**
+     * The number of jobs submitted, used to order jobs of the same priority. Guarded by {@code this}.
+     */
+    private long submitted;
+
+    /**
+     * Whether the manager has been closed. Guarded by {@code this}.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a new manager from the builder.
+     *
+     * @param builder the builder.
+     */
+    private DownloadManager(Builder builder)
+    {
+        this.maxConcurrentDownloads = builder.maxConcurrentDownloads;
+        this.maxConcurrentDownloadsPerHost = builder.maxConcurrentDownloadsPerHost;
+        this.bandwidthLimiter = builder.bytesPerSecond > 0 ? RateLimiter.create(builder.bytesPerSecond) : null;
+        this.downloadOptions = builder.downloadOptions;
+        this.progressIntervalNanos = builder.progressInterval.toNanoseconds();
+        this.prefetchDepth = builder.prefetchDepth;
+        this.executor = Executors.newFixedThreadPool(maxConcurrentDownloads,
+            new ThreadFactoryBuilder().setNameFormat("icloud4j-download-manager-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Creates a new builder populated with the default values.
+     *
+     * @return the builder.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Starts a new batch of downloads.
+     *
+     * @return the batch builder; call {@link DownloadBatch.Builder#submit()} to queue the jobs.
+     */
+    public DownloadBatch.Builder batch()
+    {
+        return DownloadBatch.builder(this);
+    }
+
+    /**
+     * Gets the number of jobs waiting for a slot.
+     *
+     * @return the pending job count.
+     */
+    public synchronized int getPendingCount()
+    {
+        int count = 0;
+        for (TreeSet<DownloadJob> jobs : pendingByHost.values())
+        {
+            count += jobs.size();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of jobs downloading.
+     *
+     * @return the running job count.
+     */
+    public synchronized int getRunningCount()
+    {
+        return running.size();
+    }
+
+    /**
+     * Closes the manager. Pending jobs are cancelled and running jobs stop at their next write.
+     */
+    @Override
+    public void close()
+    {
+        List<DownloadJob> cancelled = new ArrayList<>();
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+
+            for (TreeSet<DownloadJob> jobs : pendingByHost.values())
+            {
+                for (DownloadJob job : jobs)
+                {
+                    job.cancelRequested = true;
+                    job.state = DownloadJob.State.CANCELLED;
+                    cancelled.add(job);
+                }
+            }
+            pendingByHost.clear();
+
+            for (DownloadJob job : running)
+            {
+                job.cancelRequested = true;
+            }
+        }
+
+        for (DownloadJob job : cancelled)
+        {
+            notifyFinished(job, null);
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Queues the jobs of a batch.
+     *
+     * @param batch the batch.
+     */
+    void submit(DownloadBatch batch)
+    {
+        // Checking the manifest touches the disk, so it is done before taking the lock
+        DownloadManifest manifest = batch.getManifest();
+        Set<DownloadJob> skipped = new LinkedHashSet<>();
+        for (DownloadJob job : batch.getJobs())
+        {
+            if (manifest != null && manifest.isUnchanged(job.getVersion(), job.getTarget()))
+            {
+                skipped.add(job);
+            }
+        }
+
+        List<DownloadJob> started;
+        List<DownloadJob> upcoming;
+        synchronized (this)
+        {
+            if (closed)
+            {
+                throw new IllegalStateException("The download manager has been closed");
+            }
+
+            for (DownloadJob job : batch.getJobs())
+            {
+                job.sequence = submitted++;
+                if (skipped.contains(job))
+                {
+                    job.state = DownloadJob.State.SKIPPED;
+                } else
+                {
+                    pendingByHost.computeIfAbsent(job.getHost(), host -> new TreeSet<>(START_ORDER)).add(job);
+                }
+            }
+            started = dispatch();
+            upcoming = nextToPrefetch();
+        }
+
+        for (DownloadJob job : skipped)
+        {
+            job.setDigest(manifest.getEntry(job.getTarget()).getDigest());
+            notifyFinished(job, null);
+        }
+        start(started);
+        prefetch(upcoming);
+        batch.completeIfEmpty();
+    }
+
+    /**
+     * Cancels a job.
+     *
+     * @param job the job.
+     * @return {@code false} if the job had already finished.
+     */
+    boolean cancel(DownloadJob job)
+    {
+        synchronized (this)
+        {
+            if (job.state == DownloadJob.State.RUNNING)
+            {
+                job.cancelRequested = true;
+                return true;
+            }
+
+            TreeSet<DownloadJob> pending = pendingByHost.get(job.getHost());
+            if (job.state != DownloadJob.State.PENDING || pending == null || !pending.remove(job))
+            {
+                return false;
+            }
+            if (pending.isEmpty())
+            {
+                pendingByHost.remove(job.getHost());
+            }
+            job.cancelRequested = true;
+            job.state = DownloadJob.State.CANCELLED;
+        }
+
+        notifyFinished(job, null);
+        return true;
+    }
+
+    /**
+     * Takes pending jobs off the queue while there are free slots for them. Must be called holding the lock; the
+     * returned jobs are then started with {@link #start(List)} after releasing it.
+     *
+     * @return the jobs to start.
+     */
+    private List<DownloadJob> dispatch()
+    {
+        List<DownloadJob> started = new ArrayList<>();
+        while (running.size() < maxConcurrentDownloads)
+        {
+            // Only the head of each host's queue can be next, so this is linear in the number of hosts
+            DownloadJob next = null;
+            for (Map.Entry<String, TreeSet<DownloadJob>> entry : pendingByHost.entrySet())
+            {
+                DownloadJob head = entry.getValue().first();
+                if (runningByHost.getOrDefault(entry.getKey(), 0) < maxConcurrentDownloadsPerHost
+                    && (next == null || START_ORDER.compare(head, next) < 0))
+                {
+                    next = head;
+                }
+            }
+            if (next == null)
+            {
+                break;
+            }
+
+            TreeSet<DownloadJob> pending = pendingByHost.get(next.getHost());
+            pending.pollFirst();
+            if (pending.isEmpty())
+            {
+                pendingByHost.remove(next.getHost());
+            }
+            runningByHost.merge(next.getHost(), 1, Integer::sum);
+            running.add(next);
+            next.state = DownloadJob.State.RUNNING;
+            started.add(next);
+        }
+        return started;
+    }
+
+    /**
+     * Hands jobs to the executor.
+     *
+     * @param jobs the jobs.
+     */
+    private void start(List<DownloadJob> jobs)
+    {
+        for (DownloadJob job : jobs)
+        {
+            executor.execute(() -> run(job));
+        }
+    }
+
+    /**
+     * Runs a job on an executor thread.
+     *
+     * @param job the job.
+     */
+    private void run(DownloadJob job)
+    {
+        RuntimeException failure = null;
+        try
+        {
+            job.getBatch().onJobStarted(job);
+
+            // Resolving the content URL may take a request of its own, so check for cancellation either side of it
+            if (job.cancelRequested)
+            {
+                throw new CancellationException("Download cancelled");
+            }
+            DownloadManifest manifest = job.getBatch().getManifest();
+            DownloadOptions options = manifest != null ? downloadOptions.withComputeDigests() : downloadOptions;
+            SegmentedDownload download = job.newDownload(options, count -> onWritten(job, count));
+            if (job.cancelRequested)
+            {
+                throw new CancellationException("Download cancelled");
+            }
+            FileDigest digest = download.downloadTo(job.getTarget());
+            if (manifest != null)
+            {
+                manifest.record(job.getVersion(), job.getTarget(), digest);
+                job.setDigest(digest);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            failure = e;
+        }
+
+        synchronized (this)
+        {
+            if (failure == null)
+            {
+                job.state = DownloadJob.State.COMPLETED;
+            }
+            else
+            {
+                job.state = job.cancelRequested ? DownloadJob.State.CANCELLED : DownloadJob.State.FAILED;
+            }
+        }
+
+        // Report the job before freeing its slot, so listeners never see more jobs running than the limits allow
+        notifyFinished(job, failure);
+
+        List<DownloadJob> started = new ArrayList<>();
+        List<DownloadJob> upcoming = new ArrayList<>();
+        synchronized (this)
+        {
+            running.remove(job);
+            runningByHost.computeIfPresent(job.getHost(), (host, count) -> count > 1 ? count - 1 : null);
+            if (!closed)
+            {
+                started = dispatch();
+                upcoming = nextToPrefetch();
+            }
+        }
+        start(started);
+        prefetch(upcoming);
+    }
+
+    /**
+     * Picks the pending jobs next in line on each host whose content URLs have not been prefetched yet. Must be called
+     * under the lock.
+     *
+     * @return the jobs, now marked as prefetched.
+     */
+    private List<DownloadJob> nextToPrefetch()
+    {
+        List<DownloadJob> upcoming = new ArrayList<>();
+        for (TreeSet<DownloadJob> pending : pendingByHost.values())
+        {
+            int depth = 0;
+            for (DownloadJob job : pending)
+            {
+                if (depth++ >= prefetchDepth)
+                {
+                    break;
+                }
+                if (!job.prefetched)
+                {
+                    job.prefetched = true;
+                    upcoming.add(job);
+                }
+            }
+        }
+        return upcoming;
+    }
+
+    /**
+     * Starts resolving the content URLs of upcoming jobs, so that their lookups overlap the running transfers.
+     *
+     * @param jobs the jobs.
+     */
+    private void prefetch(List<DownloadJob> jobs)
+    {
+        for (DownloadJob job : jobs)
+        {
+            try
+            {
+                job.prefetch();
+            }
+            catch (RuntimeException e)
+            {
+                // The job resolves the URL itself when it starts, and reports any failure then
+            }
+        }
+    }
+
+    /**
+     * Called after each write to the file of a running job. Blocks while the bandwidth cap is exceeded, and aborts the
+     * download if the job has been cancelled.
+     *
+     * @param job   the job.
+     * @param count the number of bytes written.
+     */
+    private void onWritten(DownloadJob job, long count)
+    {
+        if (bandwidthLimiter != null)
+        {
+            bandwidthLimiter.acquire((int) count);
+        }
+        if (job.cancelRequested)
+        {
+            throw new CancellationException("Download cancelled");
+        }
+
+        job.addBytesWritten(count);
+        job.getBatch().onBytesWritten(count, progressIntervalNanos);
+    }
+
+    /**
+     * Completes a finished job's future and reports it to its batch.
+     *
+     * @param job     the job.
+     * @param failure the failure if the job failed.
+     */
+    private void notifyFinished(DownloadJob job, RuntimeException failure)
+    {
+        switch (job.state)
+        {
+            case COMPLETED:
+            case SKIPPED:
+                job.getFuture().complete(job.getTarget());
+                break;
+
+            case CANCELLED:
+                job.getFuture().cancel(false);
+                break;
+
+            default:
+                job.getFuture().completeExceptionally(failure);
+                break;
+        }
+        job.getBatch().onJobFinished(job);
+    }
+
+    /**
+     * A builder for {@link DownloadManager}.
+     */
+    public static class Builder
+    {
+        private int maxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+        private int maxConcurrentDownloadsPerHost = Integer.MAX_VALUE;
+        private long bytesPerSecond;
+        private DownloadOptions downloadOptions = DownloadOptions.builder().parallelism(1).build();
+        private TimeValue progressInterval = DEFAULT_PROGRESS_INTERVAL;
+        private int prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Sets the maximum number of jobs running at once, which is also the number of threads the manager uses.
+         *
+         * @param maxConcurrentDownloads the maximum number of jobs.
+         * @return this builder.
+         */
+        public Builder maxConcurrentDownloads(int maxConcurrentDownloads)
+        {
+            Preconditions.checkArgument(maxConcurrentDownloads > 0, "maxConcurrentDownloads must be positive");
+            this.maxConcurrentDownloads = maxConcurrentDownloads;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of jobs running at once against a single host. By default only the overall limit
+         * applies. Each job holds one connection unless {@link DownloadOptions#getParallelism()} is raised, so this
+         * should not exceed the connection limit for the host, see
+         * {@link ICloudServiceConfig.Builder#maxConnectionsForService(String, int)}.
+         *
+         * @param maxConcurrentDownloadsPerHost the maximum number of jobs per host.
+         * @return this builder.
+         */
+        public Builder maxConcurrentDownloadsPerHost(int maxConcurrentDownloadsPerHost)
+        {
+            Preconditions.checkArgument(maxConcurrentDownloadsPerHost > 0,
+                "maxConcurrentDownloadsPerHost must be positive");
+            this.maxConcurrentDownloadsPerHost = maxConcurrentDownloadsPerHost;
+            return this;
+        }
+
+        /**
+         * Caps the combined download rate of all jobs with a token bucket. The cap is enforced after each buffer is
+         * written, so the rate can briefly exceed it by one buffer per job.
+         *
+         * @param bytesPerSecond the cap in bytes per second, or zero for no cap.
+         * @return this builder.
+         */
+        public Builder bandwidthLimit(long bytesPerSecond)
+        {
+            Preconditions.checkArgument(bytesPerSecond >= 0, "bytesPerSecond must not be negative");
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets the options for each download. The default fetches each file with a single request, since the manager
+         * already runs files in parallel.
+         *
+         * @param downloadOptions the download options.
+         * @return this builder.
+         */
+        public Builder downloadOptions(DownloadOptions downloadOptions)
+        {
+            this.downloadOptions = Preconditions.checkNotNull(downloadOptions, "downloadOptions");
+            return this;
+        }
+
+        /**
+         * Sets the minimum interval between progress reports while bytes are being written. Progress is also reported
+         * whenever a job finishes.
+         *
+         * @param progressInterval the interval.
+         * @return this builder.
+         */
+        public Builder progressInterval(TimeValue progressInterval)
+        {
+            this.progressInterval = Preconditions.checkNotNull(progressInterval, "progressInterval");
+            return this;
+        }
+
+        /**
+         * Sets how many pending jobs per host, in start order, have their content URLs resolved while earlier jobs are
+         * still transferring. The URLs are kept by {@link DriveContentUrlResolver}, so this has no effect if its cache
+         * is disabled, and should not exceed {@link ICloudServiceConfig#getContentUrlCacheMaximumSize()}.
+         *
+         * @param prefetchDepth the number of jobs per host, or zero to resolve each URL only when its job starts.
+         * @return this builder.
+         */
+        public Builder prefetchDepth(int prefetchDepth)
+        {
+            Preconditions.checkArgument(prefetchDepth >= 0, "prefetchDepth must not be negative");
+            this.prefetchDepth = prefetchDepth;
+            return this;
+        }
+
+        /**
+         * Builds the manager.
+         *
+         * @return the manager.
+         */
+        public DownloadManager build()
+        {
+            return new DownloadManager(this);
+        }
+    }
+}
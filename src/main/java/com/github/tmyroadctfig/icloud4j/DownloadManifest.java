@@ -0,0 +1,443 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
+import com.google.gson.JsonParseException;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A record of the files downloaded into a local mirror, so that re-running the mirror only fetches files which have
+ * changed.
+ * <p>
+ * Each entry records the version of the node a file was downloaded from (the etag, size and modification date of a
+ * Drive file, or the change ID and size of a ubiquity file), the size and modification time of the local copy, and the
+ * {@link FileDigest} computed while it was written. A file is unchanged, and is skipped without any request, if the node
+ * listing still shows the same version and the local copy has not been touched since.
+ * <p>
+ * Entries are keyed by the target path, relative to the manifest's directory when the target is below it so the
+ * mirror can be moved as a whole. The manifest is held in memory; call {@link #save()} to persist it.
+ */
+public class DownloadManifest
+{
+    /**
+     * The manifest file.
+     */
+    private final Path file;
+
+    /**
+     * The directory target paths are recorded relative to.
+     */
+    private final Path baseDirectory;
+
+    /**
+     * The entries keyed by target path. Guarded by {@code this}.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Creates a new, empty manifest.
+     *
+     * @param file the manifest file.
+     */
+    private DownloadManifest(Path file)
+    {
+        this.file = file.toAbsolutePath().normalize();
+        this.baseDirectory = this.file.getParent();
+    }
+
+    /**
+     * Loads a manifest. A missing or unreadable file gives an empty manifest, so that every file is downloaded again.
+     *
+     * @param file the manifest file.
+     * @return the manifest.
+     */
+    public static DownloadManifest load(Path file)
+    {
+        DownloadManifest manifest = new DownloadManifest(file);
+
+        Snapshot snapshot;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            snapshot = JsonCodecs.gson().fromJson(reader, Snapshot.class);
+        }
+        catch (NoSuchFileException e)
+        {
+            return manifest;
+        }
+        catch (IOException | JsonParseException e)
+        {
+            // A torn or corrupt manifest only costs a full download
+            return manifest;
+        }
+
+        if (snapshot != null && snapshot.entries != null)
+        {
+            snapshot.entries.forEach((key, entry) -> {
+                if (key != null && entry != null && entry.nodeId != null)
+                {
+                    manifest.entries.put(key, entry);
+                }
+            });
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest, replacing the previous file atomically.
+     */
+    public void save()
+    {
+        Snapshot snapshot = new Snapshot();
+        synchronized (this)
+        {
+            snapshot.entries = new LinkedHashMap<>(entries);
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try
+        {
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8))
+            {
+                JsonCodecs.gson().toJson(snapshot, writer);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks whether the local copy of a Drive file is up to date, without any request.
+     *
+     * @param node   the file node, as listed by the current mirror pass.
+     * @param target the local copy.
+     * @return {@code true} if the file can be skipped.
+     */
+    public boolean isUnchanged(DriveNode node, Path target)
+    {
+        return isUnchanged(Version.of(node), target);
+    }
+
+    /**
+     * Checks whether the local copy of a ubiquity file is up to date, without any request.
+     *
+     * @param node   the file node, as listed by the current mirror pass.
+     * @param target the local copy.
+     * @return {@code true} if the file can be skipped.
+     */
+    public boolean isUnchanged(UbiquityNode node, Path target)
+    {
+        return isUnchanged(Version.of(node), target);
+    }
+
+    /**
+     * Downloads a Drive file unless the local copy is up to date, recording its digest. The manifest is not saved.
+     *
+     * @param node    the file node.
+     * @param target  the file to write.
+     * @param options the download options; digests are always computed.
+     * @return the digest of the local copy, recorded now or by an earlier download.
+     */
+    public FileDigest download(DriveNode node, Path target, DownloadOptions options)
+    {
+        Version version = Version.of(node);
+        if (!isUnchanged(version, target))
+        {
+            record(version, target, node.newDownload(options.withComputeDigests(), count -> {
+            }).downloadTo(target));
+        }
+        return getEntry(target).getDigest();
+    }
+
+    /**
+     * Downloads a ubiquity file unless the local copy is up to date, recording its digest. The manifest is not saved.
+     *
+     * @param node    the file node.
+     * @param target  the file to write.
+     * @param options the download options; digests are always computed.
+     * @return the digest of the local copy, recorded now or by an earlier download.
+     */
+    public FileDigest download(UbiquityNode node, Path target, DownloadOptions options)
+    {
+        Version version = Version.of(node);
+        if (!isUnchanged(version, target))
+        {
+            record(version, target, node.newDownload(options.withComputeDigests(), count -> {
+            }).downloadTo(target));
+        }
+        return getEntry(target).getDigest();
+    }
+
+    /**
+     * Gets the entry for a local file.
+     *
+     * @param target the local file.
+     * @return the entry, or {@code null} if the file has not been recorded.
+     */
+    @Nullable
+    public synchronized Entry getEntry(Path target)
+    {
+        return entries.get(keyFor(target));
+    }
+
+    /**
+     * Forgets a local file, so that it is downloaded again.
+     *
+     * @param target the local file.
+     */
+    public synchronized void remove(Path target)
+    {
+        entries.remove(keyFor(target));
+    }
+
+    /**
+     * Gets the number of recorded files.
+     *
+     * @return the entry count.
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Gets the manifest file.
+     *
+     * @return the path.
+     */
+    public Path getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Checks whether the local copy of a node is up to date.
+     *
+     * @param version the current version of the node.
+     * @param target  the local copy.
+     * @return {@code true} if the file can be skipped.
+     */
+    boolean isUnchanged(Version version, Path target)
+    {
+        Entry entry = getEntry(target);
+        if (entry == null || !entry.isVersion(version))
+        {
+            return false;
+        }
+
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+            return attributes.isRegularFile()
+                && attributes.size() == entry.localSize
+                && attributes.lastModifiedTime().toMillis() == entry.localModified;
+        }
+        catch (IOException e)
+        {
+            // Missing or unreadable, so download it again
+            return false;
+        }
+    }
+
+    /**
+     * Records a completed download.
+     *
+     * @param version the version of the node which was downloaded.
+     * @param target  the local copy.
+     * @param digest  the digest computed while it was written.
+     */
+    void record(Version version, Path target, FileDigest digest)
+    {
+        BasicFileAttributes attributes;
+        try
+        {
+            attributes = Files.readAttributes(target, BasicFileAttributes.class);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        Entry entry = new Entry();
+        entry.nodeId = version.nodeId;
+        entry.version = version.version;
+        entry.size = version.size;
+        entry.modified = version.modified;
+        entry.localSize = attributes.size();
+        entry.localModified = attributes.lastModifiedTime().toMillis();
+        entry.sha256 = digest.getSha256();
+        entry.crc32c = digest.getCrc32c();
+        synchronized (this)
+        {
+            entries.put(keyFor(target), entry);
+        }
+    }
+
+    /**
+     * Gets the key for a target path.
+     *
+     * @param target the local file.
+     * @return the path relative to the manifest's directory if it is below it, otherwise the absolute path.
+     */
+    private String keyFor(Path target)
+    {
+        Path absolute = target.toAbsolutePath().normalize();
+        Path key = baseDirectory != null && absolute.startsWith(baseDirectory)
+            ? baseDirectory.relativize(absolute)
+            : absolute;
+        return key.toString().replace('\\', '/');
+    }
+
+    /**
+     * The version of a node, as shown by a listing.
+     */
+    static class Version
+    {
+        final String nodeId;
+        final String version;
+        final long size;
+        final String modified;
+
+        Version(String nodeId, String version, long size, String modified)
+        {
+            this.nodeId = nodeId;
+            this.version = version;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        /**
+         * Gets the version of a Drive file from its etag, size and modification date.
+         *
+         * @param node the node.
+         * @return the version.
+         */
+        static Version of(DriveNode node)
+        {
+            return new Version(node.getId(), node.getNodeDetails().etag, node.getNodeDetails().size,
+                node.getNodeDetails().dateModified);
+        }
+
+        /**
+         * Gets the version of a ubiquity file from its change ID and size.
+         *
+         * @param node the node.
+         * @return the version.
+         */
+        static Version of(UbiquityNode node)
+        {
+            return new Version(node.getId(), node.getNodeDetails().change_id, node.getNodeDetails().size, null);
+        }
+    }
+
+    /**
+     * A recorded download.
+     */
+    public static class Entry
+    {
+        String nodeId;
+        String version;
+        long size;
+        String modified;
+        long localSize;
+        long localModified;
+        String sha256;
+        String crc32c;
+
+        Entry()
+        {
+        }
+
+        /**
+         * Gets the ID of the node the file was downloaded from.
+         *
+         * @return the node ID.
+         */
+        public String getNodeId()
+        {
+            return nodeId;
+        }
+
+        /**
+         * Gets the etag or change ID of the node when the file was downloaded.
+         *
+         * @return the version.
+         */
+        public String getVersion()
+        {
+            return version;
+        }
+
+        /**
+         * Gets the size of the node when the file was downloaded.
+         *
+         * @return the size in bytes.
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * Gets the digest computed while the file was written.
+         *
+         * @return the digest.
+         */
+        public FileDigest getDigest()
+        {
+            return new FileDigest(sha256, crc32c);
+        }
+
+        /**
+         * Checks whether this entry was recorded for the given version of a node.
+         *
+         * @param version the current version.
+         * @return {@code true} if the node is unchanged.
+         */
+        boolean isVersion(Version version)
+        {
+            return Objects.equals(nodeId, version.nodeId)
+                && Objects.equals(this.version, version.version)
+                && size == version.size
+                && Objects.equals(modified, version.modified);
+        }
+    }
+
+    /**
+     * The persisted form of a manifest.
+     */
+    private static class Snapshot
+    {
+        Map<String, Entry> entries;
+    }
+}
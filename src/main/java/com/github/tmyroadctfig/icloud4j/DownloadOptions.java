@@ -0,0 +1,307 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+
+/**
+ * Options for downloading a file to disk, see {@link DriveNode#downloadTo(java.nio.file.Path, DownloadOptions)}.
+ *
+ * <p>Files larger than the segment size are fetched as several HTTP 'Range' requests running in parallel over the
+ * pooled client. Instances are immutable; use {@link #builder()} to create one:</p>
+ *
+ * <pre>
+ * DownloadOptions options = DownloadOptions.builder()
+ *     .segmentSize(16 * 1024 * 1024)
+ *     .parallelism(8)
+ *     .build();
+ * </pre>
+ */
+public class DownloadOptions
+{
+    /**
+     * The default size of each ranged request.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The default number of ranged requests in flight for a single file.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * The default options.
+     */
+    private static final DownloadOptions DEFAULTS = builder().build();
+
+    /**
+     * The size of each ranged request.
+     */
+    private final long segmentSize;
+
+    /**
+     * The number of ranged requests in flight for a single file.
+     */
+    private final int parallelism;
+
+    /**
+     * The executor running the ranged requests, or {@code null} to use a temporary pool per download.
+     */
+    private final Executor executor;
+
+    /**
+     * Whether progress is persisted in a {@link DownloadCheckpoint} so that a failed download can be resumed.
+     */
+    private final boolean resumable;
+
+    /**
+     * Whether a {@link FileDigest} is computed while the file is written.
+     */
+    private final boolean computeDigests;
+
+    /**
+     * Receives the progress of each download, or {@code null} if none.
+     */
+    private final TransferListener transferListener;
+
+    /**
+     * Creates new options from the builder.
+     *
+     * @param builder the builder.
+     */
+    private DownloadOptions(Builder builder)
+    {
+        this.segmentSize = builder.segmentSize;
+        this.parallelism = builder.parallelism;
+        this.executor = builder.executor;
+        this.resumable = builder.resumable;
+        this.computeDigests = builder.computeDigests;
+        this.transferListener = builder.transferListener;
+    }
+
+    /**
+     * Gets the default options.
+     *
+     * @return the defaults.
+     */
+    public static DownloadOptions defaults()
+    {
+        return DEFAULTS;
+    }
+
+    /**
+     * Creates a new builder populated with the default values.
+     *
+     * @return the builder.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Gets the size of each ranged request.
+     *
+     * @return the segment size in bytes.
+     */
+    public long getSegmentSize()
+    {
+        return segmentSize;
+    }
+
+    /**
+     * Gets the number of ranged requests in flight for a single file.
+     *
+     * @return the parallelism.
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Gets the executor running the ranged requests.
+     *
+     * @return the executor, or {@code null} to use a temporary pool per download.
+     */
+    @Nullable
+    public Executor getExecutor()
+    {
+        return executor;
+    }
+
+    /**
+     * Checks whether progress is persisted so that a failed download can be resumed.
+     *
+     * @return {@code true} if the download is resumable.
+     */
+    public boolean isResumable()
+    {
+        return resumable;
+    }
+
+    /**
+     * Checks whether a {@link FileDigest} is computed while the file is written.
+     *
+     * @return {@code true} if digests are computed.
+     */
+    public boolean isComputeDigests()
+    {
+        return computeDigests;
+    }
+
+    /**
+     * Gets the listener receiving the progress of each download, in addition to those added to the
+     * {@link ICloudService}.
+     *
+     * @return the listener, or {@code null} if none.
+     */
+    @Nullable
+    public TransferListener getTransferListener()
+    {
+        return transferListener;
+    }
+
+    /**
+     * Gets a copy of these options which computes digests.
+     *
+     * @return the options.
+     */
+    DownloadOptions withComputeDigests()
+    {
+        if (computeDigests)
+        {
+            return this;
+        }
+
+        Builder builder = builder().segmentSize(segmentSize).parallelism(parallelism).executor(executor)
+            .resumable(resumable).transferListener(transferListener);
+        builder.computeDigests = true;
+        return builder.build();
+    }
+
+    /**
+     * A builder for {@link DownloadOptions}.
+     */
+    public static class Builder
+    {
+        private long segmentSize = DEFAULT_SEGMENT_SIZE;
+        private int parallelism = DEFAULT_PARALLELISM;
+        private Executor executor;
+        private boolean resumable;
+        private boolean computeDigests;
+        private TransferListener transferListener;
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Sets the size of each ranged request. Files no larger than this are fetched with a single request.
+         *
+         * @param segmentSize the segment size in bytes.
+         * @return this builder.
+         */
+        public Builder segmentSize(long segmentSize)
+        {
+            Preconditions.checkArgument(segmentSize > 0, "segmentSize must be positive");
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of ranged requests in flight for a single file. This should not exceed the connection limit
+         * for the docs host, see {@link ICloudServiceConfig.Builder#maxConnectionsForService(String, int)}.
+         *
+         * @param parallelism the number of requests; one fetches each missing part of the file with a single request.
+         * @return this builder.
+         */
+        public Builder parallelism(int parallelism)
+        {
+            Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the executor running the ranged requests. The requests block, so the executor should have at least
+         * {@link #parallelism(int)} threads to spare.
+         *
+         * @param executor the executor, or {@code null} to use a temporary pool per download.
+         * @return this builder.
+         */
+        public Builder executor(@Nullable Executor executor)
+        {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Makes downloads resumable. Progress is persisted in a {@link DownloadCheckpoint} next to the target file,
+         * and a download that finds a checkpoint continues from it, after checking that the node's etag and size have
+         * not changed. The checkpoint is deleted once the download completes.
+         *
+         * @param resumable whether downloads are resumable.
+         * @return this builder.
+         */
+        public Builder resumable(boolean resumable)
+        {
+            this.resumable = resumable;
+            return this;
+        }
+
+        /**
+         * Computes the SHA-256 and CRC32C of each file as it is written. A file fetched with a single request is hashed
+         * straight from the download buffers. Segments fetched in parallel are hashed as they are written while they
+         * follow on from the bytes already hashed; the rest are read back from the page cache once the bytes before
+         * them are complete.
+         *
+         * @param computeDigests whether digests are computed.
+         * @return this builder.
+         */
+        public Builder computeDigests(boolean computeDigests)
+        {
+            this.computeDigests = computeDigests;
+            return this;
+        }
+
+        /**
+         * Sets a listener to receive the progress of each download made with these options. Options shared by a
+         * {@link DownloadManager} pass every job's progress to the same listener.
+         *
+         * @param transferListener the listener, or {@code null} for none.
+         * @return this builder.
+         */
+        public Builder transferListener(@Nullable TransferListener transferListener)
+        {
+            this.transferListener = transferListener;
+            return this;
+        }
+
+        /**
+         * Builds the options.
+         *
+         * @return the options.
+         */
+        public DownloadOptions build()
+        {
+            return new DownloadOptions(this);
+        }
+    }
+}
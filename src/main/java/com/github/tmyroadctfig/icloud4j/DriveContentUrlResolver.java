@@ -0,0 +1,372 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.DriveDataToken;
+import com.github.tmyroadctfig.icloud4j.json.DriveDownloadResponse;
+import com.github.tmyroadctfig.icloud4j.util.ICloudUtils;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Iterables;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.core5.net.URIBuilder;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resolves the content URLs of iCloud Drive files ahead of their downloads.
+ * <p>
+ * Each download needs a 'download/by_id' lookup before the content request. {@link #prefetch(Collection)} starts the
+ * lookups for files that will be downloaded soon, at most {@link ICloudServiceConfig#getContentUrlLookupConcurrency()}
+ * at a time, and keeps the results for {@link ICloudServiceConfig#getContentUrlCacheExpiry()} so the download can start
+ * straight away. Entries are keyed by the file's etag, so a changed file is looked up again, and each entry is used by
+ * one download only, so a retried download always gets a fresh URL.
+ */
+public class DriveContentUrlResolver
+{
+    /**
+     * The iCloud service.
+     */
+    private final ICloudService iCloudService;
+
+    /**
+     * The drive service.
+     */
+    private final DriveService driveService;
+
+    /**
+     * The resolved and in-flight lookups keyed by drivewsid and etag, or {@code null} if the cache is disabled.
+     */
+    private final Cache<String, CompletableFuture<DriveDataToken>> cache;
+
+    /**
+     * The maximum number of lookups in flight.
+     */
+    private final int maxInFlight;
+
+    /**
+     * The lookups waiting for a free slot, guarded by {@code this}.
+     */
+    private final Deque<Runnable> queued = new ArrayDeque<>();
+
+    /**
+     * The number of lookups in flight, guarded by {@code this}.
+     */
+    private int inFlight;
+
+    /**
+     * The number of resolutions answered from the cache.
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * The number of resolutions that needed a lookup.
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * The number of entries evicted by size or age.
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Creates a new resolver.
+     *
+     * @param iCloudService the iCloud service.
+     * @param driveService  the drive service.
+     */
+    DriveContentUrlResolver(ICloudService iCloudService, DriveService driveService)
+    {
+        this.iCloudService = iCloudService;
+        this.driveService = driveService;
+
+        ICloudServiceConfig config = iCloudService.getConfig();
+        this.maxInFlight = config.getContentUrlLookupConcurrency();
+        if (config.getContentUrlCacheMaximumSize() > 0)
+        {
+            cache = CacheBuilder.newBuilder()
+                .maximumSize(config.getContentUrlCacheMaximumSize())
+                .expireAfterWrite(config.getContentUrlCacheExpiry().toMilliseconds(), TimeUnit.MILLISECONDS)
+                .<String, CompletableFuture<DriveDataToken>>removalListener(notification -> {
+                    if (notification.wasEvicted())
+                    {
+                        evictionCount.increment();
+                    }
+                })
+                .build();
+        } else
+        {
+            cache = null;
+        }
+    }
+
+    /**
+     * Checks whether resolved URLs are kept, see {@link ICloudServiceConfig.Builder#contentUrlCache}.
+     *
+     * @return {@code true} if URLs are cached.
+     */
+    public boolean isEnabled()
+    {
+        return cache != null;
+    }
+
+    /**
+     * Resolves the content URL of a file, waiting for the lookup if needed.
+     *
+     * @param node the file node.
+     * @return the data token holding the URL.
+     */
+    public DriveDataToken resolve(DriveNode node)
+    {
+        return ICloudUtils.join(resolveAsync(node));
+    }
+
+    /**
+     * Resolves the content URL of a file without blocking the calling thread. The result is cached, and a lookup
+     * already in flight for the same file is shared.
+     *
+     * @param node the file node.
+     * @return a future for the data token holding the URL.
+     */
+    public CompletableFuture<DriveDataToken> resolveAsync(DriveNode node)
+    {
+        if (cache == null)
+        {
+            missCount.increment();
+            return lookup(node);
+        }
+
+        String key = getKey(node);
+        CompletableFuture<DriveDataToken> lookup = new CompletableFuture<>();
+        CompletableFuture<DriveDataToken> existing = cache.asMap().putIfAbsent(key, lookup);
+        if (existing != null)
+        {
+            hitCount.increment();
+            return existing;
+        }
+
+        missCount.increment();
+        lookup(node).whenComplete((token, failure) -> {
+            if (failure != null)
+            {
+                // Never keep a failure, so the next resolution tries again
+                cache.asMap().remove(key, lookup);
+                lookup.completeExceptionally(failure);
+            } else
+            {
+                lookup.complete(token);
+            }
+        });
+        return lookup;
+    }
+
+    /**
+     * Starts resolving the content URLs of files that are about to be downloaded. Folders and files already resolved
+     * or in flight are skipped. Nothing is done if the cache is disabled.
+     *
+     * @param nodes the nodes.
+     */
+    public void prefetch(Collection<DriveNode> nodes)
+    {
+        if (cache == null)
+        {
+            return;
+        }
+
+        for (DriveNode node : nodes)
+        {
+            if (!node.isFolder() && cache.getIfPresent(getKey(node)) == null)
+            {
+                resolveAsync(node);
+            }
+        }
+    }
+
+    /**
+     * Drops the resolved URL of a file.
+     *
+     * @param node the file node.
+     */
+    public void invalidate(DriveNode node)
+    {
+        if (cache != null)
+        {
+            cache.invalidate(getKey(node));
+        }
+    }
+
+    /**
+     * Drops all resolved URLs.
+     */
+    public void invalidateAll()
+    {
+        if (cache != null)
+        {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Gets the number of resolved and in-flight URLs.
+     *
+     * @return the approximate number of entries.
+     */
+    public long size()
+    {
+        return cache != null ? cache.size() : 0;
+    }
+
+    /**
+     * Gets a snapshot of the cache statistics. Only the hit, miss and eviction counts are populated.
+     *
+     * @return the statistics.
+     */
+    public CacheStats getStats()
+    {
+        return new CacheStats(hitCount.sum(), missCount.sum(), 0, 0, 0, evictionCount.sum());
+    }
+
+    /**
+     * Resolves the content URL of a file for a download, removing it from the cache so that it is only used once.
+     *
+     * @param node the file node.
+     * @return the URL.
+     */
+    String take(DriveNode node)
+    {
+        CompletableFuture<DriveDataToken> resolved = null;
+        if (cache != null)
+        {
+            resolved = cache.asMap().remove(getKey(node));
+        }
+        if (resolved != null)
+        {
+            hitCount.increment();
+        } else
+        {
+            missCount.increment();
+            resolved = lookup(node);
+        }
+        return ICloudUtils.join(resolved).url;
+    }
+
+    /**
+     * Queues a 'download/by_id' request, sending it once fewer than the maximum number of lookups are in flight.
+     *
+     * @param node the file node.
+     * @return a future for the data token.
+     */
+    private CompletableFuture<DriveDataToken> lookup(DriveNode node)
+    {
+        CompletableFuture<DriveDataToken> result = new CompletableFuture<>();
+        Runnable send = () -> sendLookup(node).whenComplete((token, failure) -> {
+            onLookupFinished();
+            if (failure != null)
+            {
+                result.completeExceptionally(failure);
+            } else
+            {
+                result.complete(token);
+            }
+        });
+
+        synchronized (this)
+        {
+            if (inFlight >= maxInFlight)
+            {
+                queued.add(send);
+                return result;
+            }
+            inFlight++;
+        }
+        send.run();
+        return result;
+    }
+
+    /**
+     * Frees a lookup slot, handing it to the next queued lookup if there is one.
+     */
+    private void onLookupFinished()
+    {
+        Runnable next;
+        synchronized (this)
+        {
+            next = queued.poll();
+            if (next == null)
+            {
+                inFlight--;
+                return;
+            }
+        }
+        iCloudService.getConfig().getAsyncExecutor().execute(next);
+    }
+
+    /**
+     * Sends a 'download/by_id' request.
+     *
+     * @param node the file node.
+     * @return a future for the data token.
+     */
+    private CompletableFuture<DriveDataToken> sendLookup(DriveNode node)
+    {
+        SimpleHttpRequest request;
+        try
+        {
+            URIBuilder uriBuilder = new URIBuilder(String.format("%s/ws/%s/download/by_id",
+                driveService.getDocsServiceUrl(), node.getNodeDetails().zone));
+            iCloudService.populateUriParameters(uriBuilder);
+            uriBuilder.addParameter("clientMasteringNumber", iCloudService.getClientBuildNumber());
+            uriBuilder.addParameter("document_id", Iterables.getLast(Splitter.on(":").splitToList(node.getId())));
+            uriBuilder.addParameter("token", iCloudService.getSessionTokens().getDownloadToken());
+
+            request = SimpleRequestBuilder.get(uriBuilder.build()).build();
+            iCloudService.populateRequestHeadersParameters(request);
+        }
+        catch (Exception e)
+        {
+            return ICloudUtils.failedFuture(e);
+        }
+
+        return ICloudUtils.parseJsonResponseAsync(iCloudService.getAsyncHttpClient(), request,
+                DriveDownloadResponse.class, iCloudService.getConfig().getAsyncExecutor())
+            .thenApply(response -> {
+                if (response == null || response.data_token == null || response.data_token.url == null)
+                {
+                    throw new RuntimeException("No content URL in iCloud Drive response for " + node.getId());
+                }
+                return response.data_token;
+            });
+    }
+
+    /**
+     * Gets the cache key for a file, so that a new version of the file is never given an old URL.
+     *
+     * @param node the file node.
+     * @return the key.
+     */
+    private static String getKey(DriveNode node)
+    {
+        return node.getId() + "@" + node.getNodeDetails().etag;
+    }
+}
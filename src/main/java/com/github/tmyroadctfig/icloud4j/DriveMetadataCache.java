@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-memory cache of iCloud Drive folder listings, keyed by drivewsid.
+ * <p>
+ * Entries are evicted by size and by age. They are also dropped when a newer listing of the parent folder reports a
+ * different etag or change date for the folder.
+ */
+public class DriveMetadataCache
+{
+    /**
+     * The cached folder details, or {@code null} if the cache is disabled.
+     */
+    private final Cache<String, DriveNodeDetails> cache;
+
+    /**
+     * The number of lookups answered from the cache.
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * The number of lookups that missed.
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * The number of entries evicted by size or age.
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param config the configuration holding the cache size and expiry.
+     */
+    DriveMetadataCache(ICloudServiceConfig config)
+    {
+        if (config.getDriveCacheMaximumSize() > 0)
+        {
+            cache = CacheBuilder.newBuilder()
+                .maximumSize(config.getDriveCacheMaximumSize())
+                .expireAfterWrite(config.getDriveCacheExpiry().toMilliseconds(), TimeUnit.MILLISECONDS)
+                .<String, DriveNodeDetails>removalListener(notification -> {
+                    if (notification.wasEvicted())
+                    {
+                        evictionCount.increment();
+                    }
+                })
+                .build();
+        } else
+        {
+            cache = null;
+        }
+    }
+
+    /**
+     * Checks whether the cache is enabled, see {@link ICloudServiceConfig.Builder#driveCache}.
+     *
+     * @return {@code true} if listings are cached.
+     */
+    public boolean isEnabled()
+    {
+        return cache != null;
+    }
+
+    /**
+     * Gets a cached folder listing.
+     *
+     * @param nodeId the drivewsid of the folder.
+     * @return the cached details, or {@code null} if there is no valid entry.
+     */
+    @Nullable
+    DriveNodeDetails get(String nodeId)
+    {
+        if (cache == null)
+        {
+            return null;
+        }
+
+        DriveNodeDetails cached = cache.getIfPresent(nodeId);
+        (cached != null ? hitCount : missCount).increment();
+        return cached;
+    }
+
+    /**
+     * Caches a freshly fetched folder listing, and drops any cached sub-folders that the listing shows have changed.
+     *
+     * @param details the folder details.
+     */
+    void put(DriveNodeDetails details)
+    {
+        if (cache == null || details.drivewsid == null || details.items == null)
+        {
+            return;
+        }
+
+        cache.put(details.drivewsid, details);
+        for (DriveNodeDetails item : details.items)
+        {
+            if (item != null && item.drivewsid != null)
+            {
+                DriveNodeDetails cached = cache.getIfPresent(item.drivewsid);
+                if (cached != null && !isSameVersion(cached, item))
+                {
+                    cache.invalidate(item.drivewsid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the cached listing of a folder.
+     *
+     * @param nodeId the drivewsid of the folder.
+     */
+    public void invalidate(String nodeId)
+    {
+        if (cache != null)
+        {
+            cache.invalidate(nodeId);
+        }
+    }
+
+    /**
+     * Drops all cached listings.
+     */
+    public void invalidateAll()
+    {
+        if (cache != null)
+        {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Gets the number of cached folders.
+     *
+     * @return the approximate number of entries.
+     */
+    public long size()
+    {
+        return cache != null ? cache.size() : 0;
+    }
+
+    /**
+     * Gets a snapshot of the cache statistics. Only the hit, miss and eviction counts are populated.
+     *
+     * @return the statistics.
+     */
+    public CacheStats getStats()
+    {
+        return new CacheStats(hitCount.sum(), missCount.sum(), 0, 0, 0, evictionCount.sum());
+    }
+
+    /**
+     * Checks whether two sets of details describe the same version of a folder.
+     *
+     * @param cached  the cached details.
+     * @param current the current details.
+     * @return {@code true} if the etag and change date match.
+     */
+    private static boolean isSameVersion(DriveNodeDetails cached, DriveNodeDetails current)
+    {
+        return Objects.equals(cached.etag, current.etag) && Objects.equals(cached.dateChanged, current.dateChanged);
+    }
+}
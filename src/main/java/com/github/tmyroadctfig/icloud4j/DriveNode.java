@@ -16,21 +16,26 @@
 package com.github.tmyroadctfig.icloud4j;
 
 import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
-import com.github.tmyroadctfig.icloud4j.util.JsonToMapResponseHandler;
-import com.google.common.base.Splitter;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
+import com.github.tmyroadctfig.icloud4j.util.ICloudResponseStream;
 import org.apache.commons.io.IOUtils;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
-import org.apache.hc.client5.http.cookie.Cookie;
-import org.apache.hc.core5.net.URIBuilder;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.function.LongConsumer;
 
 /**
  * A node in the iCloud Drive service.
@@ -59,11 +64,6 @@ public class DriveNode
      */
     private final DriveNodeDetails nodeDetails;
 
-    /**
-     * The download token.
-     */
-    private final String downloadUrlToken;
-
     /**
      * Creates a new node.
      *
@@ -78,26 +78,6 @@ public class DriveNode
         this.driveService = driveService;
         this.id = id;
         this.nodeDetails = nodeDetails;
-
-        String rawDownloadUrlToken = iCloudService
-            .getCookieStore()
-            .getCookies()
-            .stream()
-            .filter(cookie -> "X-APPLE-WEBAUTH-VALIDATE".equals(cookie.getName()))
-            .map(Cookie::getValue)
-            .findFirst()
-            .orElse("");
-
-        // E.g. "v=2:t=AQAAAABXzO24CYflBW2JwysxyUEL9KxRNoEX1Qk~"
-        Optional<String> url = Lists.newArrayList(Splitter.on(":").split(rawDownloadUrlToken)).stream().filter(str -> str.contains("t=")).findFirst();
-        if (url.isPresent())
-        {
-            String urlString = url.get();
-            downloadUrlToken = urlString.substring(urlString.indexOf("t=") + 2);
-        } else
-        {
-            downloadUrlToken = "";
-        }
     }
 
     /**
@@ -117,49 +97,218 @@ public class DriveNode
      */
     public void downloadFileData(OutputStream outputStream)
     {
-        try
-        {
-            // Build the content URL lookup URI
-            URIBuilder uriBuilder = new URIBuilder(
-                String.format("%s/ws/%s/download/by_id", driveService.getDocsServiceUrl(), nodeDetails.zone)
-            );
-            iCloudService.populateUriParameters(uriBuilder);
-            uriBuilder.addParameter("clientMasteringNumber", iCloudService.getClientBuildNumber());
-            uriBuilder.addParameter("document_id", Iterables.getLast(Splitter.on(":").splitToList(id)));
-            uriBuilder.addParameter("token", downloadUrlToken);
-            URI contentUrlLookupUrl = uriBuilder.build();
-
-            // Get the download URL for the item
-            HttpGet contentUrlGetRequest = new HttpGet(contentUrlLookupUrl);
-            iCloudService.populateRequestHeadersParameters(contentUrlGetRequest);
-
-            Map<String, Object> result = iCloudService.getHttpClient().execute(
-                contentUrlGetRequest,
-                new JsonToMapResponseHandler()
-            );
-            Map<String, Object> dataTokenMap = (Map<String, Object>) result.get("data_token");
-
-            String contentUrl = (String) dataTokenMap.get("url");
-
-            // Download the file
-            HttpGet contentRequest = new HttpGet(contentUrl);
-            iCloudService.populateRequestHeadersParameters(contentRequest);
-
-            iCloudService.getHttpClient().execute(contentRequest, response -> {
-                try (InputStream inputStream = response.getEntity().getContent())
+        downloadFileData(outputStream, null);
+    }
+
+    /**
+     * Downloads the file data for the item into the given output stream, reporting progress to a listener as well as
+     * to those added to the {@link ICloudService}.
+     *
+     * @param outputStream the output stream to write to, which is not closed.
+     * @param listener     the listener for this download, or {@code null} for none.
+     */
+    public void downloadFileData(OutputStream outputStream, @Nullable TransferListener listener)
+    {
+        TransferTracker.track(iCloudService, listener, TransferProgress.Direction.DOWNLOAD, id, nodeDetails.size,
+            tracker -> {
+                try
+                {
+                    // Download the file
+                    HttpGet contentRequest = new HttpGet(getContentUrl());
+                    iCloudService.populateRequestHeadersParameters(contentRequest);
+
+                    return iCloudService.getHttpClient().execute(contentRequest, response -> {
+                        try (InputStream inputStream = response.getEntity().getContent())
+                        {
+                            return IOUtils.copyLarge(inputStream, tracker.wrap(outputStream), new byte[0x10000]);
+                        }
+                    });
+                }
+                catch (Exception e)
                 {
-                    IOUtils.copyLarge(inputStream, outputStream, new byte[0x10000]);
+                    throw new RuntimeException(e);
                 }
-                return null; // HttpClientResponseHandler requires a return type
             });
+    }
+
+    /**
+     * Opens the file data for the item as a stream, which holds its connection until closed. This suits piping the
+     * data into another sink without a temporary file.
+     *
+     * @return the stream, which the caller must close.
+     * @throws ICloudException if iCloud rejects the request.
+     */
+    public ICloudResponseStream openStream()
+    {
+        HttpGet contentRequest = new HttpGet(getContentUrl());
+        iCloudService.populateRequestHeadersParameters(contentRequest);
 
+        try
+        {
+            return ICloudResponseStream.open(iCloudService.getHttpClient(), contentRequest);
         }
-        catch (Exception e)
+        catch (IOException e)
         {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
     }
 
+    /**
+     * Downloads the file data for the item into a channel with a single request. The body is written from a shared
+     * pool of direct buffers, so unlike {@link #downloadFileData(OutputStream)} no buffer is allocated per call.
+     *
+     * @param target the channel, written from its current position and not closed.
+     * @return the number of bytes written.
+     */
+    public long downloadTo(WritableByteChannel target)
+    {
+        return SegmentedDownload.transfer(iCloudService, id, getContentUrl(), nodeDetails.size, target);
+    }
+
+    /**
+     * Downloads the file data for the item to disk with the default {@link DownloadOptions}, replacing any existing
+     * file.
+     *
+     * @param target the file to write.
+     */
+    public void downloadTo(Path target)
+    {
+        downloadTo(target, DownloadOptions.defaults());
+    }
+
+    /**
+     * Downloads the file data for the item to disk, replacing any existing file. Files larger than
+     * {@link DownloadOptions#getSegmentSize()} are fetched as parallel 'Range' requests, falling back to a single
+     * request if the server does not honour ranges. A resumable download re-resolves the content URL and continues
+     * from its checkpoint, so the node should be re-fetched before retrying to pick up any change to its etag.
+     *
+     * @param target  the file to write.
+     * @param options the download options.
+     * @throws IllegalStateException if a resumable download finds a checkpoint for a different version of the node.
+     */
+    public void downloadTo(Path target, DownloadOptions options)
+    {
+        newDownload(options, count -> {
+        }).downloadTo(target);
+    }
+
+    /**
+     * Uploads a file into this folder, streaming it from disk. The file keeps its name and modification time.
+     *
+     * @param file the file to upload.
+     * @return the details of the new file.
+     * @throws IllegalStateException if this node is not a folder.
+     * @throws ICloudException       if iCloud rejects the upload.
+     */
+    public DriveNodeDetails upload(Path file)
+    {
+        checkFolder();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            return driveService.upload(this, file.getFileName().toString(), channel, channel.size(),
+                Files.getLastModifiedTime(file).toMillis());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Uploads a file into this folder from a stream, which is read in chunks rather than held in memory.
+     *
+     * @param name    the file name.
+     * @param content the file content, read until the end but not closed.
+     * @param size    the content length in bytes, or -1 if unknown, in which case the content is sent chunked.
+     * @return the details of the new file.
+     * @throws IllegalStateException if this node is not a folder.
+     * @throws ICloudException       if iCloud rejects the upload.
+     */
+    public DriveNodeDetails upload(String name, InputStream content, long size)
+    {
+        return upload(name, Channels.newChannel(content), size);
+    }
+
+    /**
+     * Uploads a file into this folder from a channel, which is read through a pooled direct buffer rather than held in
+     * memory.
+     *
+     * @param name    the file name.
+     * @param content the file content, read until the end but not closed.
+     * @param size    the content length in bytes, or -1 if unknown, in which case the content is sent chunked.
+     * @return the details of the new file.
+     * @throws IllegalStateException if this node is not a folder.
+     * @throws ICloudException       if iCloud rejects the upload.
+     */
+    public DriveNodeDetails upload(String name, ReadableByteChannel content, long size)
+    {
+        checkFolder();
+        return driveService.upload(this, name, content, size, System.currentTimeMillis());
+    }
+
+    /**
+     * Checks that files can be uploaded into this node.
+     *
+     * @throws IllegalStateException if this node is not a folder.
+     */
+    private void checkFolder()
+    {
+        if (!isFolder())
+        {
+            throw new IllegalStateException("Can't upload into " + this + ", which is not a folder");
+        }
+    }
+
+    /**
+     * Resolves the file URL and prepares a download of the item.
+     *
+     * @param options   the download options.
+     * @param onWritten called with the number of bytes after each write to the file.
+     * @return the download.
+     */
+    SegmentedDownload newDownload(DownloadOptions options, LongConsumer onWritten)
+    {
+        return new SegmentedDownload(iCloudService, id, nodeDetails.etag, getContentUrl(), nodeDetails.size, options, onWritten);
+    }
+
+    /**
+     * Gets the host serving downloads of this item, used to apply per-host limits.
+     *
+     * @return the host name.
+     */
+    String getDownloadHost()
+    {
+        return URI.create(driveService.getDocsServiceUrl()).getHost();
+    }
+
+    /**
+     * Starts resolving the content URL for the item ahead of its download.
+     */
+    void prefetchContentUrl()
+    {
+        driveService.getContentUrlResolver().prefetch(Collections.singleton(this));
+    }
+
+    /**
+     * Gets the content URL for the item, using a prefetched one if available.
+     *
+     * @return the URL.
+     */
+    private String getContentUrl()
+    {
+        return driveService.getContentUrlResolver().take(this);
+    }
+
+    /**
+     * Gets the node ID.
+     *
+     * @return the drive webservice ID.
+     */
+    public String getId()
+    {
+        return id;
+    }
 
     /**
      * Gets the type.
@@ -181,6 +330,16 @@ public class DriveNode
         return nodeDetails;
     }
 
+    /**
+     * Checks whether this node can have children, i.e. it is a folder or an app library.
+     *
+     * @return {@code true} if the node is a container.
+     */
+    public boolean isFolder()
+    {
+        return "FOLDER".equals(nodeDetails.type) || "APP_LIBRARY".equals(nodeDetails.type);
+    }
+
     @Override
     public String toString()
     {
@@ -16,14 +16,26 @@
 package com.github.tmyroadctfig.icloud4j;
 
 import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
 import com.github.tmyroadctfig.icloud4j.util.ICloudUtils;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -37,6 +49,21 @@ public class DriveService
     private final String serviceRoot;
     private final String docsServiceRoot;
 
+    /**
+     * The cache of folder listings.
+     */
+    private final DriveMetadataCache metadataCache;
+
+    /**
+     * Resolves and caches file content URLs.
+     */
+    private final DriveContentUrlResolver contentUrlResolver;
+
+    /**
+     * Adds uploaded files to folders.
+     */
+    private final DriveUpload upload;
+
     public DriveService(ICloudService iCloudService)
     {
         this.iCloudService = iCloudService;
@@ -46,6 +73,10 @@ public class DriveService
 
         Map<String, Object> docsSettings = (Map<String, Object>) iCloudService.getWebServicesMap().get("docws");
         docsServiceRoot = (String) docsSettings.get("url");
+
+        metadataCache = new DriveMetadataCache(iCloudService.getConfig());
+        contentUrlResolver = new DriveContentUrlResolver(iCloudService, this);
+        upload = new DriveUpload(iCloudService, this);
     }
 
     public DriveNode getRoot()
@@ -56,20 +87,147 @@ public class DriveService
 
     public DriveNodeDetails getNodeDetails(String nodeId)
     {
-        HttpPost post = new HttpPost(serviceRoot + "/retrieveItemDetailsInFolders");
-        iCloudService.populateRequestHeadersParameters(post);
-        post.addHeader("clientMasteringNumber", iCloudService.getClientBuildNumber());
-        post.setEntity(new StringEntity(
-            String.format("[{\"drivewsid\":\"%s\",\"partialData\":false}]", nodeId),
-            ContentType.APPLICATION_JSON
-        ));
+        DriveNodeDetails cached = metadataCache.get(nodeId);
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        String requestJson = getNodeDetailsRequestJson(Collections.singletonList(nodeId));
+        DriveNodeDetails[] detailsArray = iCloudService.readJson("retrieveItemDetailsInFolders", () -> {
+            HttpPost post = new HttpPost(serviceRoot + "/retrieveItemDetailsInFolders");
+            iCloudService.populateRequestHeadersParameters(post);
+            post.addHeader("clientMasteringNumber", iCloudService.getClientBuildNumber());
+            post.setEntity(new StringEntity(requestJson, ContentType.APPLICATION_JSON));
+            return post;
+        }, DriveNodeDetails[].class);
+
+        DriveNodeDetails details = firstNodeDetails(detailsArray);
+        if (isFound(details))
+        {
+            metadataCache.put(details);
+        }
+        return details;
+    }
+
+    /**
+     * Gets the details for a node without blocking the calling thread.
+     *
+     * @param nodeId the drive webservice ID of the node.
+     * @return a future for the node details.
+     */
+    public CompletableFuture<DriveNodeDetails> getNodeDetailsAsync(String nodeId)
+    {
+        DriveNodeDetails cached = metadataCache.get(nodeId);
+        if (cached != null)
+        {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return retrieveItemDetailsAsync(Collections.singletonList(nodeId))
+            .thenApply(detailsArray -> {
+                DriveNodeDetails details = firstNodeDetails(detailsArray);
+                if (isFound(details))
+                {
+                    metadataCache.put(details);
+                }
+                return details;
+            });
+    }
+
+    /**
+     * Gets the details for several nodes. The IDs are requested in batches of at most
+     * {@link ICloudServiceConfig#getDriveBatchSize()}, and the batches are sent concurrently. The nodes are always
+     * fetched from iCloud, and the results refresh the metadata cache.
+     *
+     * @param nodeIds the drive webservice IDs of the nodes.
+     * @return the node details keyed by drivewsid, in the order requested. IDs that iCloud does not recognise are left
+     * out.
+     */
+    public Map<String, DriveNodeDetails> getNodeDetails(Collection<String> nodeIds)
+    {
+        return ICloudUtils.join(getNodeDetailsAsync(nodeIds));
+    }
+
+    /**
+     * Gets the details for several nodes without blocking the calling thread. See
+     * {@link #getNodeDetails(Collection)}.
+     *
+     * @param nodeIds the drive webservice IDs of the nodes.
+     * @return a future for the node details keyed by drivewsid.
+     */
+    public CompletableFuture<Map<String, DriveNodeDetails>> getNodeDetailsAsync(Collection<String> nodeIds)
+    {
+        List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(nodeIds));
+        List<CompletableFuture<DriveNodeDetails[]>> batches = Lists
+            .partition(uniqueIds, iCloudService.getConfig().getDriveBatchSize())
+            .stream()
+            .map(this::retrieveItemDetailsAsync)
+            .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> {
+                Map<String, DriveNodeDetails> detailsById = new HashMap<>();
+                for (CompletableFuture<DriveNodeDetails[]> batch : batches)
+                {
+                    DriveNodeDetails[] detailsArray = batch.join();
+                    if (detailsArray != null)
+                    {
+                        for (DriveNodeDetails details : detailsArray)
+                        {
+                            if (details != null && details.drivewsid != null && isFound(details))
+                            {
+                                metadataCache.put(details);
+                                detailsById.put(details.drivewsid, details);
+                            }
+                        }
+                    }
+                }
+
+                Map<String, DriveNodeDetails> result = new LinkedHashMap<>();
+                for (String nodeId : uniqueIds)
+                {
+                    DriveNodeDetails details = detailsById.get(nodeId);
+                    if (details != null)
+                    {
+                        result.put(nodeId, details);
+                    }
+                }
+                return result;
+            });
+    }
+
+    /**
+     * Sends a single 'retrieveItemDetailsInFolders' request, retried under the configured {@link RetryPolicy}.
+     *
+     * @param nodeIds the drive webservice IDs of the nodes.
+     * @return a future for the response.
+     */
+    private CompletableFuture<DriveNodeDetails[]> retrieveItemDetailsAsync(List<String> nodeIds)
+    {
+        String requestJson = getNodeDetailsRequestJson(nodeIds);
+        return iCloudService.readJsonAsync("retrieveItemDetailsInFolders", () -> {
+            SimpleHttpRequest post = SimpleRequestBuilder.post(serviceRoot + "/retrieveItemDetailsInFolders")
+                .setBody(requestJson, ContentType.APPLICATION_JSON)
+                .build();
+            iCloudService.populateRequestHeadersParameters(post);
+            post.addHeader("clientMasteringNumber", iCloudService.getClientBuildNumber());
+            return post;
+        }, DriveNodeDetails[].class);
+    }
 
-        DriveNodeDetails[] detailsArray = ICloudUtils.parseJsonResponse(
-            iCloudService.getHttpClient(),
-            post,
-            DriveNodeDetails[].class
-        );
+    private static String getNodeDetailsRequestJson(List<String> nodeIds)
+    {
+        List<Map<String, Object>> request = new ArrayList<>(nodeIds.size());
+        for (String nodeId : nodeIds)
+        {
+            request.add(ImmutableMap.of("drivewsid", nodeId, "partialData", false));
+        }
+        return JsonCodecs.gson().toJson(request);
+    }
 
+    private static DriveNodeDetails firstNodeDetails(DriveNodeDetails[] detailsArray)
+    {
         if (detailsArray != null && detailsArray.length > 0)
         {
             return detailsArray[0];
@@ -79,9 +237,59 @@ public class DriveService
         }
     }
 
+    /**
+     * Checks whether iCloud found a requested node.
+     *
+     * @param details the details returned for the node.
+     * @return {@code false} if iCloud reported the ID as invalid or missing.
+     */
+    private static boolean isFound(DriveNodeDetails details)
+    {
+        return details.status == null || "OK".equals(details.status);
+    }
+
     public List<DriveNode> getChildren(String parentId)
     {
         DriveNodeDetails nodeDetails = getNodeDetails(parentId);
+        return toChildNodes(nodeDetails);
+    }
+
+    /**
+     * Gets the children of several folders. The folders are listed in concurrent batches, as for
+     * {@link #getNodeDetails(Collection)}.
+     *
+     * @param parentIds the drive webservice IDs of the folders.
+     * @return the children keyed by folder drivewsid, in the order requested. IDs that iCloud does not recognise are
+     * left out.
+     */
+    public Map<String, List<DriveNode>> getChildren(Collection<String> parentIds)
+    {
+        return ICloudUtils.join(getChildrenAsync(parentIds));
+    }
+
+    /**
+     * Gets the children of several folders without blocking the calling thread. See {@link #getChildren(Collection)}.
+     *
+     * @param parentIds the drive webservice IDs of the folders.
+     * @return a future for the children keyed by folder drivewsid.
+     */
+    public CompletableFuture<Map<String, List<DriveNode>>> getChildrenAsync(Collection<String> parentIds)
+    {
+        return getNodeDetailsAsync(parentIds).thenApply(detailsById -> {
+            Map<String, List<DriveNode>> result = new LinkedHashMap<>();
+            detailsById.forEach((parentId, details) -> result.put(parentId, toChildNodes(details)));
+            return result;
+        });
+    }
+
+    /**
+     * Converts the items of a folder to nodes.
+     *
+     * @param nodeDetails the folder details.
+     * @return the child nodes.
+     */
+    private List<DriveNode> toChildNodes(DriveNodeDetails nodeDetails)
+    {
         if (nodeDetails.items == null)
         {
             return Collections.emptyList();
@@ -92,6 +300,53 @@ public class DriveService
             .collect(Collectors.toList());
     }
 
+    /**
+     * Gets the cache of folder listings, which is disabled unless configured with
+     * {@link ICloudServiceConfig.Builder#driveCache}.
+     *
+     * @return the cache.
+     */
+    public DriveMetadataCache getMetadataCache()
+    {
+        return metadataCache;
+    }
+
+    /**
+     * Gets the resolver for file content URLs. Call {@link DriveContentUrlResolver#prefetch(Collection)} with files
+     * that are about to be downloaded so their downloads skip the lookup.
+     *
+     * @return the resolver.
+     */
+    public DriveContentUrlResolver getContentUrlResolver()
+    {
+        return contentUrlResolver;
+    }
+
+    /**
+     * Uploads a file into a folder, see {@link DriveUpload}.
+     *
+     * @param folder   the folder.
+     * @param name     the file name.
+     * @param content  the file content, read until the end but not closed.
+     * @param size     the content length in bytes, or -1 if unknown.
+     * @param modified the modification time in milliseconds since the epoch.
+     * @return the details of the new file.
+     */
+    DriveNodeDetails upload(DriveNode folder, String name, ReadableByteChannel content, long size, long modified)
+    {
+        return upload.upload(folder, name, content, size, modified);
+    }
+
+    /**
+     * Gets the number of IDs sent in each 'retrieveItemDetailsInFolders' request.
+     *
+     * @return the batch size.
+     */
+    int getBatchSize()
+    {
+        return iCloudService.getConfig().getDriveBatchSize();
+    }
+
     public String getServiceUrl()
     {
         return serviceRoot;
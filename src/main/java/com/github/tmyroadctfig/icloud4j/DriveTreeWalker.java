@@ -0,0 +1,534 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks all the descendants of an iCloud Drive folder.
+ * <p>
+ * Folders are listed with batched 'retrieveItemDetailsInFolders' requests (see
+ * {@link DriveService#getChildren(java.util.Collection)}), and up to {@link Builder#concurrency(int)} batches are in
+ * flight at once. A batch is sent as soon as a slot is free, so deep and shallow branches are listed side by side
+ * rather than one level at a time.
+ * <p>
+ * Ordering: each node is reported after the folder it was found in, and the children of one folder are reported
+ * together in the order iCloud lists them. Apart from that the order depends on which batches complete first, and is
+ * not deterministic. The starting node itself is not reported.
+ * <p>
+ * Results are always delivered on the thread that consumes them, i.e. the caller of {@link #walk(DriveNode, Visitor)}
+ * or the thread reading the {@link #stream(DriveNode)}, never concurrently. The walk runs ahead of the consumer, but
+ * stops sending batches once {@link Builder#maxBufferedNodes(int)} nodes are waiting to be consumed, and resumes as
+ * they are taken, so a slow consumer of a large tree doesn't hold the whole tree in memory.
+ * <p>
+ * The {@link Builder#filter(Predicate)} and {@link Builder#prune(Predicate)} predicates are not called on the consumer
+ * thread: they run on the async executor as each listing batch completes, one batch at a time. They should be quick
+ * and must not block on the consumer. A walker holds no per-walk state and can be reused.
+ */
+public class DriveTreeWalker
+{
+    /**
+     * The default number of listing batches in flight.
+     */
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /**
+     * The default number of reported nodes waiting for the consumer above which no new batches are sent.
+     */
+    public static final int DEFAULT_MAX_BUFFERED_NODES = 10_000;
+
+    /**
+     * The drive service.
+     */
+    private final DriveService driveService;
+
+    /**
+     * The maximum number of listing batches in flight.
+     */
+    private final int concurrency;
+
+    /**
+     * The number of reported nodes waiting for the consumer above which no new batches are sent.
+     */
+    private final int maxBufferedNodes;
+
+    /**
+     * The maximum depth of reported nodes, where the children of the starting node are at depth one.
+     */
+    private final int maxDepth;
+
+    /**
+     * Selects the nodes to report. Folders that are not reported are still descended into.
+     */
+    private final Predicate<DriveNode> filter;
+
+    /**
+     * Selects the folders not to descend into. Pruned folders are still reported if they pass the filter.
+     */
+    private final Predicate<DriveNode> prune;
+
+    /**
+     * Creates a new walker from the builder.
+     *
+     * @param builder the builder.
+     */
+    private DriveTreeWalker(Builder builder)
+    {
+        this.driveService = builder.driveService;
+        this.concurrency = builder.concurrency;
+        this.maxBufferedNodes = builder.maxBufferedNodes;
+        this.maxDepth = builder.maxDepth;
+        this.filter = builder.filter;
+        this.prune = builder.prune;
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @param driveService the drive service to list folders with.
+     * @return the builder.
+     */
+    public static Builder builder(DriveService driveService)
+    {
+        return new Builder(driveService);
+    }
+
+    /**
+     * Walks the descendants of the given node, blocking until the walk completes. If the visitor throws, the walk is
+     * cancelled and the exception is rethrown.
+     *
+     * @param start   the node to start at, e.g. {@link DriveService#getRoot()}.
+     * @param visitor the visitor to report nodes to.
+     */
+    public void walk(DriveNode start, Visitor visitor)
+    {
+        Walk walk = new Walk();
+        walk.start(start);
+        try
+        {
+            List<Visit> visits;
+            while ((visits = walk.take()) != null)
+            {
+                for (Visit visit : visits)
+                {
+                    visitor.visit(visit.node, visit.depth);
+                }
+            }
+        }
+        finally
+        {
+            walk.cancel();
+        }
+    }
+
+    /**
+     * Walks the descendants of the given node. The walk starts immediately and runs ahead of the stream consumer, up to
+     * {@link Builder#maxBufferedNodes(int)} nodes. Close the stream to cancel a walk that is not read to the end, e.g.
+     * with try-with-resources.
+     *
+     * @param start the node to start at, e.g. {@link DriveService#getRoot()}.
+     * @return a sequential stream of the nodes.
+     */
+    public Stream<DriveNode> stream(DriveNode start)
+    {
+        Walk walk = new Walk();
+        walk.start(start);
+        return StreamSupport.stream(new WalkSpliterator(walk), false).onClose(walk::cancel);
+    }
+
+    /**
+     * Receives the nodes found by a walk.
+     */
+    @FunctionalInterface
+    public interface Visitor
+    {
+        /**
+         * Called for each node that passes the filter.
+         *
+         * @param node  the node.
+         * @param depth the depth of the node, where the children of the starting node are at depth one.
+         */
+        void visit(DriveNode node, int depth);
+    }
+
+    /**
+     * A reported node and its depth.
+     */
+    private static class Visit
+    {
+        private final DriveNode node;
+        private final int depth;
+
+        private Visit(DriveNode node, int depth)
+        {
+            this.node = node;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * The state of a single walk. Listing results arrive on the async executor, and are handed to the consumer
+     * through {@link #events}.
+     */
+    private class Walk
+    {
+        /**
+         * Marks the end of the walk in {@link #events}.
+         */
+        private final Object end = new Object();
+
+        /**
+         * Lists of {@link Visit}s, a {@link Throwable} if the walk failed, or {@link #end}.
+         */
+        private final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+
+        /**
+         * The folders waiting to be listed. Guarded by {@code this}.
+         */
+        private final Deque<Visit> pendingFolders = new ArrayDeque<>();
+
+        /**
+         * The number of listing batches in flight. Guarded by {@code this}.
+         */
+        private int inFlight;
+
+        /**
+         * The number of reported nodes queued in {@link #events} and not yet taken. Guarded by {@code this}.
+         */
+        private int bufferedNodes;
+
+        /**
+         * Whether the walk has finished, failed or been cancelled. Guarded by {@code this}.
+         */
+        private boolean done;
+
+        /**
+         * Starts listing from the given node.
+         *
+         * @param start the starting node.
+         */
+        private void start(DriveNode start)
+        {
+            synchronized (this)
+            {
+                if (start.isFolder() && maxDepth > 0)
+                {
+                    pendingFolders.add(new Visit(start, 0));
+                }
+            }
+            dispatch();
+        }
+
+        /**
+         * Sends batches of pending folders while there are free slots and the consumer is keeping up, and ends the walk
+         * once nothing is left.
+         */
+        private synchronized void dispatch()
+        {
+            while (!done && inFlight < concurrency && bufferedNodes < maxBufferedNodes && !pendingFolders.isEmpty())
+            {
+                List<Visit> batch = new ArrayList<>();
+                while (batch.size() < driveService.getBatchSize() && !pendingFolders.isEmpty())
+                {
+                    batch.add(pendingFolders.poll());
+                }
+
+                List<String> folderIds = new ArrayList<>(batch.size());
+                for (Visit folder : batch)
+                {
+                    folderIds.add(folder.node.getId());
+                }
+
+                inFlight++;
+                driveService.getChildrenAsync(folderIds)
+                    .whenComplete((childrenById, error) -> onListed(batch, childrenById, error));
+            }
+
+            if (!done && inFlight == 0 && pendingFolders.isEmpty())
+            {
+                done = true;
+                events.add(end);
+            }
+        }
+
+        /**
+         * Handles a completed listing batch.
+         *
+         * @param batch        the folders in the batch.
+         * @param childrenById the children keyed by folder ID, or {@code null} on failure.
+         * @param error        the failure, or {@code null}.
+         */
+        private void onListed(List<Visit> batch, Map<String, List<DriveNode>> childrenById, Throwable error)
+        {
+            synchronized (this)
+            {
+                inFlight--;
+                if (done)
+                {
+                    return;
+                }
+
+                if (error != null)
+                {
+                    done = true;
+                    events.add(error);
+                    return;
+                }
+
+                try
+                {
+                    List<Visit> visits = new ArrayList<>();
+                    for (Visit folder : batch)
+                    {
+                        List<DriveNode> children = childrenById.get(folder.node.getId());
+                        if (children == null)
+                        {
+                            // The folder was removed after it was listed
+                            continue;
+                        }
+
+                        int depth = folder.depth + 1;
+                        for (DriveNode child : children)
+                        {
+                            if (filter.test(child))
+                            {
+                                visits.add(new Visit(child, depth));
+                            }
+                            if (child.isFolder() && depth < maxDepth && !prune.test(child))
+                            {
+                                pendingFolders.add(new Visit(child, depth));
+                            }
+                        }
+                    }
+
+                    // Queued while holding the lock, so the visits always precede the end marker
+                    if (!visits.isEmpty())
+                    {
+                        bufferedNodes += visits.size();
+                        events.add(visits);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    done = true;
+                    events.add(e);
+                    return;
+                }
+            }
+            dispatch();
+        }
+
+        /**
+         * Stops sending batches. Batches in flight are left to complete and their results are dropped.
+         */
+        private synchronized void cancel()
+        {
+            done = true;
+            pendingFolders.clear();
+        }
+
+        /**
+         * Waits for the next group of visits.
+         *
+         * @return the visits, or {@code null} at the end of the walk.
+         */
+        @SuppressWarnings("unchecked")
+        private List<Visit> take()
+        {
+            Object event;
+            try
+            {
+                event = events.take();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while walking the drive tree.", e);
+            }
+
+            if (event == end)
+            {
+                // Leave the marker for any later call
+                events.add(end);
+                return null;
+            }
+            if (event instanceof Throwable)
+            {
+                events.add(event);
+                Throwable cause = event instanceof CompletionException && ((Throwable) event).getCause() != null
+                    ? ((Throwable) event).getCause() : (Throwable) event;
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+            List<Visit> visits = (List<Visit>) event;
+            synchronized (this)
+            {
+                bufferedNodes -= visits.size();
+            }
+            // Resumes a walk paused for the consumer
+            dispatch();
+            return visits;
+        }
+    }
+
+    /**
+     * Feeds the results of a walk to a stream.
+     */
+    private static class WalkSpliterator extends Spliterators.AbstractSpliterator<DriveNode>
+    {
+        private final Walk walk;
+        private Iterator<Visit> current;
+
+        private WalkSpliterator(Walk walk)
+        {
+            super(Long.MAX_VALUE, Spliterator.NONNULL | Spliterator.DISTINCT);
+            this.walk = walk;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super DriveNode> action)
+        {
+            while (current == null || !current.hasNext())
+            {
+                List<Visit> visits = walk.take();
+                if (visits == null)
+                {
+                    return false;
+                }
+                current = visits.iterator();
+            }
+
+            action.accept(current.next().node);
+            return true;
+        }
+    }
+
+    /**
+     * A builder for {@link DriveTreeWalker}.
+     */
+    public static class Builder
+    {
+        private final DriveService driveService;
+        private int concurrency = DEFAULT_CONCURRENCY;
+        private int maxBufferedNodes = DEFAULT_MAX_BUFFERED_NODES;
+        private int maxDepth = Integer.MAX_VALUE;
+        private Predicate<DriveNode> filter = node -> true;
+        private Predicate<DriveNode> prune = node -> false;
+
+        private Builder(DriveService driveService)
+        {
+            this.driveService = Preconditions.checkNotNull(driveService, "driveService");
+        }
+
+        /**
+         * Sets the maximum number of listing batches in flight. This should not exceed the connection limit
+         * for the drive host, see {@link ICloudServiceConfig#getMaxConnectionsPerRoute()}.
+         *
+         * @param concurrency the number of batches.
+         * @return this builder.
+         */
+        public Builder concurrency(int concurrency)
+        {
+            Preconditions.checkArgument(concurrency > 0, "concurrency must be positive");
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Sets the number of reported nodes waiting for the consumer above which the walk stops sending batches, until
+         * the consumer catches up. This is a high-water mark rather than a hard limit: batches already in flight are
+         * still queued when they complete. Defaults to {@link #DEFAULT_MAX_BUFFERED_NODES}.
+         *
+         * @param maxBufferedNodes the number of nodes.
+         * @return this builder.
+         */
+        public Builder maxBufferedNodes(int maxBufferedNodes)
+        {
+            Preconditions.checkArgument(maxBufferedNodes > 0, "maxBufferedNodes must be positive");
+            this.maxBufferedNodes = maxBufferedNodes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum depth to report, where the children of the starting node are at depth one.
+         *
+         * @param maxDepth the maximum depth.
+         * @return this builder.
+         */
+        public Builder maxDepth(int maxDepth)
+        {
+            Preconditions.checkArgument(maxDepth >= 0, "maxDepth must not be negative");
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Sets the predicate selecting the nodes to report. Folders that fail the filter are still descended into. It
+         * is called on the async executor, not the consumer thread.
+         *
+         * @param filter the filter.
+         * @return this builder.
+         */
+        public Builder filter(Predicate<DriveNode> filter)
+        {
+            this.filter = Preconditions.checkNotNull(filter, "filter");
+            return this;
+        }
+
+        /**
+         * Sets the predicate selecting the folders not to descend into. It is applied before the folder is listed, so
+         * pruned subtrees cost no requests. It is
+         * called on the async executor, not the consumer thread.
+         *
+         * @param prune the predicate.
+         * @return this builder.
+         */
+        public Builder prune(Predicate<DriveNode> prune)
+        {
+            this.prune = Preconditions.checkNotNull(prune, "prune");
+            return this;
+        }
+
+        /**
+         * Builds the walker.
+         *
+         * @return the walker.
+         */
+        public DriveTreeWalker build()
+        {
+            return new DriveTreeWalker(this);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.github.tmyroadctfig.icloud4j.json.DriveUploadResponse;
+import com.github.tmyroadctfig.icloud4j.json.DriveUploadUrl;
+import com.github.tmyroadctfig.icloud4j.json.DriveUploadedFile;
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
+import com.github.tmyroadctfig.icloud4j.util.ChannelTransfer;
+import com.github.tmyroadctfig.icloud4j.util.DirectBufferPool;
+import com.github.tmyroadctfig.icloud4j.util.ICloudUtils;
+import com.github.tmyroadctfig.icloud4j.util.JsonToMapResponseHandler;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.entity.mime.AbstractContentBody;
+import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.net.URIBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adds a file to an iCloud Drive folder.
+ * <p>
+ * An upload takes three requests: 'upload/web' reserves a document ID and returns a signed content URL, the content is
+ * posted to that URL as a multipart body, and 'update/documents' adds the stored content to the folder. The content is
+ * written straight from its channel through a pooled direct buffer, so files of any size are uploaded with constant
+ * memory; a body of unknown length is sent chunked. Progress of the content request is reported to the listeners
+ * added to the {@link ICloudService}.
+ */
+class DriveUpload
+{
+    /**
+     * The content type sent when none can be guessed from the file name.
+     */
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    /**
+     * The iCloud service.
+     */
+    private final ICloudService iCloudService;
+
+    /**
+     * The drive service.
+     */
+    private final DriveService driveService;
+
+    /**
+     * Creates a new upload helper.
+     *
+     * @param iCloudService the iCloud service.
+     * @param driveService  the drive service.
+     */
+    DriveUpload(ICloudService iCloudService, DriveService driveService)
+    {
+        this.iCloudService = iCloudService;
+        this.driveService = driveService;
+    }
+
+    /**
+     * Uploads a file into a folder.
+     *
+     * @param folder   the folder.
+     * @param name     the file name.
+     * @param content  the file content, read until the end but not closed.
+     * @param size     the content length in bytes, or -1 if unknown.
+     * @param modified the modification time in milliseconds since the epoch.
+     * @return the details of the new file.
+     * @throws ICloudException if iCloud rejects a request.
+     */
+    DriveNodeDetails upload(DriveNode folder, String name, ReadableByteChannel content, long size, long modified)
+    {
+        String zone = folder.getNodeDetails().zone;
+        String guessedType = URLConnection.guessContentTypeFromName(name);
+        String contentType = guessedType != null ? guessedType : DEFAULT_CONTENT_TYPE;
+
+        DriveUploadUrl uploadUrl = requestUploadUrl(zone, name, contentType, size);
+        DriveUploadedFile uploadedFile = TransferTracker.track(iCloudService, null, TransferProgress.Direction.UPLOAD,
+            name, size, tracker -> postContent(uploadUrl.url, name, contentType, tracker.wrap(content), size));
+        addFile(folder, zone, uploadUrl.document_id, name, uploadedFile, modified);
+
+        // The folder listing is stale now that it has a new child
+        driveService.getMetadataCache().invalidate(folder.getId());
+        return driveService.getNodeDetails("FILE::" + zone + "::" + uploadUrl.document_id);
+    }
+
+    /**
+     * Sends an 'upload/web' request to reserve a document ID and content URL.
+     *
+     * @param zone        the zone of the target folder.
+     * @param name        the file name.
+     * @param contentType the content type.
+     * @param size        the content length in bytes, or -1 if unknown.
+     * @return the document ID and content URL.
+     */
+    private DriveUploadUrl requestUploadUrl(String zone, String name, String contentType, long size)
+    {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("filename", name);
+        request.put("type", "FILE");
+        request.put("content_type", contentType);
+        if (size >= 0)
+        {
+            request.put("size", size);
+        }
+
+        HttpPost post = new HttpPost(buildDocsUri(zone, "upload/web"));
+        iCloudService.populateRequestHeadersParameters(post);
+        post.setEntity(new StringEntity(JsonCodecs.gson().toJson(request), ContentType.TEXT_PLAIN));
+
+        DriveUploadUrl[] uploadUrls = ICloudUtils.parseJsonResponse(iCloudService.getHttpClient(), post,
+            DriveUploadUrl[].class);
+        if (uploadUrls == null || uploadUrls.length == 0 || uploadUrls[0] == null || uploadUrls[0].url == null
+            || uploadUrls[0].document_id == null)
+        {
+            throw new RuntimeException("No upload URL in iCloud Drive response for " + name);
+        }
+        return uploadUrls[0];
+    }
+
+    /**
+     * Posts the file content to its upload URL.
+     *
+     * @param url         the upload URL.
+     * @param name        the file name.
+     * @param contentType the content type.
+     * @param content     the file content.
+     * @param size        the content length in bytes, or -1 if unknown.
+     * @return the receipt for the stored content.
+     */
+    private DriveUploadedFile postContent(String url, String name, String contentType, ReadableByteChannel content,
+                                          long size)
+    {
+        HttpPost post = new HttpPost(url);
+        iCloudService.populateRequestHeadersParameters(post);
+        post.setEntity(MultipartEntityBuilder.create()
+            .addPart(name, new ChannelBody(content, size, ContentType.create(contentType), name))
+            .build());
+
+        DriveUploadResponse response = ICloudUtils.parseJsonResponse(iCloudService.getHttpClient(), post,
+            DriveUploadResponse.class);
+        if (response == null || response.singleFile == null)
+        {
+            throw new RuntimeException("No receipt in iCloud Drive upload response for " + name);
+        }
+        return response.singleFile;
+    }
+
+    /**
+     * Sends an 'update/documents' request adding the stored content to the folder.
+     *
+     * @param folder       the folder.
+     * @param zone         the zone of the folder.
+     * @param documentId   the reserved document ID.
+     * @param name         the file name.
+     * @param uploadedFile the receipt for the stored content.
+     * @param modified     the modification time in milliseconds since the epoch.
+     */
+    private void addFile(DriveNode folder, String zone, String documentId, String name, DriveUploadedFile uploadedFile,
+                         long modified)
+    {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("signature", uploadedFile.fileChecksum);
+        data.put("wrapping_key", uploadedFile.wrappingKey);
+        data.put("reference_signature", uploadedFile.referenceChecksum);
+        data.put("size", uploadedFile.size);
+        if (uploadedFile.receipt != null)
+        {
+            data.put("receipt", uploadedFile.receipt);
+        }
+
+        Map<String, Object> path = new LinkedHashMap<>();
+        path.put("starting_document_id", folder.getNodeDetails().docwsid);
+        path.put("path", name);
+
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("data", data);
+        request.put("command", "add_file");
+        request.put("create_short_guid", true);
+        request.put("document_id", documentId);
+        request.put("path", path);
+        request.put("allow_conflict", true);
+        request.put("mtime", modified);
+        request.put("btime", modified);
+
+        HttpPost post = new HttpPost(buildDocsUri(zone, "update/documents"));
+        iCloudService.populateRequestHeadersParameters(post);
+        post.setEntity(new StringEntity(JsonCodecs.gson().toJson(request), ContentType.TEXT_PLAIN));
+
+        Map<String, Object> response;
+        try
+        {
+            response = iCloudService.getHttpClient().execute(post, httpResponse -> {
+                Map<String, Object> map = new JsonToMapResponseHandler().handleResponse(httpResponse);
+                if (httpResponse.getCode() < 200 || httpResponse.getCode() >= 300)
+                {
+                    throw new ICloudException(httpResponse, map != null ? map : Collections.emptyMap());
+                }
+                return map;
+            });
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        Object results = response != null ? response.get("results") : null;
+        if (!(results instanceof List) || ((List<?>) results).isEmpty())
+        {
+            throw new RuntimeException("No result in iCloud Drive response adding " + name);
+        }
+
+        Object result = ((List<?>) results).get(0);
+        Object status = result instanceof Map ? ((Map<?, ?>) result).get("status") : null;
+        Object statusCode = status instanceof Map ? ((Map<?, ?>) status).get("status_code") : null;
+        if (statusCode instanceof Number && ((Number) statusCode).intValue() != 0)
+        {
+            throw new RuntimeException("Failed to add " + name + " to iCloud Drive: "
+                + ((Map<?, ?>) status).get("error_message"));
+        }
+    }
+
+    /**
+     * Builds a docs web service URI with the session parameters.
+     *
+     * @param zone      the zone.
+     * @param operation the operation, e.g. "upload/web".
+     * @return the URI.
+     */
+    private String buildDocsUri(String zone, String operation)
+    {
+        try
+        {
+            URIBuilder uriBuilder = new URIBuilder(String.format("%s/ws/%s/%s",
+                driveService.getDocsServiceUrl(), zone, operation));
+            iCloudService.populateUriParameters(uriBuilder);
+            return uriBuilder.build().toString();
+        }
+        catch (URISyntaxException e)
+        {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * A multipart body written straight from a channel.
+     */
+    private static class ChannelBody extends AbstractContentBody
+    {
+        /**
+         * The content.
+         */
+        private final ReadableByteChannel content;
+
+        /**
+         * The content length in bytes, or -1 if unknown.
+         */
+        private final long size;
+
+        /**
+         * The file name.
+         */
+        private final String filename;
+
+        /**
+         * Creates a new body.
+         *
+         * @param content     the content.
+         * @param size        the content length in bytes, or -1 if unknown.
+         * @param contentType the content type.
+         * @param filename    the file name.
+         */
+        ChannelBody(ReadableByteChannel content, long size, ContentType contentType, String filename)
+        {
+            super(contentType);
+            this.content = content;
+            this.size = size;
+            this.filename = filename;
+        }
+
+        @Override
+        public String getFilename()
+        {
+            return filename;
+        }
+
+        @Override
+        public long getContentLength()
+        {
+            return size;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException
+        {
+            long written = ChannelTransfer.copy(content, Channels.newChannel(out), DirectBufferPool.shared());
+            if (size >= 0 && written != size)
+            {
+                // The declared length framed the request, so a mismatch would corrupt it
+                throw new IOException("Expected " + size + " bytes of content for " + filename + " but read " + written);
+            }
+        }
+    }
+}
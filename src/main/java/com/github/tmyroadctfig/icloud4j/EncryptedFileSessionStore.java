@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A {@link SessionStore} keeping the session in a local file, encrypted with AES-GCM.
+ * <p>
+ * The key is either given directly, or derived from a passphrase with PBKDF2. Deriving a key takes a deliberately
+ * noticeable time, so it is done once per store and its salt is reused for every save; a {@link SecretKey} from a key
+ * store avoids it altogether. The file is replaced atomically, and is readable only by its owner where the file system
+ * supports POSIX permissions. A file that has been tampered with, or is read with the wrong key, fails to load rather
+ * than giving a corrupt session.
+ */
+public class EncryptedFileSessionStore implements SessionStore
+{
+    /**
+     * The PBKDF2 iterations used when deriving a key from a passphrase.
+     */
+    static final int PBKDF2_ITERATIONS = 210_000;
+
+    /**
+     * The marker at the start of each file.
+     */
+    private static final byte[] MAGIC = {'I', '4', 'J', 'S'};
+
+    /**
+     * The version of the file format.
+     */
+    private static final byte FORMAT_VERSION = 1;
+
+    /**
+     * The length of the PBKDF2 salt in bytes.
+     */
+    private static final int SALT_LENGTH = 16;
+
+    /**
+     * The length of the AES-GCM nonce in bytes.
+     */
+    private static final int IV_LENGTH = 12;
+
+    /**
+     * The length of the AES-GCM authentication tag in bits.
+     */
+    private static final int TAG_LENGTH = 128;
+
+    /**
+     * The length of the header: the marker, the version, the iterations, the salt and the nonce.
+     */
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + Integer.BYTES + SALT_LENGTH + IV_LENGTH;
+
+    /**
+     * The length of a key derived from a passphrase in bits.
+     */
+    private static final int DERIVED_KEY_LENGTH = 256;
+
+    /**
+     * The permissions of the file where POSIX permissions are supported.
+     */
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    /**
+     * The source of salts and nonces.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * The session file.
+     */
+    private final Path file;
+
+    /**
+     * The passphrase, or {@code null} if the key was given directly.
+     */
+    private final char[] passphrase;
+
+    /**
+     * The key given directly, or the last key derived from the passphrase. Guarded by {@code this}.
+     */
+    private SecretKey key;
+
+    /**
+     * The salt the key was derived with, or {@code null} if none has been derived. Guarded by {@code this}.
+     */
+    private byte[] salt;
+
+    /**
+     * Creates a new store encrypting with a key derived from a passphrase.
+     *
+     * @param file       the session file.
+     * @param passphrase the passphrase, which is copied.
+     */
+    public EncryptedFileSessionStore(@Nonnull Path file, @Nonnull char[] passphrase)
+    {
+        Preconditions.checkArgument(passphrase.length > 0, "passphrase must not be empty");
+        this.file = Preconditions.checkNotNull(file, "file");
+        this.passphrase = passphrase.clone();
+    }
+
+    /**
+     * Creates a new store encrypting with the given key.
+     *
+     * @param file the session file.
+     * @param key  a 128, 192 or 256-bit AES key.
+     */
+    public EncryptedFileSessionStore(@Nonnull Path file, @Nonnull SecretKey key)
+    {
+        Preconditions.checkArgument("AES".equalsIgnoreCase(key.getAlgorithm()), "key must be an AES key");
+        this.file = Preconditions.checkNotNull(file, "file");
+        this.passphrase = null;
+        this.key = key;
+    }
+
+    /**
+     * Gets the session file.
+     *
+     * @return the file.
+     */
+    public Path getFile()
+    {
+        return file;
+    }
+
+    @Nullable
+    @Override
+    public SessionSnapshot load() throws IOException
+    {
+        byte[] contents;
+        try
+        {
+            contents = Files.readAllBytes(file);
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(contents);
+        if (contents.length < HEADER_LENGTH)
+        {
+            throw new IOException("Not a session file: " + file);
+        }
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC))
+        {
+            throw new IOException("Not a session file: " + file);
+        }
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION)
+        {
+            throw new IOException("Unsupported session file version " + version + ": " + file);
+        }
+        int iterations = buffer.getInt();
+        byte[] fileSalt = new byte[SALT_LENGTH];
+        buffer.get(fileSalt);
+        byte[] iv = new byte[IV_LENGTH];
+        buffer.get(iv);
+
+        try
+        {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, getKey(fileSalt, iterations), new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.updateAAD(contents, 0, HEADER_LENGTH);
+            byte[] plain = cipher.doFinal(contents, HEADER_LENGTH, contents.length - HEADER_LENGTH);
+            return SessionSnapshot.fromJson(new String(plain, StandardCharsets.UTF_8));
+        }
+        catch (AEADBadTagException e)
+        {
+            throw new IOException("Failed to decrypt the session, the key is wrong or the file is corrupt: " + file, e);
+        }
+        catch (GeneralSecurityException | IllegalArgumentException e)
+        {
+            throw new IOException("Failed to read the session: " + file, e);
+        }
+    }
+
+    @Override
+    public void save(@Nonnull SessionSnapshot snapshot) throws IOException
+    {
+        byte[] plain = snapshot.toJson().getBytes(StandardCharsets.UTF_8);
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+
+        byte[] contents;
+        try
+        {
+            SecretKey saveKey;
+            byte[] saveSalt;
+            synchronized (this)
+            {
+                if (passphrase != null && salt == null)
+                {
+                    byte[] newSalt = new byte[SALT_LENGTH];
+                    RANDOM.nextBytes(newSalt);
+                    getKey(newSalt, PBKDF2_ITERATIONS);
+                }
+                saveKey = key;
+                saveSalt = salt != null ? salt : new byte[SALT_LENGTH];
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                .put(MAGIC)
+                .put(FORMAT_VERSION)
+                .putInt(passphrase != null ? PBKDF2_ITERATIONS : 0)
+                .put(saveSalt)
+                .put(iv);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, saveKey, new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.updateAAD(header.array());
+            byte[] encrypted = cipher.doFinal(plain);
+
+            contents = Arrays.copyOf(header.array(), HEADER_LENGTH + encrypted.length);
+            System.arraycopy(encrypted, 0, contents, HEADER_LENGTH, encrypted.length);
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IOException("Failed to encrypt the session", e);
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        if (temporary.getFileSystem().supportedFileAttributeViews().contains("posix"))
+        {
+            Files.createFile(temporary, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        }
+        try (OutputStream outputStream = Files.newOutputStream(temporary, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            outputStream.write(contents);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void delete() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Gets the key for a file, deriving it from the passphrase if the salt or iterations differ from the last one.
+     *
+     * @param fileSalt   the salt in the file.
+     * @param iterations the PBKDF2 iterations in the file, or zero if the key was given directly.
+     * @return the key.
+     * @throws GeneralSecurityException if the key can't be derived.
+     */
+    private synchronized SecretKey getKey(byte[] fileSalt, int iterations) throws GeneralSecurityException
+    {
+        if (passphrase == null)
+        {
+            return key;
+        }
+        if (iterations <= 0)
+        {
+            throw new GeneralSecurityException("The session file was not encrypted with a passphrase");
+        }
+
+        if (salt == null || !Arrays.equals(salt, fileSalt) || iterations != PBKDF2_ITERATIONS)
+        {
+            PBEKeySpec spec = new PBEKeySpec(passphrase, fileSalt, iterations, DERIVED_KEY_LENGTH);
+            try
+            {
+                byte[] encoded = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+                SecretKey derived = new SecretKeySpec(encoded, "AES");
+                if (iterations != PBKDF2_ITERATIONS)
+                {
+                    // Written with other settings; the next save derives a key with the current ones
+                    return derived;
+                }
+                key = derived;
+                salt = fileSalt.clone();
+            }
+            finally
+            {
+                spec.clearPassword();
+            }
+        }
+        return key;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import java.util.Objects;
+
+/**
+ * The checksums of a downloaded file, computed while it was written, see
+ * {@link DownloadOptions.Builder#computeDigests(boolean)}.
+ */
+public class FileDigest
+{
+    /**
+     * The SHA-256 digest as lower-case hex.
+     */
+    private final String sha256;
+
+    /**
+     * The CRC32C checksum as eight lower-case hex digits.
+     */
+    private final String crc32c;
+
+    /**
+     * Creates a new digest.
+     *
+     * @param sha256 the SHA-256 digest as lower-case hex.
+     * @param crc32c the CRC32C checksum as eight lower-case hex digits.
+     */
+    FileDigest(String sha256, String crc32c)
+    {
+        this.sha256 = sha256;
+        this.crc32c = crc32c;
+    }
+
+    /**
+     * Gets the SHA-256 digest.
+     *
+     * @return the digest as lower-case hex.
+     */
+    public String getSha256()
+    {
+        return sha256;
+    }
+
+    /**
+     * Gets the CRC32C (Castagnoli) checksum.
+     *
+     * @return the checksum as eight lower-case hex digits.
+     */
+    public String getCrc32c()
+    {
+        return crc32c;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (!(o instanceof FileDigest))
+        {
+            return false;
+        }
+        FileDigest that = (FileDigest) o;
+        return Objects.equals(sha256, that.sha256) && Objects.equals(crc32c, that.crc32c);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(sha256, crc32c);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("digest:[sha256=%s crc32c=%s]", sha256, crc32c);
+    }
+}
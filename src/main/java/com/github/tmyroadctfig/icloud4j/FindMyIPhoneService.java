@@ -18,15 +18,20 @@ package com.github.tmyroadctfig.icloud4j;
 import com.github.tmyroadctfig.icloud4j.json.AppleDevice;
 import com.github.tmyroadctfig.icloud4j.json.FindMyIPhoneResponse;
 import com.github.tmyroadctfig.icloud4j.util.ICloudUtils;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.net.URIBuilder;
 
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Access to the 'find my iPhone' service (although it returns details for Mac computers too).
@@ -55,6 +60,12 @@ public class FindMyIPhoneService
      */
     private final String refreshUrl;
 
+    /**
+     * The body of the refresh request.
+     */
+    private static final String REFRESH_REQUEST_JSON =
+        "{\"clientContext\": {\"fmly\": true, \"shouldLocate\": true, \"selectedDevice\": \"all\"}}";
+
     /**
      * Creates a new 'find my iPhone' service.
      *
@@ -79,14 +90,8 @@ public class FindMyIPhoneService
     {
         try
         {
-            URIBuilder uriBuilder = new URIBuilder(refreshUrl);
-            iCloudService.populateUriParameters(uriBuilder);
-            URI uri = uriBuilder.build();
-
-            String requestJson = "{\"clientContext\": {\"fmly\": true, \"shouldLocate\": true, \"selectedDevice\": \"all\"}}";
-
-            HttpPost post = new HttpPost(uri);
-            post.setEntity(new StringEntity(requestJson, StandardCharsets.UTF_8));
+            HttpPost post = new HttpPost(getRefreshUri());
+            post.setEntity(new StringEntity(REFRESH_REQUEST_JSON, StandardCharsets.UTF_8));
             iCloudService.populateRequestHeadersParameters(post);
 
             FindMyIPhoneResponse findMyIPhoneResponse =
@@ -99,5 +104,44 @@ public class FindMyIPhoneService
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Gets a list of devices without blocking the calling thread.
+     *
+     * @return a future for the list of devices.
+     */
+    public CompletableFuture<List<AppleDevice>> getDevicesAsync()
+    {
+        SimpleHttpRequest post;
+        try
+        {
+            post = SimpleRequestBuilder.post(getRefreshUri())
+                .setBody(REFRESH_REQUEST_JSON, ContentType.TEXT_PLAIN.withCharset(StandardCharsets.UTF_8))
+                .build();
+        }
+        catch (URISyntaxException e)
+        {
+            return ICloudUtils.failedFuture(e);
+        }
+        iCloudService.populateRequestHeadersParameters(post);
+
+        return ICloudUtils
+            .parseJsonResponseAsync(iCloudService.getAsyncHttpClient(), post, FindMyIPhoneResponse.class,
+                iCloudService.getConfig().getAsyncExecutor())
+            .thenApply(response -> Arrays.asList(response.content));
+    }
+
+    /**
+     * Builds the refresh URI.
+     *
+     * @return the URI.
+     * @throws URISyntaxException if the URI is invalid.
+     */
+    private URI getRefreshUri() throws URISyntaxException
+    {
+        URIBuilder uriBuilder = new URIBuilder(refreshUrl);
+        iCloudService.populateUriParameters(uriBuilder);
+        return uriBuilder.build();
+    }
 }
 
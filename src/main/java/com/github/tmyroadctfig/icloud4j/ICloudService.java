@@ -15,38 +15,83 @@
 
 package com.github.tmyroadctfig.icloud4j;
 
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
 import com.github.tmyroadctfig.icloud4j.json.TrustedDevice;
 import com.github.tmyroadctfig.icloud4j.json.TrustedDeviceResponse;
 import com.github.tmyroadctfig.icloud4j.json.TrustedDevices;
+import com.github.tmyroadctfig.icloud4j.util.ICloudUtils;
 import com.github.tmyroadctfig.icloud4j.util.JsonToMapResponseHandler;
-import com.github.tmyroadctfig.icloud4j.util.StringResponseHandler;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
-import com.google.gson.Gson;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
 import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
-import org.apache.hc.client5.http.cookie.BasicCookieStore;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.cookie.CookieStore;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.routing.RoutingSupport;
 import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
 import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.URIScheme;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.net.URIBuilder;
+import org.apache.hc.core5.pool.PoolStats;
 import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * The iCloud service.
@@ -67,6 +112,12 @@ public class ICloudService implements java.io.Closeable
      * A flag indicating whether to disable SSL checks.
      */
     private static final boolean DISABLE_SSL_CHECKS = Boolean.parseBoolean(System.getProperty("tmyroadctfig.icloud4j.disableSslChecks", "false"));
+    /**
+     * The type of a JSON object decoded into a map.
+     */
+    private static final Type JSON_MAP_TYPE = new TypeToken<Map<String, Object>>()
+    {
+    }.getType();
     /**
      * The proxy host to use.
      */
@@ -75,35 +126,125 @@ public class ICloudService implements java.io.Closeable
      * The proxy port to use.
      */
     private static final Integer PROXY_PORT = Integer.getInteger("http.proxyPort");
+    /**
+     * The status iCloud answers with when a session is no longer valid for a service host.
+     */
+    private static final int SC_MISDIRECTED_REQUEST = 421;
+    /**
+     * The host of the 'idmsa' service, whose requests don't use the iCloud session.
+     */
+    private static final String IDMSA_HOST = URI.create(IdmsaService.idmsaEndPoint).getHost();
+    /**
+     * The most warm-up tasks run at once across every service by default.
+     */
+    private static final int MAX_WARM_UP_THREADS = 8;
+    /**
+     * Runs the blocking warm-up tasks of every service by default, with threads that stop when idle.
+     */
+    private static final ThreadPoolExecutor WARM_UP_EXECUTOR = createWarmUpExecutor();
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ICloudService.class);
     /**
      * The client ID.
      */
     private final String clientId;
 
+    /**
+     * The transport configuration.
+     */
+    private final ICloudServiceConfig config;
+
     /**
      * The HTTP client.
      */
     private final CloseableHttpClient httpClient;
 
+    /**
+     * The connection manager, or {@code null} if the HTTP client was supplied by the caller.
+     */
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    /**
+     * The per-host connection limits shared by the classic and async clients, keyed by lower-case host name.
+     */
+    private final Map<String, Integer> hostConnectionLimits;
+
+    /**
+     * The adaptive per-host request limits, or {@code null} if disabled or the HTTP client was supplied by the caller.
+     */
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Runs idempotent metadata reads under the configured retry policy.
+     */
+    private final RetryingReader retryingReader;
+
+    /**
+     * The async HTTP client, created on first use.
+     */
+    private volatile CloseableHttpAsyncClient asyncHttpClient;
+
+    /**
+     * The pool whose transport this service shares, or {@code null} if it has its own.
+     */
+    private final ICloudServicePool pool;
+
     /**
      * The cookie store.
      */
     private final CookieStore cookieStore;
 
+    /**
+     * The values derived from the session, such as the session ID and download token.
+     */
+    private final SessionTokens sessionTokens = new SessionTokens();
+
     /**
      * The idmsa service.
      */
     private final IdmsaService idmsaService;
 
     /**
-     * The login info.
+     * The listeners notified of every file transfer.
+     */
+    private final List<TransferListener> transferListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The file transfers in progress.
+     */
+    private final Set<TransferTracker> activeTransfers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The store the session is persisted in, or {@code null} if sessions are kept in memory only.
+     */
+    private final SessionStore sessionStore;
+
+    /**
+     * The listeners notified of each background session refresh.
+     */
+    private final List<SessionListener> sessionListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Refreshes the session in the background, or {@code null} if the keep-alive is disabled.
+     */
+    private final SessionKeepAlive sessionKeepAlive;
+
+    /**
+     * The services of the current login, each created on first use.
+     */
+    private volatile ServiceRegistry services = new ServiceRegistry(this);
+
+    /**
+     * The state of the session.
      */
-    private Map<String, Object> loginInfo;
+    private volatile SessionState sessionState = SessionState.NONE;
 
     /**
-     * The iCloud session ID.
+     * The login info.
      */
-    private String dsid;
+    private volatile Map<String, Object> loginInfo;
 
     /**
      * Client build number.
@@ -117,7 +258,7 @@ public class ICloudService implements java.io.Closeable
      */
     public ICloudService(@Nonnull String clientId)
     {
-        this(clientId, null);
+        this(clientId, null, ICloudServiceConfig.defaults());
     }
 
     /**
@@ -127,51 +268,348 @@ public class ICloudService implements java.io.Closeable
      * @param httpClient the closeable http client.
      */
     public ICloudService(@Nonnull String clientId, @Nullable CloseableHttpClient httpClient)
+    {
+        this(clientId, httpClient, ICloudServiceConfig.defaults());
+    }
+
+    /**
+     * Creates a new iCloud service instance with a pooled HTTP client built from the given configuration.
+     *
+     * @param clientId the client ID.
+     * @param config   the transport configuration.
+     */
+    public ICloudService(@Nonnull String clientId, @Nonnull ICloudServiceConfig config)
+    {
+        this(clientId, null, config);
+    }
+
+    /**
+     * Creates a new iCloud service instance.
+     *
+     * @param clientId   the client ID.
+     * @param httpClient the closeable http client, or {@code null} to build one from the configuration.
+     * @param config     the transport configuration.
+     */
+    private ICloudService(@Nonnull String clientId, @Nullable CloseableHttpClient httpClient,
+                          @Nonnull ICloudServiceConfig config)
     {
         this.clientId = clientId;
+        this.config = config;
+        this.sessionStore = config.getSessionStore();
 
-        cookieStore = new BasicCookieStore();
+        cookieStore = sessionTokens.getCookieStore();
+        hostConnectionLimits = RouteConnectionLimits.newHostLimits(config.getMaxConnectionsPerHost());
 
+        this.pool = null;
         if (httpClient != null)
         {
             this.httpClient = httpClient;
+            this.connectionManager = null;
+            this.concurrencyLimiter = null;
         } else
         {
-            try
-            {
-                HttpClientBuilder clientBuilder = HttpClients.custom()
-                    .setDefaultCookieStore(cookieStore);
+            this.connectionManager = createConnectionManager(config);
+            this.concurrencyLimiter = config.getAdaptiveConcurrencyMaxLimit() > 0
+                ? new AdaptiveConcurrencyLimiter(config.getAdaptiveConcurrencyInitialLimit(),
+                    config.getAdaptiveConcurrencyMaxLimit())
+                : null;
+            this.httpClient = createHttpClient(config, cookieStore, connectionManager,
+                new RouteConnectionLimits(connectionManager, hostConnectionLimits), concurrencyLimiter,
+                new SessionCheck(this::settleRestoredSession));
+        }
 
-                // Handle proxy if defined
-                if (!Strings.isNullOrEmpty(PROXY_HOST) && PROXY_PORT != null)
-                {
-                    clientBuilder.setProxy(new HttpHost(PROXY_HOST, PROXY_PORT));
-                }
+        idmsaService = new IdmsaService(this);
+        retryingReader = new RetryingReader(this, config.getRetryPolicy());
+        sessionKeepAlive = createSessionKeepAlive();
+        restoreSavedSession();
+    }
 
-                // Handle optional SSL checks
-                if (DISABLE_SSL_CHECKS)
-                {
-                    SSLContext sslContext = SSLContextBuilder.create()
-                        .loadTrustMaterial(null, (chain, authType) -> true) // trust all
-                        .build();
-
-                    clientBuilder.setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
-                        .setTlsSocketStrategy(ClientTlsStrategyBuilder.create()
-                            .setSslContext(sslContext)
-                            //.setHostnameVerifier(NoopHostnameVerifier.INSTANCE) // for debugging only
-                            .buildClassic())
-                        .build());
-                }
+    /**
+     * Creates a new iCloud service instance for one account of a pool, sending its requests through the pool's
+     * transport with its own cookies.
+     *
+     * @param clientId     the client ID.
+     * @param config       the transport configuration of the pool.
+     * @param sessionStore the store the account's session is persisted in, or {@code null}.
+     * @param pool         the pool.
+     */
+    ICloudService(@Nonnull String clientId, @Nonnull ICloudServiceConfig config, @Nullable SessionStore sessionStore,
+                  @Nonnull ICloudServicePool pool)
+    {
+        this.clientId = clientId;
+        this.config = config;
+        this.sessionStore = sessionStore;
+        this.pool = pool;
+
+        cookieStore = sessionTokens.getCookieStore();
+        hostConnectionLimits = pool.getHostConnectionLimits();
+        connectionManager = pool.getConnectionManager();
+        concurrencyLimiter = pool.getConcurrencyLimiter();
+        httpClient = pool.newAccountClient(cookieStore, this::settleRestoredSession);
+
+        idmsaService = new IdmsaService(this);
+        retryingReader = new RetryingReader(this, config.getRetryPolicy());
+        sessionKeepAlive = createSessionKeepAlive();
+        restoreSavedSession();
+    }
+
+    /**
+     * Creates the session keep-alive if it is enabled in the configuration.
+     *
+     * @return the keep-alive, or {@code null} if it is disabled.
+     */
+    @Nullable
+    private SessionKeepAlive createSessionKeepAlive()
+    {
+        TimeValue interval = config.getSessionKeepAliveInterval();
+        return interval != null
+            ? new SessionKeepAlive(this, interval, config.getSessionExpiryMargin(), sessionListeners)
+            : null;
+    }
 
-                this.httpClient = clientBuilder.build();
+    /**
+     * Restores the saved session if a store is configured, logging rather than throwing on failure.
+     */
+    private void restoreSavedSession()
+    {
+        if (sessionStore != null)
+        {
+            try
+            {
+                restoreSession();
             }
-            catch (Exception e)
+            catch (RuntimeException e)
             {
-                throw new RuntimeException(e);
+                // An unreadable session only costs a login
+                logger.warn("Failed to restore the saved iCloud session", e);
             }
         }
+    }
 
-        idmsaService = new IdmsaService(this);
+    /**
+     * Creates the pooled connection manager for the classic client.
+     *
+     * @param config the transport configuration.
+     * @return the connection manager.
+     */
+    static PoolingHttpClientConnectionManager createConnectionManager(ICloudServiceConfig config)
+    {
+        PoolingHttpClientConnectionManagerBuilder connectionManagerBuilder =
+            PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(config.getMaxConnectionsTotal())
+                .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(createConnectionConfig(config));
+
+        // Handle optional SSL checks
+        if (DISABLE_SSL_CHECKS)
+        {
+            connectionManagerBuilder.setTlsSocketStrategy(createTrustAllTlsStrategy().buildClassic());
+        }
+
+        return connectionManagerBuilder.build();
+    }
+
+    /**
+     * Creates the pooled connection manager for an async client. It has the same limits as the classic one, but its
+     * own connections.
+     *
+     * @param config the transport configuration.
+     * @return the connection manager.
+     */
+    static PoolingAsyncClientConnectionManager createAsyncConnectionManager(ICloudServiceConfig config)
+    {
+        PoolingAsyncClientConnectionManagerBuilder connectionManagerBuilder =
+            PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(config.getMaxConnectionsTotal())
+                .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(createConnectionConfig(config));
+
+        // Handle optional SSL checks
+        if (DISABLE_SSL_CHECKS)
+        {
+            connectionManagerBuilder.setTlsStrategy(createTrustAllTlsStrategy().buildAsync());
+        }
+
+        return connectionManagerBuilder.build();
+    }
+
+    /**
+     * Creates the connection settings shared by the classic and async connection managers.
+     *
+     * @param config the transport configuration.
+     * @return the connection settings.
+     */
+    private static ConnectionConfig createConnectionConfig(ICloudServiceConfig config)
+    {
+        return ConnectionConfig.custom()
+            .setConnectTimeout(config.getConnectTimeout())
+            .setSocketTimeout(config.getSocketTimeout())
+            .setValidateAfterInactivity(config.getValidateAfterInactivity())
+            .build();
+    }
+
+    /**
+     * Creates a TLS strategy that trusts every certificate, for when SSL checks are disabled.
+     *
+     * @return the TLS strategy builder.
+     */
+    private static ClientTlsStrategyBuilder createTrustAllTlsStrategy()
+    {
+        try
+        {
+            SSLContext sslContext = SSLContextBuilder.create()
+                .loadTrustMaterial(null, (chain, authType) -> true) // trust all
+                .build();
+
+            return ClientTlsStrategyBuilder.create()
+                //.setHostnameVerifier(NoopHostnameVerifier.INSTANCE) // for debugging only
+                .setSslContext(sslContext);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates the HTTP client on top of the pooled connection manager.
+     *
+     * @param config                the transport configuration.
+     * @param cookieStore           the cookie store, or {@code null} if each request brings its own.
+     * @param connectionManager     the connection manager.
+     * @param routeConnectionLimits the per-host connection limits.
+     * @param concurrencyLimiter    the adaptive per-host request limits, or {@code null} if disabled.
+     * @param sessionCheck          validates a restored session against the final response to each request, or
+     *                              {@code null} if the client is shared by several sessions.
+     * @return the HTTP client.
+     */
+    static CloseableHttpClient createHttpClient(ICloudServiceConfig config, @Nullable CookieStore cookieStore,
+                                                PoolingHttpClientConnectionManager connectionManager,
+                                                RouteConnectionLimits routeConnectionLimits,
+                                                @Nullable AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                                @Nullable ExecChainHandler sessionCheck)
+    {
+        HttpClientBuilder clientBuilder = HttpClients.custom()
+            .setDefaultCookieStore(cookieStore)
+            .setConnectionManager(connectionManager)
+            .addExecInterceptorFirst("icloud4j-route-limits", routeConnectionLimits)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setResponseTimeout(config.getResponseTimeout())
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+                .setConnectionKeepAlive(config.getKeepAlive())
+                .build());
+
+        if (sessionCheck != null)
+        {
+            clientBuilder.addExecInterceptorFirst("icloud4j-session-check", sessionCheck);
+        }
+
+        if (concurrencyLimiter != null)
+        {
+            // Inside the retry handling, so that each attempt is limited and measured
+            clientBuilder.addExecInterceptorBefore(ChainElement.PROTOCOL.name(), "icloud4j-adaptive-concurrency",
+                concurrencyLimiter);
+        }
+
+        if (config.getKeepAliveStrategy() != null)
+        {
+            clientBuilder.setKeepAliveStrategy(config.getKeepAliveStrategy());
+        }
+
+        if (config.getEvictIdleConnections() != null)
+        {
+            clientBuilder.evictIdleConnections(config.getEvictIdleConnections());
+        }
+
+        if (config.isEvictExpiredConnections())
+        {
+            clientBuilder.evictExpiredConnections();
+        }
+
+        // Handle proxy if defined
+        if (!Strings.isNullOrEmpty(PROXY_HOST) && PROXY_PORT != null)
+        {
+            clientBuilder.setProxy(new HttpHost(PROXY_HOST, PROXY_PORT));
+        }
+
+        return clientBuilder.build();
+    }
+
+    /**
+     * Creates and starts the async HTTP client for this service: its own client sharing the cookie store and transport
+     * configuration of the classic client, or a view of the pool's shared async client for an account of a pool.
+     *
+     * @return the async HTTP client.
+     */
+    private CloseableHttpAsyncClient createAsyncHttpClient()
+    {
+        return pool != null
+            ? pool.newAccountAsyncClient(httpClient)
+            : createAsyncHttpClient(config, cookieStore, hostConnectionLimits, concurrencyLimiter,
+                new SessionCheck(this::settleRestoredSession));
+    }
+
+    /**
+     * Creates and starts an async HTTP client with its own connection pool, configured like the classic one. The
+     * connection limits apply to each pool separately, so a host may see up to twice as many connections.
+     *
+     * @param config               the transport configuration.
+     * @param cookieStore          the cookie store, or {@code null} if each request brings its own.
+     * @param hostConnectionLimits the per-host connection limits shared with the classic client.
+     * @param concurrencyLimiter   the adaptive per-host request limits, or {@code null} if disabled.
+     * @param sessionCheck         validates a restored session against the final response to each request.
+     * @return the async HTTP client.
+     */
+    static CloseableHttpAsyncClient createAsyncHttpClient(ICloudServiceConfig config, @Nullable CookieStore cookieStore,
+                                                          Map<String, Integer> hostConnectionLimits,
+                                                          @Nullable AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                                          SessionCheck sessionCheck)
+    {
+        PoolingAsyncClientConnectionManager asyncConnectionManager = createAsyncConnectionManager(config);
+
+        HttpAsyncClientBuilder clientBuilder = HttpAsyncClients.custom()
+            .setDefaultCookieStore(cookieStore)
+            .setConnectionManager(asyncConnectionManager)
+            .addExecInterceptorFirst("icloud4j-route-limits",
+                new RouteConnectionLimits(asyncConnectionManager, hostConnectionLimits))
+            .addExecInterceptorFirst("icloud4j-session-check", sessionCheck)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setResponseTimeout(config.getResponseTimeout())
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+                .setConnectionKeepAlive(config.getKeepAlive())
+                .build());
+
+        if (concurrencyLimiter != null)
+        {
+            // Shares the classic client's limits, so a crawl through either client backs off together
+            clientBuilder.addExecInterceptorBefore(ChainElement.PROTOCOL.name(), "icloud4j-adaptive-concurrency",
+                concurrencyLimiter);
+        }
+
+        if (config.getKeepAliveStrategy() != null)
+        {
+            clientBuilder.setKeepAliveStrategy(config.getKeepAliveStrategy());
+        }
+
+        if (config.getEvictIdleConnections() != null)
+        {
+            clientBuilder.evictIdleConnections(config.getEvictIdleConnections());
+        }
+
+        if (config.isEvictExpiredConnections())
+        {
+            clientBuilder.evictExpiredConnections();
+        }
+
+        // Handle proxy if defined
+        if (!Strings.isNullOrEmpty(PROXY_HOST) && PROXY_PORT != null)
+        {
+            clientBuilder.setProxy(new HttpHost(PROXY_HOST, PROXY_PORT));
+        }
+
+        CloseableHttpAsyncClient client = clientBuilder.build();
+        client.start();
+        return client;
     }
 
     /**
@@ -201,12 +639,12 @@ public class ICloudService implements java.io.Closeable
     {
         try
         {
-            URIBuilder uriBuilder = new URIBuilder(setupEndPoint + "/login");
+            URIBuilder uriBuilder = new URIBuilder(config.getSetupEndPoint() + "/login");
             populateUriParameters(uriBuilder);
             URI uri = uriBuilder.build();
 
             HttpPost post = new HttpPost(uri);
-            post.setEntity(new StringEntity(new Gson().toJson(params), StandardCharsets.UTF_8));
+            post.setEntity(new StringEntity(JsonCodecs.gson().toJson(params), StandardCharsets.UTF_8));
             populateRequestHeadersParameters(post);
 
             Map<String, Object> result = httpClient.execute(post, new JsonToMapResponseHandler());
@@ -220,180 +658,817 @@ public class ICloudService implements java.io.Closeable
                 throw new RuntimeException("Failed to log into iCloud: " + result.get("error"));
             }
 
-            loginInfo = result;
+            loginInfo = result;
+
+            // Grab the session ID
+            Map<String, Object> dsInfoMap = (Map<String, Object>) result.get("dsInfo");
+            sessionTokens.setDsid((String) dsInfoMap.get("dsid"));
+            services = new ServiceRegistry(this);
+
+            applyServiceConnectionLimits();
+
+            sessionState = SessionState.VALID;
+            persistSession();
+            scheduleSessionRefresh();
+
+            return loginInfo;
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Gets the iCloud Drive service of the current login, creating it on first use. The same instance is returned
+     * until the next login.
+     *
+     * @return the service.
+     * @throws IllegalStateException if not logged in.
+     */
+    public DriveService drive()
+    {
+        return getServices().drive();
+    }
+
+    /**
+     * Gets the photos service of the current login, creating it on first use. Creating it fetches the photos sync
+     * token; see {@link #warmUp(Set)} to do this ahead of time. The same instance is returned until the next login.
+     *
+     * @return the service.
+     * @throws IllegalStateException if not logged in.
+     */
+    public PhotosService photos()
+    {
+        return getServices().photos();
+    }
+
+    /**
+     * Gets the ubiquity service of the current login, creating it on first use. The same instance is returned until the
+     * next login.
+     *
+     * @return the service.
+     * @throws IllegalStateException if not logged in.
+     */
+    public UbiquityService ubiquity()
+    {
+        return getServices().ubiquity();
+    }
+
+    /**
+     * Gets the find my iPhone service of the current login, creating it on first use. The same instance is returned
+     * until the next login.
+     *
+     * @return the service.
+     * @throws IllegalStateException if not logged in.
+     */
+    public FindMyIPhoneService findMyIPhone()
+    {
+        return getServices().findMyIPhone();
+    }
+
+    /**
+     * Gets the services of the current login.
+     *
+     * @return the services.
+     * @throws IllegalStateException if not logged in.
+     */
+    private ServiceRegistry getServices()
+    {
+        if (loginInfo == null)
+        {
+            throw new IllegalStateException("Not logged in");
+        }
+        return services;
+    }
+
+    /**
+     * Prepares the given services for their first request, so that its latency is that of the request alone. Each
+     * service is created, which for the photos service fetches the sync token, and a pooled connection is opened to
+     * each of its hosts, so that DNS resolution and the TLS handshake are done ahead of time. This is all done at once
+     * on a small pool of I/O threads shared by every service, since each task blocks on the network. Hosts that
+     * already have a pooled connection are skipped, and no connections are opened with an HTTP client supplied by the
+     * caller or through a proxy.
+     *
+     * @param kinds the services to prepare.
+     * @return a future completed once every service is ready, or completed exceptionally if any failed.
+     * @throws IllegalStateException if not logged in.
+     */
+    public CompletableFuture<Void> warmUp(@Nonnull Set<ServiceKind> kinds)
+    {
+        return warmUp(kinds, WARM_UP_EXECUTOR);
+    }
+
+    /**
+     * Prepares the given services for their first request, running the blocking work on the given executor. See
+     * {@link #warmUp(Set)}.
+     *
+     * @param kinds    the services to prepare.
+     * @param executor the executor for the blocking work, which should allow blocking threads.
+     * @return a future completed once every service is ready, or completed exceptionally if any failed.
+     * @throws IllegalStateException if not logged in.
+     */
+    public CompletableFuture<Void> warmUp(@Nonnull Set<ServiceKind> kinds, @Nonnull Executor executor)
+    {
+        ServiceRegistry registry = getServices();
+        Map<String, Object> webServices = getWebServicesMap();
+
+        List<CompletableFuture<?>> tasks = new ArrayList<>();
+        for (ServiceKind kind : kinds)
+        {
+            tasks.add(CompletableFuture.runAsync(() -> registry.get(kind), executor));
+            for (String webService : kind.getWebServices())
+            {
+                Map<String, Object> serviceSettings = (Map<String, Object>) webServices.get(webService);
+                if (serviceSettings != null && serviceSettings.get("url") != null)
+                {
+                    URI uri = URI.create((String) serviceSettings.get("url"));
+                    tasks.add(CompletableFuture.runAsync(() -> preconnect(uri), executor));
+                }
+            }
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Creates the executor running the warm-up tasks of every service by default.
+     *
+     * @return the executor.
+     */
+    private static ThreadPoolExecutor createWarmUpExecutor()
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_WARM_UP_THREADS, MAX_WARM_UP_THREADS,
+            1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                .setNameFormat("icloud4j-warm-up-%d")
+                .setDaemon(true)
+                .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Opens a pooled connection to the host of the given URI, unless the pool already has one for it.
+     *
+     * @param uri the URI.
+     */
+    private void preconnect(URI uri)
+    {
+        if (connectionManager == null || (!Strings.isNullOrEmpty(PROXY_HOST) && PROXY_PORT != null))
+        {
+            return;
+        }
+
+        HttpHost target = RoutingSupport.normalize(HttpHost.create(uri), DefaultSchemePortResolver.INSTANCE);
+        HttpRoute route = new HttpRoute(target, null, URIScheme.HTTPS.same(target.getSchemeName()));
+        PoolStats stats = connectionManager.getStats(route);
+        if (stats.getAvailable() + stats.getLeased() > 0)
+        {
+            return;
+        }
+
+        try
+        {
+            LeaseRequest leaseRequest = connectionManager.lease("warm-up", route,
+                config.getConnectionRequestTimeout(), null);
+            ConnectionEndpoint endpoint = leaseRequest.get(config.getConnectionRequestTimeout());
+            try
+            {
+                if (!endpoint.isConnected())
+                {
+                    connectionManager.connect(endpoint, config.getConnectTimeout(), HttpClientContext.create());
+                }
+                connectionManager.release(endpoint, null, config.getKeepAlive());
+            }
+            catch (IOException | RuntimeException e)
+            {
+                connectionManager.release(endpoint, null, TimeValue.ZERO_MILLISECONDS);
+                throw e;
+            }
+            logger.debug("Opened a connection to {} ahead of the first request", target);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException("Failed to connect to " + target, e);
+        }
+    }
+
+    /**
+     * Checks whether two-factor authentication is enabled for this account.
+     *
+     * @return {@code true} if two-factor authentication is enabled.
+     */
+    public boolean isTwoFactorEnabled()
+    {
+        return Boolean.TRUE.equals(loginInfo.get("hsaChallengeRequired"));
+    }
+
+    /**
+     * Gets the trusted two-factor authentication devices for the current account.
+     *
+     * @return the list of trusted devices.
+     */
+    public List<TrustedDevice> getTrustedDevices()
+    {
+        try
+        {
+            URIBuilder uriBuilder = new URIBuilder(config.getSetupEndPoint() + "/listDevices");
+            populateUriParameters(uriBuilder);
+            URI uri = uriBuilder.build();
+
+            HttpGet httpGet = new HttpGet(uri);
+            populateRequestHeadersParameters(httpGet);
+
+            TrustedDevices trustedDevices = ICloudUtils.parseJsonResponse(httpClient, httpGet, TrustedDevices.class);
+            if (trustedDevices == null)
+            {
+                throw new RuntimeException("Failed to get trusted devices");
+            }
+
+            return Arrays.asList(trustedDevices.devices);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * <p>Requests that a two-factor verification code be sent to the given trusted device. The value sent to the device
+     * should be submitted to {@link #validateManualVerificationCode(TrustedDevice, String, char[])} for verification.</p>
+     *
+     * <p>Note: newer devices will automatically display a verification code without manually requesting one, and that
+     * must be submitted via {@link }.</p>
+     *
+     * @param device the device to send the verification code to.
+     */
+    public void sendManualVerificationCode(TrustedDevice device)
+    {
+        try
+        {
+            URIBuilder uriBuilder = new URIBuilder(config.getSetupEndPoint() + "/sendVerificationCode");
+            populateUriParameters(uriBuilder);
+            URI uri = uriBuilder.build();
+
+            HttpPost post = new HttpPost(uri);
+            post.setEntity(new StringEntity(JsonCodecs.gson().toJson(device), StandardCharsets.UTF_8));
+            populateRequestHeadersParameters(post);
+
+            Map<String, Object> response = httpClient.execute(post, new JsonToMapResponseHandler());
+
+            if (!Boolean.TRUE.equals(response.get("success")))
+            {
+                throw new IllegalStateException("Failed to send verification code: " + response.get("errorMessage"));
+            }
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Validates the manually requested verification code. See {@link #sendManualVerificationCode(TrustedDevice)}.
+     *
+     * @param device   the device the code was sent to.
+     * @param code     the code.
+     * @param password the user's password.
+     */
+    public void validateManualVerificationCode(TrustedDevice device, String code, char[] password)
+    {
+        try
+        {
+            URIBuilder uriBuilder = new URIBuilder(config.getSetupEndPoint() + "/validateManualVerificationCode");
+            populateUriParameters(uriBuilder);
+            URI uri = uriBuilder.build();
+
+            TrustedDeviceResponse responseDevice = new TrustedDeviceResponse();
+            responseDevice.areaCode = device.areaCode;
+            responseDevice.deviceType = device.deviceType;
+            responseDevice.deviceId = device.deviceId;
+            responseDevice.phoneNumber = device.phoneNumber;
+            responseDevice.verificationCode = code;
+            responseDevice.trustBrowser = true;
+
+            HttpPost post = new HttpPost(uri);
+            post.setEntity(new StringEntity(JsonCodecs.gson().toJson(responseDevice), StandardCharsets.UTF_8));
+            populateRequestHeadersParameters(post);
+
+            Map<String, Object> response = httpClient.execute(post, new JsonToMapResponseHandler());
+
+            if (!Boolean.TRUE.equals(response.get("success")))
+            {
+                if (Double.valueOf(-21669.0).equals(response.get("errorCode")))
+                {
+                    throw new RuntimeException("Invalid verification code");
+                } else
+                {
+                    throw new IllegalStateException("Failed to verify code: " + response.get("errorMessage"));
+                }
+            }
+
+            // Re-authenticate, which will both update the two-factor authentication data, and ensure that we save the
+            // X-APPLE-WEBAUTH-HSA-TRUST cookie
+            Map<String, Object> dsInfo = (Map<String, Object>) loginInfo.get("dsInfo");
+            authenticate((String) dsInfo.get("appleId"), password);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Gets the iCloud storage usage.
+     *
+     * @return the map of storage usage details.
+     */
+    public Map<String, Object> getStorageUsage()
+    {
+        try
+        {
+            HttpPost post = new HttpPost(getStorageUsageUri());
+            populateRequestHeadersParameters(post);
+
+            Map<String, Object> result = httpClient.execute(post, new JsonToMapResponseHandler());
+            return checkStorageUsageResult(result);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Gets the iCloud storage usage without blocking the calling thread.
+     *
+     * @return a future for the map of storage usage details.
+     */
+    public CompletableFuture<Map<String, Object>> getStorageUsageAsync()
+    {
+        SimpleHttpRequest post;
+        try
+        {
+            post = SimpleRequestBuilder.post(getStorageUsageUri()).build();
+        }
+        catch (URISyntaxException e)
+        {
+            return ICloudUtils.failedFuture(e);
+        }
+        populateRequestHeadersParameters(post);
+
+        return ICloudUtils
+            .<Map<String, Object>>parseJsonResponseAsync(getAsyncHttpClient(), post, JSON_MAP_TYPE, config.getAsyncExecutor())
+            .thenApply(this::checkStorageUsageResult);
+    }
+
+    /**
+     * Builds the storage usage URI.
+     *
+     * @return the URI.
+     * @throws URISyntaxException if the URI is invalid.
+     */
+    private URI getStorageUsageUri() throws URISyntaxException
+    {
+        URIBuilder uriBuilder = new URIBuilder(config.getSetupEndPoint() + "/storageUsageInfo");
+        populateUriParameters(uriBuilder);
+        return uriBuilder.build();
+    }
+
+    /**
+     * Checks the storage usage result for errors.
+     *
+     * @param result the result.
+     * @return the result.
+     */
+    private Map<String, Object> checkStorageUsageResult(Map<String, Object> result)
+    {
+        if (result == null)
+        {
+            throw new RuntimeException("Failed to get storage usage info");
+        }
+
+        if (Boolean.FALSE.equals(result.get("success")))
+        {
+            throw new RuntimeException("Failed to get storage usage info: " + result.get("error"));
+        }
+
+        return result;
+    }
+
+    /**
+     * Applies the per-service connection limits now that the web service hosts are known.
+     */
+    private void applyServiceConnectionLimits()
+    {
+        Map<String, Object> webServices = getWebServicesMap();
+        if (webServices == null)
+        {
+            return;
+        }
+
+        config.getMaxConnectionsPerService().forEach((serviceName, maxConnections) -> {
+            Map<String, Object> serviceSettings = (Map<String, Object>) webServices.get(serviceName);
+            if (serviceSettings != null && serviceSettings.get("url") != null)
+            {
+                String host = URI.create((String) serviceSettings.get("url")).getHost();
+                if (host != null)
+                {
+                    hostConnectionLimits.put(host.toLowerCase(Locale.ROOT), maxConnections);
+                }
+            }
+        });
+    }
+
+    /**
+     * Restores the session saved in the configured {@link SessionStore}, without any request. The session is validated
+     * by the first request that uses it: {@link #getSessionState()} then becomes {@link SessionState#VALID}, or
+     * {@link SessionState#EXPIRED} if iCloud rejects it. This is done when the service is created, so is only needed to
+     * pick up a session saved by another process since. With an HTTP client supplied by the caller, the session is not
+     * checked and stays {@link SessionState#RESTORED}.
+     *
+     * @return {@code true} if a session for this client ID was restored.
+     * @throws UncheckedIOException if the saved session can't be read.
+     */
+    public boolean restoreSession()
+    {
+        if (sessionStore == null)
+        {
+            return false;
+        }
+
+        SessionSnapshot snapshot;
+        try
+        {
+            snapshot = sessionStore.load();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        if (snapshot == null || !clientId.equals(snapshot.getClientId()))
+        {
+            return false;
+        }
+
+        cookieStore.clear();
+        snapshot.getCookies(Instant.now()).forEach(cookieStore::addCookie);
+        idmsaService.restore(snapshot);
+
+        Map<String, Object> restoredLoginInfo = new LinkedHashMap<>(snapshot.getLoginInfo());
+        loginInfo = restoredLoginInfo;
+        Map<String, Object> dsInfoMap = (Map<String, Object>) restoredLoginInfo.get("dsInfo");
+        sessionTokens.setDsid(dsInfoMap != null ? (String) dsInfoMap.get("dsid") : null);
+        services = new ServiceRegistry(this);
+        applyServiceConnectionLimits();
+
+        sessionState = SessionState.RESTORED;
+        logger.debug("Restored the iCloud session saved at {}", snapshot.getSavedAt());
+        scheduleSessionRefresh();
+        return true;
+    }
+
+    /**
+     * Re-validates the session with iCloud, which extends the session cookies, and swaps in the returned login info.
+     * Requests in flight carry on with the cookies they were sent with, and every service sees the refreshed cookies
+     * on its next request. This is done in the background when the session keep-alive is enabled; see
+     * {@link ICloudServiceConfig.Builder#sessionKeepAlive(TimeValue, TimeValue)}. If iCloud rejects the session,
+     * {@link #getSessionState()} becomes {@link SessionState#EXPIRED} and a new login is needed.
+     *
+     * @throws IllegalStateException if not logged in.
+     * @throws ICloudException       if iCloud rejects the request.
+     */
+    public void refreshSession()
+    {
+        Map<String, Object> currentLoginInfo = loginInfo;
+        if (currentLoginInfo == null)
+        {
+            throw new IllegalStateException("Not logged in");
+        }
+
+        Map<String, Object> result;
+        try
+        {
+            URIBuilder uriBuilder = new URIBuilder(config.getSetupEndPoint() + "/validate");
+            populateUriParameters(uriBuilder);
+            URI uri = uriBuilder.build();
+
+            HttpPost post = new HttpPost(uri);
+            populateRequestHeadersParameters(post);
+
+            result = httpClient.execute(post, response -> {
+                Map<String, Object> map = new JsonToMapResponseHandler().handleResponse(response);
+                if (response.getCode() >= HttpStatus.SC_REDIRECTION)
+                {
+                    throw new ICloudException(response, map != null ? map : Collections.emptyMap());
+                }
+                return map;
+            });
+        }
+        catch (ICloudException e)
+        {
+            int status = e.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_UNAUTHORIZED || status == SC_MISDIRECTED_REQUEST)
+            {
+                sessionState = SessionState.EXPIRED;
+                logger.info("The iCloud session has expired, a new login is needed");
+            }
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+
+        if (result == null || Boolean.FALSE.equals(result.get("success")))
+        {
+            throw new RuntimeException("Failed to refresh the iCloud session: "
+                + (result != null ? result.get("error") : null));
+        }
+
+        Map<String, Object> dsInfoMap = (Map<String, Object>) result.get("dsInfo");
+        if (dsInfoMap == null || !Objects.equals(dsInfoMap.get("dsid"), sessionTokens.getDsid()))
+        {
+            throw new RuntimeException("The refreshed iCloud session is for a different account");
+        }
+
+        // Keeps anything only returned by login
+        Map<String, Object> refreshedLoginInfo = new LinkedHashMap<>(currentLoginInfo);
+        refreshedLoginInfo.putAll(result);
+        loginInfo = refreshedLoginInfo;
+        applyServiceConnectionLimits();
 
-            // Grab the session ID
-            Map<String, Object> dsInfoMap = (Map<String, Object>) result.get("dsInfo");
-            dsid = (String) dsInfoMap.get("dsid");
+        sessionState = SessionState.VALID;
+        persistSession();
+    }
 
-            return loginInfo;
-        }
-        catch (Exception e)
+    /**
+     * Schedules the next background refresh of the session, if the keep-alive is enabled.
+     */
+    private void scheduleSessionRefresh()
+    {
+        if (sessionKeepAlive != null)
         {
-            throw new RuntimeException(e);
+            logger.debug("Next iCloud session refresh at {}", sessionKeepAlive.schedule());
         }
     }
 
     /**
-     * Checks whether two-factor authentication is enabled for this account.
+     * Saves the session to the configured {@link SessionStore}. This is done after each login and when the service is
+     * closed, so is only needed to save refreshed cookies sooner, e.g. before a long idle period.
      *
-     * @return {@code true} if two-factor authentication is enabled.
+     * @throws UncheckedIOException if the session can't be written.
      */
-    public boolean isTwoFactorEnabled()
+    public void saveSession()
     {
-        return Boolean.TRUE.equals(loginInfo.get("hsaChallengeRequired"));
+        Map<String, Object> currentLoginInfo = loginInfo;
+        if (sessionStore == null || currentLoginInfo == null)
+        {
+            return;
+        }
+
+        SessionSnapshot snapshot = new SessionSnapshot(clientId, Instant.now(), currentLoginInfo,
+            cookieStore.getCookies(), idmsaService.getAppleIdSessionId(), idmsaService.getScnt(),
+            idmsaService.getAuthToken(), idmsaService.getTrustToken());
+        try
+        {
+            sessionStore.save(snapshot);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
-     * Gets the trusted two-factor authentication devices for the current account.
-     *
-     * @return the list of trusted devices.
+     * Saves the session if a store is configured, logging rather than throwing on failure, as the session itself is
+     * still usable.
      */
-    public List<TrustedDevice> getTrustedDevices()
+    private void persistSession()
     {
         try
         {
-            URIBuilder uriBuilder = new URIBuilder(setupEndPoint + "/listDevices");
-            populateUriParameters(uriBuilder);
-            URI uri = uriBuilder.build();
-
-            HttpGet httpGet = new HttpGet(uri);
-            populateRequestHeadersParameters(httpGet);
-
-            String result = httpClient.execute(httpGet, new StringResponseHandler());
-            if (result == null)
-            {
-                throw new RuntimeException("Failed to get trusted devices");
-            }
-
-            TrustedDevices trustedDevices = new Gson().fromJson(result, TrustedDevices.class);
-
-            return Arrays.asList(trustedDevices.devices);
+            saveSession();
         }
-        catch (Exception e)
+        catch (RuntimeException e)
         {
-            throw new RuntimeException(e);
+            logger.warn("Failed to save the iCloud session", e);
         }
     }
 
     /**
-     * <p>Requests that a two-factor verification code be sent to the given trusted device. The value sent to the device
-     * should be submitted to {@link #validateManualVerificationCode(TrustedDevice, String, char[])} for verification.</p>
+     * Gets the state of the session.
      *
-     * <p>Note: newer devices will automatically display a verification code without manually requesting one, and that
-     * must be submitted via {@link }.</p>
+     * @return the state.
+     */
+    public SessionState getSessionState()
+    {
+        return sessionState;
+    }
+
+    /**
+     * Settles a restored session from the response to a request sent with it: a success shows it is still valid,
+     * while '401 Unauthorized' or '421 Misdirected Request' shows it has expired. Responses from 'idmsa' are ignored,
+     * as its requests don't use the iCloud session.
      *
-     * @param device the device to send the verification code to.
+     * @param host   the host name the request was sent to.
+     * @param status the response status code.
      */
-    public void sendManualVerificationCode(TrustedDevice device)
+    private void settleRestoredSession(String host, int status)
     {
-        try
+        if (sessionState == SessionState.RESTORED && !IDMSA_HOST.equalsIgnoreCase(host))
         {
-            URIBuilder uriBuilder = new URIBuilder(setupEndPoint + "/sendVerificationCode");
-            populateUriParameters(uriBuilder);
-            URI uri = uriBuilder.build();
-
-            HttpPost post = new HttpPost(uri);
-            post.setEntity(new StringEntity(new Gson().toJson(device), StandardCharsets.UTF_8));
-            populateRequestHeadersParameters(post);
-
-            Map<String, Object> response = httpClient.execute(post, new JsonToMapResponseHandler());
-
-            if (!Boolean.TRUE.equals(response.get("success")))
+            if (status == HttpStatus.SC_UNAUTHORIZED || status == SC_MISDIRECTED_REQUEST)
             {
-                throw new IllegalStateException("Failed to send verification code: " + response.get("errorMessage"));
+                sessionState = SessionState.EXPIRED;
+                logger.info("The restored iCloud session has expired, a new login is needed");
+            } else if (status < HttpStatus.SC_REDIRECTION)
+            {
+                sessionState = SessionState.VALID;
             }
         }
-        catch (Exception e)
+    }
+
+    /**
+     * Gets the connection pool statistics of the classic client across all routes.
+     *
+     * @return the statistics, or {@code null} if the HTTP client was supplied by the caller.
+     */
+    @Nullable
+    public PoolStats getPoolStats()
+    {
+        return connectionManager != null ? connectionManager.getTotalStats() : null;
+    }
+
+    /**
+     * Gets the connection pool statistics for each route in use, keyed by target host, e.g.
+     * "https://p12-docws.icloud.com:443".
+     *
+     * @return the statistics, empty if the HTTP client was supplied by the caller.
+     */
+    public Map<String, PoolStats> getRoutePoolStats()
+    {
+        Map<String, PoolStats> routeStats = new LinkedHashMap<>();
+        if (connectionManager != null)
         {
-            throw new RuntimeException(e);
+            connectionManager.getRoutes().forEach(route ->
+                routeStats.merge(route.getTargetHost().toURI(), connectionManager.getStats(route), ICloudService::sumPoolStats));
         }
+        return routeStats;
     }
 
     /**
-     * Validates the manually requested verification code. See {@link #sendManualVerificationCode(TrustedDevice)}.
+     * Sums two pool statistics.
      *
-     * @param device   the device the code was sent to.
-     * @param code     the code.
-     * @param password the user's password.
+     * @param a the first statistics.
+     * @param b the second statistics.
+     * @return the sum.
      */
-    public void validateManualVerificationCode(TrustedDevice device, String code, char[] password)
+    private static PoolStats sumPoolStats(PoolStats a, PoolStats b)
     {
-        try
-        {
-            URIBuilder uriBuilder = new URIBuilder(setupEndPoint + "/validateManualVerificationCode");
-            populateUriParameters(uriBuilder);
-            URI uri = uriBuilder.build();
+        return new PoolStats(a.getLeased() + b.getLeased(), a.getPending() + b.getPending(),
+            a.getAvailable() + b.getAvailable(), a.getMax() + b.getMax());
+    }
 
-            TrustedDeviceResponse responseDevice = new TrustedDeviceResponse();
-            responseDevice.areaCode = device.areaCode;
-            responseDevice.deviceType = device.deviceType;
-            responseDevice.deviceId = device.deviceId;
-            responseDevice.phoneNumber = device.phoneNumber;
-            responseDevice.verificationCode = code;
-            responseDevice.trustBrowser = true;
+    /**
+     * Gets the transport configuration.
+     *
+     * @return the configuration.
+     */
+    public ICloudServiceConfig getConfig()
+    {
+        return config;
+    }
 
-            HttpPost post = new HttpPost(uri);
-            post.setEntity(new StringEntity(new Gson().toJson(responseDevice), StandardCharsets.UTF_8));
-            populateRequestHeadersParameters(post);
+    /**
+     * Adds a listener notified of every file download and upload made through this service, in addition to any
+     * listener given for a single transfer.
+     *
+     * @param listener the listener.
+     */
+    public void addTransferListener(@Nonnull TransferListener listener)
+    {
+        transferListeners.add(Objects.requireNonNull(listener, "listener"));
+    }
 
-            Map<String, Object> response = httpClient.execute(post, new JsonToMapResponseHandler());
+    /**
+     * Removes a listener added with {@link #addTransferListener(TransferListener)}. Transfers already in progress keep
+     * notifying it until they finish.
+     *
+     * @param listener the listener.
+     */
+    public void removeTransferListener(@Nonnull TransferListener listener)
+    {
+        transferListeners.remove(listener);
+    }
 
-            if (!Boolean.TRUE.equals(response.get("success")))
-            {
-                if (Double.valueOf(-21669.0).equals(response.get("errorCode")))
-                {
-                    throw new RuntimeException("Invalid verification code");
-                } else
-                {
-                    throw new IllegalStateException("Failed to verify code: " + response.get("errorMessage"));
-                }
-            }
+    /**
+     * Adds a listener notified of each background session refresh.
+     *
+     * @param listener the listener.
+     * @see ICloudServiceConfig.Builder#sessionKeepAlive(TimeValue, TimeValue)
+     */
+    public void addSessionListener(@Nonnull SessionListener listener)
+    {
+        sessionListeners.add(Objects.requireNonNull(listener, "listener"));
+    }
 
-            // Re-authenticate, which will both update the two-factor authentication data, and ensure that we save the
-            // X-APPLE-WEBAUTH-HSA-TRUST cookie
-            Map<String, Object> dsInfo = (Map<String, Object>) loginInfo.get("dsInfo");
-            authenticate((String) dsInfo.get("appleId"), password);
-        }
-        catch (Exception e)
-        {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Removes a listener added with {@link #addSessionListener(SessionListener)}.
+     *
+     * @param listener the listener.
+     */
+    public void removeSessionListener(@Nonnull SessionListener listener)
+    {
+        sessionListeners.remove(listener);
     }
 
     /**
-     * Gets the iCloud storage usage.
+     * Gets a snapshot of each file transfer in progress. A transfer whose {@link TransferProgress#getIdle()} keeps
+     * growing has stalled.
      *
-     * @return the map of storage usage details.
+     * @return the progress of the active transfers.
      */
-    public Map<String, Object> getStorageUsage()
+    public List<TransferProgress> getActiveTransfers()
     {
-        try
-        {
-            URIBuilder uriBuilder = new URIBuilder(setupEndPoint + "/storageUsageInfo");
-            populateUriParameters(uriBuilder);
-            URI uri = uriBuilder.build();
+        return activeTransfers.stream()
+            .map(TransferTracker::getProgress)
+            .collect(Collectors.toList());
+    }
 
-            HttpPost post = new HttpPost(uri);
-            populateRequestHeadersParameters(post);
+    /**
+     * Gets the current adaptive limit on requests in flight for each host a request has been sent to.
+     *
+     * @return the limits, keyed by lower-case host name, or an empty map if adaptive concurrency is disabled.
+     * @see ICloudServiceConfig.Builder#adaptiveConcurrency(int, int)
+     */
+    public Map<String, Integer> getConcurrencyLimits()
+    {
+        return concurrencyLimiter != null ? concurrencyLimiter.getLimits() : Collections.emptyMap();
+    }
 
-            Map<String, Object> result = httpClient.execute(post, new JsonToMapResponseHandler());
-            if (result == null)
-            {
-                throw new RuntimeException("Failed to get storage usage info");
-            }
+    /**
+     * Reads a JSON response from an idempotent request, retrying and hedging it as the configured
+     * {@link RetryPolicy} allows.
+     *
+     * @param operation    the kind of read, e.g. "retrieveItemDetailsInFolders"; hedging latencies are tracked per kind.
+     * @param request      builds the request for each attempt, with its headers populated.
+     * @param responseType the response type.
+     * @return the parsed response, or {@code null} if the response has no body.
+     */
+    <T> T readJson(String operation, Supplier<? extends HttpUriRequestBase> request, Type responseType)
+    {
+        return retryingReader.read(operation, request, responseType);
+    }
 
-            if (Boolean.FALSE.equals(result.get("success")))
-            {
-                throw new RuntimeException("Failed to get storage usage info: " + result.get("error"));
-            }
+    /**
+     * Reads a JSON response from an idempotent request on the async client, retrying and hedging it as the configured
+     * {@link RetryPolicy} allows.
+     *
+     * @param operation    the kind of read, e.g. "retrieveItemDetailsInFolders"; hedging latencies are tracked per kind.
+     * @param request      builds the request for each attempt, with its headers populated.
+     * @param responseType the response type.
+     * @return a future for the parsed response, or {@code null} if the response has no body.
+     */
+    <T> CompletableFuture<T> readJsonAsync(String operation, Supplier<? extends SimpleHttpRequest> request,
+                                           Type responseType)
+    {
+        return retryingReader.readAsync(operation, request, responseType);
+    }
 
-            return result;
-        }
-        catch (Exception e)
-        {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Gets the listeners notified of every file transfer.
+     *
+     * @return the listeners.
+     */
+    List<TransferListener> getTransferListeners()
+    {
+        return transferListeners;
+    }
+
+    /**
+     * Records the start of a file transfer.
+     *
+     * @param tracker the transfer.
+     */
+    void onTransferStarted(TransferTracker tracker)
+    {
+        activeTransfers.add(tracker);
+    }
+
+    /**
+     * Records the end of a file transfer.
+     *
+     * @param tracker the transfer.
+     */
+    void onTransferFinished(TransferTracker tracker)
+    {
+        activeTransfers.remove(tracker);
     }
 
     /**
@@ -427,6 +1502,31 @@ public class ICloudService implements java.io.Closeable
         return httpClient;
     }
 
+    /**
+     * Gets the async HTTP client, creating and starting it on first use. The async client has its own connection pool,
+     * configured like the classic one, and shares the cookie store. For an account of an {@link ICloudServicePool}, it
+     * sends its requests through the pool's shared async client with the account's cookies.
+     *
+     * @return the async client.
+     */
+    public CloseableHttpAsyncClient getAsyncHttpClient()
+    {
+        CloseableHttpAsyncClient client = asyncHttpClient;
+        if (client == null)
+        {
+            synchronized (this)
+            {
+                client = asyncHttpClient;
+                if (client == null)
+                {
+                    client = createAsyncHttpClient();
+                    asyncHttpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
     /**
      * Gets the cookie store.
      *
@@ -468,6 +1568,7 @@ public class ICloudService implements java.io.Closeable
             .addParameter("clientId", clientId)
             .addParameter("clientBuildNumber", "14E45");
 
+        String dsid = sessionTokens.getDsid();
         if (!Strings.isNullOrEmpty(dsid))
         {
             uriBuilder.addParameter("dsid", dsid);
@@ -481,7 +1582,17 @@ public class ICloudService implements java.io.Closeable
      */
     public String getSessionId()
     {
-        return dsid;
+        return sessionTokens.getDsid();
+    }
+
+    /**
+     * Gets the values derived from the session, which are parsed once and shared by all services and nodes.
+     *
+     * @return the session tokens.
+     */
+    public SessionTokens getSessionTokens()
+    {
+        return sessionTokens;
     }
 
     /**
@@ -490,6 +1601,16 @@ public class ICloudService implements java.io.Closeable
      * @param request the request to populate.
      */
     public void populateRequestHeadersParameters(HttpUriRequestBase request)
+    {
+        populateRequestHeadersParameters((HttpRequest) request);
+    }
+
+    /**
+     * Populates the HTTP request headers, e.g. for an async request.
+     *
+     * @param request the request to populate.
+     */
+    public void populateRequestHeadersParameters(HttpRequest request)
     {
         request.setHeader("Origin", endPoint);
         request.setHeader("Referer", endPoint + "/");
@@ -499,7 +1620,30 @@ public class ICloudService implements java.io.Closeable
     @Override
     public void close() throws IOException
     {
-        httpClient.close();
+        if (sessionKeepAlive != null)
+        {
+            sessionKeepAlive.close();
+        }
+
+        if (sessionState == SessionState.VALID)
+        {
+            // Keeps any cookies refreshed during the session
+            persistSession();
+        }
+
+        try
+        {
+            retryingReader.close();
+            httpClient.close();
+        }
+        finally
+        {
+            CloseableHttpAsyncClient client = asyncHttpClient;
+            if (client != null)
+            {
+                client.close();
+            }
+        }
     }
 
     public String getClientBuildNumber()
@@ -511,5 +1655,84 @@ public class ICloudService implements java.io.Closeable
     {
         this.clientBuildNumber = clientBuildNumber;
     }
+
+    /**
+     * The state of the session of an {@link ICloudService}.
+     */
+    public enum SessionState
+    {
+        /**
+         * Not logged in.
+         */
+        NONE,
+
+        /**
+         * Restored from a {@link SessionStore}, and not yet used. Requests can be made as if logged in.
+         */
+        RESTORED,
+
+        /**
+         * Logged in, or restored and accepted by iCloud.
+         */
+        VALID,
+
+        /**
+         * Restored, but rejected by iCloud. Log in again; the restored trust cookie and token usually let the login
+         * skip two-factor authentication.
+         */
+        EXPIRED
+    }
+
+    /**
+     * The services of an {@link ICloudService} that can be prepared with {@link #warmUp(Set)}.
+     */
+    public enum ServiceKind
+    {
+        /**
+         * The iCloud Drive service; see {@link #drive()}.
+         */
+        DRIVE("drivews", "docws"),
+
+        /**
+         * The photos service; see {@link #photos()}.
+         */
+        PHOTOS("photos"),
+
+        /**
+         * The ubiquity service; see {@link #ubiquity()}.
+         */
+        UBIQUITY("ubiquity"),
+
+        /**
+         * The find my iPhone service; see {@link #findMyIPhone()}.
+         */
+        FIND_MY_IPHONE("findme");
+
+        /**
+         * The names of the web services the service sends requests to.
+         */
+        private final List<String> webServices;
+
+        /**
+         * Creates a new kind.
+         *
+         * @param webServices the names of the web services the service sends requests to.
+         */
+        ServiceKind(String... webServices)
+        {
+            this.webServices = Collections.unmodifiableList(Arrays.asList(webServices));
+        }
+
+        /**
+         * Gets the names of the web services the service sends requests to, as keyed in
+         * {@link ICloudService#getWebServicesMap()}.
+         *
+         * @return the web service names.
+         */
+        public List<String> getWebServices()
+        {
+            return webServices;
+        }
+    }
 }
 
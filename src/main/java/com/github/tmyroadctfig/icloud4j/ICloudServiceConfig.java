@@ -0,0 +1,996 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import org.apache.hc.client5.http.ConnectionKeepAliveStrategy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The transport configuration used when an {@link ICloudService} builds its own HTTP client.
+ *
+ * <p>Instances are immutable and can be shared between services. Use {@link #builder()} to create one:</p>
+ *
+ * <pre>
+ * ICloudServiceConfig config = ICloudServiceConfig.builder()
+ *     .maxConnectionsTotal(200)
+ *     .maxConnectionsPerRoute(20)
+ *     .maxConnectionsForService("docws", 64)
+ *     .build();
+ * ICloudService iCloudService = new ICloudService("client-id", config);
+ * </pre>
+ *
+ * <p>The classic and the async client each have their own connection pool, and the connection limits apply to each
+ * pool separately: with both in use, a host may see up to twice {@link #getMaxConnectionsPerRoute()} connections. The
+ * adaptive concurrency limits, by contrast, are shared by both clients.</p>
+ */
+public class ICloudServiceConfig
+{
+    /**
+     * The default maximum number of pooled connections across all routes.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 100;
+
+    /**
+     * The default maximum number of pooled connections for a single route.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+    /**
+     * The default maximum number of nodes requested in a single iCloud Drive call.
+     */
+    public static final int DEFAULT_DRIVE_BATCH_SIZE = 50;
+
+    /**
+     * The default time after which cached iCloud Drive folder metadata expires.
+     */
+    public static final TimeValue DEFAULT_DRIVE_CACHE_EXPIRY = TimeValue.ofMinutes(5);
+
+    /**
+     * The default maximum number of resolved iCloud Drive content URLs kept for later downloads.
+     */
+    public static final long DEFAULT_CONTENT_URL_CACHE_SIZE = 10_000;
+
+    /**
+     * The default time after which a resolved iCloud Drive content URL is no longer used. Content URLs are signed and
+     * expire on the server, so this is kept well short of their lifetime.
+     */
+    public static final TimeValue DEFAULT_CONTENT_URL_CACHE_EXPIRY = TimeValue.ofMinutes(5);
+
+    /**
+     * The default maximum number of iCloud Drive content URL lookups in flight.
+     */
+    public static final int DEFAULT_CONTENT_URL_LOOKUP_CONCURRENCY = 8;
+
+    /**
+     * The default number of bytes transferred between progress reports to a {@link TransferListener}.
+     */
+    public static final long DEFAULT_TRANSFER_PROGRESS_BYTES = 1024 * 1024;
+
+    /**
+     * The default maximum time between progress reports to a {@link TransferListener} while bytes are flowing.
+     */
+    public static final TimeValue DEFAULT_TRANSFER_PROGRESS_INTERVAL = TimeValue.ofSeconds(1);
+
+    /**
+     * The default time before a session cookie expires at which the session keep-alive refreshes it.
+     */
+    public static final TimeValue DEFAULT_SESSION_EXPIRY_MARGIN = TimeValue.ofMinutes(5);
+
+    /**
+     * The default configuration.
+     */
+    private static final ICloudServiceConfig DEFAULTS = builder().build();
+
+    /**
+     * The maximum number of pooled connections across all routes.
+     */
+    private final int maxConnectionsTotal;
+
+    /**
+     * The maximum number of pooled connections for a single route.
+     */
+    private final int maxConnectionsPerRoute;
+
+    /**
+     * The per-service overrides for the maximum connections per route, keyed by web service name, e.g. "drivews".
+     */
+    private final Map<String, Integer> maxConnectionsPerService;
+
+    /**
+     * The per-host overrides for the maximum connections per route, keyed by lower-case host name.
+     */
+    private final Map<String, Integer> maxConnectionsPerHost;
+
+    /**
+     * The keep-alive duration used when the server does not send a 'Keep-Alive' header.
+     */
+    private final TimeValue keepAlive;
+
+    /**
+     * An optional custom keep-alive strategy, overriding {@link #keepAlive}.
+     */
+    private final ConnectionKeepAliveStrategy keepAliveStrategy;
+
+    /**
+     * The idle time after which pooled connections are evicted, or {@code null} to disable idle eviction.
+     */
+    private final TimeValue evictIdleConnections;
+
+    /**
+     * Whether expired connections are evicted by a background thread.
+     */
+    private final boolean evictExpiredConnections;
+
+    /**
+     * The connect timeout.
+     */
+    private final Timeout connectTimeout;
+
+    /**
+     * The socket (read inactivity) timeout.
+     */
+    private final Timeout socketTimeout;
+
+    /**
+     * The response timeout.
+     */
+    private final Timeout responseTimeout;
+
+    /**
+     * The timeout for leasing a connection from the pool.
+     */
+    private final Timeout connectionRequestTimeout;
+
+    /**
+     * The inactivity period after which a pooled connection is validated before being re-used.
+     */
+    private final TimeValue validateAfterInactivity;
+
+    /**
+     * The executor used to parse asynchronous responses, keeping the IO reactor threads free for socket work.
+     */
+    private final Executor asyncExecutor;
+
+    /**
+     * The base URL of the setup web service used for login and account calls.
+     */
+    private final String setupEndPoint;
+
+    /**
+     * The maximum number of nodes requested in a single 'retrieveItemDetailsInFolders' call.
+     */
+    private final int driveBatchSize;
+
+    /**
+     * The maximum number of folders kept in the iCloud Drive metadata cache, or zero to disable the cache.
+     */
+    private final long driveCacheMaximumSize;
+
+    /**
+     * The time after which cached iCloud Drive folder metadata expires.
+     */
+    private final TimeValue driveCacheExpiry;
+
+    /**
+     * The maximum number of resolved iCloud Drive content URLs kept, or zero to disable the cache.
+     */
+    private final long contentUrlCacheMaximumSize;
+
+    /**
+     * The time after which a resolved iCloud Drive content URL is no longer used.
+     */
+    private final TimeValue contentUrlCacheExpiry;
+
+    /**
+     * The maximum number of iCloud Drive content URL lookups in flight.
+     */
+    private final int contentUrlLookupConcurrency;
+
+    /**
+     * The number of bytes transferred between progress reports.
+     */
+    private final long transferProgressBytes;
+
+    /**
+     * The maximum time between progress reports while bytes are flowing.
+     */
+    private final TimeValue transferProgressInterval;
+
+    /**
+     * The per-host limit on requests in flight before the adaptive limit has adjusted, or zero if disabled.
+     */
+    private final int adaptiveConcurrencyInitialLimit;
+
+    /**
+     * The largest per-host limit on requests in flight, or zero if adaptive concurrency is disabled.
+     */
+    private final int adaptiveConcurrencyMaxLimit;
+
+    /**
+     * The policy for retrying and hedging idempotent metadata reads.
+     */
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * The store the session is saved to and restored from, or {@code null} if sessions are not persisted.
+     */
+    private final SessionStore sessionStore;
+
+    /**
+     * The longest time between background session refreshes, or {@code null} if the keep-alive is disabled.
+     */
+    private final TimeValue sessionKeepAliveInterval;
+
+    /**
+     * How long before a session cookie expires the keep-alive refreshes the session.
+     */
+    private final TimeValue sessionExpiryMargin;
+
+    /**
+     * Creates a new configuration from the builder.
+     *
+     * @param builder the builder.
+     */
+    private ICloudServiceConfig(Builder builder)
+    {
+        this.maxConnectionsTotal = builder.maxConnectionsTotal;
+        this.maxConnectionsPerRoute = builder.maxConnectionsPerRoute;
+        this.maxConnectionsPerService = ImmutableMap.copyOf(builder.maxConnectionsPerService);
+        this.maxConnectionsPerHost = ImmutableMap.copyOf(builder.maxConnectionsPerHost);
+        this.keepAlive = builder.keepAlive;
+        this.keepAliveStrategy = builder.keepAliveStrategy;
+        this.evictIdleConnections = builder.evictIdleConnections;
+        this.evictExpiredConnections = builder.evictExpiredConnections;
+        this.connectTimeout = builder.connectTimeout;
+        this.socketTimeout = builder.socketTimeout;
+        this.responseTimeout = builder.responseTimeout;
+        this.connectionRequestTimeout = builder.connectionRequestTimeout;
+        this.validateAfterInactivity = builder.validateAfterInactivity;
+        this.asyncExecutor = builder.asyncExecutor;
+        this.setupEndPoint = builder.setupEndPoint;
+        this.driveBatchSize = builder.driveBatchSize;
+        this.driveCacheMaximumSize = builder.driveCacheMaximumSize;
+        this.driveCacheExpiry = builder.driveCacheExpiry;
+        this.contentUrlCacheMaximumSize = builder.contentUrlCacheMaximumSize;
+        this.contentUrlCacheExpiry = builder.contentUrlCacheExpiry;
+        this.contentUrlLookupConcurrency = builder.contentUrlLookupConcurrency;
+        this.transferProgressBytes = builder.transferProgressBytes;
+        this.transferProgressInterval = builder.transferProgressInterval;
+        this.adaptiveConcurrencyInitialLimit = builder.adaptiveConcurrencyInitialLimit;
+        this.adaptiveConcurrencyMaxLimit = builder.adaptiveConcurrencyMaxLimit;
+        this.retryPolicy = builder.retryPolicy;
+        this.sessionStore = builder.sessionStore;
+        this.sessionKeepAliveInterval = builder.sessionKeepAliveInterval;
+        this.sessionExpiryMargin = builder.sessionExpiryMargin;
+    }
+
+    /**
+     * Creates a new builder populated with the default values.
+     *
+     * @return the builder.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Gets the default configuration.
+     *
+     * @return the default configuration.
+     */
+    public static ICloudServiceConfig defaults()
+    {
+        return DEFAULTS;
+    }
+
+    /**
+     * Gets the maximum number of pooled connections across all routes.
+     *
+     * @return the maximum.
+     */
+    public int getMaxConnectionsTotal()
+    {
+        return maxConnectionsTotal;
+    }
+
+    /**
+     * Gets the maximum number of pooled connections for a single route.
+     *
+     * @return the maximum.
+     */
+    public int getMaxConnectionsPerRoute()
+    {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Gets the per-service connection limit overrides, keyed by web service name.
+     *
+     * @return the overrides.
+     */
+    public Map<String, Integer> getMaxConnectionsPerService()
+    {
+        return maxConnectionsPerService;
+    }
+
+    /**
+     * Gets the per-host connection limit overrides, keyed by lower-case host name.
+     *
+     * @return the overrides.
+     */
+    public Map<String, Integer> getMaxConnectionsPerHost()
+    {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Gets the keep-alive duration used when the server does not specify one.
+     *
+     * @return the keep-alive duration.
+     */
+    public TimeValue getKeepAlive()
+    {
+        return keepAlive;
+    }
+
+    /**
+     * Gets the custom keep-alive strategy.
+     *
+     * @return the strategy, or {@code null} if the default strategy should be used.
+     */
+    @Nullable
+    public ConnectionKeepAliveStrategy getKeepAliveStrategy()
+    {
+        return keepAliveStrategy;
+    }
+
+    /**
+     * Gets the idle time after which pooled connections are evicted.
+     *
+     * @return the idle time, or {@code null} if idle eviction is disabled.
+     */
+    @Nullable
+    public TimeValue getEvictIdleConnections()
+    {
+        return evictIdleConnections;
+    }
+
+    /**
+     * Checks whether expired connections are evicted.
+     *
+     * @return {@code true} if expired connections are evicted.
+     */
+    public boolean isEvictExpiredConnections()
+    {
+        return evictExpiredConnections;
+    }
+
+    /**
+     * Gets the connect timeout.
+     *
+     * @return the timeout.
+     */
+    public Timeout getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    /**
+     * Gets the socket timeout.
+     *
+     * @return the timeout.
+     */
+    public Timeout getSocketTimeout()
+    {
+        return socketTimeout;
+    }
+
+    /**
+     * Gets the response timeout.
+     *
+     * @return the timeout.
+     */
+    public Timeout getResponseTimeout()
+    {
+        return responseTimeout;
+    }
+
+    /**
+     * Gets the timeout for leasing a connection from the pool.
+     *
+     * @return the timeout.
+     */
+    public Timeout getConnectionRequestTimeout()
+    {
+        return connectionRequestTimeout;
+    }
+
+    /**
+     * Gets the inactivity period after which pooled connections are validated before re-use.
+     *
+     * @return the inactivity period.
+     */
+    public TimeValue getValidateAfterInactivity()
+    {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * Gets the executor used to parse asynchronous responses.
+     *
+     * @return the executor.
+     */
+    public Executor getAsyncExecutor()
+    {
+        return asyncExecutor;
+    }
+
+    /**
+     * Gets the base URL of the setup web service.
+     *
+     * @return the base URL, e.g. "https://setup.icloud.com/setup/ws/1".
+     */
+    public String getSetupEndPoint()
+    {
+        return setupEndPoint;
+    }
+
+    /**
+     * Gets the maximum number of nodes requested in a single iCloud Drive call.
+     *
+     * @return the batch size.
+     */
+    public int getDriveBatchSize()
+    {
+        return driveBatchSize;
+    }
+
+    /**
+     * Gets the maximum number of folders kept in the iCloud Drive metadata cache.
+     *
+     * @return the maximum, or zero if the cache is disabled.
+     */
+    public long getDriveCacheMaximumSize()
+    {
+        return driveCacheMaximumSize;
+    }
+
+    /**
+     * Gets the time after which cached iCloud Drive folder metadata expires.
+     *
+     * @return the expiry.
+     */
+    public TimeValue getDriveCacheExpiry()
+    {
+        return driveCacheExpiry;
+    }
+
+    /**
+     * Gets the maximum number of resolved iCloud Drive content URLs kept for later downloads.
+     *
+     * @return the maximum, or zero if the cache is disabled.
+     */
+    public long getContentUrlCacheMaximumSize()
+    {
+        return contentUrlCacheMaximumSize;
+    }
+
+    /**
+     * Gets the time after which a resolved iCloud Drive content URL is no longer used.
+     *
+     * @return the expiry.
+     */
+    public TimeValue getContentUrlCacheExpiry()
+    {
+        return contentUrlCacheExpiry;
+    }
+
+    /**
+     * Gets the maximum number of iCloud Drive content URL lookups in flight.
+     *
+     * @return the maximum.
+     */
+    public int getContentUrlLookupConcurrency()
+    {
+        return contentUrlLookupConcurrency;
+    }
+
+    /**
+     * Gets the number of bytes transferred between progress reports to a {@link TransferListener}.
+     *
+     * @return the number of bytes.
+     */
+    public long getTransferProgressBytes()
+    {
+        return transferProgressBytes;
+    }
+
+    /**
+     * Gets the maximum time between progress reports to a {@link TransferListener} while bytes are flowing.
+     *
+     * @return the interval.
+     */
+    public TimeValue getTransferProgressInterval()
+    {
+        return transferProgressInterval;
+    }
+
+    /**
+     * Gets the per-host limit on requests in flight before the adaptive limit has adjusted.
+     *
+     * @return the initial limit, or zero if adaptive concurrency is disabled.
+     */
+    public int getAdaptiveConcurrencyInitialLimit()
+    {
+        return adaptiveConcurrencyInitialLimit;
+    }
+
+    /**
+     * Gets the largest per-host limit on requests in flight.
+     *
+     * @return the maximum limit, or zero if adaptive concurrency is disabled.
+     */
+    public int getAdaptiveConcurrencyMaxLimit()
+    {
+        return adaptiveConcurrencyMaxLimit;
+    }
+
+    /**
+     * Gets the policy for retrying and hedging idempotent metadata reads.
+     *
+     * @return the retry policy.
+     */
+    public RetryPolicy getRetryPolicy()
+    {
+        return retryPolicy;
+    }
+
+    /**
+     * Gets the store the session is saved to and restored from.
+     *
+     * @return the store, or {@code null} if sessions are not persisted.
+     */
+    @Nullable
+    public SessionStore getSessionStore()
+    {
+        return sessionStore;
+    }
+
+    /**
+     * Gets the longest time between background session refreshes.
+     *
+     * @return the interval, or {@code null} if the session keep-alive is disabled.
+     */
+    @Nullable
+    public TimeValue getSessionKeepAliveInterval()
+    {
+        return sessionKeepAliveInterval;
+    }
+
+    /**
+     * Gets how long before a session cookie expires the keep-alive refreshes the session.
+     *
+     * @return the expiry margin.
+     */
+    public TimeValue getSessionExpiryMargin()
+    {
+        return sessionExpiryMargin;
+    }
+
+    /**
+     * A builder for {@link ICloudServiceConfig}.
+     */
+    public static class Builder
+    {
+        private int maxConnectionsTotal = DEFAULT_MAX_CONNECTIONS_TOTAL;
+        private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        private final Map<String, Integer> maxConnectionsPerService = new LinkedHashMap<>();
+        private final Map<String, Integer> maxConnectionsPerHost = new LinkedHashMap<>();
+        private TimeValue keepAlive = TimeValue.ofSeconds(30);
+        private ConnectionKeepAliveStrategy keepAliveStrategy;
+        private TimeValue evictIdleConnections = TimeValue.ofMinutes(1);
+        private boolean evictExpiredConnections = true;
+        private Timeout connectTimeout = Timeout.ofSeconds(30);
+        private Timeout socketTimeout = Timeout.ofSeconds(60);
+        private Timeout responseTimeout = Timeout.ofSeconds(60);
+        private Timeout connectionRequestTimeout = Timeout.ofMinutes(3);
+        private TimeValue validateAfterInactivity = TimeValue.ofSeconds(2);
+        private Executor asyncExecutor = ForkJoinPool.commonPool();
+        private String setupEndPoint = ICloudService.setupEndPoint;
+        private int driveBatchSize = DEFAULT_DRIVE_BATCH_SIZE;
+        private long driveCacheMaximumSize;
+        private TimeValue driveCacheExpiry = DEFAULT_DRIVE_CACHE_EXPIRY;
+        private long contentUrlCacheMaximumSize = DEFAULT_CONTENT_URL_CACHE_SIZE;
+        private TimeValue contentUrlCacheExpiry = DEFAULT_CONTENT_URL_CACHE_EXPIRY;
+        private int contentUrlLookupConcurrency = DEFAULT_CONTENT_URL_LOOKUP_CONCURRENCY;
+        private long transferProgressBytes = DEFAULT_TRANSFER_PROGRESS_BYTES;
+        private TimeValue transferProgressInterval = DEFAULT_TRANSFER_PROGRESS_INTERVAL;
+        private int adaptiveConcurrencyInitialLimit;
+        private int adaptiveConcurrencyMaxLimit;
+        private RetryPolicy retryPolicy = RetryPolicy.defaults();
+        private SessionStore sessionStore;
+        private TimeValue sessionKeepAliveInterval;
+        private TimeValue sessionExpiryMargin = DEFAULT_SESSION_EXPIRY_MARGIN;
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Sets the maximum number of pooled connections across all routes.
+         *
+         * @param maxConnectionsTotal the maximum.
+         * @return this builder.
+         */
+        public Builder maxConnectionsTotal(int maxConnectionsTotal)
+        {
+            Preconditions.checkArgument(maxConnectionsTotal > 0, "maxConnectionsTotal must be positive");
+            this.maxConnectionsTotal = maxConnectionsTotal;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of pooled connections for a single route.
+         *
+         * @param maxConnectionsPerRoute the maximum.
+         * @return this builder.
+         */
+        public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute)
+        {
+            Preconditions.checkArgument(maxConnectionsPerRoute > 0, "maxConnectionsPerRoute must be positive");
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * Overrides the maximum connections for the host of a web service. The host is resolved from the web services
+         * map once the service has authenticated.
+         *
+         * @param serviceName    the web service name, e.g. "drivews", "docws", "photos" or "findme".
+         * @param maxConnections the maximum.
+         * @return this builder.
+         */
+        public Builder maxConnectionsForService(@Nonnull String serviceName, int maxConnections)
+        {
+            Preconditions.checkArgument(maxConnections > 0, "maxConnections must be positive");
+            maxConnectionsPerService.put(serviceName, maxConnections);
+            return this;
+        }
+
+        /**
+         * Overrides the maximum connections for a HTTPS host.
+         *
+         * @param host           the host name, e.g. "p12-docws.icloud.com".
+         * @param maxConnections the maximum.
+         * @return this builder.
+         */
+        public Builder maxConnectionsForHost(@Nonnull String host, int maxConnections)
+        {
+            Preconditions.checkArgument(maxConnections > 0, "maxConnections must be positive");
+            maxConnectionsPerHost.put(host.toLowerCase(Locale.ROOT), maxConnections);
+            return this;
+        }
+
+        /**
+         * Sets the keep-alive duration used when the server does not send a 'Keep-Alive' header.
+         *
+         * @param keepAlive the keep-alive duration.
+         * @return this builder.
+         */
+        public Builder keepAlive(@Nonnull TimeValue keepAlive)
+        {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Sets a custom keep-alive strategy.
+         *
+         * @param keepAliveStrategy the strategy, or {@code null} to use the default strategy.
+         * @return this builder.
+         */
+        public Builder keepAliveStrategy(@Nullable ConnectionKeepAliveStrategy keepAliveStrategy)
+        {
+            this.keepAliveStrategy = keepAliveStrategy;
+            return this;
+        }
+
+        /**
+         * Sets the idle time after which pooled connections are evicted.
+         *
+         * @param evictIdleConnections the idle time, or {@code null} to disable idle eviction.
+         * @return this builder.
+         */
+        public Builder evictIdleConnections(@Nullable TimeValue evictIdleConnections)
+        {
+            this.evictIdleConnections = evictIdleConnections;
+            return this;
+        }
+
+        /**
+         * Sets whether expired connections are evicted.
+         *
+         * @param evictExpiredConnections {@code true} to evict expired connections.
+         * @return this builder.
+         */
+        public Builder evictExpiredConnections(boolean evictExpiredConnections)
+        {
+            this.evictExpiredConnections = evictExpiredConnections;
+            return this;
+        }
+
+        /**
+         * Sets the connect timeout.
+         *
+         * @param connectTimeout the timeout.
+         * @return this builder.
+         */
+        public Builder connectTimeout(@Nonnull Timeout connectTimeout)
+        {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the socket (read inactivity) timeout.
+         *
+         * @param socketTimeout the timeout.
+         * @return this builder.
+         */
+        public Builder socketTimeout(@Nonnull Timeout socketTimeout)
+        {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the response timeout.
+         *
+         * @param responseTimeout the timeout.
+         * @return this builder.
+         */
+        public Builder responseTimeout(@Nonnull Timeout responseTimeout)
+        {
+            this.responseTimeout = responseTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the timeout for leasing a connection from the pool.
+         *
+         * @param connectionRequestTimeout the timeout.
+         * @return this builder.
+         */
+        public Builder connectionRequestTimeout(@Nonnull Timeout connectionRequestTimeout)
+        {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the inactivity period after which pooled connections are validated before re-use.
+         *
+         * @param validateAfterInactivity the inactivity period.
+         * @return this builder.
+         */
+        public Builder validateAfterInactivity(@Nonnull TimeValue validateAfterInactivity)
+        {
+            this.validateAfterInactivity = validateAfterInactivity;
+            return this;
+        }
+
+        /**
+         * Sets the executor used to parse asynchronous responses. Parsing never runs on the IO reactor threads, so the
+         * number of in-flight requests is bounded by the connection pool rather than by this executor.
+         *
+         * @param asyncExecutor the executor.
+         * @return this builder.
+         */
+        public Builder asyncExecutor(@Nonnull Executor asyncExecutor)
+        {
+            this.asyncExecutor = asyncExecutor;
+            return this;
+        }
+
+        /**
+         * Sets the base URL of the setup web service. The other web service URLs are returned by the login call, so
+         * pointing this at a local stub redirects the whole session.
+         *
+         * @param setupEndPoint the base URL, without a trailing slash.
+         * @return this builder.
+         */
+        public Builder setupEndPoint(@Nonnull String setupEndPoint)
+        {
+            Preconditions.checkArgument(!setupEndPoint.endsWith("/"), "setupEndPoint must not end with '/'");
+            this.setupEndPoint = setupEndPoint;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of nodes requested in a single iCloud Drive call. Larger requests are split into
+         * batches of this size, which are sent concurrently.
+         *
+         * @param driveBatchSize the batch size.
+         * @return this builder.
+         */
+        public Builder driveBatchSize(int driveBatchSize)
+        {
+            Preconditions.checkArgument(driveBatchSize > 0, "driveBatchSize must be positive");
+            this.driveBatchSize = driveBatchSize;
+            return this;
+        }
+
+        /**
+         * Enables the iCloud Drive folder metadata cache. Cached listings are re-fetched once they expire, or when a
+         * newer listing of the parent folder shows a different etag or change date. The cache is disabled by default.
+         *
+         * @param maximumSize the maximum number of cached folders, or zero to disable the cache.
+         * @param expiry      the time after which a cached folder is re-fetched.
+         * @return this builder.
+         */
+        public Builder driveCache(long maximumSize, @Nonnull TimeValue expiry)
+        {
+            Preconditions.checkArgument(maximumSize >= 0, "maximumSize must not be negative");
+            this.driveCacheMaximumSize = maximumSize;
+            this.driveCacheExpiry = Preconditions.checkNotNull(expiry, "expiry");
+            return this;
+        }
+
+        /**
+         * Sets how many resolved iCloud Drive content URLs are kept, and for how long, so that URLs prefetched with
+         * {@link DriveContentUrlResolver#prefetch(java.util.Collection)} are ready when the download starts. Content
+         * URLs are signed and expire on the server, so the expiry should stay well short of their lifetime.
+         *
+         * @param maximumSize the maximum number of URLs, or zero to disable the cache and prefetching.
+         * @param expiry      the time after which a URL is resolved again.
+         * @return this builder.
+         */
+        public Builder contentUrlCache(long maximumSize, @Nonnull TimeValue expiry)
+        {
+            Preconditions.checkArgument(maximumSize >= 0, "maximumSize must not be negative");
+            this.contentUrlCacheMaximumSize = maximumSize;
+            this.contentUrlCacheExpiry = Preconditions.checkNotNull(expiry, "expiry");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of iCloud Drive content URL lookups in flight. Further lookups wait in a queue.
+         *
+         * @param contentUrlLookupConcurrency the maximum number of lookups.
+         * @return this builder.
+         */
+        public Builder contentUrlLookupConcurrency(int contentUrlLookupConcurrency)
+        {
+            Preconditions.checkArgument(contentUrlLookupConcurrency > 0,
+                "contentUrlLookupConcurrency must be positive");
+            this.contentUrlLookupConcurrency = contentUrlLookupConcurrency;
+            return this;
+        }
+
+        /**
+         * Sets how often a transfer reports its progress to {@link TransferListener}s: after every given number of
+         * bytes, or once the interval has passed since the last report, whichever comes first. The check is made as
+         * each buffer is written, so a stalled transfer makes no reports; see
+         * {@link ICloudService#getActiveTransfers()} to watch for stalls.
+         *
+         * @param bytes    the number of bytes between reports.
+         * @param interval the maximum time between reports.
+         * @return this builder.
+         */
+        public Builder transferProgress(long bytes, @Nonnull TimeValue interval)
+        {
+            Preconditions.checkArgument(bytes > 0, "bytes must be positive");
+            this.transferProgressBytes = bytes;
+            this.transferProgressInterval = Preconditions.checkNotNull(interval, "interval");
+            return this;
+        }
+
+        /**
+         * Enables adaptive concurrency, which limits the requests in flight to each host and adjusts the limit to how
+         * the host responds: it grows while responses are healthy, and is halved on '429 Too Many Requests',
+         * '503 Service Unavailable' or a latency spike, with any 'Retry-After' delay honoured for every request to the
+         * host. Requests over the limit wait for a permit. The classic and async clients share the per-host limits,
+         * as do the accounts of an {@link ICloudServicePool}. The limit is applied in addition to the connection
+         * limits, so the maximum is only reached if those allow it. It is disabled by default.
+         *
+         * @param initialLimit the limit for a host before it has adjusted.
+         * @param maxLimit     the largest limit, or zero to disable adaptive concurrency.
+         * @return this builder.
+         * @see ICloudService#getConcurrencyLimits()
+         */
+        public Builder adaptiveConcurrency(int initialLimit, int maxLimit)
+        {
+            Preconditions.checkArgument(maxLimit >= 0, "maxLimit must not be negative");
+            Preconditions.checkArgument(maxLimit == 0 || (initialLimit > 0 && initialLimit <= maxLimit),
+                "initialLimit must be between 1 and maxLimit");
+            this.adaptiveConcurrencyInitialLimit = maxLimit == 0 ? 0 : initialLimit;
+            this.adaptiveConcurrencyMaxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Sets the policy for retrying and hedging idempotent metadata reads, such as
+         * {@link DriveService#getNodeDetails(String)}. Defaults to {@link RetryPolicy#defaults()}; use
+         * {@link RetryPolicy#none()} to fail on the first error.
+         *
+         * @param retryPolicy the retry policy.
+         * @return this builder.
+         */
+        public Builder retryPolicy(@Nonnull RetryPolicy retryPolicy)
+        {
+            this.retryPolicy = Preconditions.checkNotNull(retryPolicy, "retryPolicy");
+            return this;
+        }
+
+        /**
+         * Sets the store the session is persisted in. A new service restores the saved session, without any request,
+         * and saves the session after each login and when it is closed. A restored session is validated by the first
+         * request that uses it; see {@link ICloudService#getSessionState()}.
+         *
+         * @param sessionStore the store, or {@code null} to keep sessions in memory only.
+         * @return this builder.
+         * @see EncryptedFileSessionStore
+         */
+        public Builder sessionStore(@Nullable SessionStore sessionStore)
+        {
+            this.sessionStore = sessionStore;
+            return this;
+        }
+
+        /**
+         * Enables the session keep-alive, which refreshes the session in the background so that its expiry never
+         * falls on a request. After each login or restore, the session is re-validated once the interval has passed,
+         * or the expiry margin ahead of the earliest session cookie expiry if that is sooner. The new cookies and
+         * login info are swapped in for every service without holding up requests in flight. Failures are reported
+         * to {@link SessionListener}s. It is disabled by default.
+         *
+         * @param interval     the longest time between refreshes, or {@code null} to disable the keep-alive.
+         * @param expiryMargin how long before a session cookie expires the session is refreshed.
+         * @return this builder.
+         * @see ICloudService#addSessionListener(SessionListener)
+         */
+        public Builder sessionKeepAlive(@Nullable TimeValue interval, @Nonnull TimeValue expiryMargin)
+        {
+            Preconditions.checkArgument(interval == null || interval.toMilliseconds() > 0,
+                "interval must be positive");
+            this.sessionKeepAliveInterval = interval;
+            this.sessionExpiryMargin = Preconditions.checkNotNull(expiryMargin, "expiryMargin");
+            return this;
+        }
+
+        /**
+         * Builds the configuration.
+         *
+         * @return the configuration.
+         */
+        public ICloudServiceConfig build()
+        {
+            return new ICloudServiceConfig(this);
+        }
+    }
+}
@@ -0,0 +1,895 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hc.client5.http.cookie.CookieStore;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.ComplexFuture;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.function.Supplier;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.nio.AsyncPushConsumer;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.HandlerFactory;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.reactor.IOReactorStatus;
+import org.apache.hc.core5.util.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Serves many iCloud accounts from one JVM over a single transport.
+ * <p>
+ * Every account's {@link ICloudService} sends its requests through one pooled connection manager, TLS context and set
+ * of per-host limits, so connections to the shared iCloud hosts are reused across accounts rather than each account
+ * opening its own. The async calls likewise share one async client, created on the first async request of any
+ * account. Each account keeps its own cookie store, passed with each request in an {@link HttpClientContext}, and its
+ * own session state. The pool-wide limits are the connection limits of the {@link ICloudServiceConfig}.
+ * <p>
+ * So that one busy account can't take every connection, each account may have at most
+ * {@link Builder#maxRequestsPerAccount(int)} requests waiting for a response; further requests queue for the account
+ * in arrival order. As with the adaptive limits, a classic request is counted until its response headers arrive, not
+ * while its body is read. An async request queues without blocking and is counted until it completes. The classic
+ * and async requests queue separately, and a freed permit goes to a queued async request first, so an account that
+ * mixes both under load may hold back its blocked classic calls.
+ * <p>
+ * Accounts that have been idle for a while can be closed with {@link #evictIdleSessions(TimeValue)}, or in the
+ * background with {@link Builder#evictIdleSessions(TimeValue)}. Closing a service saves its session if a session store
+ * is configured, so the next {@link #getService(String)} for the account restores it without logging in:
+ *
+ * <pre>
+ * try (ICloudServicePool pool = ICloudServicePool.builder("client-id")
+ *     .config(ICloudServiceConfig.builder().maxConnectionsTotal(400).build())
+ *     .sessionStores(account -&gt; new EncryptedFileSessionStore(sessionDirectory.resolve(account), key))
+ *     .evictIdleSessions(TimeValue.ofMinutes(30))
+ *     .build())
+ * {
+ *     ICloudService iCloudService = pool.getService("user@example.com");
+ * }
+ * </pre>
+ */
+public class ICloudServicePool implements Closeable
+{
+    /**
+     * The default number of requests of each account that may wait for a response at once.
+     */
+    public static final int DEFAULT_MAX_REQUESTS_PER_ACCOUNT = 8;
+
+    /**
+     * The longest time between checks for idle sessions.
+     */
+    private static final TimeValue MAX_EVICTION_INTERVAL = TimeValue.ofMinutes(1);
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ICloudServicePool.class);
+
+    /**
+     * The client ID used by every account.
+     */
+    private final String clientId;
+
+    /**
+     * The transport configuration shared by every account.
+     */
+    private final ICloudServiceConfig config;
+
+    /**
+     * The number of requests of each account that may wait for a response at once.
+     */
+    private final int maxRequestsPerAccount;
+
+    /**
+     * Creates the session store for each account, or {@code null} if sessions are kept in memory only.
+     */
+    private final Function<String, SessionStore> sessionStores;
+
+    /**
+     * The shared connection manager.
+     */
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    /**
+     * The per-host connection limits shared by every account, keyed by lower-case host name.
+     */
+    private final Map<String, Integer> hostConnectionLimits;
+
+    /**
+     * The shared adaptive per-host request limits, or {@code null} if disabled.
+     */
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * The shared HTTP client.
+     */
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * The shared async HTTP client, created on first use. Guarded by {@code this}.
+     */
+    private CloseableHttpAsyncClient asyncHttpClient;
+
+    /**
+     * The accounts, keyed by account ID.
+     */
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * Closes idle sessions in the background, or {@code null} if this is left to the caller.
+     */
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Whether the pool has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates a new pool from the builder.
+     *
+     * @param builder the builder.
+     */
+    private ICloudServicePool(Builder builder)
+    {
+        this.clientId = builder.clientId;
+        this.config = builder.config;
+        this.maxRequestsPerAccount = builder.maxRequestsPerAccount;
+        this.sessionStores = builder.sessionStores;
+
+        connectionManager = ICloudService.createConnectionManager(config);
+        hostConnectionLimits = RouteConnectionLimits.newHostLimits(config.getMaxConnectionsPerHost());
+        concurrencyLimiter = config.getAdaptiveConcurrencyMaxLimit() > 0
+            ? new AdaptiveConcurrencyLimiter(config.getAdaptiveConcurrencyInitialLimit(),
+                config.getAdaptiveConcurrencyMaxLimit())
+            : null;
+        httpClient = ICloudService.createHttpClient(config, null, connectionManager,
+            new RouteConnectionLimits(connectionManager, hostConnectionLimits), concurrencyLimiter, null);
+
+        TimeValue maxIdle = builder.evictIdleSessions;
+        if (maxIdle != null)
+        {
+            long intervalMillis = Math.max(1, Math.min(maxIdle.toMilliseconds() / 2,
+                MAX_EVICTION_INTERVAL.toMilliseconds()));
+            evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("icloud4j-session-evictor-%d")
+                .setDaemon(true)
+                .build());
+            evictor.scheduleWithFixedDelay(() -> evictIdleSessions(maxIdle), intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+        } else
+        {
+            evictor = null;
+        }
+    }
+
+    /**
+     * Creates a new builder populated with the default values.
+     *
+     * @param clientId the client ID used by every account.
+     * @return the builder.
+     */
+    public static Builder builder(@Nonnull String clientId)
+    {
+        return new Builder(clientId);
+    }
+
+    /**
+     * Gets the service for an account, creating it if needed. A new service restores the account's saved session if
+     * there is one; otherwise it must be logged in with {@link ICloudService#authenticate(String, char[])}. A service
+     * that has been evicted or closed is replaced by a new one.
+     *
+     * @param accountId the account ID, e.g. the Apple ID.
+     * @return the service.
+     * @throws IllegalStateException if the pool has been closed.
+     */
+    public ICloudService getService(@Nonnull String accountId)
+    {
+        Preconditions.checkNotNull(accountId, "accountId");
+        Preconditions.checkState(!closed, "The pool has been closed");
+        return accounts.compute(accountId, (key, account) ->
+            account != null && !account.client.isClosed() ? account : newAccount(key)).service;
+    }
+
+    /**
+     * Closes and removes the service for an account, saving its session if a session store is configured.
+     *
+     * @param accountId the account ID.
+     * @return {@code true} if the account had a service.
+     */
+    public boolean remove(@Nonnull String accountId)
+    {
+        Account account = accounts.remove(accountId);
+        if (account == null)
+        {
+            return false;
+        }
+        closeQuietly(accountId, account);
+        return true;
+    }
+
+    /**
+     * Closes the services of accounts with no request or transfer for the given time, saving their sessions if a
+     * session store is configured.
+     *
+     * @param maxIdle the longest idle time kept.
+     * @return the number of services closed.
+     */
+    public int evictIdleSessions(@Nonnull TimeValue maxIdle)
+    {
+        long maxIdleNanos = maxIdle.toNanoseconds();
+        List<String> evicted = new ArrayList<>();
+        accounts.forEach((accountId, account) -> {
+            if (account.isIdleFor(maxIdleNanos) && accounts.remove(accountId, account))
+            {
+                evicted.add(accountId);
+                closeQuietly(accountId, account);
+            }
+        });
+
+        if (!evicted.isEmpty())
+        {
+            logger.debug("Evicted {} idle iCloud sessions", evicted.size());
+        }
+        return evicted.size();
+    }
+
+    /**
+     * Gets the IDs of the accounts with a service.
+     *
+     * @return the account IDs.
+     */
+    public Set<String> getAccountIds()
+    {
+        return accounts.keySet();
+    }
+
+    /**
+     * Gets the statistics of the shared connection pool.
+     *
+     * @return the statistics.
+     */
+    public PoolStats getPoolStats()
+    {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Gets the transport configuration shared by every account.
+     *
+     * @return the configuration.
+     */
+    public ICloudServiceConfig getConfig()
+    {
+        return config;
+    }
+
+    /**
+     * Gets the shared connection manager.
+     *
+     * @return the connection manager.
+     */
+    PoolingHttpClientConnectionManager getConnectionManager()
+    {
+        return connectionManager;
+    }
+
+    /**
+     * Gets the per-host connection limits shared by every account.
+     *
+     * @return the limits, keyed by lower-case host name.
+     */
+    Map<String, Integer> getHostConnectionLimits()
+    {
+        return hostConnectionLimits;
+    }
+
+    /**
+     * Gets the shared adaptive per-host request limits.
+     *
+     * @return the limiter, or {@code null} if disabled.
+     */
+    @Nullable
+    AdaptiveConcurrencyLimiter getConcurrencyLimiter()
+    {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Creates an HTTP client for one account, sending its requests through the shared client with its own cookies.
+     *
+     * @param cookieStore the account's cookie store.
+     * @param onResponse  called with the target host name and status of each response.
+     * @return the client.
+     */
+    CloseableHttpClient newAccountClient(CookieStore cookieStore, BiConsumer<String, Integer> onResponse)
+    {
+        return new AccountClient(httpClient, cookieStore, maxRequestsPerAccount, onResponse);
+    }
+
+    /**
+     * Creates an async HTTP client for one account, sending its requests through the shared async client with the
+     * cookies of the account's HTTP client.
+     *
+     * @param accountClient the account's HTTP client, from {@link #newAccountClient(CookieStore, BiConsumer)}.
+     * @return the async client.
+     * @throws IllegalStateException if the pool has been closed.
+     */
+    CloseableHttpAsyncClient newAccountAsyncClient(CloseableHttpClient accountClient)
+    {
+        return new AccountAsyncClient(getAsyncHttpClient(), (AccountClient) accountClient);
+    }
+
+    /**
+     * Gets the shared async HTTP client, creating and starting it on first use.
+     *
+     * @return the async client.
+     * @throws IllegalStateException if the pool has been closed.
+     */
+    private synchronized CloseableHttpAsyncClient getAsyncHttpClient()
+    {
+        Preconditions.checkState(!closed, "The pool has been closed");
+        if (asyncHttpClient == null)
+        {
+            // Each request carries its account's session check in its context
+            asyncHttpClient = ICloudService.createAsyncHttpClient(config, null, hostConnectionLimits,
+                concurrencyLimiter, new SessionCheck(null));
+        }
+        return asyncHttpClient;
+    }
+
+    /**
+     * Closes every service, saving their sessions if a session store is configured, then the shared transport.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        if (evictor != null)
+        {
+            evictor.shutdownNow();
+        }
+
+        for (String accountId : new ArrayList<>(accounts.keySet()))
+        {
+            remove(accountId);
+        }
+
+        try
+        {
+            httpClient.close();
+        }
+        finally
+        {
+            CloseableHttpAsyncClient client;
+            synchronized (this)
+            {
+                client = asyncHttpClient;
+            }
+            if (client != null)
+            {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * Creates the service for an account.
+     *
+     * @param accountId the account ID.
+     * @return the account.
+     */
+    private Account newAccount(String accountId)
+    {
+        SessionStore sessionStore = sessionStores != null ? sessionStores.apply(accountId) : null;
+        ICloudService service = new ICloudService(clientId, config, sessionStore, this);
+        return new Account(service, (AccountClient) service.getHttpClient());
+    }
+
+    /**
+     * Closes an account's service, logging any failure.
+     *
+     * @param accountId the account ID.
+     * @param account   the account.
+     */
+    private static void closeQuietly(String accountId, Account account)
+    {
+        try
+        {
+            account.service.close();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            logger.warn("Failed to close the iCloud service for {}", accountId, e);
+        }
+    }
+
+    /**
+     * The service of an account and its view of the shared client.
+     */
+    private static class Account
+    {
+        final ICloudService service;
+        final AccountClient client;
+
+        Account(ICloudService service, AccountClient client)
+        {
+            this.service = service;
+            this.client = client;
+        }
+
+        /**
+         * Checks whether the account has had no request or transfer for the given time.
+         *
+         * @param maxIdleNanos the idle time.
+         * @return {@code true} if the account is idle.
+         */
+        boolean isIdleFor(long maxIdleNanos)
+        {
+            return client.getInFlight() == 0
+                && System.nanoTime() - client.getLastUsedNanos() > maxIdleNanos
+                && service.getActiveTransfers().isEmpty();
+        }
+    }
+
+    /**
+     * An account's view of the shared client, adding the account's cookies to each request and limiting the requests
+     * it has waiting for a response, including those of its {@link AccountAsyncClient}. Closing it leaves the shared
+     * client open.
+     */
+    private static class AccountClient extends CloseableHttpClient
+    {
+        /**
+         * The shared client.
+         */
+        private final CloseableHttpClient sharedClient;
+
+        /**
+         * The account's cookie store.
+         */
+        private final CookieStore cookieStore;
+
+        /**
+         * The permits for requests waiting for a response.
+         */
+        private final Semaphore permits;
+
+        /**
+         * The async requests waiting for a permit, in arrival order. Guarded by itself.
+         */
+        private final Deque<Runnable> asyncWaiters = new ArrayDeque<>();
+
+        /**
+         * Called with the target host name and status of each response.
+         */
+        private final BiConsumer<String, Integer> onResponse;
+
+        /**
+         * The number of requests waiting for a response.
+         */
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        /**
+         * The time the last request was started or answered.
+         */
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        /**
+         * Whether the client has been closed.
+         */
+        private volatile boolean closed;
+
+        AccountClient(CloseableHttpClient sharedClient, CookieStore cookieStore, int maxRequests,
+                      BiConsumer<String, Integer> onResponse)
+        {
+            this.sharedClient = sharedClient;
+            this.cookieStore = cookieStore;
+            this.permits = new Semaphore(maxRequests, true);
+            this.onResponse = onResponse;
+        }
+
+        @Override
+        protected CloseableHttpResponse doExecute(HttpHost target, ClassicHttpRequest request, HttpContext context)
+            throws IOException
+        {
+            if (closed)
+            {
+                throw new IllegalStateException("The iCloud service has been closed or evicted from its pool");
+            }
+
+            HttpClientContext clientContext = withCookies(context);
+
+            try
+            {
+                permits.acquire();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request permit");
+            }
+
+            onStarted();
+            try
+            {
+                CloseableHttpResponse response = CloseableHttpResponse.adapt(
+                    sharedClient.executeOpen(target, request, clientContext));
+                if (target != null)
+                {
+                    onResponse.accept(target.getHostName(), response.getCode());
+                }
+                return response;
+            }
+            finally
+            {
+                onFinished();
+            }
+        }
+
+        /**
+         * Queues an async request for a permit without blocking. The request is started on this thread if a permit is
+         * free, or otherwise on the thread that frees one.
+         *
+         * @param onPermit starts the request once it holds a permit.
+         */
+        void acquireAsync(Runnable onPermit)
+        {
+            synchronized (asyncWaiters)
+            {
+                asyncWaiters.add(onPermit);
+            }
+            startAsyncWaiters();
+        }
+
+        /**
+         * Hands free permits to the queued async requests, starting them outside the lock. This takes a permit ahead
+         * of any classic callers blocked on the fair semaphore, so under load the account's async requests are
+         * served before its blocked classic ones.
+         */
+        private void startAsyncWaiters()
+        {
+            while (true)
+            {
+                Runnable next;
+                synchronized (asyncWaiters)
+                {
+                    if (asyncWaiters.isEmpty() || !permits.tryAcquire())
+                    {
+                        return;
+                    }
+                    next = asyncWaiters.poll();
+                }
+                next.run();
+            }
+        }
+
+        /**
+         * Counts a request holding a permit as in flight.
+         */
+        void onStarted()
+        {
+            inFlight.incrementAndGet();
+            lastUsedNanos = System.nanoTime();
+        }
+
+        /**
+         * Ends a request holding a permit, handing the permit to a queued async request if there is one.
+         */
+        void onFinished()
+        {
+            lastUsedNanos = System.nanoTime();
+            inFlight.decrementAndGet();
+            permits.release();
+            startAsyncWaiters();
+        }
+
+        /**
+         * Adds the account's cookies to a request's context.
+         *
+         * @param context the context, or {@code null} to create one.
+         * @return the client context.
+         */
+        HttpClientContext withCookies(HttpContext context)
+        {
+            HttpClientContext clientContext = context != null
+                ? HttpClientContext.castOrCreate(context)
+                : HttpClientContext.create();
+            clientContext.setCookieStore(cookieStore);
+            return clientContext;
+        }
+
+        /**
+         * Gets the number of requests waiting for a response.
+         *
+         * @return the number of requests.
+         */
+        int getInFlight()
+        {
+            return inFlight.get();
+        }
+
+        /**
+         * Gets the time the last request was started or answered.
+         *
+         * @return the time in nanoseconds.
+         */
+        long getLastUsedNanos()
+        {
+            return lastUsedNanos;
+        }
+
+        /**
+         * Checks whether the client has been closed.
+         *
+         * @return {@code true} if closed.
+         */
+        boolean isClosed()
+        {
+            return closed;
+        }
+
+        @Override
+        public void close(CloseMode closeMode)
+        {
+            closed = true;
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+    }
+
+    /**
+     * An account's view of the shared async client, adding the account's cookies to each request and counting its
+     * requests against the permits of the account's {@link AccountClient}. Closing it leaves the shared client open;
+     * it stops accepting requests once the account's client is closed.
+     */
+    private static class AccountAsyncClient extends CloseableHttpAsyncClient
+    {
+        /**
+         * The shared async client.
+         */
+        private final CloseableHttpAsyncClient sharedClient;
+
+        /**
+         * The account's HTTP client, holding its cookies and request permits.
+         */
+        private final AccountClient accountClient;
+
+        AccountAsyncClient(CloseableHttpAsyncClient sharedClient, AccountClient accountClient)
+        {
+            this.sharedClient = sharedClient;
+            this.accountClient = accountClient;
+        }
+
+        @Override
+        protected <T> Future<T> doExecute(HttpHost target, AsyncRequestProducer requestProducer,
+                                          AsyncResponseConsumer<T> responseConsumer,
+                                          HandlerFactory<AsyncPushConsumer> pushHandlerFactory, HttpContext context,
+                                          FutureCallback<T> callback)
+        {
+            if (accountClient.isClosed())
+            {
+                throw new IllegalStateException("The iCloud service has been closed or evicted from its pool");
+            }
+
+            HttpClientContext clientContext = accountClient.withCookies(context);
+            clientContext.setAttribute(SessionCheck.RESPONSE_LISTENER, accountClient.onResponse);
+            ComplexFuture<T> future = new ComplexFuture<>(callback);
+            accountClient.acquireAsync(() -> {
+                if (future.isCancelled())
+                {
+                    // Cancelled while waiting for the permit
+                    accountClient.onStarted();
+                    accountClient.onFinished();
+                    return;
+                }
+
+                accountClient.onStarted();
+                try
+                {
+                    future.setDependency(sharedClient.execute(target, requestProducer, responseConsumer,
+                        pushHandlerFactory, clientContext, new FutureCallback<T>()
+                        {
+                            @Override
+                            public void completed(T result)
+                            {
+                                accountClient.onFinished();
+                                future.completed(result);
+                            }
+
+                            @Override
+                            public void failed(Exception e)
+                            {
+                                accountClient.onFinished();
+                                future.failed(e);
+                            }
+
+                            @Override
+                            public void cancelled()
+                            {
+                                accountClient.onFinished();
+                                future.cancel();
+                            }
+                        }));
+                }
+                catch (RuntimeException e)
+                {
+                    // The shared client refused the request, e.g. because it has been shut down
+                    accountClient.onFinished();
+                    future.failed(e);
+                }
+            });
+            return future;
+        }
+
+        @Override
+        public void start()
+        {
+            // The shared client is started when it is created
+        }
+
+        @Override
+        public IOReactorStatus getStatus()
+        {
+            return accountClient.isClosed() ? IOReactorStatus.SHUT_DOWN : sharedClient.getStatus();
+        }
+
+        @Override
+        public void awaitShutdown(TimeValue waitTime)
+        {
+            // Only the pool shuts the shared client down
+        }
+
+        @Override
+        public void initiateShutdown()
+        {
+            // Only the pool shuts the shared client down
+        }
+
+        @Deprecated
+        @Override
+        public void register(String hostname, String uriPattern,
+                             Supplier<AsyncPushConsumer> supplier)
+        {
+            throw new UnsupportedOperationException("Push consumers can't be registered for one account of a pool");
+        }
+
+        @Override
+        public void close(CloseMode closeMode)
+        {
+            // Only the pool closes the shared client
+        }
+
+        @Override
+        public void close()
+        {
+            // Only the pool closes the shared client
+        }
+    }
+
+    /**
+     * A builder for {@link ICloudServicePool}.
+     */
+    public static class Builder
+    {
+        private final String clientId;
+        private ICloudServiceConfig config = ICloudServiceConfig.defaults();
+        private int maxRequestsPerAccount = DEFAULT_MAX_REQUESTS_PER_ACCOUNT;
+        private Function<String, SessionStore> sessionStores;
+        private TimeValue evictIdleSessions;
+
+        private Builder(String clientId)
+        {
+            this.clientId = Preconditions.checkNotNull(clientId, "clientId");
+        }
+
+        /**
+         * Sets the transport configuration shared by every account. Its connection limits apply to the whole pool,
+         * and its session store is ignored in favour of {@link #sessionStores(Function)}.
+         *
+         * @param config the configuration.
+         * @return this builder.
+         */
+        public Builder config(@Nonnull ICloudServiceConfig config)
+        {
+            this.config = Preconditions.checkNotNull(config, "config");
+            return this;
+        }
+
+        /**
+         * Sets the number of requests of each account that may wait for a response at once.
+         *
+         * @param maxRequestsPerAccount the maximum.
+         * @return this builder.
+         */
+        public Builder maxRequestsPerAccount(int maxRequestsPerAccount)
+        {
+            Preconditions.checkArgument(maxRequestsPerAccount > 0, "maxRequestsPerAccount must be positive");
+            this.maxRequestsPerAccount = maxRequestsPerAccount;
+            return this;
+        }
+
+        /**
+         * Sets how the session store of each account is created, so that sessions survive eviction and restarts.
+         *
+         * @param sessionStores creates the store for an account ID, or returns {@code null} for none.
+         * @return this builder.
+         */
+        public Builder sessionStores(@Nullable Function<String, SessionStore> sessionStores)
+        {
+            this.sessionStores = sessionStores;
+            return this;
+        }
+
+        /**
+         * Closes the services of accounts in the background once they have had no request or transfer for the given
+         * time.
+         *
+         * @param maxIdle the longest idle time kept, or {@code null} to leave eviction to
+         *                {@link ICloudServicePool#evictIdleSessions(TimeValue)}.
+         * @return this builder.
+         */
+        public Builder evictIdleSessions(@Nullable TimeValue maxIdle)
+        {
+            this.evictIdleSessions = maxIdle;
+            return this;
+        }
+
+        /**
+         * Builds the pool.
+         *
+         * @return the pool.
+         */
+        public ICloudServicePool build()
+        {
+            return new ICloudServicePool(this);
+        }
+    }
+}
@@ -15,9 +15,9 @@
 
 package com.github.tmyroadctfig.icloud4j;
 
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
-import com.google.gson.Gson;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
@@ -61,11 +61,11 @@ public class IdmsaService
                 "accountName", username,
                 "password", new String(password),
                 "rememberMe", false,
-                "trustTokens", new String[0]
+                "trustTokens", Strings.isNullOrEmpty(trustToken) ? new String[0] : new String[]{trustToken}
             );
 
             HttpPost post = new HttpPost(idmsaAuthEndPoint + "/signin");
-            post.setEntity(new StringEntity(new Gson().toJson(params), ContentType.APPLICATION_JSON));
+            post.setEntity(new StringEntity(JsonCodecs.gson().toJson(params), ContentType.APPLICATION_JSON));
             populateIdmsaRequestHeadersParameters(post);
             post.setHeader("Accept", "application/json");
 
@@ -160,6 +160,29 @@ public class IdmsaService
         return authToken;
     }
 
+    String getAppleIdSessionId()
+    {
+        return appleIdSessionId;
+    }
+
+    String getScnt()
+    {
+        return scnt;
+    }
+
+    /**
+     * Restores the session and trust tokens from a saved session.
+     *
+     * @param snapshot the saved session.
+     */
+    void restore(SessionSnapshot snapshot)
+    {
+        appleIdSessionId = snapshot.getAppleIdSessionId();
+        scnt = snapshot.getScnt();
+        authToken = snapshot.getAuthToken();
+        trustToken = snapshot.getTrustToken();
+    }
+
     public String getTrustToken()
     {
         return trustToken;
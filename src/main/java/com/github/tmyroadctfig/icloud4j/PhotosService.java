@@ -17,17 +17,20 @@ package com.github.tmyroadctfig.icloud4j;
 
 import com.github.tmyroadctfig.icloud4j.json.PhotosAlbumsResponse;
 import com.github.tmyroadctfig.icloud4j.json.PhotosFolder;
-import com.github.tmyroadctfig.icloud4j.util.StringResponseHandler;
-import com.google.gson.Gson;
+import com.github.tmyroadctfig.icloud4j.util.ICloudUtils;
 import com.google.gson.reflect.TypeToken;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
-import org.apache.hc.core5.http.io.HttpClientResponseHandler;
 import org.apache.hc.core5.net.URIBuilder;
 
 import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -39,7 +42,6 @@ public class PhotosService
     private final ICloudService iCloudService;
     private final String serviceRoot;
     private final String endPoint;
-    private final String syncToken;
 
     public PhotosService(ICloudService iCloudService)
     {
@@ -49,10 +51,27 @@ public class PhotosService
 
         endPoint = serviceRoot + "/ph";
 
-        syncToken = getSyncToken();
+        getSyncToken();
     }
 
+    /**
+     * Gets the sync token for the session, fetching it if no photos service has done so yet.
+     *
+     * @return the sync token.
+     */
     private String getSyncToken()
+    {
+        SessionTokens sessionTokens = iCloudService.getSessionTokens();
+        String syncToken = sessionTokens.getPhotosSyncToken();
+        if (syncToken == null)
+        {
+            syncToken = fetchSyncToken();
+            sessionTokens.setPhotosSyncToken(syncToken);
+        }
+        return syncToken;
+    }
+
+    private String fetchSyncToken()
     {
         try
         {
@@ -61,13 +80,10 @@ public class PhotosService
             HttpGet httpGet = new HttpGet(uriBuilder.build());
             iCloudService.populateRequestHeadersParameters(httpGet);
 
-            HttpClientResponseHandler<String> handler = new StringResponseHandler();
-            String rawResponse = iCloudService.getHttpClient().execute(httpGet, handler);
-
             Type type = new TypeToken<Map<String, String>>()
             {
             }.getType();
-            Map<String, Object> responseMap = new Gson().fromJson(rawResponse, type);
+            Map<String, Object> responseMap = ICloudUtils.parseJsonResponse(iCloudService.getHttpClient(), httpGet, type);
 
             return (String) responseMap.get("syncToken");
         }
@@ -83,7 +99,7 @@ public class PhotosService
             .addParameter("dsid", iCloudService.getSessionId())
             .addParameter("clientBuildNumber", "14E45")
             .addParameter("clientInstanceId", iCloudService.getClientId())
-            .addParameter("syncToken", syncToken);
+            .addParameter("syncToken", getSyncToken());
     }
 
     public PhotosFolder getAllPhotosAlbum()
@@ -99,23 +115,51 @@ public class PhotosService
     {
         try
         {
-            URIBuilder uriBuilder = new URIBuilder(endPoint + "/folders");
-            populateUriParameters(uriBuilder);
-            HttpGet httpGet = new HttpGet(uriBuilder.build());
-            iCloudService.populateRequestHeadersParameters(httpGet);
-
-            HttpClientResponseHandler<String> handler = new StringResponseHandler();
-            String rawResponse = iCloudService.getHttpClient().execute(httpGet, handler);
-
-            PhotosAlbumsResponse photosAlbumsResponse = new Gson().fromJson(rawResponse, PhotosAlbumsResponse.class);
-
-            return Arrays.stream(photosAlbumsResponse.folders)
-                .filter(folder -> "album".equals(folder.type))
-                .collect(Collectors.toList());
+            URI foldersUri = getFoldersUri();
+            PhotosAlbumsResponse photosAlbumsResponse = iCloudService.readJson("photos/folders", () -> {
+                HttpGet httpGet = new HttpGet(foldersUri);
+                iCloudService.populateRequestHeadersParameters(httpGet);
+                return httpGet;
+            }, PhotosAlbumsResponse.class);
+
+            return toAlbums(photosAlbumsResponse);
         }
         catch (Exception e)
         {
             throw new RuntimeException(e);
         }
     }
+
+    public CompletableFuture<List<PhotosFolder>> getAlbumsAsync()
+    {
+        URI foldersUri;
+        try
+        {
+            foldersUri = getFoldersUri();
+        }
+        catch (URISyntaxException e)
+        {
+            return ICloudUtils.failedFuture(e);
+        }
+
+        return iCloudService.<PhotosAlbumsResponse>readJsonAsync("photos/folders", () -> {
+            SimpleHttpRequest httpGet = SimpleRequestBuilder.get(foldersUri).build();
+            iCloudService.populateRequestHeadersParameters(httpGet);
+            return httpGet;
+        }, PhotosAlbumsResponse.class).thenApply(PhotosService::toAlbums);
+    }
+
+    private URI getFoldersUri() throws URISyntaxException
+    {
+        URIBuilder uriBuilder = new URIBuilder(endPoint + "/folders");
+        populateUriParameters(uriBuilder);
+        return uriBuilder.build();
+    }
+
+    private static List<PhotosFolder> toAlbums(PhotosAlbumsResponse photosAlbumsResponse)
+    {
+        return Arrays.stream(photosAlbumsResponse.folders)
+            .filter(folder -> "album".equals(folder.type))
+            .collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.google.common.base.Preconditions;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.util.TimeValue;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * How idempotent metadata reads, such as {@link DriveService#getNodeDetails(String)}, are retried and hedged; see
+ * {@link ICloudServiceConfig.Builder#retryPolicy(RetryPolicy)}.
+ *
+ * <p>A failed read is retried after an exponential backoff with full jitter, until it succeeds, the maximum number of
+ * attempts is reached or the next attempt would start after the time budget. With hedging enabled, a read that takes
+ * longer than the given percentile of recent reads of the same kind is sent a second time, and whichever answer comes
+ * first is used. Instances are immutable; use {@link #builder()} to create one:</p>
+ *
+ * <pre>
+ * RetryPolicy retryPolicy = RetryPolicy.builder()
+ *     .maxAttempts(5)
+ *     .backoff(TimeValue.ofMilliseconds(100), TimeValue.ofSeconds(5))
+ *     .hedgeAfterPercentile(0.95)
+ *     .build();
+ * </pre>
+ */
+public class RetryPolicy
+{
+    /**
+     * The default maximum number of attempts.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * The default backoff before the first retry.
+     */
+    public static final TimeValue DEFAULT_INITIAL_BACKOFF = TimeValue.ofMilliseconds(200);
+
+    /**
+     * The default longest backoff.
+     */
+    public static final TimeValue DEFAULT_MAX_BACKOFF = TimeValue.ofSeconds(5);
+
+    /**
+     * The default time budget for all attempts of a read.
+     */
+    public static final TimeValue DEFAULT_TIME_BUDGET = TimeValue.ofSeconds(30);
+
+    /**
+     * The default policy.
+     */
+    private static final RetryPolicy DEFAULTS = builder().build();
+
+    /**
+     * A policy making a single attempt.
+     */
+    private static final RetryPolicy NONE = builder().maxAttempts(1).build();
+
+    /**
+     * The maximum number of attempts.
+     */
+    private final int maxAttempts;
+
+    /**
+     * The backoff before the first retry.
+     */
+    private final TimeValue initialBackoff;
+
+    /**
+     * The longest backoff.
+     */
+    private final TimeValue maxBackoff;
+
+    /**
+     * The time budget for all attempts of a read.
+     */
+    private final TimeValue timeBudget;
+
+    /**
+     * Decides whether a failure is worth retrying.
+     */
+    private final Predicate<Throwable> retryOn;
+
+    /**
+     * The latency percentile after which a read is hedged, or zero if hedging is disabled.
+     */
+    private final double hedgePercentile;
+
+    /**
+     * Creates a new policy from the builder.
+     *
+     * @param builder the builder.
+     */
+    private RetryPolicy(Builder builder)
+    {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.timeBudget = builder.timeBudget;
+        this.retryOn = builder.retryOn;
+        this.hedgePercentile = builder.hedgePercentile;
+    }
+
+    /**
+     * Gets the default policy: {@link #DEFAULT_MAX_ATTEMPTS} attempts on transient failures, without hedging.
+     *
+     * @return the defaults.
+     */
+    public static RetryPolicy defaults()
+    {
+        return DEFAULTS;
+    }
+
+    /**
+     * Gets a policy that makes a single attempt.
+     *
+     * @return the policy.
+     */
+    public static RetryPolicy none()
+    {
+        return NONE;
+    }
+
+    /**
+     * Creates a new builder populated with the default values.
+     *
+     * @return the builder.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Checks whether a failure is transient: an I/O failure other than an interruption, or an iCloud response of
+     * '429 Too Many Requests' or a server error.
+     *
+     * @param failure the failure.
+     * @return {@code true} if the failure is worth retrying.
+     */
+    public static boolean isTransientFailure(Throwable failure)
+    {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof InterruptedIOException)
+            {
+                return false;
+            }
+            if (cause instanceof IOException)
+            {
+                return true;
+            }
+            if (cause instanceof ICloudException)
+            {
+                int status = ((ICloudException) cause).getStatusLine().getStatusCode();
+                return status == HttpStatus.SC_TOO_MANY_REQUESTS || status >= HttpStatus.SC_SERVER_ERROR;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the maximum number of attempts.
+     *
+     * @return the maximum number of attempts, including the first.
+     */
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    /**
+     * Gets the backoff before the first retry.
+     *
+     * @return the backoff.
+     */
+    public TimeValue getInitialBackoff()
+    {
+        return initialBackoff;
+    }
+
+    /**
+     * Gets the longest backoff.
+     *
+     * @return the backoff.
+     */
+    public TimeValue getMaxBackoff()
+    {
+        return maxBackoff;
+    }
+
+    /**
+     * Gets the time budget for all attempts of a read.
+     *
+     * @return the time budget.
+     */
+    public TimeValue getTimeBudget()
+    {
+        return timeBudget;
+    }
+
+    /**
+     * Gets the latency percentile after which a read is hedged.
+     *
+     * @return the percentile between 0 and 1, or zero if hedging is disabled.
+     */
+    public double getHedgePercentile()
+    {
+        return hedgePercentile;
+    }
+
+    /**
+     * Checks whether a failure is worth retrying under this policy.
+     *
+     * @param failure the failure.
+     * @return {@code true} to retry.
+     */
+    public boolean shouldRetry(Throwable failure)
+    {
+        return retryOn.test(failure);
+    }
+
+    /**
+     * Picks the backoff before a retry: a random time up to the initial backoff doubled for each earlier retry, capped
+     * at the longest backoff.
+     *
+     * @param retry the retry number, starting from 1.
+     * @return the backoff in nanoseconds.
+     */
+    long nextBackoffNanos(int retry)
+    {
+        long ceiling = initialBackoff.toNanoseconds() << Math.min(retry - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoff.toNanoseconds())
+        {
+            ceiling = maxBackoff.toNanoseconds();
+        }
+        return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+    }
+
+    /**
+     * A builder for {@link RetryPolicy}.
+     */
+    public static class Builder
+    {
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private TimeValue initialBackoff = DEFAULT_INITIAL_BACKOFF;
+        private TimeValue maxBackoff = DEFAULT_MAX_BACKOFF;
+        private TimeValue timeBudget = DEFAULT_TIME_BUDGET;
+        private Predicate<Throwable> retryOn = RetryPolicy::isTransientFailure;
+        private double hedgePercentile;
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Sets the maximum number of attempts, including the first.
+         *
+         * @param maxAttempts the maximum number of attempts.
+         * @return this builder.
+         */
+        public Builder maxAttempts(int maxAttempts)
+        {
+            Preconditions.checkArgument(maxAttempts > 0, "maxAttempts must be positive");
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the backoff between attempts. Each retry waits a random time up to the initial backoff doubled for each
+         * earlier retry, capped at the longest backoff.
+         *
+         * @param initialBackoff the backoff before the first retry.
+         * @param maxBackoff     the longest backoff.
+         * @return this builder.
+         */
+        public Builder backoff(@Nonnull TimeValue initialBackoff, @Nonnull TimeValue maxBackoff)
+        {
+            this.initialBackoff = Preconditions.checkNotNull(initialBackoff, "initialBackoff");
+            this.maxBackoff = Preconditions.checkNotNull(maxBackoff, "maxBackoff");
+            return this;
+        }
+
+        /**
+         * Sets the time budget for all attempts of a read. No retry is started once its backoff would end after the
+         * budget, though an attempt already running is not cut short.
+         *
+         * @param timeBudget the time budget.
+         * @return this builder.
+         */
+        public Builder timeBudget(@Nonnull TimeValue timeBudget)
+        {
+            this.timeBudget = Preconditions.checkNotNull(timeBudget, "timeBudget");
+            return this;
+        }
+
+        /**
+         * Sets which failures are retried, replacing {@link RetryPolicy#isTransientFailure(Throwable)}.
+         *
+         * @param retryOn returns {@code true} for failures worth retrying.
+         * @return this builder.
+         */
+        public Builder retryOn(@Nonnull Predicate<Throwable> retryOn)
+        {
+            this.retryOn = Preconditions.checkNotNull(retryOn, "retryOn");
+            return this;
+        }
+
+        /**
+         * Enables hedging: a read that has not answered within the given percentile of the latency of recent reads of
+         * the same kind is sent a second time, and the first answer is used. The slower request is then aborted.
+         * Hedging starts once enough reads have been timed, and runs each read on a separate thread.
+         *
+         * @param percentile the percentile between 0 and 1, e.g. 0.95, or zero to disable hedging.
+         * @return this builder.
+         */
+        public Builder hedgeAfterPercentile(double percentile)
+        {
+            Preconditions.checkArgument(percentile >= 0 && percentile < 1, "percentile must be in [0, 1)");
+            this.hedgePercentile = percentile;
+            return this;
+        }
+
+        /**
+         * Builds the policy.
+         *
+         * @return the policy.
+         */
+        public RetryPolicy build()
+        {
+            return new RetryPolicy(this);
+        }
+    }
+}
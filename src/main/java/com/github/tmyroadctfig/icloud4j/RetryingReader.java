@@ -0,0 +1,735 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
+import com.github.tmyroadctfig.icloud4j.util.ICloudUtils;
+import com.github.tmyroadctfig.icloud4j.util.JsonToMapResponseHandler;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonParseException;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs idempotent JSON reads under a {@link RetryPolicy}.
+ * <p>
+ * Each attempt builds a fresh request, so that a hedged duplicate can be aborted independently of the original. A
+ * '429 Too Many Requests' or server error response is reported as an {@link ICloudException} before its body is
+ * decoded, so that the policy sees it even when the error body happens to decode as the expected type.
+ * <p>
+ * Async reads follow the same policy without blocking a thread: backoffs and hedges are timed on a shared scheduler,
+ * and responses are decoded on the configured async executor. A retry waits at least as long as a 'Retry-After' header
+ * on the failed response asks.
+ */
+class RetryingReader implements Closeable
+{
+    /**
+     * The number of recent latencies kept for each kind of read.
+     */
+    static final int LATENCY_WINDOW = 128;
+
+    /**
+     * The number of latencies needed before reads of a kind are hedged.
+     */
+    static final int MIN_HEDGE_SAMPLES = 20;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(RetryingReader.class);
+
+    /**
+     * Times the backoffs and hedges of async reads.
+     */
+    private static final ScheduledExecutorService ASYNC_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder()
+            .setNameFormat("icloud4j-async-retry-%d")
+            .setDaemon(true)
+            .build());
+
+    /**
+     * The iCloud service.
+     */
+    private final ICloudService iCloudService;
+
+    /**
+     * The policy.
+     */
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * The recent latencies, keyed by the kind of read.
+     */
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the attempts of hedged reads, created on first use.
+     */
+    private volatile ExecutorService hedgeExecutor;
+
+    /**
+     * Creates a new reader.
+     *
+     * @param iCloudService the iCloud service.
+     * @param retryPolicy   the policy.
+     */
+    RetryingReader(ICloudService iCloudService, RetryPolicy retryPolicy)
+    {
+        this.iCloudService = iCloudService;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Reads a JSON response, retrying and hedging it as the policy allows.
+     *
+     * @param operation    the kind of read, e.g. "retrieveItemDetailsInFolders"; latencies are tracked per kind.
+     * @param request      builds the request for each attempt, with its headers populated.
+     * @param responseType the response type.
+     * @return the parsed response, or {@code null} if the response has no body.
+     */
+    <T> T read(String operation, Supplier<? extends HttpUriRequestBase> request, Type responseType)
+    {
+        long deadline = System.nanoTime() + retryPolicy.getTimeBudget().toNanoseconds();
+        for (int attempt = 1; ; attempt++)
+        {
+            try
+            {
+                return attempt(operation, request, responseType);
+            }
+            catch (RuntimeException e)
+            {
+                long backoffNanos = getRetryDelayNanos(attempt, e);
+                if (attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.shouldRetry(e)
+                    || System.nanoTime() + backoffNanos - deadline > 0)
+                {
+                    throw e;
+                }
+
+                logger.debug("Retrying {} in {}ms after attempt {} failed", operation,
+                    TimeUnit.NANOSECONDS.toMillis(backoffNanos), attempt, e);
+                try
+                {
+                    TimeUnit.NANOSECONDS.sleep(backoffNanos);
+                }
+                catch (InterruptedException interrupted)
+                {
+                    Thread.currentThread().interrupt();
+                    e.addSuppressed(interrupted);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a JSON response without blocking, retrying and hedging it as the policy allows.
+     *
+     * @param operation    the kind of read, e.g. "retrieveItemDetailsInFolders"; latencies are shared with
+     *                     {@link #read(String, Supplier, Type)}.
+     * @param request      builds the request for each attempt, with its headers populated.
+     * @param responseType the response type.
+     * @return a future for the parsed response, or {@code null} if the response has no body.
+     */
+    <T> CompletableFuture<T> readAsync(String operation, Supplier<? extends SimpleHttpRequest> request,
+                                       Type responseType)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long deadline = System.nanoTime() + retryPolicy.getTimeBudget().toNanoseconds();
+        readAsync(operation, request, responseType, 1, deadline, result);
+        return result;
+    }
+
+    /**
+     * Makes an attempt at an async read, and schedules the next attempt if it fails and the policy allows.
+     *
+     * @param operation    the kind of read.
+     * @param request      builds the request.
+     * @param responseType the response type.
+     * @param attempt      the attempt number, starting from 1.
+     * @param deadline     the {@link System#nanoTime()} by which the read must finish.
+     * @param result       the future completed with the outcome of the read.
+     */
+    private <T> void readAsync(String operation, Supplier<? extends SimpleHttpRequest> request, Type responseType,
+                               int attempt, long deadline, CompletableFuture<T> result)
+    {
+        if (result.isDone())
+        {
+            // Cancelled by the caller
+            return;
+        }
+
+        this.<T>attemptAsync(operation, request, responseType).whenComplete((value, failure) -> {
+            if (failure == null)
+            {
+                result.complete(value);
+                return;
+            }
+
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+            long backoffNanos = getRetryDelayNanos(attempt, cause);
+            if (attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.shouldRetry(cause)
+                || System.nanoTime() + backoffNanos - deadline > 0)
+            {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            logger.debug("Retrying {} in {}ms after attempt {} failed", operation,
+                TimeUnit.NANOSECONDS.toMillis(backoffNanos), attempt, cause);
+            try
+            {
+                ASYNC_SCHEDULER.schedule(
+                    () -> readAsync(operation, request, responseType, attempt + 1, deadline, result),
+                    backoffNanos, TimeUnit.NANOSECONDS);
+            }
+            catch (RejectedExecutionException e)
+            {
+                cause.addSuppressed(e);
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+
+    /**
+     * Picks the delay before retrying a failed attempt: the policy's backoff, or the 'Retry-After' delay of the failed
+     * response if that is longer.
+     *
+     * @param attempt the number of the failed attempt.
+     * @param failure the failure.
+     * @return the delay in nanoseconds.
+     */
+    private long getRetryDelayNanos(int attempt, Throwable failure)
+    {
+        long backoffNanos = retryPolicy.nextBackoffNanos(attempt);
+        for (Throwable cause = failure; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof ICloudException)
+            {
+                for (Map.Entry<String, String> header : ((ICloudException) cause).getHeaders().entrySet())
+                {
+                    if (HttpHeaders.RETRY_AFTER.equalsIgnoreCase(header.getKey()))
+                    {
+                        long retryAfterNanos = AdaptiveConcurrencyLimiter.parseRetryAfterNanos(header.getValue());
+                        return Math.max(backoffNanos, retryAfterNanos);
+                    }
+                }
+                break;
+            }
+        }
+        return backoffNanos;
+    }
+
+    /**
+     * Makes one async attempt at a read, hedged if the policy allows and enough latencies are known.
+     *
+     * @param operation    the kind of read.
+     * @param request      builds the request.
+     * @param responseType the response type.
+     * @return a future for the parsed response.
+     */
+    private <T> CompletableFuture<T> attemptAsync(String operation, Supplier<? extends SimpleHttpRequest> request,
+                                                  Type responseType)
+    {
+        LatencyWindow window = latencies.computeIfAbsent(operation, key -> new LatencyWindow());
+        long hedgeAfterNanos = retryPolicy.getHedgePercentile() > 0
+            ? window.getPercentileNanos(retryPolicy.getHedgePercentile())
+            : -1;
+
+        AsyncRead<T> read = new AsyncRead<>(request, responseType, window);
+        read.launch();
+        if (hedgeAfterNanos >= 0)
+        {
+            ScheduledFuture<?> hedge = ASYNC_SCHEDULER.schedule(() -> {
+                logger.debug("Hedging {} after {}ms", operation, TimeUnit.NANOSECONDS.toMillis(hedgeAfterNanos));
+                read.launch();
+            }, hedgeAfterNanos, TimeUnit.NANOSECONDS);
+            read.result.whenComplete((value, failure) -> hedge.cancel(false));
+        }
+        read.result.whenComplete((value, failure) -> read.cancel());
+        return read.result;
+    }
+
+    /**
+     * Makes one attempt at a read, hedged if the policy allows and enough latencies are known.
+     *
+     * @param operation    the kind of read.
+     * @param request      builds the request.
+     * @param responseType the response type.
+     * @return the parsed response.
+     */
+    private <T> T attempt(String operation, Supplier<? extends HttpUriRequestBase> request, Type responseType)
+    {
+        LatencyWindow window = latencies.computeIfAbsent(operation, key -> new LatencyWindow());
+        long hedgeAfterNanos = retryPolicy.getHedgePercentile() > 0
+            ? window.getPercentileNanos(retryPolicy.getHedgePercentile())
+            : -1;
+        if (hedgeAfterNanos < 0)
+        {
+            return execute(request.get(), responseType, window);
+        }
+
+        HedgedRead<T> read = new HedgedRead<>(request, responseType, window);
+        try
+        {
+            read.launch();
+            try
+            {
+                return read.result.get(hedgeAfterNanos, TimeUnit.NANOSECONDS);
+            }
+            catch (TimeoutException e)
+            {
+                logger.debug("Hedging {} after {}ms", operation, TimeUnit.NANOSECONDS.toMillis(hedgeAfterNanos));
+                read.launch();
+                return read.result.get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            read.cancel();
+        }
+    }
+
+    /**
+     * Sends a request and parses its JSON response, recording the latency of a success.
+     *
+     * @param request      the request.
+     * @param responseType the response type.
+     * @param window       the latencies of this kind of read.
+     * @return the parsed response.
+     */
+    private <T> T execute(HttpUriRequestBase request, Type responseType, LatencyWindow window)
+    {
+        long startNanos = System.nanoTime();
+        try
+        {
+            T result = iCloudService.getHttpClient().execute(request, response -> {
+                int status = response.getCode();
+                if (status == HttpStatus.SC_TOO_MANY_REQUESTS || status >= HttpStatus.SC_SERVER_ERROR)
+                {
+                    Map<String, Object> errorMap = new JsonToMapResponseHandler().handleResponse(response);
+                    throw new ICloudException(response, errorMap != null ? errorMap : Collections.emptyMap());
+                }
+
+                HttpEntity entity = response.getEntity();
+                if (entity == null)
+                {
+                    return null;
+                }
+
+                try (InputStream content = entity.getContent())
+                {
+                    return ICloudUtils.decodeJson(response, content, responseType);
+                }
+            });
+            window.record(System.nanoTime() - startNanos);
+            return result;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decodes the JSON response of an async request, reporting a '429 Too Many Requests' or server error as an
+     * {@link ICloudException} as {@link #execute(HttpUriRequestBase, Type, LatencyWindow)} does.
+     *
+     * @param response     the response.
+     * @param responseType the response type.
+     * @return the parsed response, or {@code null} if the response has no body.
+     */
+    private static <T> T decode(SimpleHttpResponse response, Type responseType)
+    {
+        byte[] body = response.getBodyBytes();
+        int status = response.getCode();
+        if (status == HttpStatus.SC_TOO_MANY_REQUESTS || status >= HttpStatus.SC_SERVER_ERROR)
+        {
+            Map<String, Object> errorMap = null;
+            if (body != null)
+            {
+                try
+                {
+                    //noinspection unchecked
+                    errorMap = JsonCodecs.gson().fromJson(new String(body, StandardCharsets.UTF_8), Map.class);
+                }
+                catch (JsonParseException e)
+                {
+                    // Not every error body is JSON
+                }
+            }
+            throw new ICloudException(response, errorMap != null ? errorMap : Collections.emptyMap());
+        }
+
+        if (body == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return ICloudUtils.decodeJson(response, new ByteArrayInputStream(body), responseType);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the executor for hedged reads, creating it on first use.
+     *
+     * @return the executor.
+     */
+    private ExecutorService getHedgeExecutor()
+    {
+        ExecutorService executor = hedgeExecutor;
+        if (executor == null)
+        {
+            synchronized (this)
+            {
+                executor = hedgeExecutor;
+                if (executor == null)
+                {
+                    executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                        .setNameFormat("icloud4j-hedged-read-%d")
+                        .setDaemon(true)
+                        .build());
+                    hedgeExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Stops the threads running hedged reads.
+     */
+    @Override
+    public void close()
+    {
+        ExecutorService executor = hedgeExecutor;
+        if (executor != null)
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A read sent once or twice, completing with the first success, or with a failure once every request has failed.
+     */
+    private class HedgedRead<T>
+    {
+        /**
+         * Builds the request for each send.
+         */
+        private final Supplier<? extends HttpUriRequestBase> requestFactory;
+
+        /**
+         * The response type.
+         */
+        private final Type responseType;
+
+        /**
+         * The latencies of this kind of read.
+         */
+        private final LatencyWindow window;
+
+        /**
+         * The requests sent.
+         */
+        private final List<HttpUriRequestBase> requests = new CopyOnWriteArrayList<>();
+
+        /**
+         * The number of requests that have not finished.
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * The result.
+         */
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        HedgedRead(Supplier<? extends HttpUriRequestBase> requestFactory, Type responseType, LatencyWindow window)
+        {
+            this.requestFactory = requestFactory;
+            this.responseType = responseType;
+            this.window = window;
+        }
+
+        /**
+         * Sends the request again on the hedging executor.
+         */
+        void launch()
+        {
+            HttpUriRequestBase request = requestFactory.get();
+            requests.add(request);
+            pending.incrementAndGet();
+            getHedgeExecutor().execute(() -> {
+                try
+                {
+                    result.complete(execute(request, responseType, window));
+                }
+                catch (Throwable e)
+                {
+                    if (pending.decrementAndGet() == 0)
+                    {
+                        result.completeExceptionally(e);
+                    }
+                    return;
+                }
+                pending.decrementAndGet();
+            });
+        }
+
+        /**
+         * Aborts any request still running.
+         */
+        void cancel()
+        {
+            requests.forEach(HttpUriRequestBase::cancel);
+        }
+    }
+
+    /**
+     * An async read sent once, or twice when hedged, completing with the first success, or with a failure once every
+     * request has failed.
+     */
+    private class AsyncRead<T>
+    {
+        /**
+         * Builds the request for each send.
+         */
+        private final Supplier<? extends SimpleHttpRequest> requestFactory;
+
+        /**
+         * The response type.
+         */
+        private final Type responseType;
+
+        /**
+         * The latencies of this kind of read.
+         */
+        private final LatencyWindow window;
+
+        /**
+         * The requests in flight. Guarded by {@code this}.
+         */
+        private final List<Future<SimpleHttpResponse>> requests = new ArrayList<>();
+
+        /**
+         * The number of requests that have not finished.
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * The result.
+         */
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        AsyncRead(Supplier<? extends SimpleHttpRequest> requestFactory, Type responseType, LatencyWindow window)
+        {
+            this.requestFactory = requestFactory;
+            this.responseType = responseType;
+            this.window = window;
+        }
+
+        /**
+         * Sends the request, unless the read has already finished.
+         */
+        synchronized void launch()
+        {
+            if (result.isDone())
+            {
+                return;
+            }
+
+            long startNanos = System.nanoTime();
+            pending.incrementAndGet();
+            try
+            {
+                requests.add(iCloudService.getAsyncHttpClient().execute(requestFactory.get(),
+                    new FutureCallback<SimpleHttpResponse>()
+                    {
+                        @Override
+                        public void completed(SimpleHttpResponse response)
+                        {
+                            try
+                            {
+                                // Decoded off the IO reactor threads
+                                iCloudService.getConfig().getAsyncExecutor().execute(() -> {
+                                    try
+                                    {
+                                        T value = decode(response, responseType);
+                                        window.record(System.nanoTime() - startNanos);
+                                        pending.decrementAndGet();
+                                        result.complete(value);
+                                    }
+                                    catch (Throwable e)
+                                    {
+                                        onFailure(e);
+                                    }
+                                });
+                            }
+                            catch (RejectedExecutionException e)
+                            {
+                                onFailure(e);
+                            }
+                        }
+
+                        @Override
+                        public void failed(Exception e)
+                        {
+                            onFailure(e);
+                        }
+
+                        @Override
+                        public void cancelled()
+                        {
+                            onFailure(new CancellationException("Request cancelled"));
+                        }
+                    }));
+            }
+            catch (RuntimeException e)
+            {
+                onFailure(e);
+            }
+        }
+
+        /**
+         * Records a failed request, failing the read once no request is left.
+         *
+         * @param failure the failure.
+         */
+        private void onFailure(Throwable failure)
+        {
+            if (pending.decrementAndGet() == 0)
+            {
+                result.completeExceptionally(failure);
+            }
+        }
+
+        /**
+         * Aborts any request still in flight.
+         */
+        synchronized void cancel()
+        {
+            requests.forEach(request -> request.cancel(true));
+        }
+    }
+
+    /**
+     * The recent latencies of a kind of read.
+     */
+    static class LatencyWindow
+    {
+        /**
+         * The latencies in nanoseconds, as a ring buffer. Guarded by {@code this}.
+         */
+        private final long[] samples = new long[LATENCY_WINDOW];
+
+        /**
+         * The number of latencies recorded. Guarded by {@code this}.
+         */
+        private long count;
+
+        /**
+         * Records a latency.
+         *
+         * @param latencyNanos the latency in nanoseconds.
+         */
+        synchronized void record(long latencyNanos)
+        {
+            samples[(int) (count++ % LATENCY_WINDOW)] = latencyNanos;
+        }
+
+        /**
+         * Gets a percentile of the recent latencies.
+         *
+         * @param percentile the percentile between 0 and 1.
+         * @return the latency in nanoseconds, or -1 if too few latencies have been recorded.
+         */
+        long getPercentileNanos(double percentile)
+        {
+            long[] sorted;
+            synchronized (this)
+            {
+                if (count < MIN_HEDGE_SAMPLES)
+                {
+                    return -1;
+                }
+                sorted = Arrays.copyOf(samples, (int) Math.min(count, LATENCY_WINDOW));
+            }
+            Arrays.sort(sorted);
+            return sorted[Math.min(sorted.length - 1, (int) (percentile * sorted.length))];
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.pool.ConnPoolControl;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies per-host connection limits to the pool the first time a route is used.
+ *
+ * <p>The route planner decides the exact route (proxy, TLS layering, SNI name) for a request, so the limits are keyed
+ * by host name and applied to whatever route the client actually leases from. The same handler works for both the
+ * classic and the async client.</p>
+ */
+class RouteConnectionLimits implements ExecChainHandler, AsyncExecChainHandler
+{
+    /**
+     * The connection pool to apply the limits to.
+     */
+    private final ConnPoolControl<HttpRoute> connectionPool;
+
+    /**
+     * The limits, keyed by lower-case host name. This map may be shared between handlers.
+     */
+    private final Map<String, Integer> hostLimits;
+
+    /**
+     * The limit last applied to each route.
+     */
+    private final Map<HttpRoute, Integer> appliedLimits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new handler.
+     *
+     * @param connectionPool the connection pool.
+     * @param hostLimits     the limits, keyed by lower-case host name; later changes to the map are picked up.
+     */
+    RouteConnectionLimits(ConnPoolControl<HttpRoute> connectionPool, Map<String, Integer> hostLimits)
+    {
+        this.connectionPool = connectionPool;
+        this.hostLimits = hostLimits;
+    }
+
+    /**
+     * Creates a map for holding host limits, populated from the given limits.
+     *
+     * @param initialLimits the initial limits, keyed by host name.
+     * @return the map.
+     */
+    static Map<String, Integer> newHostLimits(Map<String, Integer> initialLimits)
+    {
+        Map<String, Integer> hostLimits = new ConcurrentHashMap<>();
+        initialLimits.forEach((host, limit) -> hostLimits.put(host.toLowerCase(Locale.ROOT), limit));
+        return hostLimits;
+    }
+
+    /**
+     * Applies the limit for the given route, if one is configured and has not already been applied.
+     *
+     * @param route the route.
+     */
+    private void applyLimit(HttpRoute route)
+    {
+        Integer limit = hostLimits.get(route.getTargetHost().getHostName().toLowerCase(Locale.ROOT));
+        if (limit != null && !limit.equals(appliedLimits.put(route, limit)))
+        {
+            connectionPool.setMaxPerRoute(route, limit);
+        }
+    }
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+        throws IOException, HttpException
+    {
+        applyLimit(scope.route);
+        return chain.proceed(request, scope);
+    }
+
+    @Override
+    public void execute(HttpRequest request, AsyncEntityProducer entityProducer, AsyncExecChain.Scope scope,
+                        AsyncExecChain chain, AsyncExecCallback asyncExecCallback) throws HttpException, IOException
+    {
+        applyLimit(scope.route);
+        chain.proceed(request, entityProducer, scope, asyncExecCallback);
+    }
+}
@@ -0,0 +1,664 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.util.ChannelTransfer;
+import com.github.tmyroadctfig.icloud4j.util.DirectBufferPool;
+import com.github.tmyroadctfig.icloud4j.util.ICloudUtils;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * Downloads a file to disk as parallel HTTP 'Range' requests, writing each segment in place with positional
+ * {@link FileChannel} writes. Progress is tracked in a {@link DownloadCheckpoint}, which is persisted next to the file
+ * when the download is resumable.
+ */
+class SegmentedDownload
+{
+    /**
+     * The number of bytes written between checkpoint updates within a single response.
+     */
+    private static final long CHECKPOINT_INTERVAL = 1024 * 1024;
+
+    /**
+     * The iCloud service.
+     */
+    private final ICloudService iCloudService;
+
+    /**
+     * The node ID.
+     */
+    private final String nodeId;
+
+    /**
+     * The etag of the node.
+     */
+    private final String etag;
+
+    /**
+     * The content URL.
+     */
+    private final String contentUrl;
+
+    /**
+     * The expected file size, or zero or less if unknown.
+     */
+    private final long size;
+
+    /**
+     * The download options.
+     */
+    private final DownloadOptions options;
+
+    /**
+     * Called with the number of bytes after each write to the file, on the writing thread. It may block to throttle
+     * the download, or throw to abort it.
+     */
+    private final LongConsumer onWritten;
+
+    /**
+     * Creates a new download.
+     *
+     * @param iCloudService the iCloud service.
+     * @param nodeId        the node ID, recorded in checkpoints.
+     * @param etag          the etag of the node, recorded in checkpoints.
+     * @param contentUrl    the content URL.
+     * @param size          the expected file size, or zero or less if unknown.
+     * @param options       the download options.
+     */
+    SegmentedDownload(ICloudService iCloudService, String nodeId, String etag, String contentUrl, long size,
+                      DownloadOptions options)
+    {
+        this(iCloudService, nodeId, etag, contentUrl, size, options, count -> {
+        });
+    }
+
+    /**
+     * Creates a new download which reports its progress.
+     *
+     * @param iCloudService the iCloud service.
+     * @param nodeId        the node ID, recorded in checkpoints.
+     * @param etag          the etag of the node, recorded in checkpoints.
+     * @param contentUrl    the content URL.
+     * @param size          the expected file size, or zero or less if unknown.
+     * @param options       the download options.
+     * @param onWritten     called with the number of bytes after each write to the file.
+     */
+    SegmentedDownload(ICloudService iCloudService, String nodeId, String etag, String contentUrl, long size,
+                      DownloadOptions options, LongConsumer onWritten)
+    {
+        this.iCloudService = iCloudService;
+        this.nodeId = nodeId;
+        this.etag = etag;
+        this.contentUrl = contentUrl;
+        this.size = size;
+        this.options = options;
+        this.onWritten = onWritten;
+    }
+
+    /**
+     * Downloads the file. Unless resuming from a checkpoint, any existing file at the target is replaced. If the
+     * server ignores the 'Range' header of the first request, the whole file is taken from that response instead.
+     *
+     * @param target the file to write.
+     * @return the digest of the file if {@link DownloadOptions#isComputeDigests()} is set, otherwise {@code null}.
+     * @throws IllegalStateException if a resumable download finds a checkpoint for a different version of the node.
+     */
+    @Nullable
+    FileDigest downloadTo(Path target)
+    {
+        DownloadCheckpoint saved = options.isResumable() ? DownloadCheckpoint.load(target) : null;
+        boolean resuming = saved != null && Files.exists(target);
+        if (resuming && !saved.matches(nodeId, etag, size))
+        {
+            throw new IllegalStateException(String.format(
+                "The node '%s' has changed since the partial download to '%s' started; delete the checkpoint to " +
+                    "restart the download", nodeId, target));
+        }
+        DownloadCheckpoint checkpoint = resuming ? saved : new DownloadCheckpoint(nodeId, etag, size);
+
+        Set<OpenOption> openOptions = new HashSet<>();
+        Collections.addAll(openOptions, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (!resuming)
+        {
+            openOptions.add(StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        if (options.isComputeDigests())
+        {
+            // Bytes written out of order are read back to be hashed
+            openOptions.add(StandardOpenOption.READ);
+        }
+
+        FileDigest digest = TransferTracker.track(iCloudService, options.getTransferListener(),
+            TransferProgress.Direction.DOWNLOAD, nodeId, size, tracker -> {
+                try (FileChannel channel = FileChannel.open(target, openOptions))
+                {
+                    try
+                    {
+                        Transfer transfer = new Transfer(target, channel, checkpoint, tracker);
+                        transfer.run();
+                        return transfer.finishDigest();
+                    }
+                    catch (RuntimeException e)
+                    {
+                        if (options.isResumable())
+                        {
+                            channel.force(false);
+                            checkpoint.save(target);
+                        }
+                        throw e;
+                    }
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+        if (options.isResumable())
+        {
+            DownloadCheckpoint.delete(target);
+        }
+        return digest;
+    }
+
+    /**
+     * Downloads a file with a single request, streaming the body into a channel.
+     *
+     * @param iCloudService the iCloud service.
+     * @param nodeId        the node ID, reported to transfer listeners.
+     * @param contentUrl    the content URL.
+     * @param size          the expected file size, or -1 if unknown.
+     * @param target        the channel, written from its current position and not closed.
+     * @return the number of bytes written.
+     */
+    static long transfer(ICloudService iCloudService, String nodeId, String contentUrl, long size,
+                         WritableByteChannel target)
+    {
+        HttpGet get = new HttpGet(contentUrl);
+        iCloudService.populateRequestHeadersParameters(get);
+
+        return TransferTracker.track(iCloudService, null, TransferProgress.Direction.DOWNLOAD, nodeId, size,
+            tracker -> {
+                try
+                {
+                    return iCloudService.getHttpClient().execute(get, response -> {
+                        if (response.getCode() != HttpStatus.SC_OK)
+                        {
+                            throw new ICloudException(response, Collections.emptyMap());
+                        }
+
+                        try (InputStream inputStream = response.getEntity().getContent())
+                        {
+                            return ChannelTransfer.transfer(inputStream, tracker.wrap(target));
+                        }
+                    });
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    /**
+     * Splits a byte range into segments.
+     *
+     * @param start       the first byte.
+     * @param end         the byte after the last one.
+     * @param segmentSize the segment size.
+     * @return the segments.
+     */
+    static List<Segment> split(long start, long end, long segmentSize)
+    {
+        List<Segment> segments = new ArrayList<>();
+        for (long offset = start; offset < end; offset += Math.min(segmentSize, end - offset))
+        {
+            segments.add(new Segment(offset, Math.min(segmentSize, end - offset)));
+        }
+        return segments;
+    }
+
+    /**
+     * The transfer of the missing parts of a file into an open channel.
+     */
+    private class Transfer
+    {
+        private final Path target;
+        private final FileChannel channel;
+        private final DownloadCheckpoint checkpoint;
+
+        /**
+         * The SHA-256 of the bytes hashed so far, or {@code null} if digests are not computed. Guards the digest state.
+         */
+        private final Hasher sha256;
+
+        /**
+         * The CRC32C of the bytes hashed so far, or {@code null} if digests are not computed.
+         */
+        private final Hasher crc32c;
+
+        /**
+         * The number of bytes from the start of the file which have been hashed.
+         */
+        private long hashed;
+
+        /**
+         * Called with the number of bytes after each write to the file.
+         */
+        private final LongConsumer onWritten;
+
+        private Transfer(Path target, FileChannel channel, DownloadCheckpoint checkpoint, TransferTracker tracker)
+        {
+            this.target = target;
+            this.channel = channel;
+            this.checkpoint = checkpoint;
+            this.onWritten = SegmentedDownload.this.onWritten.andThen(tracker::add);
+            this.sha256 = options.isComputeDigests() ? Hashing.sha256().newHasher() : null;
+            this.crc32c = options.isComputeDigests() ? Hashing.crc32c().newHasher() : null;
+        }
+
+        /**
+         * Fetches the missing segments, the first one on the calling thread as a probe for range support.
+         */
+        private void run()
+        {
+            if (size <= 0)
+            {
+                fetch(new Segment(0, -1), true);
+                return;
+            }
+
+            long segmentSize = options.getParallelism() == 1 ? Long.MAX_VALUE : options.getSegmentSize();
+            List<Segment> segments = new ArrayList<>();
+            for (Segment missing : checkpoint.getMissing())
+            {
+                segments.addAll(split(missing.start, missing.end(), segmentSize));
+            }
+
+            if (segments.isEmpty() || fetch(segments.get(0), true))
+            {
+                return;
+            }
+            fetchInParallel(segments.subList(1, segments.size()));
+        }
+
+        /**
+         * Fetches the segments, with at most {@link DownloadOptions#getParallelism()} requests in flight.
+         *
+         * @param segments the segments.
+         */
+        private void fetchInParallel(List<Segment> segments)
+        {
+            if (segments.isEmpty())
+            {
+                return;
+            }
+
+            int workers = Math.min(options.getParallelism(), segments.size());
+            ExecutorService temporaryPool = null;
+            Executor executor = options.getExecutor();
+            if (executor == null)
+            {
+                temporaryPool = Executors.newFixedThreadPool(workers,
+                    new ThreadFactoryBuilder().setNameFormat("icloud4j-download-%d").setDaemon(true).build());
+                executor = temporaryPool;
+            }
+
+            try
+            {
+                AtomicInteger next = new AtomicInteger();
+                AtomicBoolean failed = new AtomicBoolean();
+                List<CompletableFuture<Void>> futures = new ArrayList<>(workers);
+                for (int i = 0; i < workers; i++)
+                {
+                    futures.add(CompletableFuture.runAsync(() -> {
+                        int index;
+                        while (!failed.get() && (index = next.getAndIncrement()) < segments.size())
+                        {
+                            try
+                            {
+                                fetch(segments.get(index), false);
+                            }
+                            catch (RuntimeException e)
+                            {
+                                failed.set(true);
+                                throw e;
+                            }
+                        }
+                    }, executor));
+                }
+
+                ICloudUtils.join(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])));
+            }
+            finally
+            {
+                if (temporaryPool != null)
+                {
+                    temporaryPool.shutdown();
+                }
+            }
+        }
+
+        /**
+         * Fetches a single segment. A segment covering the whole file, or one of unknown length, is requested without
+         * a 'Range' header.
+         *
+         * @param segment the segment, with a negative length if the file size is unknown.
+         * @param probe   whether a '200 OK' response holding the whole file is accepted in place of the segment.
+         * @return {@code true} if the whole file was received.
+         */
+        private boolean fetch(Segment segment, boolean probe)
+        {
+            boolean wholeFile = segment.start == 0 && (segment.length < 0 || segment.length == size);
+
+            HttpGet get = new HttpGet(contentUrl);
+            iCloudService.populateRequestHeadersParameters(get);
+            if (!wholeFile)
+            {
+                // The last segment is open-ended, so that a resumed download asks for 'bytes=N-'
+                get.setHeader("Range", "bytes=" + segment.start + "-"
+                    + (segment.end() == size ? "" : Long.toString(segment.end() - 1)));
+            }
+
+            return execute(get, response -> {
+                if (response.getCode() == HttpStatus.SC_OK && (wholeFile || probe))
+                {
+                    long copied = copy(response, 0);
+                    channel.truncate(copied);
+                    return true;
+                }
+
+                Header contentRange = response.getFirstHeader("Content-Range");
+                if (response.getCode() != HttpStatus.SC_PARTIAL_CONTENT
+                    || (contentRange != null && !contentRange.getValue().startsWith("bytes " + segment.start + "-")))
+                {
+                    throw new ICloudException(response, Collections.emptyMap());
+                }
+
+                long copied = copy(response, segment.start);
+                if (copied != segment.length)
+                {
+                    throw new IOException(String.format("Expected %d bytes at offset %d but received %d",
+                        segment.length, segment.start, copied));
+                }
+                return false;
+            });
+        }
+
+        /**
+         * Copies a response body into the file at the given position, recording progress in the checkpoint.
+         *
+         * @param response the response.
+         * @param position the file position of the first byte.
+         * @return the number of bytes copied.
+         * @throws IOException if the body can't be read or written.
+         */
+        private long copy(ClassicHttpResponse response, long position) throws IOException
+        {
+            long copied = 0;
+            long recorded = 0;
+            DirectBufferPool pool = DirectBufferPool.shared();
+            ByteBuffer buffer = pool.acquire();
+            try (InputStream inputStream = response.getEntity().getContent())
+            {
+                ReadableByteChannel source = Channels.newChannel(inputStream);
+                IOException failure = null;
+                boolean endOfStream = false;
+                while (!endOfStream)
+                {
+                    try
+                    {
+                        endOfStream = ChannelTransfer.fill(source, buffer);
+                    }
+                    catch (IOException e)
+                    {
+                        // Write out what was received before the failure, so the checkpoint can include it
+                        failure = e;
+                        endOfStream = true;
+                    }
+
+                    buffer.flip();
+                    int count = buffer.remaining();
+                    hash(position + copied, buffer);
+                    while (buffer.hasRemaining())
+                    {
+                        copied += channel.write(buffer, position + copied);
+                    }
+                    buffer.clear();
+                    if (count > 0)
+                    {
+                        onWritten.accept(count);
+                    }
+
+                    if (copied - recorded >= CHECKPOINT_INTERVAL)
+                    {
+                        record(position + recorded, position + copied);
+                        recorded = copied;
+                    }
+                }
+
+                if (failure != null)
+                {
+                    throw failure;
+                }
+            }
+            finally
+            {
+                pool.release(buffer);
+
+                // Keep whatever was written, so that a failed response is not fetched again from the start
+                record(position + recorded, position + copied);
+            }
+            return copied;
+        }
+
+        /**
+         * Hashes a buffer about to be written, if it follows on from the bytes already hashed. When the bytes between
+         * have been written by another segment they are read back from the file first.
+         *
+         * @param position the file position of the buffer.
+         * @param data     the buffer, which is not modified.
+         * @throws IOException if the file can't be read.
+         */
+        private void hash(long position, ByteBuffer data) throws IOException
+        {
+            if (sha256 == null)
+            {
+                return;
+            }
+
+            synchronized (sha256)
+            {
+                if (position > hashed && checkpoint.isCompleted(hashed, position))
+                {
+                    hashFromFile(position);
+                }
+
+                long skip = hashed - position;
+                if (skip >= 0 && skip < data.remaining())
+                {
+                    ByteBuffer unhashed = data.duplicate();
+                    unhashed.position(unhashed.position() + (int) skip);
+                    hashed += unhashed.remaining();
+                    sha256.putBytes(unhashed.duplicate());
+                    crc32c.putBytes(unhashed);
+                }
+            }
+        }
+
+        /**
+         * Hashes bytes read back from the file, up to the given position. Must be called holding the digest lock.
+         *
+         * @param end the byte after the last one to hash.
+         * @throws IOException if the file can't be read.
+         */
+        private void hashFromFile(long end) throws IOException
+        {
+            DirectBufferPool pool = DirectBufferPool.shared();
+            ByteBuffer buffer = pool.acquire();
+            try
+            {
+                while (hashed < end)
+                {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), end - hashed));
+                    int count = channel.read(buffer, hashed);
+                    if (count <= 0)
+                    {
+                        throw new IOException("Unexpected end of file at offset " + hashed);
+                    }
+
+                    buffer.flip();
+                    sha256.putBytes(buffer.duplicate());
+                    crc32c.putBytes(buffer);
+                    hashed += count;
+                }
+            }
+            finally
+            {
+                pool.release(buffer);
+            }
+        }
+
+        /**
+         * Hashes any bytes not yet hashed and returns the digest of the whole file.
+         *
+         * @return the digest, or {@code null} if digests are not computed.
+         * @throws IOException if the file can't be read.
+         */
+        @Nullable
+        private FileDigest finishDigest() throws IOException
+        {
+            if (sha256 == null)
+            {
+                return null;
+            }
+
+            synchronized (sha256)
+            {
+                hashFromFile(channel.size());
+                return new FileDigest(sha256.hash().toString(), String.format("%08x", crc32c.hash().asInt()));
+            }
+        }
+
+        /**
+         * Records a written byte range, persisting the checkpoint if the download is resumable.
+         *
+         * @param start the first byte.
+         * @param end   the byte after the last one.
+         * @throws IOException if the file can't be flushed.
+         */
+        private void record(long start, long end) throws IOException
+        {
+            if (end <= start)
+            {
+                return;
+            }
+
+            checkpoint.markCompleted(start, end);
+            if (options.isResumable())
+            {
+                // The data must reach the disk before the checkpoint claims it
+                channel.force(false);
+                checkpoint.save(target);
+            }
+        }
+
+        /**
+         * Executes a request with the classic client.
+         *
+         * @param get     the request.
+         * @param handler the response handler.
+         * @return the handler result.
+         */
+        private <T> T execute(HttpGet get, HttpClientResponseHandler<T> handler)
+        {
+            try
+            {
+                return iCloudService.getHttpClient().execute(get, handler);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * A byte range of the file.
+     */
+    static class Segment
+    {
+        /**
+         * The first byte.
+         */
+        final long start;
+
+        /**
+         * The number of bytes.
+         */
+        final long length;
+
+        Segment(long start, long length)
+        {
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Gets the byte after the last one.
+         *
+         * @return the end offset.
+         */
+        long end()
+        {
+            return start + length;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.google.common.base.Suppliers;
+
+import java.util.function.Supplier;
+
+/**
+ * The services of one login of an {@link ICloudService}, each created on first use and then shared.
+ * <p>
+ * Each service is built from the web service URLs of the login, and the photos service makes a request when it is
+ * created, so a new registry is made for each login rather than reusing services built for the previous one.
+ */
+class ServiceRegistry
+{
+    /**
+     * The iCloud Drive service.
+     */
+    private final Supplier<DriveService> drive;
+
+    /**
+     * The photos service.
+     */
+    private final Supplier<PhotosService> photos;
+
+    /**
+     * The ubiquity service.
+     */
+    private final Supplier<UbiquityService> ubiquity;
+
+    /**
+     * The find my iPhone service.
+     */
+    private final Supplier<FindMyIPhoneService> findMyIPhone;
+
+    /**
+     * Creates a new registry.
+     *
+     * @param iCloudService the iCloud service.
+     */
+    ServiceRegistry(ICloudService iCloudService)
+    {
+        // A service whose constructor throws is not memoized, so the next call tries again
+        drive = Suppliers.memoize(() -> new DriveService(iCloudService));
+        photos = Suppliers.memoize(() -> new PhotosService(iCloudService));
+        ubiquity = Suppliers.memoize(() -> new UbiquityService(iCloudService));
+        findMyIPhone = Suppliers.memoize(() -> new FindMyIPhoneService(iCloudService));
+    }
+
+    /**
+     * Gets the iCloud Drive service, creating it on first use.
+     *
+     * @return the service.
+     */
+    DriveService drive()
+    {
+        return drive.get();
+    }
+
+    /**
+     * Gets the photos service, creating it on first use.
+     *
+     * @return the service.
+     */
+    PhotosService photos()
+    {
+        return photos.get();
+    }
+
+    /**
+     * Gets the ubiquity service, creating it on first use.
+     *
+     * @return the service.
+     */
+    UbiquityService ubiquity()
+    {
+        return ubiquity.get();
+    }
+
+    /**
+     * Gets the find my iPhone service, creating it on first use.
+     *
+     * @return the service.
+     */
+    FindMyIPhoneService findMyIPhone()
+    {
+        return findMyIPhone.get();
+    }
+
+    /**
+     * Gets a service by kind, creating it on first use.
+     *
+     * @param kind the kind of service.
+     * @return the service.
+     */
+    Object get(ICloudService.ServiceKind kind)
+    {
+        switch (kind)
+        {
+            case DRIVE:
+                return drive();
+            case PHOTOS:
+                return photos();
+            case UBIQUITY:
+                return ubiquity();
+            case FIND_MY_IPHONE:
+                return findMyIPhone();
+            default:
+                throw new IllegalArgumentException("Unknown service: " + kind);
+        }
+    }
+}
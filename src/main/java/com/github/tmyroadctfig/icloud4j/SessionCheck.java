@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.function.BiConsumer;
+
+/**
+ * Reports the target host name and status of the final response to each request, so that a restored session can be
+ * settled from whichever client first uses it.
+ *
+ * <p>A client used by a single session reports to a fixed listener. A client shared by several sessions reports to the
+ * listener each request carries in its context under {@link #RESPONSE_LISTENER}, and skips requests without one. The
+ * same handler works for both the classic and the async client.</p>
+ */
+class SessionCheck implements ExecChainHandler, AsyncExecChainHandler
+{
+    /**
+     * The context attribute holding a request's {@code BiConsumer<String, Integer>} listener on a shared client.
+     */
+    static final String RESPONSE_LISTENER = "icloud4j.response-listener";
+
+    /**
+     * The listener for every request, or {@code null} to use the one in each request's context.
+     */
+    @Nullable
+    private final BiConsumer<String, Integer> listener;
+
+    /**
+     * Creates a new check.
+     *
+     * @param listener the listener for every request, or {@code null} to use the one in each request's context.
+     */
+    SessionCheck(@Nullable BiConsumer<String, Integer> listener)
+    {
+        this.listener = listener;
+    }
+
+    @Override
+    public ClassicHttpResponse execute(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+        throws IOException, HttpException
+    {
+        ClassicHttpResponse response = chain.proceed(request, scope);
+        BiConsumer<String, Integer> requestListener = getListener(scope.clientContext);
+        if (requestListener != null)
+        {
+            requestListener.accept(scope.route.getTargetHost().getHostName(), response.getCode());
+        }
+        return response;
+    }
+
+    @Override
+    public void execute(HttpRequest request, AsyncEntityProducer entityProducer, AsyncExecChain.Scope scope,
+                        AsyncExecChain chain, AsyncExecCallback asyncExecCallback) throws HttpException, IOException
+    {
+        BiConsumer<String, Integer> requestListener = getListener(scope.clientContext);
+        if (requestListener == null)
+        {
+            chain.proceed(request, entityProducer, scope, asyncExecCallback);
+            return;
+        }
+
+        String host = scope.route.getTargetHost().getHostName();
+        chain.proceed(request, entityProducer, scope, new AsyncExecCallback()
+        {
+            @Override
+            public AsyncDataConsumer handleResponse(HttpResponse response, EntityDetails entityDetails)
+                throws HttpException, IOException
+            {
+                requestListener.accept(host, response.getCode());
+                return asyncExecCallback.handleResponse(response, entityDetails);
+            }
+
+            @Override
+            public void handleInformationResponse(HttpResponse response) throws HttpException, IOException
+            {
+                asyncExecCallback.handleInformationResponse(response);
+            }
+
+            @Override
+            public void completed()
+            {
+                asyncExecCallback.completed();
+            }
+
+            @Override
+            public void failed(Exception cause)
+            {
+                asyncExecCallback.failed(cause);
+            }
+        });
+    }
+
+    /**
+     * Gets the listener for a request.
+     *
+     * @param context the request's context.
+     * @return the listener, or {@code null} if the request has none.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private BiConsumer<String, Integer> getListener(HttpContext context)
+    {
+        return listener != null ? listener : (BiConsumer<String, Integer>) context.getAttribute(RESPONSE_LISTENER);
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hc.client5.http.cookie.Cookie;
+import org.apache.hc.core5.util.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes the session of an {@link ICloudService} in the background before it expires, so that expiry never
+ * falls on a request.
+ * <p>
+ * The next refresh is due at the refresh interval, or earlier when a session cookie will expire within it: the
+ * refresh is then made the expiry margin ahead of the cookie's expiry. The timing is kept on one daemon thread
+ * shared by every service. Each refresh is a blocking request, so it runs on a small pool of I/O threads owned by the
+ * keep-alive rather than on the service's async executor, which may be the common fork-join pool.
+ */
+class SessionKeepAlive implements Closeable
+{
+    /**
+     * The prefix of the names of the cookies that carry the web session.
+     */
+    static final String SESSION_COOKIE_PREFIX = "X-APPLE-WEBAUTH-";
+
+    /**
+     * The shortest time between refreshes, so that a cookie the server doesn't extend can't cause a busy loop.
+     */
+    static final Duration MIN_REFRESH_DELAY = Duration.ofSeconds(10);
+
+    /**
+     * The longest time before a failed refresh is retried.
+     */
+    static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(1);
+
+    /**
+     * The most refreshes run at once across every service.
+     */
+    static final int MAX_CONCURRENT_REFRESHES = 4;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SessionKeepAlive.class);
+
+    /**
+     * Times the refreshes of every service.
+     */
+    private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+    /**
+     * Runs the refreshes of every service. Each service has at most one refresh queued or running.
+     */
+    private static final ThreadPoolExecutor REFRESH_EXECUTOR = createRefreshExecutor();
+
+    /**
+     * The iCloud service.
+     */
+    private final ICloudService iCloudService;
+
+    /**
+     * The longest time between refreshes.
+     */
+    private final TimeValue interval;
+
+    /**
+     * How long before a session cookie expires it is refreshed.
+     */
+    private final TimeValue expiryMargin;
+
+    /**
+     * The listeners notified of each refresh.
+     */
+    private final List<SessionListener> listeners;
+
+    /**
+     * The next refresh, or {@code null} if none is scheduled. Guarded by {@code this}.
+     */
+    private ScheduledFuture<?> nextRefresh;
+
+    /**
+     * Whether the keep-alive has been closed. Guarded by {@code this}.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a new keep-alive.
+     *
+     * @param iCloudService the iCloud service.
+     * @param interval      the longest time between refreshes.
+     * @param expiryMargin  how long before a session cookie expires it is refreshed.
+     * @param listeners     the listeners notified of each refresh.
+     */
+    SessionKeepAlive(ICloudService iCloudService, TimeValue interval, TimeValue expiryMargin,
+                     List<SessionListener> listeners)
+    {
+        this.iCloudService = iCloudService;
+        this.interval = interval;
+        this.expiryMargin = expiryMargin;
+        this.listeners = listeners;
+    }
+
+    /**
+     * Creates the scheduler shared by every service.
+     *
+     * @return the scheduler.
+     */
+    private static ScheduledThreadPoolExecutor createScheduler()
+    {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+            .setNameFormat("icloud4j-session-keep-alive-%d")
+            .setDaemon(true)
+            .build());
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Creates the executor running the refreshes of every service, whose threads stop when idle.
+     *
+     * @return the executor.
+     */
+    private static ThreadPoolExecutor createRefreshExecutor()
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENT_REFRESHES, MAX_CONCURRENT_REFRESHES,
+            1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+                .setNameFormat("icloud4j-session-refresh-%d")
+                .setDaemon(true)
+                .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Schedules the next refresh from the current session cookies, replacing any refresh already scheduled.
+     *
+     * @return the time of the next refresh.
+     */
+    synchronized Instant schedule()
+    {
+        return schedule(getRefreshDelay(Instant.now()));
+    }
+
+    /**
+     * Schedules the next refresh, replacing any refresh already scheduled.
+     *
+     * @param delay the delay before the refresh.
+     * @return the time of the refresh.
+     */
+    private synchronized Instant schedule(Duration delay)
+    {
+        if (nextRefresh != null)
+        {
+            nextRefresh.cancel(false);
+            nextRefresh = null;
+        }
+        if (closed)
+        {
+            return null;
+        }
+
+        nextRefresh = SCHEDULER.schedule(this::startRefresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+        return Instant.now().plus(delay);
+    }
+
+    /**
+     * Gets the delay before the next refresh.
+     *
+     * @param now the current time.
+     * @return the delay.
+     */
+    Duration getRefreshDelay(Instant now)
+    {
+        Duration delay = Duration.ofMillis(interval.toMilliseconds());
+        for (Cookie cookie : iCloudService.getCookieStore().getCookies())
+        {
+            Instant expiry = cookie.getExpiryInstant();
+            if (expiry != null && cookie.getName().startsWith(SESSION_COOKIE_PREFIX) && expiry.isAfter(now))
+            {
+                Duration untilRefresh = Duration.between(now, expiry).minusMillis(expiryMargin.toMilliseconds());
+                if (untilRefresh.compareTo(delay) < 0)
+                {
+                    delay = untilRefresh;
+                }
+            }
+        }
+
+        Duration minimum = MIN_REFRESH_DELAY.compareTo(Duration.ofMillis(interval.toMilliseconds())) < 0
+            ? MIN_REFRESH_DELAY
+            : Duration.ofMillis(interval.toMilliseconds());
+        return delay.compareTo(minimum) < 0 ? minimum : delay;
+    }
+
+    /**
+     * Hands the refresh to the refresh executor, so that a slow refresh doesn't hold up the scheduling of other
+     * services.
+     */
+    private void startRefresh()
+    {
+        try
+        {
+            REFRESH_EXECUTOR.execute(this::refresh);
+        }
+        catch (RejectedExecutionException e)
+        {
+            onFailure(e);
+        }
+    }
+
+    /**
+     * Refreshes the session, then schedules the next refresh or a retry.
+     */
+    private void refresh()
+    {
+        try
+        {
+            iCloudService.refreshSession();
+        }
+        catch (RuntimeException e)
+        {
+            onFailure(e);
+            return;
+        }
+
+        Instant next = schedule();
+        if (next != null)
+        {
+            logger.debug("Refreshed the iCloud session, next refresh at {}", next);
+            for (SessionListener listener : listeners)
+            {
+                try
+                {
+                    listener.onSessionRefreshed(iCloudService, next);
+                }
+                catch (RuntimeException e)
+                {
+                    logger.warn("Session listener failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports a failed refresh, and retries it unless the session has expired.
+     *
+     * @param failure the failure.
+     */
+    private void onFailure(Throwable failure)
+    {
+        logger.warn("Failed to refresh the iCloud session", failure);
+        for (SessionListener listener : listeners)
+        {
+            try
+            {
+                listener.onSessionRefreshFailed(iCloudService, failure);
+            }
+            catch (RuntimeException e)
+            {
+                logger.warn("Session listener failed", e);
+            }
+        }
+
+        if (iCloudService.getSessionState() != ICloudService.SessionState.EXPIRED)
+        {
+            Duration retryDelay = Duration.ofMillis(interval.toMilliseconds());
+            schedule(retryDelay.compareTo(MAX_RETRY_DELAY) < 0 ? retryDelay : MAX_RETRY_DELAY);
+        }
+    }
+
+    /**
+     * Cancels the next refresh, and stops any further refresh.
+     */
+    @Override
+    public synchronized void close()
+    {
+        closed = true;
+        if (nextRefresh != null)
+        {
+            nextRefresh.cancel(false);
+            nextRefresh = null;
+        }
+    }
+}
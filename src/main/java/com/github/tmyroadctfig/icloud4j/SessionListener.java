@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import java.time.Instant;
+
+/**
+ * Receives the outcome of the background session refreshes enabled with
+ * {@link ICloudServiceConfig.Builder#sessionKeepAlive(org.apache.hc.core5.util.TimeValue,
+ * org.apache.hc.core5.util.TimeValue)}; see {@link ICloudService#addSessionListener(SessionListener)}.
+ * <p>
+ * Callbacks are made on the keep-alive's refresh threads and should return quickly. An exception thrown by a listener
+ * is logged and does not affect the refresh.
+ */
+public interface SessionListener
+{
+    /**
+     * Called when the session has been refreshed.
+     *
+     * @param iCloudService the service.
+     * @param nextRefresh   the time of the next refresh.
+     */
+    default void onSessionRefreshed(ICloudService iCloudService, Instant nextRefresh)
+    {
+    }
+
+    /**
+     * Called when a refresh has failed. If iCloud rejected the session, the session state is
+     * {@link ICloudService.SessionState#EXPIRED} and no further refresh is made until the next login; otherwise the
+     * refresh is retried.
+     *
+     * @param iCloudService the service.
+     * @param failure       the failure.
+     */
+    default void onSessionRefreshFailed(ICloudService iCloudService, Throwable failure)
+    {
+    }
+}
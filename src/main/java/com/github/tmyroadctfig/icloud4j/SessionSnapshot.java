@@ -0,0 +1,307 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
+import com.google.gson.JsonParseException;
+import org.apache.hc.client5.http.cookie.Cookie;
+import org.apache.hc.client5.http.impl.cookie.BasicClientCookie;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of a logged in iCloud session: the cookie jar, the login info including the web services map, and the
+ * 'idmsa' session and trust tokens. It is taken by {@link ICloudService#saveSession()} and kept in a
+ * {@link SessionStore}.
+ * <p>
+ * Instances are immutable. {@link #toJson()} gives a portable form for custom stores, which is not encrypted.
+ */
+public class SessionSnapshot
+{
+    /**
+     * The version of the persisted form.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * The cookie attributes kept with each cookie. The cookie specs check these, e.g. a cookie without a 'domain'
+     * attribute only matches its origin host.
+     */
+    private static final String[] COOKIE_ATTRIBUTES = {Cookie.PATH_ATTR, Cookie.DOMAIN_ATTR, Cookie.MAX_AGE_ATTR,
+        Cookie.SECURE_ATTR, Cookie.EXPIRES_ATTR, Cookie.HTTP_ONLY_ATTR};
+
+    private int formatVersion;
+    private String clientId;
+    private long savedAt;
+    private Map<String, Object> loginInfo;
+    private List<StoredCookie> cookies;
+    private String appleIdSessionId;
+    private String scnt;
+    private String authToken;
+    private String trustToken;
+
+    /**
+     * Creates an empty snapshot, for decoding.
+     */
+    private SessionSnapshot()
+    {
+    }
+
+    /**
+     * Creates a new snapshot.
+     *
+     * @param clientId         the client ID of the service.
+     * @param savedAt          the time the snapshot was taken.
+     * @param loginInfo        the login info.
+     * @param cookies          the cookies.
+     * @param appleIdSessionId the 'idmsa' session ID, or {@code null}.
+     * @param scnt             the 'idmsa' 'scnt' token, or {@code null}.
+     * @param authToken        the 'idmsa' session token, or {@code null}.
+     * @param trustToken       the two-factor trust token, or {@code null}.
+     */
+    SessionSnapshot(String clientId, Instant savedAt, Map<String, Object> loginInfo, List<Cookie> cookies,
+                    @Nullable String appleIdSessionId, @Nullable String scnt, @Nullable String authToken,
+                    @Nullable String trustToken)
+    {
+        this.formatVersion = FORMAT_VERSION;
+        this.clientId = clientId;
+        this.savedAt = savedAt.toEpochMilli();
+        this.loginInfo = new LinkedHashMap<>(loginInfo);
+        this.cookies = new ArrayList<>();
+        cookies.forEach(cookie -> this.cookies.add(StoredCookie.of(cookie)));
+        this.appleIdSessionId = appleIdSessionId;
+        this.scnt = scnt;
+        this.authToken = authToken;
+        this.trustToken = trustToken;
+    }
+
+    /**
+     * Decodes a snapshot from the form given by {@link #toJson()}.
+     *
+     * @param json the JSON.
+     * @return the snapshot.
+     * @throws IllegalArgumentException if the JSON is not a snapshot, or was written by a newer version.
+     */
+    public static SessionSnapshot fromJson(String json)
+    {
+        SessionSnapshot snapshot;
+        try
+        {
+            snapshot = JsonCodecs.gson().fromJson(json, SessionSnapshot.class);
+        }
+        catch (JsonParseException e)
+        {
+            throw new IllegalArgumentException("Malformed session snapshot", e);
+        }
+
+        if (snapshot == null || snapshot.loginInfo == null || snapshot.cookies == null)
+        {
+            throw new IllegalArgumentException("Malformed session snapshot");
+        }
+        if (snapshot.formatVersion != FORMAT_VERSION)
+        {
+            throw new IllegalArgumentException("Unsupported session snapshot version: " + snapshot.formatVersion);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Encodes this snapshot as JSON.
+     *
+     * @return the JSON, including the session cookies and tokens in the clear.
+     */
+    public String toJson()
+    {
+        return JsonCodecs.gson().toJson(this);
+    }
+
+    /**
+     * Gets the client ID of the service the snapshot was taken from.
+     *
+     * @return the client ID.
+     */
+    public String getClientId()
+    {
+        return clientId;
+    }
+
+    /**
+     * Gets the time the snapshot was taken.
+     *
+     * @return the time.
+     */
+    public Instant getSavedAt()
+    {
+        return Instant.ofEpochMilli(savedAt);
+    }
+
+    /**
+     * Gets the login info, including the 'dsInfo' and 'webservices' maps.
+     *
+     * @return the login info.
+     */
+    public Map<String, Object> getLoginInfo()
+    {
+        return Collections.unmodifiableMap(loginInfo);
+    }
+
+    /**
+     * Gets the session cookies which had not expired at the given time.
+     *
+     * @param now the time.
+     * @return new copies of the cookies.
+     */
+    public List<Cookie> getCookies(Instant now)
+    {
+        List<Cookie> result = new ArrayList<>();
+        for (StoredCookie storedCookie : cookies)
+        {
+            Cookie cookie = storedCookie.toCookie();
+            if (cookie != null && !cookie.isExpired(now))
+            {
+                result.add(cookie);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the 'idmsa' session ID.
+     *
+     * @return the session ID, or {@code null}.
+     */
+    @Nullable
+    String getAppleIdSessionId()
+    {
+        return appleIdSessionId;
+    }
+
+    /**
+     * Gets the 'idmsa' 'scnt' token.
+     *
+     * @return the token, or {@code null}.
+     */
+    @Nullable
+    String getScnt()
+    {
+        return scnt;
+    }
+
+    /**
+     * Gets the 'idmsa' session token.
+     *
+     * @return the token, or {@code null}.
+     */
+    @Nullable
+    String getAuthToken()
+    {
+        return authToken;
+    }
+
+    /**
+     * Gets the two-factor trust token, which lets a later login skip two-factor authentication.
+     *
+     * @return the token, or {@code null} if two-factor authentication was not completed.
+     */
+    @Nullable
+    public String getTrustToken()
+    {
+        return trustToken;
+    }
+
+    /**
+     * The persisted form of a cookie.
+     */
+    private static class StoredCookie
+    {
+        String name;
+        String value;
+        String domain;
+        String path;
+        boolean secure;
+        boolean httpOnly;
+        Long expiry;
+        Long created;
+        Map<String, String> attributes;
+
+        /**
+         * Captures a cookie.
+         *
+         * @param cookie the cookie.
+         * @return the persisted form.
+         */
+        static StoredCookie of(Cookie cookie)
+        {
+            StoredCookie stored = new StoredCookie();
+            stored.name = cookie.getName();
+            stored.value = cookie.getValue();
+            stored.domain = cookie.getDomain();
+            stored.path = cookie.getPath();
+            stored.secure = cookie.isSecure();
+            stored.httpOnly = cookie.isHttpOnly();
+            stored.expiry = cookie.getExpiryInstant() != null ? cookie.getExpiryInstant().toEpochMilli() : null;
+            stored.created = cookie.getCreationInstant() != null ? cookie.getCreationInstant().toEpochMilli() : null;
+            stored.attributes = new LinkedHashMap<>();
+            for (String attribute : COOKIE_ATTRIBUTES)
+            {
+                if (cookie.containsAttribute(attribute))
+                {
+                    stored.attributes.put(attribute, cookie.getAttribute(attribute));
+                }
+            }
+            return stored;
+        }
+
+        /**
+         * Restores the cookie.
+         *
+         * @return the cookie, or {@code null} if it has no name.
+         */
+        @Nullable
+        Cookie toCookie()
+        {
+            if (name == null)
+            {
+                return null;
+            }
+
+            BasicClientCookie cookie = new BasicClientCookie(name, value);
+            cookie.setDomain(domain);
+            cookie.setPath(path);
+            cookie.setSecure(secure);
+            cookie.setHttpOnly(httpOnly);
+            if (expiry != null)
+            {
+                cookie.setExpiryDate(Instant.ofEpochMilli(expiry));
+            }
+            if (created != null)
+            {
+                cookie.setCreationDate(Instant.ofEpochMilli(created));
+            }
+            if (attributes != null)
+            {
+                attributes.forEach(cookie::setAttribute);
+            }
+            return cookie;
+        }
+    }
+}
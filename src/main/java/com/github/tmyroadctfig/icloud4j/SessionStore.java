@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * Persists an iCloud session between runs, so that a new {@link ICloudService} can resume it without logging in or
+ * repeating two-factor authentication; see {@link ICloudServiceConfig.Builder#sessionStore(SessionStore)}.
+ * <p>
+ * A snapshot holds the session cookies and tokens, which grant access to the account, so implementations should keep
+ * it somewhere only the owner can read. {@link EncryptedFileSessionStore} encrypts it into a local file. Other stores,
+ * e.g. a secrets manager, can persist {@link SessionSnapshot#toJson()}.
+ */
+public interface SessionStore
+{
+    /**
+     * Loads the last saved session.
+     *
+     * @return the session, or {@code null} if none has been saved.
+     * @throws IOException if the session can't be read.
+     */
+    @Nullable
+    SessionSnapshot load() throws IOException;
+
+    /**
+     * Saves a session, replacing any saved before.
+     *
+     * @param snapshot the session.
+     * @throws IOException if the session can't be written.
+     */
+    void save(@Nonnull SessionSnapshot snapshot) throws IOException;
+
+    /**
+     * Removes the saved session, if any.
+     *
+     * @throws IOException if the session can't be removed.
+     */
+    void delete() throws IOException;
+}
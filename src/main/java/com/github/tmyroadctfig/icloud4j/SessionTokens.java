@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import org.apache.hc.client5.http.cookie.BasicCookieStore;
+import org.apache.hc.client5.http.cookie.Cookie;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * The values derived from an iCloud session, parsed once and shared by all the services and nodes of an
+ * {@link ICloudService}.
+ * <p>
+ * The download token is taken from the 'X-APPLE-WEBAUTH-VALIDATE' cookie, and is re-parsed only when that cookie is
+ * set or removed. The photos sync token is fetched by the first {@link PhotosService} and dropped when the session ID
+ * changes.
+ */
+public class SessionTokens
+{
+    /**
+     * The name of the cookie holding the download token.
+     */
+    static final String VALIDATE_COOKIE = "X-APPLE-WEBAUTH-VALIDATE";
+
+    /**
+     * The cookie store of the session.
+     */
+    private final TrackingCookieStore cookieStore = new TrackingCookieStore();
+
+    /**
+     * The download token, or {@code null} if it must be re-parsed from the cookie store.
+     */
+    private volatile String downloadToken = "";
+
+    /**
+     * The iCloud session ID.
+     */
+    private volatile String dsid;
+
+    /**
+     * The photos sync token, or {@code null} if it has not been fetched for this session.
+     */
+    private volatile String photosSyncToken;
+
+    /**
+     * Gets the cookie store that keeps these tokens up to date.
+     *
+     * @return the cookie store.
+     */
+    BasicCookieStore getCookieStore()
+    {
+        return cookieStore;
+    }
+
+    /**
+     * Gets the token passed to the docs web service when looking up download URLs.
+     *
+     * @return the token, or an empty string if there is no 'X-APPLE-WEBAUTH-VALIDATE' cookie.
+     */
+    public String getDownloadToken()
+    {
+        String token = downloadToken;
+        if (token == null)
+        {
+            token = parseDownloadToken(cookieStore.getCookies().stream()
+                .filter(cookie -> VALIDATE_COOKIE.equals(cookie.getName()))
+                .map(Cookie::getValue)
+                .findFirst()
+                .orElse(null));
+            downloadToken = token;
+        }
+        return token;
+    }
+
+    /**
+     * Gets the iCloud session ID.
+     *
+     * @return the session ID, or {@code null} before login.
+     */
+    @Nullable
+    public String getDsid()
+    {
+        return dsid;
+    }
+
+    /**
+     * Sets the iCloud session ID after login. A new session ID drops the photos sync token.
+     *
+     * @param dsid the session ID.
+     */
+    void setDsid(String dsid)
+    {
+        if (!Objects.equals(this.dsid, dsid))
+        {
+            photosSyncToken = null;
+        }
+        this.dsid = dsid;
+    }
+
+    /**
+     * Gets the photos sync token.
+     *
+     * @return the token, or {@code null} if it has not been fetched for this session.
+     */
+    @Nullable
+    public String getPhotosSyncToken()
+    {
+        return photosSyncToken;
+    }
+
+    /**
+     * Sets the photos sync token.
+     *
+     * @param photosSyncToken the token.
+     */
+    void setPhotosSyncToken(String photosSyncToken)
+    {
+        this.photosSyncToken = photosSyncToken;
+    }
+
+    /**
+     * Parses the download token from a validate cookie value, e.g. "v=2:t=AQAAAABXzO24CYflBW2JwysxyUEL9KxRNoEX1Qk~".
+     *
+     * @param cookieValue the cookie value, or {@code null}.
+     * @return the token, or an empty string if there is none.
+     */
+    static String parseDownloadToken(@Nullable String cookieValue)
+    {
+        if (cookieValue == null)
+        {
+            return "";
+        }
+
+        int start = 0;
+        while (start <= cookieValue.length())
+        {
+            int end = cookieValue.indexOf(':', start);
+            if (end < 0)
+            {
+                end = cookieValue.length();
+            }
+
+            int tokenStart = cookieValue.indexOf("t=", start);
+            if (tokenStart >= 0 && tokenStart < end)
+            {
+                return cookieValue.substring(tokenStart + 2, end);
+            }
+            start = end + 1;
+        }
+        return "";
+    }
+
+    /**
+     * A cookie store that updates the download token when the validate cookie changes.
+     */
+    private class TrackingCookieStore extends BasicCookieStore
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void addCookie(Cookie cookie)
+        {
+            super.addCookie(cookie);
+            if (cookie != null && VALIDATE_COOKIE.equals(cookie.getName()))
+            {
+                // An expired cookie removes the stored one, so re-scan rather than trusting the new value
+                downloadToken = cookie.isExpired(Instant.now()) ? null : parseDownloadToken(cookie.getValue());
+            }
+        }
+
+        @Override
+        public boolean clearExpired(Date date)
+        {
+            return markIfRemoved(super.clearExpired(date));
+        }
+
+        @Override
+        public boolean clearExpired(Instant instant)
+        {
+            return markIfRemoved(super.clearExpired(instant));
+        }
+
+        @Override
+        public void clear()
+        {
+            super.clear();
+            downloadToken = "";
+        }
+
+        /**
+         * Marks the download token for re-parsing if any cookie was removed.
+         *
+         * @param removed whether cookies were removed.
+         * @return {@code removed}.
+         */
+        private boolean markIfRemoved(boolean removed)
+        {
+            if (removed)
+            {
+                downloadToken = null;
+            }
+            return removed;
+        }
+    }
+}
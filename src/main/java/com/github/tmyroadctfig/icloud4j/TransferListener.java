@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.github.tmyroadctfig.icloud4j;
+
+/**
+ * Receives the progress of file transfers.
+ * <p>
+ * A listener can be given to a single transfer, e.g. {@link DriveNode#downloadFileData(java.io.OutputStream,
+ * TransferListener)} or {@link DownloadOptions.Builder#transferListener(TransferListener)}, or added to an
+ * {@link ICloudService} with {@link ICloudService#addTransferListener(TransferListener)} to receive every transfer made
+ * through it. Progress is reported at the granularity set by
+ * {@link ICloudServiceConfig.Builder#transferProgress(long, org.apache.hc.core5.util.TimeValue)} rather than for each
+ * buffer, so a listener can be left on in production.
+ * <p>
+ * Callbacks are made on the transferring threads, possibly concurrently for a parallel download, and should return
+ * quickly. An exception thrown by a listener is logged and does not affect the transfer.
+ */
+public interface TransferListener
+{
+    /**
+     * Called before the first byte is transferred.
+     *
+     * @param progress the progress, with nothing transferred.
+     */
+    default void onStarted(TransferProgress progress)
+    {
+    }
+
+    /**
+     * Called periodically while bytes are being transferred.
+     *
+     * @param progress the progress.
+     */
+    default void onProgress(TransferProgress progress)
+    {
+    }
+
+    /**
+     * Called when the transfer has finished successfully.
+     *
+     * @param progress the final progress.
+     */
+    default void onCompleted(TransferProgress progress)
+    {
+    }
+
+    /**
+     * Called when the transfer has failed.
+     *
+     * @param progress the progress when it failed.
+     * @param failure  the failure.
+     */
+    default void onFailed(TransferProgress progress, Throwable failure)
+    {
+    }
+}
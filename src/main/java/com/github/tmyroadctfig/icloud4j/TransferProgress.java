@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.github.tmyroadctfig.icloud4j;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of a file transfer's progress, see {@link TransferListener}.
+ */
+public class TransferProgress
+{
+    /**
+     * The direction of a transfer.
+     */
+    public enum Direction
+    {
+        /**
+         * From iCloud.
+         */
+        DOWNLOAD,
+
+        /**
+         * To iCloud.
+         */
+        UPLOAD
+    }
+
+    private final String id;
+    private final Direction direction;
+    private final long totalBytes;
+    private final long bytesTransferred;
+    private final long elapsedNanos;
+    private final long intervalBytes;
+    private final long intervalNanos;
+    private final long idleNanos;
+
+    TransferProgress(String id, Direction direction, long totalBytes, long bytesTransferred, long elapsedNanos,
+                     long intervalBytes, long intervalNanos, long idleNanos)
+    {
+        this.id = id;
+        this.direction = direction;
+        this.totalBytes = totalBytes;
+        this.bytesTransferred = bytesTransferred;
+        this.elapsedNanos = elapsedNanos;
+        this.intervalBytes = intervalBytes;
+        this.intervalNanos = intervalNanos;
+        this.idleNanos = idleNanos;
+    }
+
+    /**
+     * Gets the ID of the node being transferred, or for an upload the name of the new file.
+     *
+     * @return the ID.
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Gets the direction of the transfer.
+     *
+     * @return the direction.
+     */
+    public Direction getDirection()
+    {
+        return direction;
+    }
+
+    /**
+     * Gets the size of the file.
+     *
+     * @return the size in bytes, or -1 if unknown.
+     */
+    public long getTotalBytes()
+    {
+        return totalBytes;
+    }
+
+    /**
+     * Gets the number of bytes transferred so far.
+     *
+     * @return the byte count.
+     */
+    public long getBytesTransferred()
+    {
+        return bytesTransferred;
+    }
+
+    /**
+     * Gets the time since the transfer started.
+     *
+     * @return the elapsed time.
+     */
+    public Duration getElapsed()
+    {
+        return Duration.ofNanos(elapsedNanos);
+    }
+
+    /**
+     * Gets the time since bytes were last transferred, which grows while a transfer is stalled.
+     *
+     * @return the idle time.
+     */
+    public Duration getIdle()
+    {
+        return Duration.ofNanos(idleNanos);
+    }
+
+    /**
+     * Gets the average transfer rate since the transfer started.
+     *
+     * @return the rate in bytes per second.
+     */
+    public double getBytesPerSecond()
+    {
+        return rate(bytesTransferred, elapsedNanos);
+    }
+
+    /**
+     * Gets the transfer rate since the previous report.
+     *
+     * @return the rate in bytes per second.
+     */
+    public double getInstantaneousBytesPerSecond()
+    {
+        return rate(intervalBytes, intervalNanos);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("transfer:[%s %s %d/%d bytes %.0f B/s]", direction, id, bytesTransferred, totalBytes,
+            getBytesPerSecond());
+    }
+
+    private static double rate(long bytes, long nanos)
+    {
+        return nanos <= 0 ? 0 : bytes * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+}
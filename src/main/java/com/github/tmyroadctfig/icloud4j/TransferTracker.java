@@ -0,0 +1,399 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Counts the bytes of a single transfer and reports its progress to {@link TransferListener}s.
+ * <p>
+ * Counting costs an atomic add and a {@link System#nanoTime()} call per buffer. Progress is only reported once
+ * {@link ICloudServiceConfig#getTransferProgressBytes()} bytes or
+ * {@link ICloudServiceConfig#getTransferProgressInterval()} have passed since the last report, and the threads of a
+ * parallel download race for each report so that only one of them makes it.
+ */
+class TransferTracker
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TransferTracker.class);
+
+    /**
+     * The iCloud service, which lists the transfer while it is active.
+     */
+    private final ICloudService iCloudService;
+
+    /**
+     * The listeners.
+     */
+    private final List<TransferListener> listeners;
+
+    /**
+     * The ID of the node, or the name of an uploaded file.
+     */
+    private final String id;
+
+    /**
+     * The direction.
+     */
+    private final TransferProgress.Direction direction;
+
+    /**
+     * The file size, or -1 if unknown.
+     */
+    private final long totalBytes;
+
+    /**
+     * The number of bytes between reports.
+     */
+    private final long progressBytes;
+
+    /**
+     * The maximum time between reports, in nanoseconds.
+     */
+    private final long progressIntervalNanos;
+
+    /**
+     * When the transfer started.
+     */
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * The number of bytes transferred.
+     */
+    private final AtomicLong bytesTransferred = new AtomicLong();
+
+    /**
+     * When bytes were last transferred.
+     */
+    private volatile long lastActivityNanos = startNanos;
+
+    /**
+     * The byte count at which the next report is due.
+     */
+    private volatile long nextReportBytes;
+
+    /**
+     * The time at which the next report is due.
+     */
+    private volatile long nextReportNanos;
+
+    /**
+     * The byte count at the last report. Guarded by {@code this}.
+     */
+    private long lastReportBytes;
+
+    /**
+     * The time of the last report. Guarded by {@code this}.
+     */
+    private long lastReportNanos = startNanos;
+
+    /**
+     * Whether the transfer has completed or failed.
+     */
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * Creates a new tracker.
+     *
+     * @param iCloudService the iCloud service.
+     * @param listener      the listener for this transfer alone, or {@code null} for none.
+     * @param direction     the direction.
+     * @param id            the ID of the node, or the name of an uploaded file.
+     * @param totalBytes    the file size, or -1 if unknown.
+     */
+    private TransferTracker(ICloudService iCloudService, @Nullable TransferListener listener,
+                            TransferProgress.Direction direction, String id, long totalBytes)
+    {
+        this.iCloudService = iCloudService;
+        this.listeners = new ArrayList<>(iCloudService.getTransferListeners());
+        if (listener != null)
+        {
+            listeners.add(listener);
+        }
+        this.direction = direction;
+        this.id = id;
+        this.totalBytes = totalBytes;
+        this.progressBytes = iCloudService.getConfig().getTransferProgressBytes();
+        this.progressIntervalNanos = iCloudService.getConfig().getTransferProgressInterval().toNanoseconds();
+        this.nextReportBytes = progressBytes;
+        this.nextReportNanos = startNanos + progressIntervalNanos;
+    }
+
+    /**
+     * Runs a transfer, reporting its start, its completion or its failure.
+     *
+     * @param iCloudService the iCloud service.
+     * @param listener      the listener for this transfer alone, or {@code null} for none.
+     * @param direction     the direction.
+     * @param id            the ID of the node, or the name of an uploaded file.
+     * @param totalBytes    the file size, or -1 if unknown.
+     * @param transfer      the transfer, which counts its bytes with the tracker it is given.
+     * @return the result of the transfer.
+     */
+    static <T> T track(ICloudService iCloudService, @Nullable TransferListener listener,
+                       TransferProgress.Direction direction, String id, long totalBytes,
+                       Function<TransferTracker, T> transfer)
+    {
+        TransferTracker tracker = new TransferTracker(iCloudService, listener, direction, id, totalBytes);
+        iCloudService.onTransferStarted(tracker);
+        tracker.notifyListeners(Event.STARTED, tracker.getProgress(), null);
+
+        T result;
+        try
+        {
+            result = transfer.apply(tracker);
+        }
+        catch (RuntimeException | Error e)
+        {
+            tracker.finish(e);
+            throw e;
+        }
+        tracker.finish(null);
+        return result;
+    }
+
+    /**
+     * Counts transferred bytes, reporting progress if a report is due.
+     *
+     * @param count the number of bytes.
+     */
+    void add(long count)
+    {
+        long total = bytesTransferred.addAndGet(count);
+        long now = System.nanoTime();
+        lastActivityNanos = now;
+
+        if (!listeners.isEmpty() && (total >= nextReportBytes || now - nextReportNanos >= 0))
+        {
+            TransferProgress progress;
+            synchronized (this)
+            {
+                total = bytesTransferred.get();
+                if (total < nextReportBytes && now - nextReportNanos < 0)
+                {
+                    // Another thread made the report
+                    return;
+                }
+
+                progress = snapshot(total, now);
+                lastReportBytes = total;
+                lastReportNanos = now;
+                nextReportBytes = total + progressBytes;
+                nextReportNanos = now + progressIntervalNanos;
+            }
+            notifyListeners(Event.PROGRESS, progress, null);
+        }
+    }
+
+    /**
+     * Gets the current progress without making a report.
+     *
+     * @return the progress.
+     */
+    synchronized TransferProgress getProgress()
+    {
+        return snapshot(bytesTransferred.get(), System.nanoTime());
+    }
+
+    /**
+     * Wraps a stream so that bytes written to it are counted.
+     *
+     * @param outputStream the stream.
+     * @return the counting stream, which closes the given one.
+     */
+    OutputStream wrap(OutputStream outputStream)
+    {
+        return new FilterOutputStream(outputStream)
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                out.write(b);
+                add(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+                out.write(b, off, len);
+                add(len);
+            }
+        };
+    }
+
+    /**
+     * Wraps a channel so that bytes written to it are counted.
+     *
+     * @param channel the channel.
+     * @return the counting channel, which closes the given one.
+     */
+    WritableByteChannel wrap(WritableByteChannel channel)
+    {
+        return new WritableByteChannel()
+        {
+            @Override
+            public int write(ByteBuffer source) throws IOException
+            {
+                int count = channel.write(source);
+                add(count);
+                return count;
+            }
+
+            @Override
+            public boolean isOpen()
+            {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Wraps a channel so that bytes read from it are counted.
+     *
+     * @param channel the channel.
+     * @return the counting channel, which closes the given one.
+     */
+    ReadableByteChannel wrap(ReadableByteChannel channel)
+    {
+        return new ReadableByteChannel()
+        {
+            @Override
+            public int read(ByteBuffer target) throws IOException
+            {
+                int count = channel.read(target);
+                if (count > 0)
+                {
+                    add(count);
+                }
+                return count;
+            }
+
+            @Override
+            public boolean isOpen()
+            {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Reports the end of the transfer, once.
+     *
+     * @param failure the failure, or {@code null} if the transfer completed.
+     */
+    private void finish(@Nullable Throwable failure)
+    {
+        if (finished.compareAndSet(false, true))
+        {
+            iCloudService.onTransferFinished(this);
+
+            TransferProgress progress;
+            synchronized (this)
+            {
+                progress = snapshot(bytesTransferred.get(), System.nanoTime());
+            }
+            notifyListeners(failure == null ? Event.COMPLETED : Event.FAILED, progress, failure);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the progress. Must hold the lock.
+     *
+     * @param total the number of bytes transferred.
+     * @param now   the current time.
+     * @return the progress.
+     */
+    private TransferProgress snapshot(long total, long now)
+    {
+        return new TransferProgress(id, direction, totalBytes, total, now - startNanos, total - lastReportBytes,
+            now - lastReportNanos, Math.max(0, now - lastActivityNanos));
+    }
+
+    /**
+     * Calls the listeners, logging rather than propagating their failures.
+     *
+     * @param event    the event.
+     * @param progress the progress.
+     * @param failure  the failure of a failed transfer, or {@code null}.
+     */
+    private void notifyListeners(Event event, TransferProgress progress, @Nullable Throwable failure)
+    {
+        for (TransferListener listener : listeners)
+        {
+            try
+            {
+                switch (event)
+                {
+                    case STARTED:
+                        listener.onStarted(progress);
+                        break;
+                    case PROGRESS:
+                        listener.onProgress(progress);
+                        break;
+                    case COMPLETED:
+                        listener.onCompleted(progress);
+                        break;
+                    case FAILED:
+                        listener.onFailed(progress, failure);
+                        break;
+                }
+            }
+            catch (RuntimeException e)
+            {
+                logger.warn("Transfer listener failed for {}", progress, e);
+            }
+        }
+    }
+
+    /**
+     * The events reported to listeners.
+     */
+    private enum Event
+    {
+        STARTED,
+        PROGRESS,
+        COMPLETED,
+        FAILED
+    }
+}
@@ -17,13 +17,22 @@ package com.github.tmyroadctfig.icloud4j;
 
 import com.github.tmyroadctfig.icloud4j.json.UbiquityGetChildrenResponse;
 import com.github.tmyroadctfig.icloud4j.json.UbiquityNodeDetails;
-import com.github.tmyroadctfig.icloud4j.util.ICloudUtils;
+import com.github.tmyroadctfig.icloud4j.util.ICloudResponseStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 
-import java.io.InputStream;
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -79,16 +88,14 @@ public class UbiquityNode
     {
         try
         {
-            String url = String.format("%s/ws/%s/%s/%s", ubiquityService.getServiceUrl(), iCloudService.getSessionId(), "parent", id);
-            HttpGet httpGet = new HttpGet(url);
-            iCloudService.populateRequestHeadersParameters(httpGet);
-
-            UbiquityGetChildrenResponse getChildrenResponse =
-                ICloudUtils.parseJsonResponse(iCloudService.getHttpClient(), httpGet, UbiquityGetChildrenResponse.class);
+            String childrenUrl = getChildrenUrl();
+            UbiquityGetChildrenResponse getChildrenResponse = iCloudService.readJson("ubiquity/parent", () -> {
+                HttpGet httpGet = new HttpGet(childrenUrl);
+                iCloudService.populateRequestHeadersParameters(httpGet);
+                return httpGet;
+            }, UbiquityGetChildrenResponse.class);
 
-            return Stream.of(getChildrenResponse.item_list)
-                .map(item -> new UbiquityNode(iCloudService, ubiquityService, item.item_id, item))
-                .collect(Collectors.toList());
+            return toChildNodes(getChildrenResponse);
         }
         catch (Exception e)
         {
@@ -96,6 +103,44 @@ public class UbiquityNode
         }
     }
 
+    /**
+     * Gets the children for this node without blocking the calling thread.
+     *
+     * @return a future for the children.
+     */
+    public CompletableFuture<List<UbiquityNode>> getChildrenAsync()
+    {
+        String childrenUrl = getChildrenUrl();
+        return iCloudService.<UbiquityGetChildrenResponse>readJsonAsync("ubiquity/parent", () -> {
+            SimpleHttpRequest httpGet = SimpleRequestBuilder.get(childrenUrl).build();
+            iCloudService.populateRequestHeadersParameters(httpGet);
+            return httpGet;
+        }, UbiquityGetChildrenResponse.class).thenApply(this::toChildNodes);
+    }
+
+    /**
+     * Gets the URL for listing the children of this node.
+     *
+     * @return the URL.
+     */
+    private String getChildrenUrl()
+    {
+        return String.format("%s/ws/%s/%s/%s", ubiquityService.getServiceUrl(), iCloudService.getSessionId(), "parent", id);
+    }
+
+    /**
+     * Converts a response to child nodes.
+     *
+     * @param getChildrenResponse the response.
+     * @return the child nodes.
+     */
+    private List<UbiquityNode> toChildNodes(UbiquityGetChildrenResponse getChildrenResponse)
+    {
+        return Stream.of(getChildrenResponse.item_list)
+            .map(item -> new UbiquityNode(iCloudService, ubiquityService, item.item_id, item))
+            .collect(Collectors.toList());
+    }
+
     /**
      * Downloads the file data for the item into the given output stream.
      *
@@ -103,20 +148,132 @@ public class UbiquityNode
      */
     public void downloadFileData(OutputStream outputStream)
     {
-        String url = String.format("%s/ws/%s/%s/%s", ubiquityService.getServiceUrl(), iCloudService.getSessionId(), "file", id);
-        HttpGet httpGet = new HttpGet(url);
+        downloadFileData(outputStream, null);
+    }
+
+    /**
+     * Downloads the file data for the item into the given output stream, reporting progress to a listener as well as
+     * to those added to the {@link ICloudService}.
+     *
+     * @param outputStream the output stream to write to, which is not closed.
+     * @param listener     the listener for this download, or {@code null} for none.
+     */
+    public void downloadFileData(OutputStream outputStream, @Nullable TransferListener listener)
+    {
+        TransferTracker.track(iCloudService, listener, TransferProgress.Direction.DOWNLOAD, id, nodeDetails.size,
+            tracker -> {
+                try (ICloudResponseStream inputStream = openStream())
+                {
+                    return IOUtils.copyLarge(inputStream, tracker.wrap(outputStream), new byte[0x10000]);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    /**
+     * Opens the file data for the item as a stream, which holds its connection until closed. This suits piping the
+     * data into another sink without a temporary file.
+     *
+     * @return the stream, which the caller must close.
+     * @throws ICloudException if iCloud rejects the request.
+     */
+    public ICloudResponseStream openStream()
+    {
+        HttpGet httpGet = new HttpGet(getFileUrl());
         iCloudService.populateRequestHeadersParameters(httpGet);
 
-        try (InputStream inputStream = ICloudUtils.executeStream(iCloudService.getHttpClient(), httpGet))
+        try
         {
-            IOUtils.copyLarge(inputStream, outputStream, new byte[0x10000]);
+            return ICloudResponseStream.open(iCloudService.getHttpClient(), httpGet);
         }
-        catch (Exception e)
+        catch (IOException e)
         {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
     }
 
+    /**
+     * Downloads the file data for the item into a channel with a single request. The body is written from a shared
+     * pool of direct buffers, so unlike {@link #downloadFileData(OutputStream)} no buffer is allocated per call.
+     *
+     * @param target the channel, written from its current position and not closed.
+     * @return the number of bytes written.
+     */
+    public long downloadTo(WritableByteChannel target)
+    {
+        return SegmentedDownload.transfer(iCloudService, id, getFileUrl(), nodeDetails.size, target);
+    }
+
+    /**
+     * Downloads the file data for the item to disk with the default {@link DownloadOptions}, replacing any existing
+     * file.
+     *
+     * @param target the file to write.
+     */
+    public void downloadTo(Path target)
+    {
+        downloadTo(target, DownloadOptions.defaults());
+    }
+
+    /**
+     * Downloads the file data for the item to disk, replacing any existing file. See
+     * {@link DriveNode#downloadTo(Path, DownloadOptions)}; the node's 'change_id' is used as its etag.
+     *
+     * @param target  the file to write.
+     * @param options the download options.
+     * @throws IllegalStateException if a resumable download finds a checkpoint for a different version of the node.
+     */
+    public void downloadTo(Path target, DownloadOptions options)
+    {
+        newDownload(options, count -> {
+        }).downloadTo(target);
+    }
+
+    /**
+     * Resolves the file URL and prepares a download of the item.
+     *
+     * @param options   the download options.
+     * @param onWritten called with the number of bytes after each write to the file.
+     * @return the download.
+     */
+    SegmentedDownload newDownload(DownloadOptions options, LongConsumer onWritten)
+    {
+        return new SegmentedDownload(iCloudService, id, nodeDetails.change_id, getFileUrl(), nodeDetails.size, options, onWritten);
+    }
+
+    /**
+     * Gets the host serving downloads of this item, used to apply per-host limits.
+     *
+     * @return the host name.
+     */
+    String getDownloadHost()
+    {
+        return URI.create(ubiquityService.getServiceUrl()).getHost();
+    }
+
+    /**
+     * Gets the URL of the file data for this node.
+     *
+     * @return the URL.
+     */
+    private String getFileUrl()
+    {
+        return String.format("%s/ws/%s/%s/%s", ubiquityService.getServiceUrl(), iCloudService.getSessionId(), "file", id);
+    }
+
+    /**
+     * Gets the node ID.
+     *
+     * @return the item ID.
+     */
+    public String getId()
+    {
+        return id;
+    }
+
     /**
      * Gets the type.
      *
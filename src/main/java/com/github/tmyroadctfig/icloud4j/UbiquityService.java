@@ -16,7 +16,6 @@
 package com.github.tmyroadctfig.icloud4j;
 
 import com.github.tmyroadctfig.icloud4j.json.UbiquityNodeDetails;
-import com.github.tmyroadctfig.icloud4j.util.ICloudUtils;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 
 import java.util.Map;
@@ -62,11 +61,11 @@ public class UbiquityService
         try
         {
             String url = String.format("%s/ws/%s/%s/%s", serviceRoot, iCloudService.getSessionId(), "item", rootId);
-            HttpGet httpGet = new HttpGet(url);
-            iCloudService.populateRequestHeadersParameters(httpGet);
-
-            UbiquityNodeDetails nodeDetails =
-                ICloudUtils.parseJsonResponse(iCloudService.getHttpClient(), httpGet, UbiquityNodeDetails.class);
+            UbiquityNodeDetails nodeDetails = iCloudService.readJson("ubiquity/item", () -> {
+                HttpGet httpGet = new HttpGet(url);
+                iCloudService.populateRequestHeadersParameters(httpGet);
+                return httpGet;
+            }, UbiquityNodeDetails.class);
 
             return new UbiquityNode(iCloudService, this, rootId, nodeDetails);
         }
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs file uploads into iCloud Drive folders with bounded concurrency.
+ * <p>
+ * Each upload is a {@link DriveNode#upload(Path)} or {@link DriveNode#upload(String, InputStream, long)} run on one of
+ * the manager's threads, so at most {@link Builder#maxConcurrentUploads(int)} run at once and the rest wait in the
+ * order they were submitted. Each upload streams its content and holds one connection while it does, so the limit
+ * should not exceed the connection limit for the docs service, see
+ * {@link ICloudServiceConfig.Builder#maxConnectionsForService(String, int)}.
+ */
+public class UploadManager implements Closeable
+{
+    /**
+     * The default number of uploads running at once.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 4;
+
+    /**
+     * Runs the uploads.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a new manager from the builder.
+     *
+     * @param builder the builder.
+     */
+    private UploadManager(Builder builder)
+    {
+        this.executor = new ThreadPoolExecutor(builder.maxConcurrentUploads, builder.maxConcurrentUploads,
+            0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("icloud4j-upload-manager-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Creates a new builder populated with the default values.
+     *
+     * @return the builder.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Queues an upload of a file from disk.
+     *
+     * @param folder the folder to upload into.
+     * @param file   the file to upload.
+     * @return a future for the details of the new file.
+     * @throws IllegalStateException if the manager has been closed.
+     */
+    public CompletableFuture<DriveNodeDetails> upload(DriveNode folder, Path file)
+    {
+        return submit(() -> folder.upload(file));
+    }
+
+    /**
+     * Queues an upload of a file from a stream. The stream is read on one of the manager's threads once the upload
+     * starts, and is closed when it finishes.
+     *
+     * @param folder  the folder to upload into.
+     * @param name    the file name.
+     * @param content the file content.
+     * @param size    the content length in bytes, or -1 if unknown.
+     * @return a future for the details of the new file.
+     * @throws IllegalStateException if the manager has been closed.
+     */
+    public CompletableFuture<DriveNodeDetails> upload(DriveNode folder, String name, InputStream content, long size)
+    {
+        return submit(() -> {
+            try (InputStream stream = content)
+            {
+                return folder.upload(name, stream, size);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Gets the number of uploads waiting for a thread.
+     *
+     * @return the pending upload count.
+     */
+    public int getPendingCount()
+    {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Gets the number of uploads in progress.
+     *
+     * @return the running upload count.
+     */
+    public int getRunningCount()
+    {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Closes the manager. Pending uploads are cancelled and running uploads are interrupted.
+     */
+    @Override
+    public void close()
+    {
+        for (Runnable pending : executor.shutdownNow())
+        {
+            ((Upload) pending).future.cancel(false);
+        }
+    }
+
+    /**
+     * Queues an upload.
+     *
+     * @param task the upload.
+     * @return a future for its result.
+     */
+    private CompletableFuture<DriveNodeDetails> submit(Supplier<DriveNodeDetails> task)
+    {
+        if (executor.isShutdown())
+        {
+            throw new IllegalStateException("The upload manager has been closed");
+        }
+
+        Upload upload = new Upload(task);
+        executor.execute(upload);
+        return upload.future;
+    }
+
+    /**
+     * A queued upload.
+     */
+    private static class Upload implements Runnable
+    {
+        /**
+         * The upload.
+         */
+        private final Supplier<DriveNodeDetails> task;
+
+        /**
+         * The future for its result.
+         */
+        private final CompletableFuture<DriveNodeDetails> future = new CompletableFuture<>();
+
+        Upload(Supplier<DriveNodeDetails> task)
+        {
+            this.task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            if (future.isDone())
+            {
+                return;
+            }
+
+            try
+            {
+                future.complete(task.get());
+            }
+            catch (Throwable e)
+            {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * A builder for {@link UploadManager}.
+     */
+    public static class Builder
+    {
+        private int maxConcurrentUploads = DEFAULT_MAX_CONCURRENT_UPLOADS;
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Sets the maximum number of uploads running at once, which is also the number of threads the manager uses.
+         *
+         * @param maxConcurrentUploads the maximum number of uploads.
+         * @return this builder.
+         */
+        public Builder maxConcurrentUploads(int maxConcurrentUploads)
+        {
+            Preconditions.checkArgument(maxConcurrentUploads > 0, "maxConcurrentUploads must be positive");
+            this.maxConcurrentUploads = maxConcurrentUploads;
+            return this;
+        }
+
+        /**
+         * Builds the manager.
+         *
+         * @return the manager.
+         */
+        public UploadManager build()
+        {
+            return new UploadManager(this);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.json;
+
+/**
+ * The signed location of an iCloud Drive file's content, as returned by 'download/by_id'.
+ */
+public class DriveDataToken
+{
+    /**
+     * The content URL. It is signed and expires after a while.
+     */
+    public String url;
+
+    /**
+     * The download token.
+     */
+    public String token;
+
+    /**
+     * The content signature.
+     */
+    public String signature;
+
+    /**
+     * The wrapping key.
+     */
+    public String wrapping_key;
+
+    /**
+     * The reference signature.
+     */
+    public String reference_signature;
+
+    /**
+     * The file size.
+     */
+    public long size;
+}
@@ -68,4 +68,9 @@ public class DriveNodeDetails
     public String dateChanged;
     public long size;
     public String extension;
+
+    /**
+     * The retrieval status of a requested node, e.g. "OK" or "ID_INVALID".
+     */
+    public String status;
 }
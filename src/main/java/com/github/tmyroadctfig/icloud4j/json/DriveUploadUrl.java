@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.json;
+
+/**
+ * The destination for a new file's content, as returned by an iCloud Drive 'upload/web' request.
+ */
+public class DriveUploadUrl
+{
+    /**
+     * The document ID reserved for the new file.
+     */
+    public String document_id;
+
+    /**
+     * The URL the content is posted to. It is signed and expires after a while.
+     */
+    public String url;
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * The shared JSON codec registry.
+ *
+ * <p>The {@link Gson} instance is thread-safe and is configured with handwritten type adapters for every class in this
+ * package, so services should use it rather than creating a new {@code Gson} per call.</p>
+ */
+public final class JsonCodecs
+{
+    /**
+     * The shared Gson instance.
+     */
+    private static final Gson GSON = new GsonBuilder()
+        .registerTypeAdapterFactory(ModelTypeAdapters.FACTORY)
+        .create();
+
+    private JsonCodecs()
+    {
+    }
+
+    /**
+     * Gets the shared Gson instance.
+     *
+     * @return the Gson instance.
+     */
+    public static Gson gson()
+    {
+        return GSON;
+    }
+}
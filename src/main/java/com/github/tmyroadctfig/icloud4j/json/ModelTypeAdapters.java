@@ -0,0 +1,1429 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Handwritten Gson type adapters for the JSON model classes.
+ *
+ * <p>Each adapter reads and writes the public fields directly, so decoding needs no reflection. Value coercion matches
+ * Gson's reflective adapters: {@code null} leaves primitive fields at their defaults, booleans may be given as strings,
+ * numbers may be given as strings, and unknown properties are skipped. Only the exact model classes are handled;
+ * subclasses fall back to Gson's reflective adapter.</p>
+ */
+final class ModelTypeAdapters
+{
+    private ModelTypeAdapters()
+    {
+    }
+
+    /**
+     * The adapter for {@link AppleDevice}.
+     */
+    static final TypeAdapter<AppleDevice> APPLE_DEVICE = new TypeAdapter<AppleDevice>()
+    {
+        @Override
+        public void write(JsonWriter out, AppleDevice value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("canWipeAfterLock").value(value.canWipeAfterLock);
+            out.name("wipeInProgress").value(value.wipeInProgress);
+            out.name("lostModeEnabled").value(value.lostModeEnabled);
+            out.name("activationLocked").value(value.activationLocked);
+            out.name("passcodeLength").value(value.passcodeLength);
+            out.name("deviceStatus").value(value.deviceStatus);
+            out.name("deviceColor").value(value.deviceColor);
+            out.name("lowPowerMode").value(value.lowPowerMode);
+            out.name("rawDeviceModel").value(value.rawDeviceModel);
+            out.name("id").value(value.id);
+            out.name("remoteLock").value(value.remoteLock);
+            out.name("isLocating").value(value.isLocating);
+            out.name("modelDisplayName").value(value.modelDisplayName);
+            out.name("lostTimestamp").value(value.lostTimestamp);
+            out.name("batteryLevel").value(value.batteryLevel);
+            out.name("locationEnabled").value(value.locationEnabled);
+            out.name("lockedTimestamp").value(value.lockedTimestamp);
+            out.name("locFoundEnabled").value(value.locFoundEnabled);
+            out.name("snd").value(value.snd);
+            out.name("fmlyShare").value(value.fmlyShare);
+            out.name("lostDevice").value(value.lostDevice);
+            out.name("lostModeCapable").value(value.lostModeCapable);
+            out.name("wipedTimestamp").value(value.wipedTimestamp);
+            out.name("deviceDisplayName").value(value.deviceDisplayName);
+            out.name("prsId").value(value.prsId);
+            out.name("locationCapable").value(value.locationCapable);
+            out.name("batteryStatus").value(value.batteryStatus);
+            out.name("trackingInfo").value(value.trackingInfo);
+            out.name("name").value(value.name);
+            out.name("isMac").value(value.isMac);
+            out.name("thisDevice").value(value.thisDevice);
+            out.name("deviceClass").value(value.deviceClass);
+            out.name("location");
+            LOCATION.write(out, value.location);
+            out.name("deviceModel").value(value.deviceModel);
+            out.name("maxMsgChar").value(value.maxMsgChar);
+            out.name("darkWake").value(value.darkWake);
+            out.name("remoteWipe").value(value.remoteWipe);
+            out.endObject();
+        }
+
+        @Override
+        public AppleDevice read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            AppleDevice value = new AppleDevice();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "canWipeAfterLock":
+                        value.canWipeAfterLock = readBoolean(in, value.canWipeAfterLock);
+                        break;
+                    case "wipeInProgress":
+                        value.wipeInProgress = readBoolean(in, value.wipeInProgress);
+                        break;
+                    case "lostModeEnabled":
+                        value.lostModeEnabled = readBoolean(in, value.lostModeEnabled);
+                        break;
+                    case "activationLocked":
+                        value.activationLocked = readBoolean(in, value.activationLocked);
+                        break;
+                    case "passcodeLength":
+                        value.passcodeLength = readDouble(in, value.passcodeLength);
+                        break;
+                    case "deviceStatus":
+                        value.deviceStatus = readInt(in, value.deviceStatus);
+                        break;
+                    case "deviceColor":
+                        value.deviceColor = readString(in);
+                        break;
+                    case "lowPowerMode":
+                        value.lowPowerMode = readBoolean(in, value.lowPowerMode);
+                        break;
+                    case "rawDeviceModel":
+                        value.rawDeviceModel = readString(in);
+                        break;
+                    case "id":
+                        value.id = readString(in);
+                        break;
+                    case "remoteLock":
+                        value.remoteLock = readString(in);
+                        break;
+                    case "isLocating":
+                        value.isLocating = readBoolean(in, value.isLocating);
+                        break;
+                    case "modelDisplayName":
+                        value.modelDisplayName = readString(in);
+                        break;
+                    case "lostTimestamp":
+                        value.lostTimestamp = readString(in);
+                        break;
+                    case "batteryLevel":
+                        value.batteryLevel = readDouble(in, value.batteryLevel);
+                        break;
+                    case "locationEnabled":
+                        value.locationEnabled = readBoolean(in, value.locationEnabled);
+                        break;
+                    case "lockedTimestamp":
+                        value.lockedTimestamp = readString(in);
+                        break;
+                    case "locFoundEnabled":
+                        value.locFoundEnabled = readBoolean(in, value.locFoundEnabled);
+                        break;
+                    case "snd":
+                        value.snd = readString(in);
+                        break;
+                    case "fmlyShare":
+                        value.fmlyShare = readBoolean(in, value.fmlyShare);
+                        break;
+                    case "lostDevice":
+                        value.lostDevice = readString(in);
+                        break;
+                    case "lostModeCapable":
+                        value.lostModeCapable = readBoolean(in, value.lostModeCapable);
+                        break;
+                    case "wipedTimestamp":
+                        value.wipedTimestamp = readString(in);
+                        break;
+                    case "deviceDisplayName":
+                        value.deviceDisplayName = readString(in);
+                        break;
+                    case "prsId":
+                        value.prsId = readString(in);
+                        break;
+                    case "locationCapable":
+                        value.locationCapable = readBoolean(in, value.locationCapable);
+                        break;
+                    case "batteryStatus":
+                        value.batteryStatus = readString(in);
+                        break;
+                    case "trackingInfo":
+                        value.trackingInfo = readString(in);
+                        break;
+                    case "name":
+                        value.name = readString(in);
+                        break;
+                    case "isMac":
+                        value.isMac = readBoolean(in, value.isMac);
+                        break;
+                    case "thisDevice":
+                        value.thisDevice = readBoolean(in, value.thisDevice);
+                        break;
+                    case "deviceClass":
+                        value.deviceClass = readString(in);
+                        break;
+                    case "location":
+                        value.location = LOCATION.read(in);
+                        break;
+                    case "deviceModel":
+                        value.deviceModel = readString(in);
+                        break;
+                    case "maxMsgChar":
+                        value.maxMsgChar = readString(in);
+                        break;
+                    case "darkWake":
+                        value.darkWake = readBoolean(in, value.darkWake);
+                        break;
+                    case "remoteWipe":
+                        value.remoteWipe = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link DriveDataToken}.
+     */
+    static final TypeAdapter<DriveDataToken> DRIVE_DATA_TOKEN = new TypeAdapter<DriveDataToken>()
+    {
+        @Override
+        public void write(JsonWriter out, DriveDataToken value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("url").value(value.url);
+            out.name("token").value(value.token);
+            out.name("signature").value(value.signature);
+            out.name("wrapping_key").value(value.wrapping_key);
+            out.name("reference_signature").value(value.reference_signature);
+            out.name("size").value(value.size);
+            out.endObject();
+        }
+
+        @Override
+        public DriveDataToken read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            DriveDataToken value = new DriveDataToken();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "url":
+                        value.url = readString(in);
+                        break;
+                    case "token":
+                        value.token = readString(in);
+                        break;
+                    case "signature":
+                        value.signature = readString(in);
+                        break;
+                    case "wrapping_key":
+                        value.wrapping_key = readString(in);
+                        break;
+                    case "reference_signature":
+                        value.reference_signature = readString(in);
+                        break;
+                    case "size":
+                        value.size = readLong(in, value.size);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link DriveDownloadResponse}.
+     */
+    static final TypeAdapter<DriveDownloadResponse> DRIVE_DOWNLOAD_RESPONSE = new TypeAdapter<DriveDownloadResponse>()
+    {
+        @Override
+        public void write(JsonWriter out, DriveDownloadResponse value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("document_id").value(value.document_id);
+            out.name("data_token");
+            DRIVE_DATA_TOKEN.write(out, value.data_token);
+            out.endObject();
+        }
+
+        @Override
+        public DriveDownloadResponse read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            DriveDownloadResponse value = new DriveDownloadResponse();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "document_id":
+                        value.document_id = readString(in);
+                        break;
+                    case "data_token":
+                        value.data_token = DRIVE_DATA_TOKEN.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link DriveNodeDetails}.
+     */
+    static final TypeAdapter<DriveNodeDetails> DRIVE_NODE_DETAILS = new TypeAdapter<DriveNodeDetails>()
+    {
+        @Override
+        public void write(JsonWriter out, DriveNodeDetails value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("drivewsid").value(value.drivewsid);
+            out.name("docwsid").value(value.docwsid);
+            out.name("parentId").value(value.parentId);
+            out.name("zone").value(value.zone);
+            out.name("name").value(value.name);
+            out.name("etag").value(value.etag);
+            out.name("type").value(value.type);
+            out.name("items");
+            writeArray(out, value.items, DRIVE_NODE_DETAILS);
+            out.name("numberOfItems").value(value.numberOfItems);
+            out.name("dateModified").value(value.dateModified);
+            out.name("dateChanged").value(value.dateChanged);
+            out.name("size").value(value.size);
+            out.name("extension").value(value.extension);
+            out.name("status").value(value.status);
+            out.endObject();
+        }
+
+        @Override
+        public DriveNodeDetails read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            DriveNodeDetails value = new DriveNodeDetails();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "drivewsid":
+                        value.drivewsid = readString(in);
+                        break;
+                    case "docwsid":
+                        value.docwsid = readString(in);
+                        break;
+                    case "parentId":
+                        value.parentId = readString(in);
+                        break;
+                    case "zone":
+                        value.zone = readString(in);
+                        break;
+                    case "name":
+                        value.name = readString(in);
+                        break;
+                    case "etag":
+                        value.etag = readString(in);
+                        break;
+                    case "type":
+                        value.type = readString(in);
+                        break;
+                    case "items":
+                        value.items = readArray(in, DRIVE_NODE_DETAILS, DriveNodeDetails[]::new);
+                        break;
+                    case "numberOfItems":
+                        value.numberOfItems = readInt(in, value.numberOfItems);
+                        break;
+                    case "dateModified":
+                        value.dateModified = readString(in);
+                        break;
+                    case "dateChanged":
+                        value.dateChanged = readString(in);
+                        break;
+                    case "size":
+                        value.size = readLong(in, value.size);
+                        break;
+                    case "extension":
+                        value.extension = readString(in);
+                        break;
+                    case "status":
+                        value.status = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link DriveUploadUrl}.
+     */
+    static final TypeAdapter<DriveUploadUrl> DRIVE_UPLOAD_URL = new TypeAdapter<DriveUploadUrl>()
+    {
+        @Override
+        public void write(JsonWriter out, DriveUploadUrl value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("document_id").value(value.document_id);
+            out.name("url").value(value.url);
+            out.endObject();
+        }
+
+        @Override
+        public DriveUploadUrl read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            DriveUploadUrl value = new DriveUploadUrl();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "document_id":
+                        value.document_id = readString(in);
+                        break;
+                    case "url":
+                        value.url = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link DriveUploadedFile}.
+     */
+    static final TypeAdapter<DriveUploadedFile> DRIVE_UPLOADED_FILE = new TypeAdapter<DriveUploadedFile>()
+    {
+        @Override
+        public void write(JsonWriter out, DriveUploadedFile value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("fileChecksum").value(value.fileChecksum);
+            out.name("wrappingKey").value(value.wrappingKey);
+            out.name("referenceChecksum").value(value.referenceChecksum);
+            out.name("size").value(value.size);
+            out.name("receipt").value(value.receipt);
+            out.endObject();
+        }
+
+        @Override
+        public DriveUploadedFile read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            DriveUploadedFile value = new DriveUploadedFile();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "fileChecksum":
+                        value.fileChecksum = readString(in);
+                        break;
+                    case "wrappingKey":
+                        value.wrappingKey = readString(in);
+                        break;
+                    case "referenceChecksum":
+                        value.referenceChecksum = readString(in);
+                        break;
+                    case "size":
+                        value.size = readLong(in, value.size);
+                        break;
+                    case "receipt":
+                        value.receipt = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link DriveUploadResponse}.
+     */
+    static final TypeAdapter<DriveUploadResponse> DRIVE_UPLOAD_RESPONSE = new TypeAdapter<DriveUploadResponse>()
+    {
+        @Override
+        public void write(JsonWriter out, DriveUploadResponse value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("singleFile");
+            DRIVE_UPLOADED_FILE.write(out, value.singleFile);
+            out.endObject();
+        }
+
+        @Override
+        public DriveUploadResponse read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            DriveUploadResponse value = new DriveUploadResponse();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "singleFile":
+                        value.singleFile = DRIVE_UPLOADED_FILE.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link FindMyIPhoneResponse}.
+     */
+    static final TypeAdapter<FindMyIPhoneResponse> FIND_MY_I_PHONE_RESPONSE = new TypeAdapter<FindMyIPhoneResponse>()
+    {
+        @Override
+        public void write(JsonWriter out, FindMyIPhoneResponse value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("content");
+            writeArray(out, value.content, APPLE_DEVICE);
+            out.endObject();
+        }
+
+        @Override
+        public FindMyIPhoneResponse read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            FindMyIPhoneResponse value = new FindMyIPhoneResponse();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "content":
+                        value.content = readArray(in, APPLE_DEVICE, AppleDevice[]::new);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link Location}.
+     */
+    static final TypeAdapter<Location> LOCATION = new TypeAdapter<Location>()
+    {
+        @Override
+        public void write(JsonWriter out, Location value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("timeStamp").value(value.timeStamp);
+            out.name("isOld").value(value.isOld);
+            out.name("isInaccurate").value(value.isInaccurate);
+            out.name("locationFinished").value(value.locationFinished);
+            out.name("positionType").value(value.positionType);
+            out.name("latitude").value(value.latitude);
+            out.name("horizontalAccuracy").value(value.horizontalAccuracy);
+            out.name("locationType").value(value.locationType);
+            out.name("longitude").value(value.longitude);
+            out.endObject();
+        }
+
+        @Override
+        public Location read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            Location value = new Location();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "timeStamp":
+                        value.timeStamp = readString(in);
+                        break;
+                    case "isOld":
+                        value.isOld = readBoolean(in, value.isOld);
+                        break;
+                    case "isInaccurate":
+                        value.isInaccurate = readBoolean(in, value.isInaccurate);
+                        break;
+                    case "locationFinished":
+                        value.locationFinished = readBoolean(in, value.locationFinished);
+                        break;
+                    case "positionType":
+                        value.positionType = readString(in);
+                        break;
+                    case "latitude":
+                        value.latitude = readDouble(in, value.latitude);
+                        break;
+                    case "horizontalAccuracy":
+                        value.horizontalAccuracy = readDouble(in, value.horizontalAccuracy);
+                        break;
+                    case "locationType":
+                        value.locationType = readString(in);
+                        break;
+                    case "longitude":
+                        value.longitude = readDouble(in, value.longitude);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link PhotosAlbumsResponse}.
+     */
+    static final TypeAdapter<PhotosAlbumsResponse> PHOTOS_ALBUMS_RESPONSE = new TypeAdapter<PhotosAlbumsResponse>()
+    {
+        @Override
+        public void write(JsonWriter out, PhotosAlbumsResponse value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("folders");
+            writeArray(out, value.folders, PHOTOS_FOLDER);
+            out.endObject();
+        }
+
+        @Override
+        public PhotosAlbumsResponse read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            PhotosAlbumsResponse value = new PhotosAlbumsResponse();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "folders":
+                        value.folders = readArray(in, PHOTOS_FOLDER, PhotosFolder[]::new);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link PhotosFolder}.
+     */
+    static final TypeAdapter<PhotosFolder> PHOTOS_FOLDER = new TypeAdapter<PhotosFolder>()
+    {
+        @Override
+        public void write(JsonWriter out, PhotosFolder value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("keyAssetClientId").value(value.keyAssetClientId);
+            out.name("contentsType").value(value.contentsType);
+            out.name("dateRange").value(value.dateRange);
+            out.name("childAssetsBinaryFeed").value(value.childAssetsBinaryFeed);
+            out.name("childFolderIds");
+            writeStringArray(out, value.childFolderIds);
+            out.name("type").value(value.type);
+            out.name("serverId").value(value.serverId);
+            out.name("isServerGenerated").value(value.isServerGenerated);
+            out.endObject();
+        }
+
+        @Override
+        public PhotosFolder read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            PhotosFolder value = new PhotosFolder();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "keyAssetClientId":
+                        value.keyAssetClientId = readString(in);
+                        break;
+                    case "contentsType":
+                        value.contentsType = readString(in);
+                        break;
+                    case "dateRange":
+                        value.dateRange = readString(in);
+                        break;
+                    case "childAssetsBinaryFeed":
+                        value.childAssetsBinaryFeed = readString(in);
+                        break;
+                    case "childFolderIds":
+                        value.childFolderIds = readStringArray(in);
+                        break;
+                    case "type":
+                        value.type = readString(in);
+                        break;
+                    case "serverId":
+                        value.serverId = readString(in);
+                        break;
+                    case "isServerGenerated":
+                        value.isServerGenerated = readBoolean(in, value.isServerGenerated);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link TrustedDevice}.
+     */
+    static final TypeAdapter<TrustedDevice> TRUSTED_DEVICE = new TypeAdapter<TrustedDevice>()
+    {
+        @Override
+        public void write(JsonWriter out, TrustedDevice value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("deviceType").value(value.deviceType);
+            out.name("areaCode").value(value.areaCode);
+            out.name("phoneNumber").value(value.phoneNumber);
+            out.name("deviceId").value(value.deviceId);
+            out.endObject();
+        }
+
+        @Override
+        public TrustedDevice read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            TrustedDevice value = new TrustedDevice();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "deviceType":
+                        value.deviceType = readString(in);
+                        break;
+                    case "areaCode":
+                        value.areaCode = readString(in);
+                        break;
+                    case "phoneNumber":
+                        value.phoneNumber = readString(in);
+                        break;
+                    case "deviceId":
+                        value.deviceId = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link TrustedDeviceResponse}.
+     */
+    static final TypeAdapter<TrustedDeviceResponse> TRUSTED_DEVICE_RESPONSE = new TypeAdapter<TrustedDeviceResponse>()
+    {
+        @Override
+        public void write(JsonWriter out, TrustedDeviceResponse value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("verificationCode").value(value.verificationCode);
+            out.name("trustBrowser").value(value.trustBrowser);
+            out.name("deviceType").value(value.deviceType);
+            out.name("areaCode").value(value.areaCode);
+            out.name("phoneNumber").value(value.phoneNumber);
+            out.name("deviceId").value(value.deviceId);
+            out.endObject();
+        }
+
+        @Override
+        public TrustedDeviceResponse read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            TrustedDeviceResponse value = new TrustedDeviceResponse();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "verificationCode":
+                        value.verificationCode = readString(in);
+                        break;
+                    case "trustBrowser":
+                        value.trustBrowser = readBoolean(in, value.trustBrowser);
+                        break;
+                    case "deviceType":
+                        value.deviceType = readString(in);
+                        break;
+                    case "areaCode":
+                        value.areaCode = readString(in);
+                        break;
+                    case "phoneNumber":
+                        value.phoneNumber = readString(in);
+                        break;
+                    case "deviceId":
+                        value.deviceId = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link TrustedDevices}.
+     */
+    static final TypeAdapter<TrustedDevices> TRUSTED_DEVICES = new TypeAdapter<TrustedDevices>()
+    {
+        @Override
+        public void write(JsonWriter out, TrustedDevices value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("devices");
+            writeArray(out, value.devices, TRUSTED_DEVICE);
+            out.endObject();
+        }
+
+        @Override
+        public TrustedDevices read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            TrustedDevices value = new TrustedDevices();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "devices":
+                        value.devices = readArray(in, TRUSTED_DEVICE, TrustedDevice[]::new);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link UbiquityGetChildrenResponse}.
+     */
+    static final TypeAdapter<UbiquityGetChildrenResponse> UBIQUITY_GET_CHILDREN_RESPONSE = new TypeAdapter<UbiquityGetChildrenResponse>()
+    {
+        @Override
+        public void write(JsonWriter out, UbiquityGetChildrenResponse value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("item_list");
+            writeArray(out, value.item_list, UBIQUITY_NODE_DETAILS);
+            out.endObject();
+        }
+
+        @Override
+        public UbiquityGetChildrenResponse read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            UbiquityGetChildrenResponse value = new UbiquityGetChildrenResponse();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "item_list":
+                        value.item_list = readArray(in, UBIQUITY_NODE_DETAILS, UbiquityNodeDetails[]::new);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapter for {@link UbiquityNodeDetails}.
+     */
+    static final TypeAdapter<UbiquityNodeDetails> UBIQUITY_NODE_DETAILS = new TypeAdapter<UbiquityNodeDetails>()
+    {
+        @Override
+        public void write(JsonWriter out, UbiquityNodeDetails value) throws IOException
+        {
+            if (value == null)
+            {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            out.name("peer_id").value(value.peer_id);
+            out.name("in_cloud").value(value.in_cloud);
+            out.name("item_id").value(value.item_id);
+            out.name("name").value(value.name);
+            out.name("parent_item_id").value(value.parent_item_id);
+            out.name("type").value(value.type);
+            out.name("modified").value(value.modified);
+            out.name("size").value(value.size);
+            out.name("change_id").value(value.change_id);
+            out.endObject();
+        }
+
+        @Override
+        public UbiquityNodeDetails read(JsonReader in) throws IOException
+        {
+            if (in.peek() == JsonToken.NULL)
+            {
+                in.nextNull();
+                return null;
+            }
+
+            UbiquityNodeDetails value = new UbiquityNodeDetails();
+            in.beginObject();
+            while (in.hasNext())
+            {
+                switch (in.nextName())
+                {
+                    case "peer_id":
+                        value.peer_id = readLong(in, value.peer_id);
+                        break;
+                    case "in_cloud":
+                        value.in_cloud = readBoolean(in, value.in_cloud);
+                        break;
+                    case "item_id":
+                        value.item_id = readString(in);
+                        break;
+                    case "name":
+                        value.name = readString(in);
+                        break;
+                    case "parent_item_id":
+                        value.parent_item_id = readString(in);
+                        break;
+                    case "type":
+                        value.type = readString(in);
+                        break;
+                    case "modified":
+                        value.modified = readString(in);
+                        break;
+                    case "size":
+                        value.size = readLong(in, value.size);
+                        break;
+                    case "change_id":
+                        value.change_id = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    };
+
+    /**
+     * The adapters, keyed by model class.
+     */
+    private static final Map<Class<?>, TypeAdapter<?>> ADAPTERS = new HashMap<>();
+
+    static
+    {
+        ADAPTERS.put(AppleDevice.class, APPLE_DEVICE);
+        ADAPTERS.put(DriveDataToken.class, DRIVE_DATA_TOKEN);
+        ADAPTERS.put(DriveDownloadResponse.class, DRIVE_DOWNLOAD_RESPONSE);
+        ADAPTERS.put(DriveNodeDetails.class, DRIVE_NODE_DETAILS);
+        ADAPTERS.put(DriveUploadedFile.class, DRIVE_UPLOADED_FILE);
+        ADAPTERS.put(DriveUploadResponse.class, DRIVE_UPLOAD_RESPONSE);
+        ADAPTERS.put(DriveUploadUrl.class, DRIVE_UPLOAD_URL);
+        ADAPTERS.put(FindMyIPhoneResponse.class, FIND_MY_I_PHONE_RESPONSE);
+        ADAPTERS.put(Location.class, LOCATION);
+        ADAPTERS.put(PhotosAlbumsResponse.class, PHOTOS_ALBUMS_RESPONSE);
+        ADAPTERS.put(PhotosFolder.class, PHOTOS_FOLDER);
+        ADAPTERS.put(TrustedDevice.class, TRUSTED_DEVICE);
+        ADAPTERS.put(TrustedDeviceResponse.class, TRUSTED_DEVICE_RESPONSE);
+        ADAPTERS.put(TrustedDevices.class, TRUSTED_DEVICES);
+        ADAPTERS.put(UbiquityGetChildrenResponse.class, UBIQUITY_GET_CHILDREN_RESPONSE);
+        ADAPTERS.put(UbiquityNodeDetails.class, UBIQUITY_NODE_DETAILS);
+    }
+
+    /**
+     * A factory returning the handwritten adapter for a model class, or {@code null} for any other type.
+     */
+    static final TypeAdapterFactory FACTORY = new TypeAdapterFactory()
+    {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+        {
+            return (TypeAdapter<T>) ADAPTERS.get(type.getRawType());
+        }
+    };
+
+    /**
+     * Reads a string value, coercing booleans and numbers to strings.
+     *
+     * @param in the reader.
+     * @return the value, or {@code null}.
+     * @throws IOException if reading fails.
+     */
+    private static String readString(JsonReader in) throws IOException
+    {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL)
+        {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN)
+        {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Reads a boolean value, accepting strings such as "true".
+     *
+     * @param in           the reader.
+     * @param defaultValue the value to keep if the JSON value is {@code null}.
+     * @return the value.
+     * @throws IOException if reading fails.
+     */
+    private static boolean readBoolean(JsonReader in, boolean defaultValue) throws IOException
+    {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL)
+        {
+            in.nextNull();
+            return defaultValue;
+        }
+        if (token == JsonToken.STRING)
+        {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    /**
+     * Reads an int value.
+     *
+     * @param in           the reader.
+     * @param defaultValue the value to keep if the JSON value is {@code null}.
+     * @return the value.
+     * @throws IOException if reading fails.
+     */
+    private static int readInt(JsonReader in, int defaultValue) throws IOException
+    {
+        if (in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return defaultValue;
+        }
+        try
+        {
+            return in.nextInt();
+        }
+        catch (NumberFormatException e)
+        {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Reads a long value.
+     *
+     * @param in           the reader.
+     * @param defaultValue the value to keep if the JSON value is {@code null}.
+     * @return the value.
+     * @throws IOException if reading fails.
+     */
+    private static long readLong(JsonReader in, long defaultValue) throws IOException
+    {
+        if (in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return defaultValue;
+        }
+        try
+        {
+            return in.nextLong();
+        }
+        catch (NumberFormatException e)
+        {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Reads a double value.
+     *
+     * @param in           the reader.
+     * @param defaultValue the value to keep if the JSON value is {@code null}.
+     * @return the value.
+     * @throws IOException if reading fails.
+     */
+    private static double readDouble(JsonReader in, double defaultValue) throws IOException
+    {
+        if (in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return defaultValue;
+        }
+        try
+        {
+            return in.nextDouble();
+        }
+        catch (NumberFormatException e)
+        {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Reads an array of model objects.
+     *
+     * @param in           the reader.
+     * @param adapter      the element adapter.
+     * @param arrayFactory creates the result array.
+     * @return the array, or {@code null}.
+     * @throws IOException if reading fails.
+     */
+    private static <T> T[] readArray(JsonReader in, TypeAdapter<T> adapter, IntFunction<T[]> arrayFactory) throws IOException
+    {
+        if (in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return null;
+        }
+
+        List<T> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext())
+        {
+            values.add(adapter.read(in));
+        }
+        in.endArray();
+        return values.toArray(arrayFactory.apply(values.size()));
+    }
+
+    /**
+     * Reads an array of strings.
+     *
+     * @param in the reader.
+     * @return the array, or {@code null}.
+     * @throws IOException if reading fails.
+     */
+    private static String[] readStringArray(JsonReader in) throws IOException
+    {
+        if (in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return null;
+        }
+
+        List<String> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext())
+        {
+            values.add(readString(in));
+        }
+        in.endArray();
+        return values.toArray(new String[0]);
+    }
+
+    /**
+     * Writes an array of model objects.
+     *
+     * @param out     the writer.
+     * @param values  the values, or {@code null}.
+     * @param adapter the element adapter.
+     * @throws IOException if writing fails.
+     */
+    private static <T> void writeArray(JsonWriter out, T[] values, TypeAdapter<T> adapter) throws IOException
+    {
+        if (values == null)
+        {
+            out.nullValue();
+            return;
+        }
+
+        out.beginArray();
+        for (T value : values)
+        {
+            adapter.write(out, value);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Writes an array of strings.
+     *
+     * @param out    the writer.
+     * @param values the values, or {@code null}.
+     * @throws IOException if writing fails.
+     */
+    private static void writeStringArray(JsonWriter out, String[] values) throws IOException
+    {
+        if (values == null)
+        {
+            out.nullValue();
+            return;
+        }
+
+        out.beginArray();
+        for (String value : values)
+        {
+            out.value(value);
+        }
+        out.endArray();
+    }
+}
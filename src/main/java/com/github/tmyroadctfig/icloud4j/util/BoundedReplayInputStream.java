@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.util;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+
+/**
+ * An input stream which records the first bytes read from the underlying stream, so that a short body can be read a
+ * second time. Once more than the limit has been read the recording is dropped and the stream can no longer be
+ * replayed, so memory use is bounded regardless of the body size.
+ */
+public class BoundedReplayInputStream extends FilterInputStream
+{
+    /**
+     * The initial size of the recording buffer.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 512;
+
+    /**
+     * The maximum number of bytes to record.
+     */
+    private final int limit;
+
+    /**
+     * The recorded bytes, or {@code null} once the limit has been exceeded.
+     */
+    private byte[] recording;
+
+    /**
+     * The number of recorded bytes.
+     */
+    private int recorded;
+
+    /**
+     * Creates a new stream.
+     *
+     * @param in    the underlying stream.
+     * @param limit the maximum number of bytes to record.
+     */
+    public BoundedReplayInputStream(InputStream in, int limit)
+    {
+        super(in);
+        this.limit = limit;
+        this.recording = new byte[Math.min(INITIAL_BUFFER_SIZE, limit)];
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int b = in.read();
+        if (b >= 0 && ensureCapacity(1))
+        {
+            recording[recorded++] = (byte) b;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int count = in.read(b, off, len);
+        if (count > 0)
+        {
+            record(b, off, count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        // Read rather than skip so that the skipped bytes are recorded
+        byte[] buffer = new byte[(int) Math.min(n, 4096)];
+        long remaining = n;
+        while (remaining > 0)
+        {
+            int count = read(buffer, 0, (int) Math.min(remaining, buffer.length));
+            if (count < 0)
+            {
+                break;
+            }
+            remaining -= count;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Checks whether the stream can still be replayed.
+     *
+     * @return {@code true} if no more than the limit has been read.
+     */
+    public boolean isReplayable()
+    {
+        return recording != null;
+    }
+
+    /**
+     * Gets a stream which returns the recorded bytes followed by the unread remainder of the underlying stream.
+     *
+     * @return the stream, or {@code null} if more than the limit has already been read.
+     */
+    @Nullable
+    public InputStream replay()
+    {
+        if (recording == null)
+        {
+            return null;
+        }
+
+        return new SequenceInputStream(new ByteArrayInputStream(recording, 0, recorded), in);
+    }
+
+    /**
+     * Records the given bytes.
+     *
+     * @param b     the buffer.
+     * @param off   the offset into the buffer.
+     * @param count the number of bytes.
+     */
+    private void record(byte[] b, int off, int count)
+    {
+        if (ensureCapacity(count))
+        {
+            System.arraycopy(b, off, recording, recorded, count);
+            recorded += count;
+        }
+    }
+
+    /**
+     * Ensures the recording has room for more bytes, dropping it if the limit would be exceeded.
+     *
+     * @param count the number of bytes to be recorded.
+     * @return {@code true} if the bytes should be recorded.
+     */
+    private boolean ensureCapacity(int count)
+    {
+        if (recording == null)
+        {
+            return false;
+        }
+
+        if (recorded + count > limit)
+        {
+            recording = null;
+            return false;
+        }
+
+        if (recorded + count > recording.length)
+        {
+            recording = Arrays.copyOf(recording, Math.min(limit, Math.max(recorded + count, recording.length * 2)));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Copies response bodies into channels without a per-call heap buffer.
+ * <p>
+ * When both ends are files the copy is left to {@link FileChannel#transferFrom}, which the kernel can do without
+ * passing the data through the JVM. Otherwise the data is written from buffers taken from a {@link DirectBufferPool};
+ * {@code transferFrom} is not used for network sources, as it copies them in small chunks through a temporary buffer.
+ */
+public class ChannelTransfer
+{
+    private ChannelTransfer()
+    {
+    }
+
+    /**
+     * Copies a stream into a channel, starting at the channel's current position.
+     *
+     * @param source the stream, read until the end but not closed.
+     * @param target the channel, not closed.
+     * @return the number of bytes copied.
+     * @throws IOException if the stream can't be read or the channel written.
+     */
+    public static long transfer(InputStream source, WritableByteChannel target) throws IOException
+    {
+        ReadableByteChannel sourceChannel = Channels.newChannel(source);
+        if (sourceChannel instanceof FileChannel && target instanceof FileChannel)
+        {
+            // 'transferFrom' does nothing past the end of the file, so a sparse write falls through to the pool
+            FileChannel fileChannel = (FileChannel) target;
+            long position = fileChannel.position();
+            if (position <= fileChannel.size())
+            {
+                long transferred = 0;
+                long count;
+                while ((count = fileChannel.transferFrom(sourceChannel, position + transferred, Long.MAX_VALUE)) > 0)
+                {
+                    transferred += count;
+                }
+                fileChannel.position(position + transferred);
+                return transferred;
+            }
+        }
+
+        return copy(sourceChannel, target, DirectBufferPool.shared());
+    }
+
+    /**
+     * Copies a channel into another through a pooled direct buffer.
+     *
+     * @param source the source channel, read until the end but not closed.
+     * @param target the target channel, not closed.
+     * @param pool   the buffer pool.
+     * @return the number of bytes copied.
+     * @throws IOException if the source can't be read or the target written.
+     */
+    public static long copy(ReadableByteChannel source, WritableByteChannel target, DirectBufferPool pool)
+        throws IOException
+    {
+        ByteBuffer buffer = pool.acquire();
+        try
+        {
+            long copied = 0;
+            boolean endOfStream = false;
+            while (!endOfStream)
+            {
+                endOfStream = fill(source, buffer);
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    copied += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return copied;
+        }
+        finally
+        {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Reads from a channel until the buffer is full or the channel is exhausted. Stream-backed channels return a few
+     * kilobytes per read, so filling the buffer first keeps the writes large.
+     *
+     * @param source the source channel.
+     * @param buffer the buffer to fill.
+     * @return {@code true} if the end of the channel was reached.
+     * @throws IOException if the channel can't be read.
+     */
+    public static boolean fill(ReadableByteChannel source, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (source.read(buffer) == -1)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.util;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of equally sized direct {@link ByteBuffer}s, used to copy downloads into channels without allocating a
+ * buffer per file. Direct buffers are expensive to allocate and are only reclaimed by the garbage collector, so they are
+ * kept for reuse; buffers released while the pool is full are simply dropped.
+ * <p>
+ * The pool is thread safe. Buffers must not be used after they have been released.
+ */
+public class DirectBufferPool
+{
+    /**
+     * The default buffer size.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 0x10000;
+
+    /**
+     * The default number of idle buffers kept for reuse.
+     */
+    public static final int DEFAULT_MAX_POOLED = 32;
+
+    /**
+     * The pool shared by all downloads.
+     */
+    private static final DirectBufferPool SHARED = new DirectBufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+
+    /**
+     * The size of each buffer.
+     */
+    private final int bufferSize;
+
+    /**
+     * The idle buffers.
+     */
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param bufferSize the size of each buffer.
+     * @param maxPooled  the number of idle buffers kept for reuse.
+     */
+    public DirectBufferPool(int bufferSize, int maxPooled)
+    {
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be positive");
+        Preconditions.checkArgument(maxPooled > 0, "maxPooled must be positive");
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * Gets the pool shared by all downloads.
+     *
+     * @return the shared pool.
+     */
+    public static DirectBufferPool shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * Takes an idle buffer from the pool, allocating a new one if there is none.
+     *
+     * @return a cleared buffer.
+     */
+    public ByteBuffer acquire()
+    {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null)
+        {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers which did not come from a pool of this size are ignored.
+     *
+     * @param buffer the buffer.
+     */
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer.isDirect() && buffer.capacity() == bufferSize)
+        {
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Gets the size of each buffer.
+     *
+     * @return the buffer size in bytes.
+     */
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * Gets the number of idle buffers in the pool.
+     *
+     * @return the idle buffer count.
+     */
+    public int getPooledCount()
+    {
+        return buffers.size();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.util;
+
+import com.github.tmyroadctfig.icloud4j.ICloudException;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+
+/**
+ * The body of an HTTP response, read straight from the connection.
+ * <p>
+ * Unlike a response handler, which releases the connection as soon as it returns, the stream keeps its pooled
+ * connection leased until it is closed, so a body of any size can be read with constant memory. Closing the stream
+ * after reading the whole body returns the connection to the pool; closing it earlier drops the connection rather than
+ * reading the rest of the body. Always close the stream, or the connection is never returned:
+ *
+ * <pre>
+ * try (ICloudResponseStream stream = node.openStream())
+ * {
+ *     upload(stream, stream.getContentLength());
+ * }
+ * </pre>
+ */
+public class ICloudResponseStream extends FilterInputStream
+{
+    /**
+     * The request, cancelled to drop the connection if the body is not read to the end.
+     */
+    private final HttpUriRequestBase request;
+
+    /**
+     * The response.
+     */
+    private final ClassicHttpResponse response;
+
+    /**
+     * Whether the end of the body has been reached.
+     */
+    private boolean endOfStream;
+
+    /**
+     * Whether the stream has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a new stream.
+     *
+     * @param request  the request.
+     * @param response the response.
+     * @param content  the response body.
+     */
+    private ICloudResponseStream(HttpUriRequestBase request, ClassicHttpResponse response, InputStream content)
+    {
+        super(content);
+        this.request = request;
+        this.response = response;
+    }
+
+    /**
+     * Sends a request and opens its response body.
+     *
+     * @param client  the client.
+     * @param request the request.
+     * @return the open stream, which the caller must close.
+     * @throws ICloudException if the response status is not 2xx. The connection has been released.
+     * @throws IOException     if the request fails.
+     */
+    public static ICloudResponseStream open(CloseableHttpClient client, HttpUriRequestBase request) throws IOException
+    {
+        ClassicHttpResponse response = client.executeOpen(null, request, null);
+        try
+        {
+            if (response.getCode() < 200 || response.getCode() >= 300)
+            {
+                throw new ICloudException(response, Collections.emptyMap());
+            }
+
+            HttpEntity entity = response.getEntity();
+            InputStream content = entity != null ? entity.getContent() : null;
+            return new ICloudResponseStream(request, response,
+                content != null ? content : new ByteArrayInputStream(new byte[0]));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            request.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the response status code.
+     *
+     * @return the status code.
+     */
+    public int getStatusCode()
+    {
+        return response.getCode();
+    }
+
+    /**
+     * Gets the response headers.
+     *
+     * @return the headers.
+     */
+    public Header[] getHeaders()
+    {
+        return response.getHeaders();
+    }
+
+    /**
+     * Gets the value of the first response header with a given name.
+     *
+     * @param name the header name, matched ignoring case.
+     * @return the value, or {@code null} if there is no such header.
+     */
+    @Nullable
+    public String getHeader(String name)
+    {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * Gets the length of the body.
+     *
+     * @return the length in bytes, or -1 if the response does not say.
+     */
+    public long getContentLength()
+    {
+        HttpEntity entity = response.getEntity();
+        return entity != null ? entity.getContentLength() : 0;
+    }
+
+    /**
+     * Gets the content type of the body.
+     *
+     * @return the content type, or {@code null} if the response does not say.
+     */
+    @Nullable
+    public String getContentType()
+    {
+        HttpEntity entity = response.getEntity();
+        return entity != null ? entity.getContentType() : null;
+    }
+
+    /**
+     * Reads the rest of the body into a channel through a pooled direct buffer, see
+     * {@link ChannelTransfer#transfer(InputStream, WritableByteChannel)}. The stream is not closed.
+     *
+     * @param target the channel, written from its current position and not closed.
+     * @return the number of bytes written.
+     * @throws IOException if the body can't be read or the channel written.
+     */
+    public long transferTo(WritableByteChannel target) throws IOException
+    {
+        return ChannelTransfer.transfer(this, target);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int b = super.read();
+        endOfStream |= b == -1;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int count = super.read(b, off, len);
+        endOfStream |= count == -1;
+        return count;
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Closes the stream and releases the connection. If the body has not been read to the end the connection is
+     * dropped, as reading the rest of a large body just to reuse the connection costs more than opening a new one.
+     *
+     * @throws IOException if the stream can't be closed.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+
+        if (!endOfStream)
+        {
+            // Cancelling discards the connection; closing the response as well would try to read the rest of the body
+            request.cancel();
+            return;
+        }
+
+        try
+        {
+            super.close();
+        }
+        finally
+        {
+            response.close();
+        }
+    }
+}
@@ -16,17 +16,36 @@
 package com.github.tmyroadctfig.icloud4j.util;
 
 import com.github.tmyroadctfig.icloud4j.ICloudException;
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpResponse;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * iCloud utilities.
@@ -34,26 +53,52 @@ import java.util.Map;
 public class ICloudUtils
 {
 
-    private static final Gson gson = new Gson();
+    private static final Gson gson = JsonCodecs.gson();
+
+    /**
+     * The number of leading response bytes kept so that an error body can be re-read as a map. iCloud error bodies are
+     * small; once a body is larger than this it can no longer be an error response worth replaying.
+     */
+    private static final int ERROR_REPLAY_LIMIT = 16 * 1024;
 
     /**
      * Parses a JSON response from a POST request.
      */
     public static <T> T parseJsonResponse(CloseableHttpClient httpClient, HttpPost post, Class<T> responseClass)
+    {
+        return parseJsonResponse(httpClient, post, (Type) responseClass);
+    }
+
+    /**
+     * Parses a JSON response from a GET request.
+     */
+    public static <T> T parseJsonResponse(CloseableHttpClient httpClient, HttpGet get, Class<T> responseClass)
+    {
+        return parseJsonResponse(httpClient, get, (Type) responseClass);
+    }
+
+    /**
+     * Parses a JSON response, decoding directly from the response stream without buffering the whole body.
+     *
+     * @param httpClient   the HTTP client.
+     * @param request      the request.
+     * @param responseType the response type.
+     * @return the parsed response, or {@code null} if the response has no body.
+     */
+    public static <T> T parseJsonResponse(CloseableHttpClient httpClient, ClassicHttpRequest request, Type responseType)
     {
         try
         {
-            return httpClient.execute(post, (ClassicHttpResponse response) -> {
-                String rawResponseContent = new StringResponseHandler().handleResponse(response);
-
-                try
+            return httpClient.execute(request, (ClassicHttpResponse response) -> {
+                HttpEntity entity = response.getEntity();
+                if (entity == null)
                 {
-                    return gson.fromJson(rawResponseContent, responseClass);
+                    return null;
                 }
-                catch (JsonSyntaxException e)
+
+                try (InputStream content = entity.getContent())
                 {
-                    Map<String, Object> errorMap = gson.fromJson(rawResponseContent, Map.class);
-                    throw new ICloudException(response, errorMap);
+                    return decodeJson(response, content, responseType);
                 }
             });
         }
@@ -64,47 +109,194 @@ public class ICloudUtils
     }
 
     /**
-     * Parses a JSON response from a GET request.
+     * Decodes a JSON response body from a stream. If the body does not match the expected type it is re-read as an
+     * error map and an {@link ICloudException} is thrown; only the first {@link #ERROR_REPLAY_LIMIT} bytes are kept for
+     * that purpose.
+     *
+     * @param response     the response, used when reporting an error.
+     * @param content      the response body.
+     * @param responseType the response type.
+     * @return the parsed response.
+     * @throws IOException if reading the body fails.
      */
-    public static <T> T parseJsonResponse(CloseableHttpClient httpClient, HttpGet get, Class<T> responseClass)
+    public static <T> T decodeJson(HttpResponse response, InputStream content, Type responseType) throws IOException
     {
+        BoundedReplayInputStream replayableContent = new BoundedReplayInputStream(content, ERROR_REPLAY_LIMIT);
+
         try
         {
-            return httpClient.execute(get, (ClassicHttpResponse response) -> {
-                String rawResponseContent = new StringResponseHandler().handleResponse(response);
+            JsonReader jsonReader = gson.newJsonReader(new InputStreamReader(replayableContent, StandardCharsets.UTF_8));
+            return gson.fromJson(jsonReader, responseType);
+        }
+        catch (JsonSyntaxException e)
+        {
+            InputStream replay = replayableContent.replay();
+            if (replay == null)
+            {
+                throw e;
+            }
 
-                try
-                {
-                    return gson.fromJson(rawResponseContent, responseClass);
-                }
-                catch (JsonSyntaxException e)
-                {
-                    Map<String, Object> errorMap = gson.fromJson(rawResponseContent, Map.class);
-                    throw new ICloudException(response, errorMap);
-                }
-            });
+            Map<String, Object> errorMap = gson.fromJson(new InputStreamReader(replay, StandardCharsets.UTF_8), Map.class);
+            throw new ICloudException(response, errorMap != null ? errorMap : Collections.emptyMap());
         }
-        catch (IOException e)
+        catch (JsonIOException e)
         {
-            throw new UncheckedIOException(e);
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw e;
         }
     }
 
-
     /**
      * Executes a GET request and returns the response body as an InputStream.
      * Caller is responsible for closing the InputStream.
+     *
+     * @deprecated use {@link ICloudResponseStream#open}, which also exposes the status and headers.
      */
+    @Deprecated
     public static InputStream executeStream(CloseableHttpClient client, HttpGet get)
     {
         try
         {
-            return client.execute(get, response -> response.getEntity().getContent());
+            return ICloudResponseStream.open(client, get);
+        }
+        catch (ICloudException e)
+        {
+            throw e;
         }
         catch (Exception e)
         {
             throw new RuntimeException("Failed to execute HTTP GET for stream", e);
         }
     }
-}
 
+    /**
+     * Executes an async request, completing the returned future once the whole response body has been received.
+     *
+     * @param client  the async client.
+     * @param request the request.
+     * @return the future response.
+     */
+    public static CompletableFuture<SimpleHttpResponse> executeAsync(CloseableHttpAsyncClient client, SimpleHttpRequest request)
+    {
+        CompletableFuture<SimpleHttpResponse> future = new CompletableFuture<>();
+        client.execute(request, new FutureCallback<SimpleHttpResponse>()
+        {
+            @Override
+            public void completed(SimpleHttpResponse response)
+            {
+                future.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e)
+            {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled()
+            {
+                future.completeExceptionally(new CancellationException("Request cancelled: " + request));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Executes an async request and parses the JSON response. The body is decoded on the given executor so that the IO
+     * reactor threads are never blocked by parsing.
+     *
+     * @param client        the async client.
+     * @param request       the request.
+     * @param responseClass the response class.
+     * @param executor      the executor to parse the response on.
+     * @return the future result.
+     */
+    public static <T> CompletableFuture<T> parseJsonResponseAsync(CloseableHttpAsyncClient client, SimpleHttpRequest request,
+                                                                  Class<T> responseClass, Executor executor)
+    {
+        return parseJsonResponseAsync(client, request, (Type) responseClass, executor);
+    }
+
+    /**
+     * Executes an async request and parses the JSON response. The body is decoded on the given executor so that the IO
+     * reactor threads are never blocked by parsing.
+     *
+     * @param client       the async client.
+     * @param request      the request.
+     * @param responseType the response type.
+     * @param executor     the executor to parse the response on.
+     * @return the future result.
+     */
+    public static <T> CompletableFuture<T> parseJsonResponseAsync(CloseableHttpAsyncClient client, SimpleHttpRequest request,
+                                                                  Type responseType, Executor executor)
+    {
+        return executeAsync(client, request)
+            .thenApplyAsync(response -> parseJsonBody(response, response.getBodyBytes(), responseType), executor);
+    }
+
+    /**
+     * Creates a future that has already completed with the given failure.
+     *
+     * @param failure the failure.
+     * @return the future.
+     */
+    public static <T> CompletableFuture<T> failedFuture(Throwable failure)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+
+    /**
+     * Waits for a future, rethrowing a failure the way the blocking calls do: runtime exceptions such as
+     * {@link ICloudException} are rethrown as-is and checked exceptions are wrapped in a {@link RuntimeException}.
+     *
+     * @param future the future.
+     * @return the result.
+     */
+    public static <T> T join(CompletableFuture<T> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Parses a buffered JSON response body.
+     *
+     * @param response     the response.
+     * @param body         the body.
+     * @param responseType the response type.
+     * @return the parsed value.
+     */
+    private static <T> T parseJsonBody(HttpResponse response, byte[] body, Type responseType)
+    {
+        if (body == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return decodeJson(response, new ByteArrayInputStream(body), responseType);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -15,8 +15,7 @@
 
 package com.github.tmyroadctfig.icloud4j.util;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.github.tmyroadctfig.icloud4j.json.JsonCodecs;
 import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
@@ -55,10 +54,9 @@ public class JsonToMapResponseHandler implements HttpClientResponseHandler<Map<S
         HttpEntity respEntity = response.getEntity();
         if (respEntity != null)
         {
-            Gson gson = new GsonBuilder().create();
             try (Reader reader = new InputStreamReader(respEntity.getContent(), StandardCharsets.UTF_8))
             {
-                return gson.fromJson(reader, Map.class);
+                return JsonCodecs.gson().fromJson(reader, Map.class);
             }
         }
 
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.RouteBehaviour;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.junit.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AdaptiveConcurrencyLimiter}.
+ */
+public class TestAdaptiveConcurrencyLimiter
+{
+    private static final long HEALTHY_LATENCY = TimeUnit.MICROSECONDS.toNanos(1);
+
+    @Test
+    public void testLimitGrowsWhileSaturated() throws Exception
+    {
+        // Arrange
+        AdaptiveConcurrencyLimiter.HostLimit hostLimit = new AdaptiveConcurrencyLimiter.HostLimit(2, 4);
+
+        // Act
+        for (int round = 0; round < 50; round++)
+        {
+            int limit = hostLimit.getLimit();
+            for (int i = 0; i < limit; i++)
+            {
+                hostLimit.acquire();
+            }
+            for (int i = 0; i < limit; i++)
+            {
+                hostLimit.release(200, HEALTHY_LATENCY, 0);
+            }
+        }
+
+        // Assert
+        assertThat(hostLimit.getLimit(), is(4));
+        assertThat(hostLimit.getInFlight(), is(0));
+    }
+
+    @Test
+    public void testLimitHoldsWhenNotSaturated() throws Exception
+    {
+        // Arrange
+        AdaptiveConcurrencyLimiter.HostLimit hostLimit = new AdaptiveConcurrencyLimiter.HostLimit(4, 16);
+
+        // Act
+        for (int i = 0; i < 50; i++)
+        {
+            hostLimit.acquire();
+            hostLimit.release(200, HEALTHY_LATENCY, 0);
+        }
+
+        // Assert
+        assertThat(hostLimit.getLimit(), is(4));
+    }
+
+    @Test
+    public void testThrottlingHalvesLimitOncePerWindow() throws Exception
+    {
+        // Arrange
+        AdaptiveConcurrencyLimiter.HostLimit hostLimit = new AdaptiveConcurrencyLimiter.HostLimit(8, 16);
+        for (int i = 0; i < AdaptiveConcurrencyLimiter.MIN_LATENCY_SAMPLES; i++)
+        {
+            hostLimit.acquire();
+            hostLimit.release(200, TimeUnit.SECONDS.toNanos(10), 0);
+        }
+        hostLimit.acquire();
+        hostLimit.acquire();
+
+        // Act
+        hostLimit.release(429, HEALTHY_LATENCY, 0);
+        hostLimit.release(503, HEALTHY_LATENCY, 0);
+
+        // Assert
+        assertThat(hostLimit.getLimit(), is(4));
+    }
+
+    @Test
+    public void testLatencySpikeHalvesLimit() throws Exception
+    {
+        // Arrange
+        AdaptiveConcurrencyLimiter.HostLimit hostLimit = new AdaptiveConcurrencyLimiter.HostLimit(8, 16);
+        for (int i = 0; i < AdaptiveConcurrencyLimiter.MIN_LATENCY_SAMPLES; i++)
+        {
+            hostLimit.acquire();
+            hostLimit.release(200, HEALTHY_LATENCY, 0);
+        }
+
+        // Act
+        hostLimit.acquire();
+        hostLimit.release(200, HEALTHY_LATENCY * 100, 0);
+
+        // Assert
+        assertThat(hostLimit.getLimit(), is(4));
+    }
+
+    @Test
+    public void testAsyncRequestWaitsForPermitWithoutBlocking() throws Exception
+    {
+        // Arrange
+        AdaptiveConcurrencyLimiter.HostLimit hostLimit = new AdaptiveConcurrencyLimiter.HostLimit(1, 1);
+        List<String> started = new ArrayList<>();
+        hostLimit.acquireAsync(() -> started.add("first"));
+
+        // Act
+        hostLimit.acquireAsync(() -> started.add("second"));
+        List<String> beforeRelease = new ArrayList<>(started);
+        hostLimit.release(200, HEALTHY_LATENCY, 0);
+
+        // Assert
+        assertThat(beforeRelease, is(Collections.singletonList("first")));
+        assertThat(started, is(Arrays.asList("first", "second")));
+        assertThat(hostLimit.getInFlight(), is(1));
+    }
+
+    @Test
+    public void testRetryAfterHoldsBackAsyncRequests() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder()
+                 .adaptiveConcurrency(8, 32)
+                 .build()))
+        {
+            String url = simulator.getSetupEndPoint() + "/storageUsageInfo";
+            String host = URI.create(url).getHost();
+            simulator.setBehaviour(SimulatorRoute.STORAGE_USAGE,
+                RouteBehaviour.builder().fault(1.0, 429).retryAfter(Duration.ofSeconds(1)).build());
+            int throttledStatus = iCloudService.getAsyncHttpClient()
+                .execute(SimpleRequestBuilder.get(url).build(), null)
+                .get(5, TimeUnit.SECONDS)
+                .getCode();
+            simulator.setBehaviour(SimulatorRoute.STORAGE_USAGE, RouteBehaviour.NONE);
+
+            // Act
+            long start = System.nanoTime();
+            int status = iCloudService.getAsyncHttpClient()
+                .execute(SimpleRequestBuilder.get(url).build(), null)
+                .get(5, TimeUnit.SECONDS)
+                .getCode();
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Assert
+            assertThat(throttledStatus, is(429));
+            assertThat(status, is(200));
+            assertTrue(iCloudService.getConcurrencyLimits().get(host) < 8);
+            assertTrue("Request started " + elapsedMillis + "ms after the throttled one", elapsedMillis >= 500);
+        }
+    }
+
+    @Test
+    public void testRetryAfterHoldsBackHost() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder()
+                 .adaptiveConcurrency(8, 32)
+                 .build()))
+        {
+            String url = simulator.getSetupEndPoint() + "/storageUsageInfo";
+            String host = URI.create(url).getHost();
+            simulator.setBehaviour(SimulatorRoute.STORAGE_USAGE,
+                RouteBehaviour.builder().fault(1.0, 429).retryAfter(Duration.ofSeconds(1)).build());
+            int throttledStatus = iCloudService.getHttpClient().execute(new HttpGet(url), response -> response.getCode());
+            simulator.setBehaviour(SimulatorRoute.STORAGE_USAGE, RouteBehaviour.NONE);
+
+            // Act
+            long start = System.nanoTime();
+            int status = iCloudService.getHttpClient().execute(new HttpGet(url), response -> response.getCode());
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Assert
+            assertThat(throttledStatus, is(429));
+            assertThat(status, is(200));
+            assertTrue(iCloudService.getConcurrencyLimits().get(host) < 8);
+            assertTrue("Request started " + elapsedMillis + "ms after the throttled one", elapsedMillis >= 500);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link DownloadCheckpoint} and resumable downloads.
+ */
+public class TestDownloadCheckpoint
+{
+    private static final int FILE_SIZE = 3 * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testMarkCompletedMergesRanges()
+    {
+        // Arrange
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint("id", "etag", 100);
+
+        // Act
+        checkpoint.markCompleted(10, 20);
+        checkpoint.markCompleted(40, 50);
+        checkpoint.markCompleted(20, 30);
+        checkpoint.markCompleted(45, 60);
+        List<SegmentedDownload.Segment> missing = checkpoint.getMissing();
+
+        // Assert
+        assertThat(checkpoint.getCompletedBytes(), is(40L));
+        assertThat(missing.size(), is(3));
+        assertThat(missing.get(0).start, is(0L));
+        assertThat(missing.get(0).length, is(10L));
+        assertThat(missing.get(1).start, is(30L));
+        assertThat(missing.get(1).length, is(10L));
+        assertThat(missing.get(2).start, is(60L));
+        assertThat(missing.get(2).length, is(40L));
+    }
+
+    @Test
+    public void testResumesAfterConnectionDrop() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(FILE_SIZE).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            Path target = temporaryFolder.getRoot().toPath().resolve("resumed.bin");
+            DownloadOptions options = DownloadOptions.builder().parallelism(1).resumable(true).build();
+            simulator.dropNextContentAfter(FILE_SIZE - 500_000);
+            simulator.resetRequestCounts();
+
+            // Act
+            try
+            {
+                findFile(driveService).downloadTo(target, options);
+                fail("Expected the connection drop to fail the download");
+            }
+            catch (RuntimeException e)
+            {
+                // Expected
+            }
+            DownloadCheckpoint checkpoint = DownloadCheckpoint.load(target);
+            findFile(driveService).downloadTo(target, options);
+
+            // Assert
+            assertThat(checkpoint.getCompletedBytes(), is((long) FILE_SIZE - 500_000));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DOCS_CONTENT), is(2L));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DOCS_DOWNLOAD_BY_ID), is(2L));
+            assertThat(Files.exists(DownloadCheckpoint.pathFor(target)), is(false));
+            byte[] bytes = Files.readAllBytes(target);
+            assertThat(bytes.length, is(FILE_SIZE));
+            String documentId = findFile(driveService).getNodeDetails().docwsid;
+            for (int i = 0; i < bytes.length; i++)
+            {
+                assertThat(bytes[i], is(SyntheticDriveTree.contentByte(documentId, i)));
+            }
+        }
+    }
+
+    @Test
+    public void testRefusesToResumeWhenEtagChanged() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(FILE_SIZE).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            Path target = temporaryFolder.getRoot().toPath().resolve("changed.bin");
+            DownloadOptions options = DownloadOptions.builder().segmentSize(512 * 1024).resumable(true).build();
+            DriveNode file = findFile(driveService);
+            simulator.dropNextContentAfter(100_000);
+            try
+            {
+                file.downloadTo(target, options);
+                fail("Expected the connection drop to fail the download");
+            }
+            catch (RuntimeException e)
+            {
+                // Expected
+            }
+            simulator.getTree().touch(file.getId());
+
+            // Act
+            try
+            {
+                findFile(driveService).downloadTo(target, options);
+                fail("Expected the changed etag to be refused");
+            }
+            catch (IllegalStateException e)
+            {
+                // Assert
+                assertThat(Files.exists(DownloadCheckpoint.pathFor(target)), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void testUbiquityDownloadResumes() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(FILE_SIZE).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            UbiquityNode file = new UbiquityService(iCloudService).getRoot().getChildren().stream()
+                .filter(node -> "file".equals(node.getType()))
+                .findFirst()
+                .get();
+            Path target = temporaryFolder.getRoot().toPath().resolve("ubiquity.bin");
+            DownloadOptions options = DownloadOptions.builder().parallelism(1).resumable(true).build();
+            simulator.dropNextContentAfter(2_000_000);
+            try
+            {
+                file.downloadTo(target, options);
+                fail("Expected the connection drop to fail the download");
+            }
+            catch (RuntimeException e)
+            {
+                // Expected
+            }
+
+            // Act
+            file.downloadTo(target, options);
+
+            // Assert
+            assertThat(Files.size(target), is((long) FILE_SIZE));
+            assertThat(simulator.getRequestCount(SimulatorRoute.UBIQUITY_FILE), is(2L));
+        }
+    }
+
+    private static DriveNode findFile(DriveService driveService)
+    {
+        return driveService.getRoot().getChildren().stream()
+            .filter(node -> !node.isFolder())
+            .findFirst()
+            .get();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.RouteBehaviour;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DownloadManager}.
+ */
+public class TestDownloadManager
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testBatchRespectsPerHostLimit() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(6).fileSize(100_000)
+            .behaviour(SimulatorRoute.DOCS_CONTENT, RouteBehaviour.builder()
+                .latency(Duration.ofMillis(50), Duration.ZERO)
+                .build())
+            .start();
+             ICloudService iCloudService = simulator.login();
+             DownloadManager manager = DownloadManager.builder()
+                 .maxConcurrentDownloads(4)
+                 .maxConcurrentDownloadsPerHost(2)
+                 .build())
+        {
+            AtomicInteger active = new AtomicInteger();
+            AtomicInteger maxActive = new AtomicInteger();
+            AtomicReference<DownloadBatch.Progress> lastProgress = new AtomicReference<>();
+            DownloadBatch.Builder builder = manager.batch().listener(new DownloadBatch.Listener()
+            {
+                @Override
+                public void onProgress(DownloadBatch.Progress progress)
+                {
+                    lastProgress.set(progress);
+                }
+
+                @Override
+                public void onJobStarted(DownloadJob job)
+                {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                }
+
+                @Override
+                public void onJobFinished(DownloadJob job)
+                {
+                    active.decrementAndGet();
+                }
+            });
+            List<DriveNode> files = findFiles(new DriveService(iCloudService));
+            for (DriveNode file : files)
+            {
+                builder.add(file, temporaryFolder.getRoot().toPath().resolve(file.getNodeDetails().docwsid));
+            }
+
+            // Act
+            DownloadBatch batch = builder.submit();
+            batch.getFuture().get(30, TimeUnit.SECONDS);
+
+            // Assert
+            assertThat(maxActive.get(), is(2));
+            assertThat(lastProgress.get().getFinishedJobs(), is(6));
+            assertThat(lastProgress.get().getBytesWritten(), is(600_000L));
+            for (DownloadJob job : batch.getJobs())
+            {
+                assertThat(job.getState(), is(DownloadJob.State.COMPLETED));
+                assertThat(Files.size(job.getTarget()), is(100_000L));
+            }
+        }
+    }
+
+    @Test
+    public void testHigherPriorityJobsStartFirst() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(4).fileSize(10_000).start();
+             ICloudService iCloudService = simulator.login();
+             DownloadManager manager = DownloadManager.builder().maxConcurrentDownloads(1).build())
+        {
+            List<String> startOrder = Collections.synchronizedList(new ArrayList<>());
+            DownloadBatch.Listener listener = new DownloadBatch.Listener()
+            {
+                @Override
+                public void onProgress(DownloadBatch.Progress progress)
+                {
+                }
+
+                @Override
+                public void onJobStarted(DownloadJob job)
+                {
+                    startOrder.add(job.getNodeId());
+                }
+            };
+            List<DriveNode> files = findFiles(new DriveService(iCloudService));
+            Path folder = temporaryFolder.getRoot().toPath();
+            DownloadBatch.Builder low = manager.batch().priority(DownloadManager.Priority.LOW).listener(listener);
+            for (DriveNode file : files.subList(0, 3))
+            {
+                low.add(file, folder.resolve(file.getNodeDetails().docwsid));
+            }
+            DownloadBatch.Builder high = manager.batch().priority(DownloadManager.Priority.HIGH).listener(listener)
+                .add(files.get(3), folder.resolve(files.get(3).getNodeDetails().docwsid));
+
+            // Act
+            DownloadBatch lowBatch = low.submit();
+            DownloadBatch highBatch = high.submit();
+            lowBatch.getFuture().get(30, TimeUnit.SECONDS);
+            highBatch.getFuture().get(30, TimeUnit.SECONDS);
+
+            // Assert
+            List<String> expected = new ArrayList<>();
+            expected.add(files.get(0).getId());
+            expected.add(files.get(3).getId());
+            expected.add(files.get(1).getId());
+            expected.add(files.get(2).getId());
+            assertThat(startOrder, is(expected));
+        }
+    }
+
+    @Test
+    public void testCancelBatch() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(4).fileSize(10_000)
+            .behaviour(SimulatorRoute.DOCS_CONTENT, RouteBehaviour.builder()
+                .latency(Duration.ofMillis(300), Duration.ZERO)
+                .build())
+            .start();
+             ICloudService iCloudService = simulator.login();
+             DownloadManager manager = DownloadManager.builder().maxConcurrentDownloads(1).build())
+        {
+            DownloadBatch.Builder builder = manager.batch();
+            for (DriveNode file : findFiles(new DriveService(iCloudService)))
+            {
+                builder.add(file, temporaryFolder.getRoot().toPath().resolve(file.getNodeDetails().docwsid));
+            }
+            DownloadBatch batch = builder.submit();
+
+            // Act
+            batch.cancel();
+            batch.getFuture().get(30, TimeUnit.SECONDS);
+
+            // Assert
+            assertThat(batch.getProgress().getCancelledJobs(), is(4));
+            for (DownloadJob job : batch.getJobs())
+            {
+                assertThat(job.getState(), is(DownloadJob.State.CANCELLED));
+                assertThat(job.getFuture().isCancelled(), is(true));
+            }
+            assertThat(manager.getPendingCount(), is(0));
+        }
+    }
+
+    @Test
+    public void testBandwidthLimit() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(2).fileSize(300_000).start();
+             ICloudService iCloudService = simulator.login();
+             DownloadManager manager = DownloadManager.builder().bandwidthLimit(400_000).build())
+        {
+            DownloadBatch.Builder builder = manager.batch();
+            for (DriveNode file : findFiles(new DriveService(iCloudService)))
+            {
+                builder.add(file, temporaryFolder.getRoot().toPath().resolve(file.getNodeDetails().docwsid));
+            }
+
+            // Act
+            long start = System.nanoTime();
+            DownloadBatch batch = builder.submit();
+            batch.getFuture().get(30, TimeUnit.SECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Assert
+            assertThat(batch.getProgress().getBytesWritten(), is(600_000L));
+            assertTrue("Finished in " + elapsedMillis + "ms", elapsedMillis >= 1000);
+        }
+    }
+
+    private static List<DriveNode> findFiles(DriveService driveService)
+    {
+        return driveService.getRoot().getChildren().stream()
+            .filter(node -> !node.isFolder())
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import com.google.common.hash.Hashing;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link DownloadManifest} and inline digests.
+ */
+public class TestDownloadManifest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testDigestsMatchFileContent() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(1).fileSize(3_000_000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveNode file = findFiles(new DriveService(iCloudService)).get(0);
+            Path sequential = temporaryFolder.getRoot().toPath().resolve("sequential.bin");
+            Path parallel = temporaryFolder.getRoot().toPath().resolve("parallel.bin");
+
+            // Act
+            FileDigest sequentialDigest = file.newDownload(DownloadOptions.builder()
+                .parallelism(1)
+                .computeDigests(true)
+                .build(), count -> {
+            }).downloadTo(sequential);
+            FileDigest parallelDigest = file.newDownload(DownloadOptions.builder()
+                .segmentSize(256 * 1024)
+                .parallelism(4)
+                .computeDigests(true)
+                .build(), count -> {
+            }).downloadTo(parallel);
+
+            // Assert
+            byte[] content = Files.readAllBytes(sequential);
+            FileDigest expected = new FileDigest(Hashing.sha256().hashBytes(content).toString(),
+                String.format("%08x", Hashing.crc32c().hashBytes(content).asInt()));
+            assertThat(sequentialDigest, is(expected));
+            assertThat(parallelDigest, is(expected));
+        }
+    }
+
+    @Test
+    public void testBatchSkipsUnchangedFilesWithoutRequests() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(4).fileSize(10_000).start();
+             ICloudService iCloudService = simulator.login();
+             DownloadManager manager = DownloadManager.builder().build())
+        {
+            List<DriveNode> files = findFiles(new DriveService(iCloudService));
+            Path mirror = temporaryFolder.getRoot().toPath();
+            Path manifestFile = mirror.resolve("manifest.json");
+            DownloadBatch first = mirror(manager, DownloadManifest.load(manifestFile), files, mirror);
+            first.getFuture().get(30, TimeUnit.SECONDS);
+            simulator.resetRequestCounts();
+
+            // Act
+            DownloadBatch second = mirror(manager, DownloadManifest.load(manifestFile), files, mirror);
+            second.getFuture().get(30, TimeUnit.SECONDS);
+
+            // Assert
+            assertThat(first.getProgress().getSkippedJobs(), is(0));
+            assertThat(second.getProgress().getSkippedJobs(), is(4));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DOCS_DOWNLOAD_BY_ID), is(0L));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DOCS_CONTENT), is(0L));
+            for (int i = 0; i < files.size(); i++)
+            {
+                DownloadJob job = second.getJobs().get(i);
+                assertThat(job.getState(), is(DownloadJob.State.SKIPPED));
+                assertThat(job.getDigest(), is(first.getJobs().get(i).getDigest()));
+            }
+        }
+    }
+
+    @Test
+    public void testChangedFilesAreDownloadedAgain() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(3).fileSize(10_000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            List<DriveNode> files = findFiles(driveService);
+            Path mirror = temporaryFolder.getRoot().toPath();
+            DownloadManifest manifest = DownloadManifest.load(mirror.resolve("manifest.json"));
+            for (DriveNode file : files)
+            {
+                manifest.download(file, mirror.resolve(file.getNodeDetails().docwsid), DownloadOptions.defaults());
+            }
+
+            Path touched = mirror.resolve(files.get(0).getNodeDetails().docwsid);
+            Files.setLastModifiedTime(touched, FileTime.fromMillis(Files.getLastModifiedTime(touched).toMillis() - 60_000));
+            DriveNodeDetails changedDetails = copyOf(files.get(1).getNodeDetails());
+            changedDetails.etag = changedDetails.etag + "-changed";
+            DriveNode changed = new DriveNode(iCloudService, driveService, files.get(1).getId(), changedDetails);
+            simulator.resetRequestCounts();
+
+            // Act
+            boolean touchedUnchanged = manifest.isUnchanged(files.get(0), touched);
+            boolean changedUnchanged = manifest.isUnchanged(changed, mirror.resolve(changedDetails.docwsid));
+            boolean untouchedUnchanged = manifest.isUnchanged(files.get(2),
+                mirror.resolve(files.get(2).getNodeDetails().docwsid));
+            manifest.download(files.get(0), touched, DownloadOptions.defaults());
+            manifest.download(changed, mirror.resolve(changedDetails.docwsid), DownloadOptions.defaults());
+            manifest.download(files.get(2), mirror.resolve(files.get(2).getNodeDetails().docwsid),
+                DownloadOptions.defaults());
+
+            // Assert
+            assertThat(touchedUnchanged, is(false));
+            assertThat(changedUnchanged, is(false));
+            assertThat(untouchedUnchanged, is(true));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DOCS_CONTENT), is(2L));
+            assertThat(manifest.getEntry(mirror.resolve(changedDetails.docwsid)).getVersion(), is(changedDetails.etag));
+        }
+    }
+
+    private static DownloadBatch mirror(DownloadManager manager, DownloadManifest manifest, List<DriveNode> files,
+                                        Path mirror)
+    {
+        DownloadBatch.Builder builder = manager.batch().manifest(manifest);
+        for (DriveNode file : files)
+        {
+            builder.add(file, mirror.resolve(file.getNodeDetails().docwsid));
+        }
+        return builder.submit();
+    }
+
+    private static DriveNodeDetails copyOf(DriveNodeDetails details)
+    {
+        DriveNodeDetails copy = new DriveNodeDetails();
+        copy.drivewsid = details.drivewsid;
+        copy.docwsid = details.docwsid;
+        copy.zone = details.zone;
+        copy.name = details.name;
+        copy.etag = details.etag;
+        copy.type = details.type;
+        copy.dateModified = details.dateModified;
+        copy.size = details.size;
+        return copy;
+    }
+
+    private static List<DriveNode> findFiles(DriveService driveService)
+    {
+        return driveService.getRoot().getChildren().stream()
+            .filter(node -> !node.isFolder())
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.DriveDataToken;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.RouteBehaviour;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link DriveContentUrlResolver}.
+ */
+public class TestDriveContentUrlResolver
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testPrefetchedUrlsAreUsedOnce() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(8).fileSize(1000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DriveContentUrlResolver resolver = driveService.getContentUrlResolver();
+            List<DriveNode> files = findFiles(driveService);
+            simulator.resetRequestCounts();
+
+            // Act
+            resolver.prefetch(files);
+            for (DriveNode file : files)
+            {
+                file.downloadTo(Channels.newChannel(new ByteArrayOutputStream()));
+            }
+            long lookupsAfterFirstPass = simulator.getRequestCount(SimulatorRoute.DOCS_DOWNLOAD_BY_ID);
+            files.get(0).downloadTo(Channels.newChannel(new ByteArrayOutputStream()));
+
+            // Assert
+            assertThat(lookupsAfterFirstPass, is(8L));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DOCS_DOWNLOAD_BY_ID), is(9L));
+            assertThat(resolver.getStats().hitCount(), is(8L));
+            assertThat(resolver.size(), is(0L));
+        }
+    }
+
+    @Test
+    public void testConcurrentResolvesShareLookup() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(1)
+            .behaviour(SimulatorRoute.DOCS_DOWNLOAD_BY_ID, RouteBehaviour.builder()
+                .latency(Duration.ofMillis(200), Duration.ZERO)
+                .build())
+            .start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DriveContentUrlResolver resolver = driveService.getContentUrlResolver();
+            DriveNode file = findFiles(driveService).get(0);
+            simulator.resetRequestCounts();
+
+            // Act
+            List<CompletableFuture<DriveDataToken>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++)
+            {
+                futures.add(resolver.resolveAsync(file));
+            }
+            DriveDataToken token = futures.get(0).get(10, TimeUnit.SECONDS);
+
+            // Assert
+            assertThat(token.url, notNullValue());
+            for (CompletableFuture<DriveDataToken> future : futures)
+            {
+                assertThat(future.get(10, TimeUnit.SECONDS), sameInstance(token));
+            }
+            assertThat(simulator.getRequestCount(SimulatorRoute.DOCS_DOWNLOAD_BY_ID), is(1L));
+        }
+    }
+
+    @Test
+    public void testDisabledCacheLooksUpEachDownload() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(4).fileSize(1000).start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder()
+                 .contentUrlCache(0, TimeValue.ofMinutes(5))
+                 .build()))
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DriveContentUrlResolver resolver = driveService.getContentUrlResolver();
+            List<DriveNode> files = findFiles(driveService);
+            simulator.resetRequestCounts();
+
+            // Act
+            resolver.prefetch(files);
+            long lookupsAfterPrefetch = simulator.getRequestCount(SimulatorRoute.DOCS_DOWNLOAD_BY_ID);
+            files.get(0).downloadTo(Channels.newChannel(new ByteArrayOutputStream()));
+
+            // Assert
+            assertThat(resolver.isEnabled(), is(false));
+            assertThat(lookupsAfterPrefetch, is(0L));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DOCS_DOWNLOAD_BY_ID), is(1L));
+        }
+    }
+
+    @Test
+    public void testDownloadManagerPrefetchesPendingJobs() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(6).fileSize(1000)
+            .behaviour(SimulatorRoute.DOCS_DOWNLOAD_BY_ID, RouteBehaviour.builder()
+                .latency(Duration.ofMillis(100), Duration.ZERO)
+                .build())
+            .start();
+             ICloudService iCloudService = simulator.login();
+             DownloadManager manager = DownloadManager.builder().maxConcurrentDownloads(1).build())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DownloadBatch.Builder builder = manager.batch();
+            for (DriveNode file : findFiles(driveService))
+            {
+                builder.add(file, temporaryFolder.getRoot().toPath().resolve(file.getNodeDetails().docwsid));
+            }
+            simulator.resetRequestCounts();
+
+            // Act
+            long start = System.nanoTime();
+            DownloadBatch batch = builder.submit();
+            batch.getFuture().get(30, TimeUnit.SECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Assert
+            assertThat(batch.getProgress().getFinishedJobs(), is(6));
+            assertThat(batch.getProgress().getFailedJobs(), is(0));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DOCS_DOWNLOAD_BY_ID), is(6L));
+            assertThat("Finished in " + elapsedMillis + "ms", elapsedMillis < 500, is(true));
+        }
+    }
+
+    private static List<DriveNode> findFiles(DriveService driveService)
+    {
+        return driveService.getRoot().getChildren().stream()
+            .filter(node -> !node.isFolder())
+            .collect(Collectors.toList());
+    }
+}
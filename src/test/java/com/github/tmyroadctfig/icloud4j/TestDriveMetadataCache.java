@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.google.common.cache.CacheStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link DriveMetadataCache}, against the {@link ICloudSimulator}.
+ */
+public class TestDriveMetadataCache
+{
+    @Test
+    public void testRepeatedListingIsServedFromCache() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().folderFanOut(3).filesPerFolder(1).depth(2).start();
+             ICloudService iCloudService = simulator.login(
+                 simulator.configBuilder().driveCache(100, TimeValue.ofMinutes(5)).build()))
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DriveNode folder = driveService.getRoot().getChildren().get(0);
+            simulator.resetRequestCounts();
+
+            // Act
+            int first = folder.getChildren().size();
+            int second = folder.getChildren().size();
+            int rootChildren = driveService.getRoot().getChildren().size();
+
+            // Assert
+            assertThat(first, is(4));
+            assertThat(second, is(4));
+            assertThat(rootChildren, is(4));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS), is(1L));
+            CacheStats stats = driveService.getMetadataCache().getStats();
+            // Listing the root while arranging also hit the cache
+            assertThat(stats.hitCount(), is(4L));
+            assertThat(stats.missCount(), is(2L));
+        }
+    }
+
+    @Test
+    public void testChangedEtagInParentListingInvalidatesFolder() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().folderFanOut(3).filesPerFolder(1).depth(2).start();
+             ICloudService iCloudService = simulator.login(
+                 simulator.configBuilder().driveCache(100, TimeValue.ofMinutes(5)).build()))
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            String changedId = SyntheticDriveTree.folderId(0);
+            String unchangedId = SyntheticDriveTree.folderId(1);
+            driveService.getChildren(changedId);
+            driveService.getChildren(unchangedId);
+            simulator.getTree().touch(changedId);
+
+            // Act
+            driveService.getMetadataCache().invalidate(SyntheticDriveTree.ROOT_ID);
+            driveService.getRoot();
+            simulator.resetRequestCounts();
+            driveService.getChildren(changedId);
+            driveService.getChildren(unchangedId);
+
+            // Assert
+            assertThat(simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS), is(1L));
+        }
+    }
+
+    @Test
+    public void testUnknownNodeIsNotCached() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().folderFanOut(3).filesPerFolder(1).depth(2).start();
+             ICloudService iCloudService = simulator.login(
+                 simulator.configBuilder().driveCache(100, TimeValue.ofMinutes(5)).build()))
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            String unknownId = SyntheticDriveTree.folderId(7);
+            simulator.resetRequestCounts();
+
+            // Act
+            DriveNodeDetails first = driveService.getNodeDetails(unknownId);
+            DriveNodeDetails second = driveService.getNodeDetailsAsync(unknownId).get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertThat(first.status, is("ID_INVALID"));
+            assertThat(second.status, is("ID_INVALID"));
+            assertThat(driveService.getMetadataCache().size(), is(0L));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS), is(2L));
+        }
+    }
+
+    @Test
+    public void testSizeEvictionAndDisabledCache() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().folderFanOut(3).filesPerFolder(1).depth(2).start();
+             ICloudService cachedService = simulator.login(
+                 simulator.configBuilder().driveCache(2, TimeValue.ofMinutes(5)).build());
+             ICloudService uncachedService = simulator.login())
+        {
+            DriveService cachedDrive = new DriveService(cachedService);
+            DriveService uncachedDrive = new DriveService(uncachedService);
+
+            // Act
+            for (int i = 0; i < 3; i++)
+            {
+                cachedDrive.getChildren(SyntheticDriveTree.folderId(i));
+            }
+            uncachedDrive.getRoot();
+            uncachedDrive.getRoot();
+
+            // Assert
+            assertThat(cachedDrive.getMetadataCache().size(), is(2L));
+            assertThat(cachedDrive.getMetadataCache().getStats().evictionCount(), is(1L));
+            assertThat(uncachedDrive.getMetadataCache().isEnabled(), is(false));
+            assertThat(uncachedDrive.getMetadataCache().size(), is(0L));
+        }
+    }
+}
@@ -14,9 +14,15 @@
 
 package com.github.tmyroadctfig.icloud4j;
 
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
@@ -40,4 +46,37 @@ public class TestDriveService
         // Assert
         assertThat(children.isEmpty(), is(false));
     }
+
+    @Test
+    public void testGetNodeDetailsInBatches() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().folderFanOut(5).filesPerFolder(1).depth(2).start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder().driveBatchSize(10).build()))
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            List<String> folderIds = new ArrayList<>();
+            for (int i = 0; i < 5; i++)
+            {
+                for (int j = 0; j < 5; j++)
+                {
+                    folderIds.add(SyntheticDriveTree.folderId(i, j));
+                }
+            }
+            folderIds.add("FOLDER::com.apple.CloudDocs::missing");
+            simulator.resetRequestCounts();
+
+            // Act
+            Map<String, DriveNodeDetails> details = driveService.getNodeDetails(folderIds);
+            Map<String, List<DriveNode>> children = driveService.getChildren(folderIds.subList(0, 3));
+
+            // Assert
+            assertThat(details.size(), is(25));
+            assertThat(new ArrayList<>(details.keySet()), is(folderIds.subList(0, 25)));
+            assertThat(details.get(SyntheticDriveTree.folderId(4, 2)).name, is("Folder 2"));
+            assertThat(children.size(), is(3));
+            assertThat(children.get(SyntheticDriveTree.folderId(0, 1)).size(), is(1));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS), is(4L));
+        }
+    }
 }
\ No newline at end of file
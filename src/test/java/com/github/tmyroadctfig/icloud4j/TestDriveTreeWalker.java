@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.RouteBehaviour;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link DriveTreeWalker}, against the {@link ICloudSimulator}.
+ */
+public class TestDriveTreeWalker
+{
+    @Test
+    public void testWalkReportsEachNodeAfterItsParent() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder()
+            .folderFanOut(3).filesPerFolder(2).depth(3)
+            .start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DriveNode root = driveService.getRoot();
+            DriveTreeWalker walker = DriveTreeWalker.builder(driveService).concurrency(1).build();
+            simulator.resetRequestCounts();
+            Set<String> seen = new HashSet<>();
+            seen.add(root.getId());
+            List<String> orphans = new ArrayList<>();
+            Map<Integer, Integer> countsByDepth = new HashMap<>();
+
+            // Act
+            walker.walk(root, (node, depth) -> {
+                if (!seen.contains(node.getNodeDetails().parentId))
+                {
+                    orphans.add(node.getId());
+                }
+                seen.add(node.getId());
+                countsByDepth.merge(depth, 1, Integer::sum);
+            });
+
+            // Assert
+            assertThat((long) seen.size(), is(simulator.getTree().getNodeCount()));
+            assertThat(orphans.isEmpty(), is(true));
+            assertThat(countsByDepth.get(1), is(3 + 2));
+            assertThat(countsByDepth.get(3), is(27 + 9 * 2));
+            // One batch per level, since each level fits in a single batch
+            assertThat(simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS), is(4L));
+        }
+    }
+
+    @Test
+    public void testStreamWithFilterPruneAndMaxDepth() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder()
+            .folderFanOut(3).filesPerFolder(2).depth(3)
+            .start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DriveNode root = driveService.getRoot();
+            String prunedId = root.getChildren().get(0).getId();
+            DriveTreeWalker walker = DriveTreeWalker.builder(driveService)
+                .concurrency(8)
+                .maxDepth(2)
+                .filter(node -> !node.isFolder())
+                .prune(node -> node.getId().equals(prunedId))
+                .build();
+
+            // Act
+            List<DriveNode> files;
+            try (Stream<DriveNode> stream = walker.stream(root))
+            {
+                files = stream.collect(Collectors.toList());
+            }
+
+            // Assert
+            // Two files in the root, plus two in each of the two unpruned folders at depth one
+            assertThat(files.size(), is(2 + 2 * 2));
+            assertThat(files.stream().allMatch(node -> "FILE".equals(node.getType())), is(true));
+        }
+    }
+
+    @Test
+    public void testStreamPausesWhileConsumerFallsBehind() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder()
+            .folderFanOut(5).filesPerFolder(5).depth(4)
+            .start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DriveNode root = driveService.getRoot();
+            DriveTreeWalker walker = DriveTreeWalker.builder(driveService)
+                .concurrency(1)
+                .maxBufferedNodes(10)
+                .build();
+            simulator.resetRequestCounts();
+
+            // Act
+            long count;
+            long pausedRequests;
+            try (Stream<DriveNode> stream = walker.stream(root))
+            {
+                Iterator<DriveNode> nodes = stream.iterator();
+                nodes.next();
+                Thread.sleep(300);
+                pausedRequests = simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS);
+                count = 1;
+                while (nodes.hasNext())
+                {
+                    nodes.next();
+                    count++;
+                }
+            }
+
+            // Assert
+            // The root listing, then the first level once the consumer took the root's children
+            assertThat(pausedRequests, is(2L));
+            assertThat(count, is(simulator.getTree().getNodeCount() - 1));
+        }
+    }
+
+    @Test
+    public void testWalkFailsWhenListingFails() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DriveNode root = driveService.getRoot();
+            simulator.setBehaviour(SimulatorRoute.DRIVE_ITEM_DETAILS, RouteBehaviour.builder().fault(1.0, 500).build());
+
+            // Act
+            try
+            {
+                DriveTreeWalker.builder(driveService).build().walk(root, (node, depth) -> { });
+                fail("Expected the walk to fail");
+            }
+            catch (ICloudException e)
+            {
+                // Assert
+                assertThat(e.getStatusLine().getStatusCode(), is(500));
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
+import com.google.common.hash.Hashing;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DriveNode#upload} and {@link UploadManager}.
+ */
+public class TestDriveUpload
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testUploadFileFromDisk() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(2).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DriveNode root = driveService.getRoot();
+            byte[] content = randomContent(3_000_000, 1);
+            Path file = temporaryFolder.getRoot().toPath().resolve("report.pdf");
+            Files.write(file, content);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1_500_000_000_000L));
+
+            // Act
+            DriveNodeDetails details = root.upload(file);
+
+            // Assert
+            SyntheticDriveTree.UploadedFile uploaded = simulator.getTree().getUploadedFile(details.docwsid);
+            assertThat(details.name, is("report"));
+            assertThat(details.extension, is("pdf"));
+            assertThat(details.type, is("FILE"));
+            assertThat(details.size, is(3_000_000L));
+            assertThat(uploaded.getFolderToken(), is("root"));
+            assertThat(uploaded.getSha256(), is(Hashing.sha256().hashBytes(content).toString()));
+            assertThat(uploaded.getModified().toEpochMilli(), is(1_500_000_000_000L));
+            assertTrue(driveService.getRoot().getChildren().stream()
+                .anyMatch(child -> child.getId().equals(details.drivewsid)));
+        }
+    }
+
+    @Test
+    public void testUploadStreamOfUnknownLength() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(2).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveNode folder = new DriveService(iCloudService).getRoot().getChildren().stream()
+                .filter(DriveNode::isFolder)
+                .findFirst()
+                .get();
+            byte[] content = randomContent(1_000_000, 2);
+
+            // Act
+            DriveNodeDetails details = folder.upload("notes.txt", new ByteArrayInputStream(content), -1);
+
+            // Assert
+            SyntheticDriveTree.UploadedFile uploaded = simulator.getTree().getUploadedFile(details.docwsid);
+            assertThat(details.size, is(1_000_000L));
+            assertThat(details.parentId, is(folder.getId()));
+            assertThat(uploaded.getSize(), is(1_000_000L));
+            assertThat(uploaded.getSha256(), is(Hashing.sha256().hashBytes(content).toString()));
+        }
+    }
+
+    @Test
+    public void testUploadManagerLimitsConcurrency() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(0).start();
+             ICloudService iCloudService = simulator.login();
+             UploadManager manager = UploadManager.builder().maxConcurrentUploads(2).build())
+        {
+            DriveNode root = new DriveService(iCloudService).getRoot();
+            List<byte[]> contents = new ArrayList<>();
+            for (int i = 0; i < 6; i++)
+            {
+                contents.add(randomContent(500_000 + i, i));
+            }
+
+            // Act
+            List<CompletableFuture<DriveNodeDetails>> futures = new ArrayList<>();
+            for (int i = 0; i < contents.size(); i++)
+            {
+                futures.add(manager.upload(root, "file-" + i + ".bin", new ByteArrayInputStream(contents.get(i)),
+                    contents.get(i).length));
+            }
+
+            // Assert
+            for (int i = 0; i < contents.size(); i++)
+            {
+                DriveNodeDetails details = futures.get(i).get(30, TimeUnit.SECONDS);
+                assertThat(details.name, is("file-" + i));
+                assertThat(simulator.getTree().getUploadedFile(details.docwsid).getSha256(),
+                    is(Hashing.sha256().hashBytes(contents.get(i)).toString()));
+            }
+            assertThat(simulator.getTree().getUploadedFileCount(), is(6));
+            assertTrue(simulator.getPeakConcurrentUploads() <= 2);
+        }
+    }
+
+    private static byte[] randomContent(int size, long seed)
+    {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+}
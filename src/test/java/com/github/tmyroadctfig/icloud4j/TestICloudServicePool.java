@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.RouteBehaviour;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
+import org.apache.hc.core5.reactor.IOReactorStatus;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ICloudServicePool}.
+ */
+public class TestICloudServicePool
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testAccountsShareConnectionsButNotCookies() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudServicePool pool = ICloudServicePool.builder("simulator")
+                 .config(simulator.configBuilder().retryPolicy(RetryPolicy.none()).build())
+                 .build())
+        {
+            ICloudService first = pool.getService("first@example.com");
+            ICloudService second = pool.getService("second@example.com");
+            second.authenticate("second@example.com", "password".toCharArray());
+            simulator.expireSessions();
+            first.authenticate("first@example.com", "password".toCharArray());
+
+            // Act
+            for (int i = 0; i < 5; i++)
+            {
+                new DriveService(first).getNodeDetails(SyntheticDriveTree.ROOT_ID);
+            }
+            try
+            {
+                new DriveService(second).getNodeDetails(SyntheticDriveTree.ROOT_ID);
+                fail("Expected the account with an expired session to be rejected");
+            }
+            catch (RuntimeException e)
+            {
+                // Expected
+            }
+
+            // Assert
+            assertThat(pool.getService("first@example.com") == first, is(true));
+            assertThat(pool.getPoolStats().getAvailable(), is(1));
+            assertThat(pool.getPoolStats().getMax(), is(ICloudServiceConfig.DEFAULT_MAX_CONNECTIONS_TOTAL));
+        }
+    }
+
+    @Test
+    public void testBusyAccountDoesNotStarveOthers() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder()
+            .behaviour(SimulatorRoute.DRIVE_ITEM_DETAILS, RouteBehaviour.builder()
+                .latency(Duration.ofMillis(300), Duration.ZERO)
+                .build())
+            .start();
+             ICloudServicePool pool = ICloudServicePool.builder("simulator")
+                 .config(simulator.configBuilder().build())
+                 .maxRequestsPerAccount(2)
+                 .build())
+        {
+            pool.getService("busy@example.com").authenticate("busy@example.com", "password".toCharArray());
+            pool.getService("quiet@example.com").authenticate("quiet@example.com", "password".toCharArray());
+            DriveService busy = new DriveService(pool.getService("busy@example.com"));
+            DriveService quiet = new DriveService(pool.getService("quiet@example.com"));
+
+            // Act
+            long start = System.nanoTime();
+            List<CompletableFuture<?>> busyReads = new ArrayList<>();
+            for (int i = 0; i < 6; i++)
+            {
+                busyReads.add(CompletableFuture.runAsync(() -> busy.getNodeDetails(SyntheticDriveTree.ROOT_ID)));
+            }
+            Thread.sleep(50);
+            quiet.getNodeDetails(SyntheticDriveTree.ROOT_ID);
+            long quietMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            CompletableFuture.allOf(busyReads.toArray(new CompletableFuture<?>[0])).join();
+            long busyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Assert
+            assertTrue("Busy account took " + busyMillis + "ms", busyMillis >= 900);
+            assertTrue("Quiet account took " + quietMillis + "ms", quietMillis < 700);
+        }
+    }
+
+    @Test
+    public void testAsyncRequestsShareClientButNotCookies() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudServicePool pool = ICloudServicePool.builder("simulator")
+                 .config(simulator.configBuilder().retryPolicy(RetryPolicy.none()).build())
+                 .build())
+        {
+            ICloudService first = pool.getService("first@example.com");
+            ICloudService second = pool.getService("second@example.com");
+            ICloudService closed = pool.getService("closed@example.com");
+            second.authenticate("second@example.com", "password".toCharArray());
+            simulator.expireSessions();
+            first.authenticate("first@example.com", "password".toCharArray());
+            closed.authenticate("closed@example.com", "password".toCharArray());
+            closed.getAsyncHttpClient();
+            pool.remove("closed@example.com");
+
+            // Act
+            DriveNodeDetails details = new DriveService(first).getNodeDetailsAsync(SyntheticDriveTree.ROOT_ID)
+                .get(5, TimeUnit.SECONDS);
+            try
+            {
+                new DriveService(second).getNodeDetailsAsync(SyntheticDriveTree.ROOT_ID).get(5, TimeUnit.SECONDS);
+                fail("Expected the account with an expired session to be rejected");
+            }
+            catch (ExecutionException e)
+            {
+                // Expected
+            }
+
+            // Assert
+            assertThat(details.drivewsid, is(SyntheticDriveTree.ROOT_ID));
+            assertThat(first.getAsyncHttpClient().getStatus(), is(IOReactorStatus.ACTIVE));
+            assertThat(closed.getAsyncHttpClient().getStatus(), is(IOReactorStatus.SHUT_DOWN));
+        }
+    }
+
+    @Test
+    public void testBusyAccountAsyncRequestsQueue() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder()
+            .behaviour(SimulatorRoute.DRIVE_ITEM_DETAILS, RouteBehaviour.builder()
+                .latency(Duration.ofMillis(300), Duration.ZERO)
+                .build())
+            .start();
+             ICloudServicePool pool = ICloudServicePool.builder("simulator")
+                 .config(simulator.configBuilder().build())
+                 .maxRequestsPerAccount(2)
+                 .build())
+        {
+            pool.getService("busy@example.com").authenticate("busy@example.com", "password".toCharArray());
+            pool.getService("quiet@example.com").authenticate("quiet@example.com", "password".toCharArray());
+            DriveService busy = new DriveService(pool.getService("busy@example.com"));
+            DriveService quiet = new DriveService(pool.getService("quiet@example.com"));
+            List<String> rootId = Collections.singletonList(SyntheticDriveTree.ROOT_ID);
+
+            // Act
+            long start = System.nanoTime();
+            List<CompletableFuture<?>> busyReads = new ArrayList<>();
+            for (int i = 0; i < 6; i++)
+            {
+                busyReads.add(busy.getNodeDetailsAsync(rootId));
+            }
+            quiet.getNodeDetailsAsync(rootId).get(5, TimeUnit.SECONDS);
+            long quietMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            CompletableFuture.allOf(busyReads.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+            long busyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Assert
+            assertTrue("Busy account took " + busyMillis + "ms", busyMillis >= 900);
+            assertTrue("Quiet account took " + quietMillis + "ms", quietMillis < 700);
+        }
+    }
+
+    @Test
+    public void testEvictedSessionIsRestored() throws Exception
+    {
+        // Arrange
+        SecretKeySpec key = new SecretKeySpec(new byte[16], "AES");
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudServicePool pool = ICloudServicePool.builder("simulator")
+                 .config(simulator.configBuilder().build())
+                 .sessionStores(account -> new EncryptedFileSessionStore(
+                     temporaryFolder.getRoot().toPath().resolve(account + ".session"), key))
+                 .build())
+        {
+            ICloudService evicted = pool.getService("john@example.com");
+            evicted.authenticate("john@example.com", "password".toCharArray());
+            Thread.sleep(10);
+            simulator.resetRequestCounts();
+
+            // Act
+            int evictedCount = pool.evictIdleSessions(TimeValue.ofMilliseconds(1));
+            ICloudService restored = pool.getService("john@example.com");
+            ICloudService.SessionState stateBeforeUse = restored.getSessionState();
+            new DriveService(restored).getNodeDetails(SyntheticDriveTree.ROOT_ID);
+
+            // Assert
+            assertThat(evictedCount, is(1));
+            assertThat(restored == evicted, is(false));
+            assertThat(stateBeforeUse, is(ICloudService.SessionState.RESTORED));
+            assertThat(restored.getSessionState(), is(ICloudService.SessionState.VALID));
+            assertThat(simulator.getRequestCount(SimulatorRoute.LOGIN), is(0L));
+            try
+            {
+                new DriveService(evicted).getNodeDetails(SyntheticDriveTree.ROOT_ID);
+                fail("Expected the evicted service to be closed");
+            }
+            catch (IllegalStateException e)
+            {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testRestoredSessionIsSettledByAsyncRequest() throws Exception
+    {
+        // Arrange
+        SecretKeySpec key = new SecretKeySpec(new byte[16], "AES");
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudServicePool pool = ICloudServicePool.builder("simulator")
+                 .config(simulator.configBuilder().retryPolicy(RetryPolicy.none()).build())
+                 .sessionStores(account -> new EncryptedFileSessionStore(
+                     temporaryFolder.getRoot().toPath().resolve(account + ".session"), key))
+                 .build())
+        {
+            for (String accountId : new String[] { "john@example.com", "jane@example.com" })
+            {
+                pool.getService(accountId).authenticate(accountId, "password".toCharArray());
+            }
+            Thread.sleep(10);
+            pool.evictIdleSessions(TimeValue.ofMilliseconds(1));
+            ICloudService valid = pool.getService("john@example.com");
+            ICloudService expired = pool.getService("jane@example.com");
+            expired.getCookieStore().clear();
+
+            // Act
+            new DriveService(valid).getNodeDetailsAsync(SyntheticDriveTree.ROOT_ID).get(5, TimeUnit.SECONDS);
+            try
+            {
+                new DriveService(expired).getNodeDetailsAsync(SyntheticDriveTree.ROOT_ID).get(5, TimeUnit.SECONDS);
+                fail("Expected the expired session to be rejected");
+            }
+            catch (ExecutionException e)
+            {
+                // Expected
+            }
+
+            // Assert
+            assertThat(valid.getSessionState(), is(ICloudService.SessionState.VALID));
+            assertThat(expired.getSessionState(), is(ICloudService.SessionState.EXPIRED));
+        }
+    }
+}
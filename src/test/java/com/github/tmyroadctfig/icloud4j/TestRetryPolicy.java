@@ -0,0 +1,290 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.github.tmyroadctfig.icloud4j.json.PhotosFolder;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.RouteBehaviour;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link RetryPolicy}, through {@link DriveService#getNodeDetails(String)} and the other metadata reads.
+ */
+public class TestRetryPolicy
+{
+    private static final RetryPolicy FAST_RETRIES = RetryPolicy.builder()
+        .maxAttempts(3)
+        .backoff(TimeValue.ofMilliseconds(1), TimeValue.ofMilliseconds(10))
+        .build();
+
+    @Test
+    public void testBackoffIsJitteredAndCapped()
+    {
+        // Arrange
+        RetryPolicy policy = RetryPolicy.builder()
+            .backoff(TimeValue.ofMilliseconds(100), TimeValue.ofMilliseconds(300))
+            .build();
+
+        // Act
+        long longest = 0;
+        for (int i = 0; i < 1000; i++)
+        {
+            longest = Math.max(longest, policy.nextBackoffNanos(10));
+            assertTrue(policy.nextBackoffNanos(1) <= TimeUnit.MILLISECONDS.toNanos(100));
+        }
+
+        // Assert
+        assertTrue(longest <= TimeUnit.MILLISECONDS.toNanos(300));
+        assertTrue(longest > TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void testTransientFailuresAreRetried() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder().retryPolicy(FAST_RETRIES).build()))
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            simulator.failNext(SimulatorRoute.DRIVE_ITEM_DETAILS, 2, 502);
+            simulator.failNext(SimulatorRoute.UBIQUITY_ITEM, 2, 500);
+            simulator.resetRequestCounts();
+
+            // Act
+            DriveNodeDetails details = driveService.getNodeDetails(SyntheticDriveTree.ROOT_ID);
+            UbiquityNode ubiquityRoot = new UbiquityService(iCloudService).getRoot();
+
+            // Assert
+            assertThat(details.drivewsid, is(SyntheticDriveTree.ROOT_ID));
+            assertThat(ubiquityRoot.getId(), is("0"));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS), is(3L));
+            assertThat(simulator.getRequestCount(SimulatorRoute.UBIQUITY_ITEM), is(3L));
+        }
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder().retryPolicy(FAST_RETRIES).build()))
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            simulator.failNext(SimulatorRoute.DRIVE_ITEM_DETAILS, 5, 500);
+            simulator.resetRequestCounts();
+
+            // Act
+            try
+            {
+                driveService.getNodeDetails(SyntheticDriveTree.ROOT_ID);
+                fail("Expected the read to fail");
+            }
+            catch (ICloudException e)
+            {
+                // Assert
+                assertThat(e.getStatusLine().getStatusCode(), is(500));
+            }
+            assertThat(simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS), is(3L));
+        }
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder().retryPolicy(FAST_RETRIES).build()))
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            simulator.failNext(SimulatorRoute.DRIVE_ITEM_DETAILS, 1, 403);
+            simulator.resetRequestCounts();
+
+            // Act
+            try
+            {
+                driveService.getNodeDetails(SyntheticDriveTree.ROOT_ID);
+                fail("Expected the read to fail");
+            }
+            catch (ICloudException e)
+            {
+                // Assert
+                assertThat(e.getStatusLine().getStatusCode(), is(403));
+            }
+            assertThat(simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS), is(1L));
+        }
+    }
+
+    @Test
+    public void testAsyncBatchesAreRetried() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder().retryPolicy(FAST_RETRIES).build()))
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            simulator.failNext(SimulatorRoute.DRIVE_ITEM_DETAILS, 2, 503);
+            simulator.resetRequestCounts();
+
+            // Act
+            Map<String, DriveNodeDetails> details = driveService
+                .getNodeDetailsAsync(Collections.singletonList(SyntheticDriveTree.ROOT_ID))
+                .get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertThat(details.keySet(), is(Collections.singleton(SyntheticDriveTree.ROOT_ID)));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS), is(3L));
+        }
+    }
+
+    @Test
+    public void testAsyncAlbumsAreRetried() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder().retryPolicy(FAST_RETRIES).build()))
+        {
+            PhotosService photosService = new PhotosService(iCloudService);
+            simulator.failNext(SimulatorRoute.PHOTOS_FOLDERS, 2, 503);
+            simulator.resetRequestCounts();
+
+            // Act
+            List<PhotosFolder> albums = photosService.getAlbumsAsync().get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertTrue(!albums.isEmpty());
+            assertThat(simulator.getRequestCount(SimulatorRoute.PHOTOS_FOLDERS), is(3L));
+        }
+    }
+
+    @Test
+    public void testAsyncUbiquityChildrenAreRetried() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder().retryPolicy(FAST_RETRIES).build()))
+        {
+            UbiquityNode ubiquityRoot = new UbiquityService(iCloudService).getRoot();
+            simulator.failNext(SimulatorRoute.UBIQUITY_PARENT, 2, 500);
+            simulator.resetRequestCounts();
+
+            // Act
+            List<UbiquityNode> children = ubiquityRoot.getChildrenAsync().get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertTrue(!children.isEmpty());
+            assertThat(simulator.getRequestCount(SimulatorRoute.UBIQUITY_PARENT), is(3L));
+        }
+    }
+
+    @Test
+    public void testAsyncRetryWaitsForRetryAfter() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder()
+            .behaviour(SimulatorRoute.DRIVE_ITEM_DETAILS, RouteBehaviour.builder()
+                .retryAfter(Duration.ofSeconds(1))
+                .build())
+            .start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder().retryPolicy(FAST_RETRIES).build()))
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            simulator.failNext(SimulatorRoute.DRIVE_ITEM_DETAILS, 1, 429);
+            simulator.resetRequestCounts();
+
+            // Act
+            long start = System.nanoTime();
+            DriveNodeDetails details = driveService.getNodeDetailsAsync(SyntheticDriveTree.ROOT_ID)
+                .get(5, TimeUnit.SECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Assert
+            assertThat(details.drivewsid, is(SyntheticDriveTree.ROOT_ID));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS), is(2L));
+            assertTrue("Retried after " + elapsedMillis + "ms", elapsedMillis >= 900);
+        }
+    }
+
+    @Test
+    public void testStalledAsyncReadIsHedged() throws Exception
+    {
+        // Arrange
+        RetryPolicy policy = RetryPolicy.builder().hedgeAfterPercentile(0.9).build();
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder().retryPolicy(policy).build()))
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            List<String> rootId = Collections.singletonList(SyntheticDriveTree.ROOT_ID);
+            for (int i = 0; i < RetryingReader.MIN_HEDGE_SAMPLES; i++)
+            {
+                driveService.getNodeDetailsAsync(rootId).get(5, TimeUnit.SECONDS);
+            }
+            simulator.delayNext(SimulatorRoute.DRIVE_ITEM_DETAILS, Duration.ofSeconds(10));
+            simulator.resetRequestCounts();
+
+            // Act
+            long start = System.nanoTime();
+            Map<String, DriveNodeDetails> details = driveService.getNodeDetailsAsync(rootId).get(5, TimeUnit.SECONDS);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Assert
+            assertThat(details.size(), is(1));
+            assertThat(simulator.getRequestCount(SimulatorRoute.DRIVE_ITEM_DETAILS), is(2L));
+            assertTrue("Hedged read took " + elapsedMillis + "ms", elapsedMillis < 5000);
+        }
+    }
+
+    @Test
+    public void testStalledReadIsHedged() throws Exception
+    {
+        // Arrange
+        RetryPolicy policy = RetryPolicy.builder().hedgeAfterPercentile(0.9).build();
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder().retryPolicy(policy).build()))
+        {
+            PhotosService photosService = new PhotosService(iCloudService);
+            for (int i = 0; i < RetryingReader.MIN_HEDGE_SAMPLES; i++)
+            {
+                photosService.getAlbums();
+            }
+            simulator.delayNext(SimulatorRoute.PHOTOS_FOLDERS, Duration.ofSeconds(10));
+            simulator.resetRequestCounts();
+
+            // Act
+            long start = System.nanoTime();
+            List<PhotosFolder> albums = photosService.getAlbums();
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Assert
+            assertTrue(!albums.isEmpty());
+            assertThat(simulator.getRequestCount(SimulatorRoute.PHOTOS_FOLDERS), is(2L));
+            assertTrue("Hedged read took " + elapsedMillis + "ms", elapsedMillis < 5000);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link SegmentedDownload}, through {@link DriveNode#downloadTo(Path, DownloadOptions)}.
+ */
+public class TestSegmentedDownload
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSplit()
+    {
+        // Act
+        List<SegmentedDownload.Segment> segments = SegmentedDownload.split(0, 250, 100);
+
+        // Assert
+        assertThat(segments.size(), is(3));
+        assertThat(segments.get(2).start, is(200L));
+        assertThat(segments.get(2).length, is(50L));
+    }
+
+    @Test
+    public void testRangedDownload() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(1_000_000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveNode file = findFile(new DriveService(iCloudService));
+            Path target = temporaryFolder.getRoot().toPath().resolve("ranged.bin");
+            DownloadOptions options = DownloadOptions.builder().segmentSize(64 * 1024).parallelism(4).build();
+            simulator.resetRequestCounts();
+
+            // Act
+            file.downloadTo(target, options);
+
+            // Assert
+            assertContent(target, file, 1_000_000);
+            assertThat(simulator.getRequestCount(SimulatorRoute.DOCS_CONTENT), is(16L));
+        }
+    }
+
+    @Test
+    public void testFallsBackToSingleStreamWithoutRangeSupport() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(300_000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            simulator.setRangesSupported(false);
+            DriveNode file = findFile(new DriveService(iCloudService));
+            Path target = temporaryFolder.getRoot().toPath().resolve("fallback.bin");
+            DownloadOptions options = DownloadOptions.builder().segmentSize(64 * 1024).parallelism(4).build();
+            simulator.resetRequestCounts();
+
+            // Act
+            file.downloadTo(target, options);
+
+            // Assert
+            assertContent(target, file, 300_000);
+            assertThat(simulator.getRequestCount(SimulatorRoute.DOCS_CONTENT), is(1L));
+        }
+    }
+
+    @Test
+    public void testSmallFileReplacesExistingFile() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(1000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveNode file = findFile(new DriveService(iCloudService));
+            Path target = temporaryFolder.newFile("existing.bin").toPath();
+            Files.write(target, new byte[5000]);
+
+            // Act
+            file.downloadTo(target, DownloadOptions.defaults());
+
+            // Assert
+            assertContent(target, file, 1000);
+        }
+    }
+
+    @Test
+    public void testDownloadToChannel() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(300_000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveNode file = findFile(new DriveService(iCloudService));
+            Path target = temporaryFolder.getRoot().toPath().resolve("channel.bin");
+
+            // Act
+            long written;
+            try (WritableByteChannel channel = Files.newByteChannel(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE))
+            {
+                written = file.downloadTo(channel);
+            }
+
+            // Assert
+            assertThat(written, is(300_000L));
+            assertContent(target, file, 300_000);
+        }
+    }
+
+    private static DriveNode findFile(DriveService driveService)
+    {
+        return driveService.getRoot().getChildren().stream()
+            .filter(node -> !node.isFolder())
+            .findFirst()
+            .get();
+    }
+
+    private static void assertContent(Path target, DriveNode file, int size) throws Exception
+    {
+        byte[] bytes = Files.readAllBytes(target);
+        assertThat(bytes.length, is(size));
+        for (int i = 0; i < bytes.length; i++)
+        {
+            assertThat(bytes[i], is(SyntheticDriveTree.contentByte(file.getNodeDetails().docwsid, i)));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.RouteBehaviour;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the services memoized by {@link ICloudService}.
+ */
+public class TestServiceRegistry
+{
+    @Test
+    public void testServicesCreatedOnceAcrossThreads() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder()
+            .behaviour(SimulatorRoute.PHOTOS_STARTUP, RouteBehaviour.builder()
+                .latency(Duration.ofMillis(100), Duration.ZERO)
+                .build())
+            .start();
+             ICloudService iCloudService = simulator.login())
+        {
+            // Act
+            List<CompletableFuture<PhotosService>> photos = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+            {
+                photos.add(CompletableFuture.supplyAsync(iCloudService::photos));
+            }
+
+            // Assert
+            for (CompletableFuture<PhotosService> service : photos)
+            {
+                assertThat(service.get(5, TimeUnit.SECONDS) == iCloudService.photos(), is(true));
+            }
+            assertThat(iCloudService.drive() == iCloudService.drive(), is(true));
+            assertThat(simulator.getRequestCount(SimulatorRoute.PHOTOS_STARTUP), is(1L));
+        }
+    }
+
+    @Test
+    public void testServicesReplacedAfterLogin() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = new ICloudService("simulator", simulator.configBuilder().build()))
+        {
+            try
+            {
+                iCloudService.drive();
+                fail("Expected the services to need a login");
+            }
+            catch (IllegalStateException e)
+            {
+                // Expected
+            }
+            iCloudService.authenticate("john@example.com", "password".toCharArray());
+            DriveService firstLogin = iCloudService.drive();
+
+            // Act
+            iCloudService.authenticate("john@example.com", "password".toCharArray());
+            DriveService secondLogin = iCloudService.drive();
+
+            // Assert
+            assertThat(firstLogin == secondLogin, is(false));
+            assertThat(iCloudService.drive() == secondLogin, is(true));
+        }
+    }
+
+    @Test
+    public void testWarmUpTakesStartupOffFirstRequest() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder()
+            .behaviour(SimulatorRoute.PHOTOS_STARTUP, RouteBehaviour.builder()
+                .latency(Duration.ofMillis(300), Duration.ZERO)
+                .build())
+            .start();
+             ICloudService iCloudService = simulator.login())
+        {
+            // Act
+            iCloudService.warmUp(EnumSet.allOf(ICloudService.ServiceKind.class)).get(5, TimeUnit.SECONDS);
+            long start = System.nanoTime();
+            PhotosService photos = iCloudService.photos();
+            long firstUseMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Assert
+            assertTrue("First use took " + firstUseMillis + "ms", firstUseMillis < 100);
+            assertThat(photos == iCloudService.photos(), is(true));
+            assertThat(simulator.getRequestCount(SimulatorRoute.PHOTOS_STARTUP), is(1L));
+        }
+    }
+
+    @Test
+    public void testWarmUpRunsOnGivenExecutor() throws Exception
+    {
+        // Arrange
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login())
+        {
+            AtomicInteger tasks = new AtomicInteger();
+
+            // Act
+            iCloudService.warmUp(EnumSet.of(ICloudService.ServiceKind.PHOTOS), task -> {
+                tasks.incrementAndGet();
+                executor.execute(task);
+            }).get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertTrue("Ran " + tasks.get() + " tasks", tasks.get() >= 1);
+            assertThat(simulator.getRequestCount(SimulatorRoute.PHOTOS_STARTUP), is(1L));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
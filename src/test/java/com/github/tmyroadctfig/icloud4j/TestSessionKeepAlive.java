@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the background session keep-alive.
+ */
+public class TestSessionKeepAlive
+{
+    @Test
+    public void testSessionRefreshedInBackground() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = new ICloudService("simulator", simulator.configBuilder()
+                 .sessionKeepAlive(TimeValue.ofMilliseconds(200), TimeValue.ofMinutes(5))
+                 .build()))
+        {
+            CountDownLatch refreshed = new CountDownLatch(2);
+            AtomicReference<Instant> nextRefresh = new AtomicReference<>();
+            AtomicReference<String> refreshThread = new AtomicReference<>();
+            iCloudService.addSessionListener(new SessionListener()
+            {
+                @Override
+                public void onSessionRefreshed(ICloudService service, Instant next)
+                {
+                    nextRefresh.set(next);
+                    refreshThread.set(Thread.currentThread().getName());
+                    refreshed.countDown();
+                }
+            });
+
+            // Act
+            iCloudService.authenticate("john@example.com", "password".toCharArray());
+            boolean completed = refreshed.await(5, TimeUnit.SECONDS);
+            new DriveService(iCloudService).getNodeDetails(SyntheticDriveTree.ROOT_ID);
+
+            // Assert
+            assertThat(completed, is(true));
+            assertTrue(simulator.getRequestCount(SimulatorRoute.VALIDATE) >= 2);
+            assertThat(simulator.getRequestCount(SimulatorRoute.LOGIN), is(1L));
+            assertThat(nextRefresh.get().isAfter(Instant.now().minusSeconds(1)), is(true));
+            assertThat(refreshThread.get().startsWith("icloud4j-session-refresh-"), is(true));
+            assertThat(iCloudService.getSessionState(), is(ICloudService.SessionState.VALID));
+        }
+    }
+
+    @Test
+    public void testRefreshScheduledAheadOfCookieExpiry() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().sessionCookieMaxAge(Duration.ofMinutes(30)).start();
+             ICloudService iCloudService = new ICloudService("simulator", simulator.configBuilder().build()))
+        {
+            iCloudService.authenticate("john@example.com", "password".toCharArray());
+            SessionKeepAlive keepAlive = new SessionKeepAlive(iCloudService, TimeValue.ofHours(1),
+                TimeValue.ofMinutes(5), Collections.emptyList());
+
+            // Act
+            Duration delay = keepAlive.getRefreshDelay(Instant.now());
+
+            // Assert
+            assertTrue("Refresh due in " + delay, delay.compareTo(Duration.ofMinutes(24)) > 0);
+            assertTrue("Refresh due in " + delay, delay.compareTo(Duration.ofMinutes(25)) <= 0);
+        }
+    }
+
+    @Test
+    public void testRefreshFailureReportedWhenSessionExpires() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = new ICloudService("simulator", simulator.configBuilder()
+                 .sessionKeepAlive(TimeValue.ofMilliseconds(200), TimeValue.ofMinutes(5))
+                 .build()))
+        {
+            CountDownLatch failed = new CountDownLatch(1);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            iCloudService.addSessionListener(new SessionListener()
+            {
+                @Override
+                public void onSessionRefreshFailed(ICloudService service, Throwable cause)
+                {
+                    failure.set(cause);
+                    failed.countDown();
+                }
+            });
+            iCloudService.authenticate("john@example.com", "password".toCharArray());
+
+            // Act
+            simulator.expireSessions();
+            boolean completed = failed.await(5, TimeUnit.SECONDS);
+            Thread.sleep(500);
+
+            // Assert
+            assertThat(completed, is(true));
+            assertThat(failure.get(), instanceOf(ICloudException.class));
+            assertThat(iCloudService.getSessionState(), is(ICloudService.SessionState.EXPIRED));
+            assertThat(simulator.getRequestCount(SimulatorRoute.VALIDATE), is(1L));
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.json.DriveNodeDetails;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import com.github.tmyroadctfig.icloud4j.simulator.SyntheticDriveTree;
+import org.apache.hc.client5.http.cookie.Cookie;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link SessionStore}, {@link EncryptedFileSessionStore} and restoring sessions in {@link ICloudService}.
+ */
+public class TestSessionStore
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSavedSessionIsEncrypted() throws Exception
+    {
+        // Arrange
+        Path file = temporaryFolder.getRoot().toPath().resolve("session.bin");
+        SessionStore store = new EncryptedFileSessionStore(file, new SecretKeySpec(new byte[16], "AES"));
+
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder().sessionStore(store).build()))
+        {
+            // Act
+            SessionSnapshot snapshot = store.load();
+
+            // Assert
+            String contents = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+            assertTrue(!contents.contains(simulator.getDownloadToken()));
+            assertTrue(!contents.contains("webservices"));
+            assertThat(snapshot.getClientId(), is("simulator"));
+            assertThat(snapshot.getLoginInfo().containsKey("webservices"), is(true));
+            List<Cookie> cookies = snapshot.getCookies(snapshot.getSavedAt());
+            assertTrue(cookies.stream().anyMatch(cookie -> ICloudSimulator.SESSION_COOKIE.equals(cookie.getName())));
+        }
+    }
+
+    @Test
+    public void testWrongPassphraseFailsToLoad() throws Exception
+    {
+        // Arrange
+        Path file = temporaryFolder.getRoot().toPath().resolve("session.bin");
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder()
+                 .sessionStore(new EncryptedFileSessionStore(file, "correct".toCharArray()))
+                 .build()))
+        {
+            // Act
+            try
+            {
+                new EncryptedFileSessionStore(file, "wrong".toCharArray()).load();
+                fail("Expected the session to fail to load");
+            }
+            catch (IOException e)
+            {
+                // Assert
+                assertTrue(e.getMessage().contains("key is wrong"));
+            }
+            assertThat(new EncryptedFileSessionStore(file, "correct".toCharArray()).load().getClientId(),
+                is("simulator"));
+        }
+    }
+
+    @Test
+    public void testRestoredSessionSkipsLogin() throws Exception
+    {
+        // Arrange
+        Path file = temporaryFolder.getRoot().toPath().resolve("session.bin");
+        SessionStore store = new EncryptedFileSessionStore(file, new SecretKeySpec(new byte[16], "AES"));
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start())
+        {
+            simulator.login(simulator.configBuilder().sessionStore(store).build()).close();
+            simulator.resetRequestCounts();
+
+            // Act
+            try (ICloudService restored = new ICloudService("simulator",
+                simulator.configBuilder().sessionStore(store).build()))
+            {
+                ICloudService.SessionState stateBeforeUse = restored.getSessionState();
+                DriveNodeDetails details = new DriveService(restored).getNodeDetails(SyntheticDriveTree.ROOT_ID);
+
+                // Assert
+                assertThat(stateBeforeUse, is(ICloudService.SessionState.RESTORED));
+                assertThat(restored.getSessionState(), is(ICloudService.SessionState.VALID));
+                assertThat(details.drivewsid, is(SyntheticDriveTree.ROOT_ID));
+                assertThat(simulator.getRequestCount(SimulatorRoute.LOGIN), is(0L));
+            }
+        }
+    }
+
+    @Test
+    public void testExpiredSessionIsDetectedOnFirstUse() throws Exception
+    {
+        // Arrange
+        Path file = temporaryFolder.getRoot().toPath().resolve("session.bin");
+        SessionStore store = new EncryptedFileSessionStore(file, new SecretKeySpec(new byte[16], "AES"));
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start())
+        {
+            simulator.login(simulator.configBuilder().sessionStore(store).build()).close();
+            simulator.expireSessions();
+
+            try (ICloudService restored = new ICloudService("simulator",
+                simulator.configBuilder().sessionStore(store).retryPolicy(RetryPolicy.none()).build()))
+            {
+                // Act
+                try
+                {
+                    new DriveService(restored).getNodeDetails(SyntheticDriveTree.ROOT_ID);
+                    fail("Expected the expired session to be rejected");
+                }
+                catch (RuntimeException e)
+                {
+                    // Expected
+                }
+                ICloudService.SessionState stateAfterRejection = restored.getSessionState();
+                restored.authenticate("john@example.com", "password".toCharArray());
+
+                // Assert
+                assertThat(stateAfterRejection, is(ICloudService.SessionState.EXPIRED));
+                assertThat(restored.getSessionState(), is(ICloudService.SessionState.VALID));
+                assertThat(new DriveService(restored).getNodeDetails(SyntheticDriveTree.ROOT_ID).drivewsid,
+                    is(SyntheticDriveTree.ROOT_ID));
+            }
+        }
+    }
+
+    @Test
+    public void testRestoredSessionIsSettledByAsyncRequest() throws Exception
+    {
+        // Arrange
+        Path file = temporaryFolder.getRoot().toPath().resolve("session.bin");
+        SessionStore store = new EncryptedFileSessionStore(file, new SecretKeySpec(new byte[16], "AES"));
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start())
+        {
+            simulator.login(simulator.configBuilder().sessionStore(store).build()).close();
+
+            try (ICloudService restored = new ICloudService("simulator",
+                simulator.configBuilder().sessionStore(store).build()))
+            {
+                // Act
+                DriveNodeDetails details = new DriveService(restored).getNodeDetailsAsync(SyntheticDriveTree.ROOT_ID)
+                    .get(5, TimeUnit.SECONDS);
+
+                // Assert
+                assertThat(restored.getSessionState(), is(ICloudService.SessionState.VALID));
+                assertThat(details.drivewsid, is(SyntheticDriveTree.ROOT_ID));
+            }
+        }
+    }
+
+    @Test
+    public void testExpiredSessionIsDetectedOnFirstAsyncRequest() throws Exception
+    {
+        // Arrange
+        Path file = temporaryFolder.getRoot().toPath().resolve("session.bin");
+        SessionStore store = new EncryptedFileSessionStore(file, new SecretKeySpec(new byte[16], "AES"));
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start())
+        {
+            simulator.login(simulator.configBuilder().sessionStore(store).build()).close();
+            simulator.expireSessions();
+
+            try (ICloudService restored = new ICloudService("simulator",
+                simulator.configBuilder().sessionStore(store).retryPolicy(RetryPolicy.none()).build()))
+            {
+                // Act
+                try
+                {
+                    new DriveService(restored).getNodeDetailsAsync(SyntheticDriveTree.ROOT_ID).get(5, TimeUnit.SECONDS);
+                    fail("Expected the expired session to be rejected");
+                }
+                catch (ExecutionException e)
+                {
+                    // Expected
+                }
+
+                // Assert
+                assertThat(restored.getSessionState(), is(ICloudService.SessionState.EXPIRED));
+            }
+        }
+    }
+}
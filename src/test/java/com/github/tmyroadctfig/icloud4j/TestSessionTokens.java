@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import com.github.tmyroadctfig.icloud4j.simulator.SimulatorRoute;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link SessionTokens}.
+ */
+public class TestSessionTokens
+{
+    @Test
+    public void testParseDownloadToken()
+    {
+        // Act & Assert
+        assertThat(SessionTokens.parseDownloadToken("v=2:t=AQAAAABXzO24CYflBW2JwysxyUEL9KxRNoEX1Qk~"),
+            is("AQAAAABXzO24CYflBW2JwysxyUEL9KxRNoEX1Qk~"));
+        assertThat(SessionTokens.parseDownloadToken("t=abc:v=2"), is("abc"));
+        assertThat(SessionTokens.parseDownloadToken("v=2:s=0"), is(""));
+        assertThat(SessionTokens.parseDownloadToken(""), is(""));
+        assertThat(SessionTokens.parseDownloadToken(null), is(""));
+    }
+
+    @Test
+    public void testDownloadTokenFollowsValidateCookie() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(1000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DriveNode file = driveService.getRoot().getChildren().stream()
+                .filter(node -> !node.isFolder())
+                .findFirst()
+                .get();
+            String firstToken = iCloudService.getSessionTokens().getDownloadToken();
+
+            // Act
+            simulator.expireSessions();
+            iCloudService.authenticate("john@example.com", "password".toCharArray());
+            CountingOutputStream content = new CountingOutputStream(NullOutputStream.INSTANCE);
+            file.downloadFileData(content);
+
+            // Assert
+            String secondToken = iCloudService.getSessionTokens().getDownloadToken();
+            assertThat(secondToken, is(simulator.getDownloadToken()));
+            assertThat(secondToken.equals(firstToken), is(false));
+            assertThat(content.getByteCount(), is(1000L));
+        }
+    }
+
+    @Test
+    public void testPhotosSyncTokenIsSharedUntilTheSessionChanges() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().start();
+             ICloudService iCloudService = simulator.login())
+        {
+            // Act
+            new PhotosService(iCloudService).getAlbums();
+            new PhotosService(iCloudService).getAlbums();
+            long sameSession = simulator.getRequestCount(SimulatorRoute.PHOTOS_STARTUP);
+            iCloudService.getSessionTokens().setDsid("another-session");
+            new PhotosService(iCloudService);
+
+            // Assert
+            assertThat(sameSession, is(1L));
+            assertThat(simulator.getRequestCount(SimulatorRoute.PHOTOS_STARTUP), is(2L));
+        }
+    }
+}
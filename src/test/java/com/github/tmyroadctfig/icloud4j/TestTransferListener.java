@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j;
+
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link TransferListener}.
+ */
+public class TestTransferListener
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSingleDownloadListener() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(1_000_000).start();
+             ICloudService iCloudService = simulator.login(simulator.configBuilder()
+                 .transferProgress(100_000, TimeValue.ofMinutes(1))
+                 .build()))
+        {
+            DriveNode file = findFile(new DriveService(iCloudService));
+            RecordingListener listener = new RecordingListener();
+
+            // Act
+            file.downloadFileData(new ByteArrayOutputStream(), listener);
+
+            // Assert
+            assertThat(listener.events.get(0), is("started"));
+            assertThat(listener.events.get(listener.events.size() - 1), is("completed"));
+            assertTrue(listener.events.contains("progress"));
+            for (int i = 2; i < listener.progress.size() - 1; i++)
+            {
+                assertTrue(listener.progress.get(i).getBytesTransferred()
+                    - listener.progress.get(i - 1).getBytesTransferred() >= 100_000);
+            }
+            TransferProgress last = listener.progress.get(listener.progress.size() - 1);
+            assertThat(last.getId(), is(file.getId()));
+            assertThat(last.getDirection(), is(TransferProgress.Direction.DOWNLOAD));
+            assertThat(last.getTotalBytes(), is(1_000_000L));
+            assertThat(last.getBytesTransferred(), is(1_000_000L));
+            assertTrue(last.getBytesPerSecond() > 0);
+            assertTrue(listener.progress.get(1).getInstantaneousBytesPerSecond() > 0);
+            assertThat(iCloudService.getActiveTransfers().size(), is(0));
+        }
+    }
+
+    @Test
+    public void testServiceListenerSeesDownloadsAndUploads() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(300_000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+            DriveNode file = findFile(driveService);
+            RecordingListener listener = new RecordingListener();
+            iCloudService.addTransferListener(listener);
+            Path target = temporaryFolder.getRoot().toPath().resolve("segmented.bin");
+
+            // Act
+            file.downloadTo(target, DownloadOptions.builder().segmentSize(64 * 1024).parallelism(4).build());
+            driveService.getRoot().upload("notes.txt", new ByteArrayInputStream(new byte[200_000]), 200_000);
+
+            // Assert
+            assertThat(listener.events.stream().filter("completed"::equals).count(), is(2L));
+            List<TransferProgress> completed = listener.completed;
+            assertThat(completed.get(0).getDirection(), is(TransferProgress.Direction.DOWNLOAD));
+            assertThat(completed.get(0).getBytesTransferred(), is(300_000L));
+            assertThat(completed.get(1).getDirection(), is(TransferProgress.Direction.UPLOAD));
+            assertThat(completed.get(1).getId(), is("notes.txt"));
+            assertThat(completed.get(1).getBytesTransferred(), is(200_000L));
+        }
+    }
+
+    @Test
+    public void testFailedDownloadIsReported() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(1_000_000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveNode file = findFile(new DriveService(iCloudService));
+            RecordingListener listener = new RecordingListener();
+            simulator.dropNextContentAfter(100_000);
+
+            // Act
+            try
+            {
+                file.downloadFileData(new ByteArrayOutputStream(), listener);
+                fail("Expected the download to fail");
+            }
+            catch (RuntimeException e)
+            {
+                // Expected
+            }
+
+            // Assert
+            assertThat(listener.events.get(listener.events.size() - 1), is("failed"));
+            assertThat(listener.failure, notNullValue());
+            assertTrue(listener.progress.get(listener.progress.size() - 1).getBytesTransferred() < 1_000_000L);
+            assertThat(iCloudService.getActiveTransfers().size(), is(0));
+        }
+    }
+
+    private static DriveNode findFile(DriveService driveService)
+    {
+        return driveService.getRoot().getChildren().stream()
+            .filter(node -> !node.isFolder())
+            .findFirst()
+            .get();
+    }
+
+    private static class RecordingListener implements TransferListener
+    {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final List<TransferProgress> progress = new CopyOnWriteArrayList<>();
+        private final List<TransferProgress> completed = new CopyOnWriteArrayList<>();
+        private volatile Throwable failure;
+
+        @Override
+        public void onStarted(TransferProgress progress)
+        {
+            record("started", progress);
+        }
+
+        @Override
+        public void onProgress(TransferProgress progress)
+        {
+            record("progress", progress);
+        }
+
+        @Override
+        public void onCompleted(TransferProgress progress)
+        {
+            record("completed", progress);
+            completed.add(progress);
+        }
+
+        @Override
+        public void onFailed(TransferProgress progress, Throwable failure)
+        {
+            record("failed", progress);
+            this.failure = failure;
+        }
+
+        private void record(String event, TransferProgress progress)
+        {
+            events.add(event);
+            this.progress.add(progress);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link JsonCodecs}, checking the handwritten adapters against Gson's reflective adapters.
+ */
+public class TestJsonCodecs
+{
+    private final Gson reflectiveGson = new Gson();
+
+    @Test
+    public void testDriveNodeDetailsMatchesReflection()
+    {
+        // Arrange
+        String json = "[{\"drivewsid\":\"FOLDER::com.apple.CloudDocs::root\",\"zone\":\"com.apple.CloudDocs\"," +
+            "\"name\":\"root\",\"etag\":\"1a\",\"type\":\"FOLDER\",\"numberOfItems\":\"2\",\"unknown\":{\"a\":[1,2]}," +
+            "\"items\":[{\"drivewsid\":\"FILE::com.apple.CloudDocs::A\",\"size\":12345678901,\"extension\":\"txt\"," +
+            "\"dateModified\":\"2016-01-01T00:00:00Z\",\"numberOfItems\":null},null]}]";
+
+        // Act / Assert
+        assertSameDecoding(json, DriveNodeDetails[].class);
+    }
+
+    @Test
+    public void testFindMyIPhoneResponseMatchesReflection()
+    {
+        // Arrange
+        String json = "{\"content\":[{\"id\":\"d1\",\"name\":\"iPhone\",\"batteryLevel\":0.5,\"deviceStatus\":\"200\"," +
+            "\"isMac\":\"false\",\"lostModeCapable\":true,\"passcodeLength\":6,\"snd\":null,\"maxMsgChar\":160," +
+            "\"location\":{\"latitude\":-33.8,\"longitude\":151.2,\"isOld\":false,\"timeStamp\":1460000000000}}]," +
+            "\"serverContext\":{\"timezone\":{}}}";
+
+        // Act / Assert
+        assertSameDecoding(json, FindMyIPhoneResponse.class);
+    }
+
+    @Test
+    public void testOtherModelsMatchReflection()
+    {
+        assertSameDecoding("{\"folders\":[{\"serverId\":\"all-photos\",\"type\":\"album\",\"childFolderIds\":[\"a\",null]," +
+            "\"isServerGenerated\":true}]}", PhotosAlbumsResponse.class);
+        assertSameDecoding("{\"devices\":[{\"deviceType\":\"SMS\",\"areaCode\":\"\",\"phoneNumber\":\"*******00\"," +
+            "\"deviceId\":\"1\"}]}", TrustedDevices.class);
+        assertSameDecoding("{\"item_list\":[{\"peer_id\":1,\"in_cloud\":true,\"item_id\":\"5\",\"size\":10," +
+            "\"change_id\":\"c\"}]}", UbiquityGetChildrenResponse.class);
+        assertSameDecoding("{\"document_id\":\"D1\",\"data_token\":{\"url\":\"https://example.com/1\"," +
+            "\"token\":\"t\",\"size\":\"42\",\"extra\":[1]}}", DriveDownloadResponse.class);
+        assertSameDecoding("[{\"document_id\":\"D1\",\"url\":\"https://example.com/upload\",\"owner\":\"x\"}]",
+            DriveUploadUrl[].class);
+        assertSameDecoding("{\"singleFile\":{\"fileChecksum\":\"c\",\"wrappingKey\":\"k\",\"referenceChecksum\":\"r\"," +
+            "\"size\":42,\"receipt\":\"rc\",\"extra\":{}}}", DriveUploadResponse.class);
+    }
+
+    @Test
+    public void testTrustedDeviceResponseSerialisesLikeReflection()
+    {
+        // Arrange
+        TrustedDeviceResponse response = new TrustedDeviceResponse();
+        response.deviceId = "1";
+        response.deviceType = "SMS";
+        response.verificationCode = "123456";
+        response.trustBrowser = true;
+
+        // Act
+        String codecJson = JsonCodecs.gson().toJson(response);
+        String reflectiveJson = reflectiveGson.toJson(response);
+
+        // Assert
+        assertThat(JsonParser.parseString(codecJson), is(JsonParser.parseString(reflectiveJson)));
+    }
+
+    @Test(expected = JsonSyntaxException.class)
+    public void testErrorObjectRejectedForArrayType()
+    {
+        JsonCodecs.gson().fromJson("{\"error\":\"bad\"}", DriveNodeDetails[].class);
+    }
+
+    private <T> void assertSameDecoding(String json, Class<T> type)
+    {
+        T codecValue = JsonCodecs.gson().fromJson(json, type);
+        T reflectiveValue = reflectiveGson.fromJson(json, type);
+
+        assertThat(reflectiveGson.toJsonTree(codecValue), is(reflectiveGson.toJsonTree(reflectiveValue)));
+    }
+}
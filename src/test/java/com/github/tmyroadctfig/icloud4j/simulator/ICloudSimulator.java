@@ -0,0 +1,1247 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.simulator;
+
+import com.github.tmyroadctfig.icloud4j.ICloudService;
+import com.github.tmyroadctfig.icloud4j.ICloudServiceConfig;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.hc.core5.http.NameValuePair;
+import org.apache.hc.core5.net.URIBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An embedded simulator of the iCloud web services, for load testing the library without Apple's servers.
+ *
+ * <p>The simulator serves login, trusted devices, storage usage, iCloud Drive listings, downloads and uploads,
+ * ubiquity, photos and 'find my iPhone' from a loopback port. Drive and ubiquity share a {@link SyntheticDriveTree}
+ * which is generated on demand, so trees with millions of nodes and files of any size cost no memory. Each route can
+ * be given latency, tail latency, random faults and a rate limit through a {@link RouteBehaviour}:</p>
+ *
+ * <pre>
+ * try (ICloudSimulator simulator = ICloudSimulator.builder()
+ *     .folderFanOut(10).filesPerFolder(100).depth(5)
+ *     .behaviour(SimulatorRoute.DRIVE_ITEM_DETAILS, RouteBehaviour.builder()
+ *         .latency(Duration.ofMillis(20), Duration.ofMillis(10))
+ *         .fault(0.01, 503).retryAfter(Duration.ofSeconds(1))
+ *         .build())
+ *     .start();
+ *      ICloudService iCloudService = simulator.login())
+ * {
+ *     DriveNode root = new DriveService(iCloudService).getRoot();
+ * }
+ * </pre>
+ */
+public class ICloudSimulator implements Closeable
+{
+    /**
+     * The session cookie which must be present on every request after login.
+     */
+    public static final String SESSION_COOKIE = "X-APPLE-WEBAUTH-TOKEN";
+
+    /**
+     * The cookie holding the download token.
+     */
+    public static final String VALIDATE_COOKIE = "X-APPLE-WEBAUTH-VALIDATE";
+
+    /**
+     * The size of the buffer used when streaming file content.
+     */
+    private static final int CONTENT_BUFFER_SIZE = 0x10000;
+
+    /**
+     * Matches a single 'Range' header value.
+     */
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    /**
+     * The web services whose URLs are returned by login.
+     */
+    private static final String[] WEB_SERVICES = {"drivews", "docws", "ubiquity", "photos", "findme"};
+
+    /**
+     * The routes whose handlers read the request body themselves, rather than being given it in memory.
+     */
+    private static final Set<SimulatorRoute> STREAMED_ROUTES = EnumSet.of(SimulatorRoute.DOCS_UPLOAD_CONTENT);
+
+    static
+    {
+        // Without this the JDK server's separate header and body writes hit Nagle/delayed-ACK stalls of ~40ms per call
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String baseUrl;
+    private final String dsid;
+    private final SyntheticDriveTree tree;
+    private final int deviceCount;
+    private final int albumCount;
+    private final Duration sessionCookieMaxAge;
+    private final Map<SimulatorRoute, RouteBehaviour> behaviours = new EnumMap<>(SimulatorRoute.class);
+    private final Map<SimulatorRoute, LongAdder> requestCounts = new EnumMap<>(SimulatorRoute.class);
+
+    /**
+     * The statuses the next requests to each route are rejected with, ahead of its behaviour. Guarded by
+     * {@link #behaviours}.
+     */
+    private final Map<SimulatorRoute, Deque<Integer>> scriptedRejections = new EnumMap<>(SimulatorRoute.class);
+
+    /**
+     * The latencies of the next requests to each route, ahead of its behaviour. Guarded by {@link #behaviours}.
+     */
+    private final Map<SimulatorRoute, Deque<Duration>> scriptedLatencies = new EnumMap<>(SimulatorRoute.class);
+
+    /**
+     * The current session token; changing it expires every session.
+     */
+    private volatile String sessionToken = UUID.randomUUID().toString();
+
+    /**
+     * Whether content routes honour 'Range' headers.
+     */
+    private volatile boolean rangesSupported = true;
+
+    /**
+     * The number of bytes after which the next content response is cut off, or -1 for none.
+     */
+    private final AtomicLong dropContentAfter = new AtomicLong(-1);
+
+    /**
+     * The number of upload bodies being received.
+     */
+    private final AtomicInteger uploadsInFlight = new AtomicInteger();
+
+    /**
+     * The largest number of upload bodies received at once.
+     */
+    private final AtomicInteger peakUploadsInFlight = new AtomicInteger();
+
+    /**
+     * Creates and starts a simulator from the builder.
+     *
+     * @param builder the builder.
+     * @throws IOException if the server can't be started.
+     */
+    private ICloudSimulator(Builder builder) throws IOException
+    {
+        tree = new SyntheticDriveTree(builder.folderFanOut, builder.filesPerFolder, builder.depth, builder.fileSize);
+        dsid = builder.dsid;
+        deviceCount = builder.deviceCount;
+        albumCount = builder.albumCount;
+        sessionCookieMaxAge = builder.sessionCookieMaxAge;
+        for (SimulatorRoute route : SimulatorRoute.values())
+        {
+            behaviours.put(route, builder.behaviours.getOrDefault(route, RouteBehaviour.NONE));
+            requestCounts.put(route, new LongAdder());
+        }
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), builder.backlog);
+        baseUrl = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+
+        route("/setup/ws/1/login", SimulatorRoute.LOGIN, this::handleLogin);
+        // Validate answers like login, once the route has checked the session
+        route("/setup/ws/1/validate", SimulatorRoute.VALIDATE, this::handleLogin);
+        route("/setup/ws/1/listDevices", SimulatorRoute.LIST_DEVICES, this::handleListDevices);
+        route("/setup/ws/1/storageUsageInfo", SimulatorRoute.STORAGE_USAGE, this::handleStorageUsage);
+        route("/drivews/retrieveItemDetailsInFolders", SimulatorRoute.DRIVE_ITEM_DETAILS, this::handleDriveItemDetails);
+        route("/docws/ws/", SimulatorRoute.DOCS_DOWNLOAD_BY_ID, this::handleDownloadById);
+        route("/docws/content/", SimulatorRoute.DOCS_CONTENT, this::handleDocsContent);
+        route("/docws/ws/" + SyntheticDriveTree.ZONE + "/upload/web", SimulatorRoute.DOCS_UPLOAD_WEB,
+            this::handleUploadWeb);
+        route("/docws/upload/", SimulatorRoute.DOCS_UPLOAD_CONTENT, this::handleUploadContent);
+        route("/docws/ws/" + SyntheticDriveTree.ZONE + "/update/documents", SimulatorRoute.DOCS_UPDATE_DOCUMENTS,
+            this::handleUpdateDocuments);
+        route("/ubiquity/ws/" + dsid + "/item/", SimulatorRoute.UBIQUITY_ITEM, this::handleUbiquityItem);
+        route("/ubiquity/ws/" + dsid + "/parent/", SimulatorRoute.UBIQUITY_PARENT, this::handleUbiquityParent);
+        route("/ubiquity/ws/" + dsid + "/file/", SimulatorRoute.UBIQUITY_FILE, this::handleUbiquityFile);
+        route("/photos/ph/startup", SimulatorRoute.PHOTOS_STARTUP, this::handlePhotosStartup);
+        route("/photos/ph/folders", SimulatorRoute.PHOTOS_FOLDERS, this::handlePhotosFolders);
+        route("/findme/fmipservice/client/web/refreshClient", SimulatorRoute.FIND_MY_IPHONE_REFRESH,
+            this::handleFindMyIPhoneRefresh);
+
+        // Latency is simulated by sleeping, so threads are not pooled to a fixed size
+        executor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("icloud-simulator-%d").setDaemon(true).build());
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @return the builder.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Creates a service configuration builder pointing at this simulator.
+     *
+     * @return the builder.
+     */
+    public ICloudServiceConfig.Builder configBuilder()
+    {
+        return ICloudServiceConfig.builder().setupEndPoint(getSetupEndPoint());
+    }
+
+    /**
+     * Creates a service logged in to this simulator, with the default configuration.
+     *
+     * @return the service.
+     */
+    public ICloudService login()
+    {
+        return login(configBuilder().build());
+    }
+
+    /**
+     * Creates a service logged in to this simulator.
+     *
+     * @param config the configuration, which must use {@link #getSetupEndPoint()}.
+     * @return the service.
+     */
+    public ICloudService login(ICloudServiceConfig config)
+    {
+        ICloudService iCloudService = new ICloudService("simulator", config);
+        iCloudService.authenticate("john@example.com", "password".toCharArray());
+        return iCloudService;
+    }
+
+    /**
+     * Gets the setup web service URL.
+     *
+     * @return the URL.
+     */
+    public String getSetupEndPoint()
+    {
+        return baseUrl + "/setup/ws/1";
+    }
+
+    /**
+     * Gets the base URL of the simulator, e.g. "http://127.0.0.1:12345".
+     *
+     * @return the URL.
+     */
+    public String getBaseUrl()
+    {
+        return baseUrl;
+    }
+
+    /**
+     * Gets the synthetic tree served for iCloud Drive and ubiquity.
+     *
+     * @return the tree.
+     */
+    public SyntheticDriveTree getTree()
+    {
+        return tree;
+    }
+
+    /**
+     * Replaces the behaviour of a route while the simulator is running.
+     *
+     * @param route     the route.
+     * @param behaviour the behaviour.
+     */
+    public void setBehaviour(SimulatorRoute route, RouteBehaviour behaviour)
+    {
+        synchronized (behaviours)
+        {
+            behaviours.put(route, behaviour);
+        }
+    }
+
+    /**
+     * Gets the number of requests received by a route, including rejected requests.
+     *
+     * @param route the route.
+     * @return the count.
+     */
+    public long getRequestCount(SimulatorRoute route)
+    {
+        return requestCounts.get(route).sum();
+    }
+
+    /**
+     * Resets all request counts to zero.
+     */
+    public void resetRequestCounts()
+    {
+        requestCounts.values().forEach(LongAdder::reset);
+    }
+
+    /**
+     * Gets the largest number of upload bodies that were being received at once.
+     *
+     * @return the peak count.
+     */
+    public int getPeakConcurrentUploads()
+    {
+        return peakUploadsInFlight.get();
+    }
+
+    /**
+     * Sets whether content routes honour 'Range' headers. When disabled, the whole file is sent with '200 OK', as by
+     * servers without range support.
+     *
+     * @param rangesSupported whether ranges are honoured.
+     */
+    public void setRangesSupported(boolean rangesSupported)
+    {
+        this.rangesSupported = rangesSupported;
+    }
+
+    /**
+     * Cuts off the next content response after the given number of body bytes, as if the connection dropped.
+     *
+     * @param bytes the number of bytes sent before the connection is closed.
+     */
+    public void dropNextContentAfter(long bytes)
+    {
+        dropContentAfter.set(bytes);
+    }
+
+    /**
+     * Rejects the next requests to a route with the given status, before its behaviour applies again.
+     *
+     * @param route  the route.
+     * @param count  the number of requests to reject.
+     * @param status the status code.
+     */
+    public void failNext(SimulatorRoute route, int count, int status)
+    {
+        synchronized (behaviours)
+        {
+            Deque<Integer> rejections = scriptedRejections.computeIfAbsent(route, key -> new ArrayDeque<>());
+            for (int i = 0; i < count; i++)
+            {
+                rejections.add(status);
+            }
+        }
+    }
+
+    /**
+     * Delays the next request to a route by the given latency, instead of the latency of its behaviour.
+     *
+     * @param route   the route.
+     * @param latency the latency.
+     */
+    public void delayNext(SimulatorRoute route, Duration latency)
+    {
+        synchronized (behaviours)
+        {
+            scriptedLatencies.computeIfAbsent(route, key -> new ArrayDeque<>()).add(latency);
+        }
+    }
+
+    /**
+     * Expires every session, so that requests are rejected with '401 Unauthorized' until the next login.
+     */
+    public void expireSessions()
+    {
+        sessionToken = UUID.randomUUID().toString();
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Takes the next scripted value for a route. Must hold the lock on {@link #behaviours}.
+     *
+     * @param scripts the scripted values, keyed by route.
+     * @param route   the route.
+     * @return the value, or {@code null} if none is left.
+     */
+    private static <T> T pollScript(Map<SimulatorRoute, Deque<T>> scripts, SimulatorRoute route)
+    {
+        Deque<T> script = scripts.get(route);
+        return script != null ? script.poll() : null;
+    }
+
+    /**
+     * Registers a route handler which applies the route's behaviour before handling the request.
+     *
+     * @param path    the path prefix.
+     * @param route   the route.
+     * @param handler the handler.
+     */
+    private void route(String path, SimulatorRoute route, RouteHandler handler)
+    {
+        server.createContext(path, exchange -> {
+            try
+            {
+                requestCounts.get(route).increment();
+                RouteBehaviour behaviour;
+                Integer scriptedRejection;
+                Duration scriptedLatency;
+                synchronized (behaviours)
+                {
+                    behaviour = behaviours.get(route);
+                    scriptedRejection = pollScript(scriptedRejections, route);
+                    scriptedLatency = pollScript(scriptedLatencies, route);
+                }
+
+                long latency = scriptedLatency != null ? scriptedLatency.toMillis() : behaviour.nextLatencyMillis();
+                if (latency > 0)
+                {
+                    Thread.sleep(latency);
+                }
+
+                try (InputStream requestBody = exchange.getRequestBody())
+                {
+                    byte[] body = STREAMED_ROUTES.contains(route) ? null : IOUtils.toByteArray(requestBody);
+
+                    int rejection = scriptedRejection != null ? scriptedRejection : behaviour.nextRejection();
+                    if (rejection != 0)
+                    {
+                        Duration retryAfter = behaviour.getRetryAfter();
+                        if (retryAfter != null)
+                        {
+                            long seconds = (retryAfter.toMillis() + 999) / 1000;
+                            exchange.getResponseHeaders().set("Retry-After", Long.toString(seconds));
+                        }
+                        sendError(exchange, rejection);
+                    } else if (route != SimulatorRoute.LOGIN && !hasSession(exchange))
+                    {
+                        sendError(exchange, 401);
+                    } else
+                    {
+                        handler.handle(exchange, body);
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (ConnectionDropException e)
+            {
+                // Escapes to the server, which closes the connection instead of leaving the client waiting
+                throw e;
+            }
+            catch (Exception e)
+            {
+                sendError(exchange, 500);
+            }
+            finally
+            {
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * Checks whether the request carries the current session cookie.
+     *
+     * @param exchange the exchange.
+     * @return {@code true} if the session is valid.
+     */
+    private boolean hasSession(HttpExchange exchange)
+    {
+        String expected = SESSION_COOKIE + "=" + sessionToken;
+        List<String> cookieHeaders = exchange.getRequestHeaders().get("Cookie");
+        if (cookieHeaders != null)
+        {
+            for (String cookieHeader : cookieHeaders)
+            {
+                for (String cookie : cookieHeader.split(";"))
+                {
+                    if (cookie.trim().replace("\"", "").equals(expected))
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the token that clients must pass when looking up download URLs, as set in the validate cookie.
+     *
+     * @return the token.
+     */
+    public String getDownloadToken()
+    {
+        return sessionToken.replace("-", "") + "~";
+    }
+
+    private void handleLogin(HttpExchange exchange, byte[] body) throws IOException
+    {
+        String maxAge = sessionCookieMaxAge != null ? "; Max-Age=" + sessionCookieMaxAge.getSeconds() : "";
+        exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=\"" + sessionToken + "\"; Path=/" + maxAge);
+        exchange.getResponseHeaders().add("Set-Cookie", "X-APPLE-WEBAUTH-USER=\"v=1:s=0:d=" + dsid + "\"; Path=/");
+        exchange.getResponseHeaders().add("Set-Cookie",
+            VALIDATE_COOKIE + "=\"v=1:t=" + getDownloadToken() + "\"; Path=/");
+
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            writer.beginObject();
+            writer.name("dsInfo").beginObject();
+            writer.name("dsid").value(dsid);
+            writer.name("appleId").value("john@example.com");
+            writer.name("fullName").value("John Appleseed");
+            writer.name("hsaVersion").value(2);
+            writer.endObject();
+            writer.name("webservices").beginObject();
+            for (String service : WEB_SERVICES)
+            {
+                writer.name(service).beginObject();
+                writer.name("url").value(baseUrl + "/" + service);
+                writer.name("status").value("active");
+                writer.endObject();
+            }
+            writer.endObject();
+            writer.name("hsaChallengeRequired").value(false);
+            writer.name("hsaTrustedBrowser").value(true);
+            writer.name("isExtendedLogin").value(false);
+            writer.endObject();
+        }
+    }
+
+    private void handleListDevices(HttpExchange exchange, byte[] body) throws IOException
+    {
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            writer.beginObject();
+            writer.name("devices").beginArray();
+            writer.beginObject();
+            writer.name("deviceType").value("SMS");
+            writer.name("areaCode").value("");
+            writer.name("phoneNumber").value("********00");
+            writer.name("deviceId").value("1");
+            writer.endObject();
+            writer.endArray();
+            writer.endObject();
+        }
+    }
+
+    private void handleStorageUsage(HttpExchange exchange, byte[] body) throws IOException
+    {
+        long used = tree.getFolderCount() * tree.getFileSize();
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            writer.beginObject();
+            writer.name("storageUsageByMedia").beginArray();
+            writer.beginObject();
+            writer.name("mediaKey").value("docs");
+            writer.name("displayLabel").value("Documents");
+            writer.name("usageInBytes").value(used);
+            writer.endObject();
+            writer.endArray();
+            writer.name("storageUsageInfo").beginObject();
+            writer.name("usedStorageInBytes").value(used);
+            writer.name("totalStorageInBytes").value(Math.max(used, 5L << 30));
+            writer.endObject();
+            writer.name("quotaStatus").beginObject();
+            writer.name("overQuota").value(false);
+            writer.name("almostFull").value(false);
+            writer.endObject();
+            writer.endObject();
+        }
+    }
+
+    private void handleDriveItemDetails(HttpExchange exchange, byte[] body) throws IOException
+    {
+        List<String> ids = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(
+            new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8)))
+        {
+            reader.beginArray();
+            while (reader.hasNext())
+            {
+                reader.beginObject();
+                while (reader.hasNext())
+                {
+                    if ("drivewsid".equals(reader.nextName()) && reader.peek() == JsonToken.STRING)
+                    {
+                        ids.add(reader.nextString());
+                    } else
+                    {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            reader.endArray();
+        }
+
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            writer.beginArray();
+            for (String id : ids)
+            {
+                tree.writeDriveDetails(writer, id);
+            }
+            writer.endArray();
+        }
+    }
+
+    private void handleDownloadById(HttpExchange exchange, byte[] body) throws IOException
+    {
+        String documentId = queryParameter(exchange, "document_id");
+        if (documentId == null || !tree.isFile(documentId)
+            || !exchange.getRequestURI().getPath().endsWith("/download/by_id"))
+        {
+            sendError(exchange, 404);
+            return;
+        }
+        if (!getDownloadToken().equals(queryParameter(exchange, "token")))
+        {
+            sendError(exchange, 403);
+            return;
+        }
+
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            writer.beginObject();
+            writer.name("document_id").value(documentId);
+            writer.name("data_token").beginObject();
+            writer.name("url").value(baseUrl + "/docws/content/" + documentId);
+            writer.name("token").value(sessionToken);
+            writer.name("size").value(tree.getFileSize());
+            writer.endObject();
+            writer.endObject();
+        }
+    }
+
+    private void handleDocsContent(HttpExchange exchange, byte[] body) throws IOException
+    {
+        sendContent(exchange, lastSegment(exchange));
+    }
+
+    private void handleUploadWeb(HttpExchange exchange, byte[] body) throws IOException
+    {
+        JsonObject request = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+        if (!request.has("filename") || !"FILE".equals(request.get("type").getAsString()))
+        {
+            sendError(exchange, 400);
+            return;
+        }
+
+        String documentId = tree.reserveUpload();
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            writer.beginArray();
+            writer.beginObject();
+            writer.name("document_id").value(documentId);
+            writer.name("url").value(baseUrl + "/docws/upload/" + documentId);
+            writer.endObject();
+            writer.endArray();
+        }
+    }
+
+    /**
+     * Receives the multipart body of an upload, hashing the single part as it streams in so that uploads of any size
+     * cost no memory.
+     *
+     * @param exchange the exchange.
+     * @param body     unused, as the body is read from the exchange.
+     * @throws IOException if the body can't be read or the response written.
+     */
+    private void handleUploadContent(HttpExchange exchange, byte[] body) throws IOException
+    {
+        String documentId = lastSegment(exchange);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        int boundaryStart = contentType != null ? contentType.indexOf("boundary=") : -1;
+        if (!tree.isReservedUpload(documentId) || boundaryStart < 0)
+        {
+            sendError(exchange, boundaryStart < 0 ? 400 : 404);
+            return;
+        }
+
+        String boundary = contentType.substring(boundaryStart + "boundary=".length()).split(";")[0].replace("\"", "");
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        int inFlight = uploadsInFlight.incrementAndGet();
+        peakUploadsInFlight.accumulateAndGet(inFlight, Math::max);
+        Hasher hasher = Hashing.sha256().newHasher();
+        long size = 0;
+        try (InputStream input = new BufferedInputStream(exchange.getRequestBody(), CONTENT_BUFFER_SIZE))
+        {
+            // Skip the opening boundary and part headers
+            int last4 = 0;
+            int next;
+            while (last4 != 0x0d0a0d0a)
+            {
+                if ((next = input.read()) == -1)
+                {
+                    sendError(exchange, 400);
+                    return;
+                }
+                last4 = (last4 << 8) | next;
+            }
+
+            // Hash everything but the closing boundary, which is only known to be the end once the body ends
+            byte[] buffer = new byte[CONTENT_BUFFER_SIZE + closing.length];
+            int held = 0;
+            int count;
+            while ((count = input.read(buffer, held, buffer.length - held)) != -1)
+            {
+                held += count;
+                if (held > closing.length)
+                {
+                    int hashable = held - closing.length;
+                    hasher.putBytes(buffer, 0, hashable);
+                    size += hashable;
+                    System.arraycopy(buffer, hashable, buffer, 0, closing.length);
+                    held = closing.length;
+                }
+            }
+
+            if (held != closing.length || !Arrays.equals(Arrays.copyOf(buffer, held), closing))
+            {
+                sendError(exchange, 400);
+                return;
+            }
+        }
+        finally
+        {
+            uploadsInFlight.decrementAndGet();
+        }
+
+        tree.stageUpload(documentId, size, hasher.hash().toString());
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            writer.beginObject();
+            writer.name("singleFile").beginObject();
+            writer.name("fileChecksum").value("checksum-" + documentId);
+            writer.name("wrappingKey").value("key-" + documentId);
+            writer.name("referenceChecksum").value("reference-" + documentId);
+            writer.name("size").value(size);
+            writer.name("receipt").value("receipt-" + documentId);
+            writer.endObject();
+            writer.endObject();
+        }
+    }
+
+    private void handleUpdateDocuments(HttpExchange exchange, byte[] body) throws IOException
+    {
+        JsonObject request = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+        String documentId = request.get("document_id").getAsString();
+        JsonObject data = request.getAsJsonObject("data");
+        JsonObject path = request.getAsJsonObject("path");
+        SyntheticDriveTree.UploadedFile staged = tree.getStagedUpload(documentId);
+        if (!"add_file".equals(request.get("command").getAsString()) || staged == null
+            || !("receipt-" + documentId).equals(data.get("receipt").getAsString())
+            || !("checksum-" + documentId).equals(data.get("signature").getAsString())
+            || data.get("size").getAsLong() != staged.getSize())
+        {
+            sendError(exchange, 400);
+            return;
+        }
+
+        SyntheticDriveTree.UploadedFile file = tree.addUpload(documentId,
+            path.get("starting_document_id").getAsString(), path.get("path").getAsString(),
+            Instant.ofEpochMilli(request.get("mtime").getAsLong()));
+        if (file == null)
+        {
+            sendError(exchange, 404);
+            return;
+        }
+
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            writer.beginObject();
+            writer.name("results").beginArray();
+            writer.beginObject();
+            writer.name("document").beginObject();
+            writer.name("document_id").value(documentId);
+            writer.name("name").value(file.getName());
+            writer.name("size").value(file.getSize());
+            writer.endObject();
+            writer.name("status").beginObject();
+            writer.name("status_code").value(0);
+            writer.name("error_message").value("");
+            writer.endObject();
+            writer.endObject();
+            writer.endArray();
+            writer.endObject();
+        }
+    }
+
+    private void handleUbiquityItem(HttpExchange exchange, byte[] body) throws IOException
+    {
+        String itemId = lastSegment(exchange);
+        if (!tree.hasUbiquityItem(itemId, false))
+        {
+            sendError(exchange, 404);
+            return;
+        }
+
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            tree.writeUbiquityItem(writer, itemId);
+        }
+    }
+
+    private void handleUbiquityParent(HttpExchange exchange, byte[] body) throws IOException
+    {
+        String itemId = lastSegment(exchange);
+        if (!tree.hasUbiquityItem(itemId, true))
+        {
+            sendError(exchange, 404);
+            return;
+        }
+
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            tree.writeUbiquityChildren(writer, itemId);
+        }
+    }
+
+    private void handleUbiquityFile(HttpExchange exchange, byte[] body) throws IOException
+    {
+        sendContent(exchange, lastSegment(exchange));
+    }
+
+    private void handlePhotosStartup(HttpExchange exchange, byte[] body) throws IOException
+    {
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            writer.beginObject();
+            writer.name("syncToken").value("sync-" + sessionToken);
+            writer.endObject();
+        }
+    }
+
+    private void handlePhotosFolders(HttpExchange exchange, byte[] body) throws IOException
+    {
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            writer.beginObject();
+            writer.name("folders").beginArray();
+            for (int i = 0; i < albumCount; i++)
+            {
+                writer.beginObject();
+                writer.name("type").value("album");
+                writer.name("serverId").value(i == 0 ? "all-photos" : "album-" + i);
+                writer.name("contentsType").value("asset");
+                writer.name("dateRange").value("2016-01-01T00:00:00Z/2016-08-01T00:00:00Z");
+                writer.name("isServerGenerated").value(i == 0);
+                writer.name("childFolderIds").beginArray().endArray();
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+    }
+
+    private void handleFindMyIPhoneRefresh(HttpExchange exchange, byte[] body) throws IOException
+    {
+        try (JsonWriter writer = beginJson(exchange))
+        {
+            writer.beginObject();
+            writer.name("content").beginArray();
+            for (int i = 0; i < deviceCount; i++)
+            {
+                writer.beginObject();
+                writer.name("id").value("device-" + i);
+                writer.name("name").value("iPhone " + i);
+                writer.name("deviceDisplayName").value("iPhone 7");
+                writer.name("deviceClass").value("iPhone");
+                writer.name("rawDeviceModel").value("iPhone9,3");
+                writer.name("deviceStatus").value(200);
+                writer.name("batteryLevel").value(0.5 + (i % 50) / 100.0);
+                writer.name("batteryStatus").value("NotCharging");
+                writer.name("locationEnabled").value(true);
+                writer.name("location").beginObject();
+                writer.name("latitude").value(-33.86 + i / 1000.0);
+                writer.name("longitude").value(151.21);
+                writer.name("positionType").value("GPS");
+                writer.name("horizontalAccuracy").value(65.0);
+                writer.name("timeStamp").value("1470000000000");
+                writer.endObject();
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+    }
+
+    /**
+     * Streams synthetic file content, honouring a single 'Range' if present.
+     *
+     * @param exchange   the exchange.
+     * @param documentId the document ID.
+     * @throws IOException if the response can't be written.
+     */
+    private void sendContent(HttpExchange exchange, String documentId) throws IOException
+    {
+        if (!tree.isFile(documentId))
+        {
+            sendError(exchange, 404);
+            return;
+        }
+
+        long size = tree.getFileSize();
+        long start = 0;
+        long end = size - 1;
+        int status = 200;
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && rangesSupported)
+        {
+            Matcher matcher = RANGE_PATTERN.matcher(range.trim());
+            if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty()))
+            {
+                sendError(exchange, 416);
+                return;
+            }
+
+            if (matcher.group(1).isEmpty())
+            {
+                start = Math.max(0, size - Long.parseLong(matcher.group(2)));
+            } else
+            {
+                start = Long.parseLong(matcher.group(1));
+                if (!matcher.group(2).isEmpty())
+                {
+                    end = Math.min(end, Long.parseLong(matcher.group(2)));
+                }
+            }
+
+            if (start >= size || start > end)
+            {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+                sendError(exchange, 416);
+                return;
+            }
+
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+        }
+
+        long length = end - start + 1;
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().set("Accept-Ranges", rangesSupported ? "bytes" : "none");
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+
+        long dropAt = dropContentAfter.getAndSet(-1);
+        long stop = dropAt >= 0 ? Math.min(end, start + dropAt - 1) : end;
+        try (OutputStream outputStream = exchange.getResponseBody())
+        {
+            byte[] buffer = new byte[CONTENT_BUFFER_SIZE];
+            long offset = start;
+            while (offset <= stop)
+            {
+                int count = (int) Math.min(buffer.length, stop - offset + 1);
+                for (int i = 0; i < count; i++)
+                {
+                    buffer[i] = SyntheticDriveTree.contentByte(documentId, offset + i);
+                }
+                outputStream.write(buffer, 0, count);
+                offset += count;
+            }
+
+            if (stop < end)
+            {
+                outputStream.flush();
+                throw new ConnectionDropException();
+            }
+        }
+    }
+
+    /**
+     * Starts a chunked JSON response.
+     *
+     * @param exchange the exchange.
+     * @return the writer for the body.
+     * @throws IOException if the headers can't be written.
+     */
+    private static JsonWriter beginJson(HttpExchange exchange) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(200, 0);
+        return new JsonWriter(new BufferedWriter(
+            new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), CONTENT_BUFFER_SIZE));
+    }
+
+    /**
+     * Sends an error response in the shape iCloud uses.
+     *
+     * @param exchange the exchange.
+     * @param status   the status code.
+     */
+    private static void sendError(HttpExchange exchange, int status)
+    {
+        byte[] body = ("{\"success\":false,\"error\":" + status + ",\"reason\":\"simulated\"}")
+            .getBytes(StandardCharsets.UTF_8);
+        try (OutputStream outputStream = exchange.getResponseBody())
+        {
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+            exchange.sendResponseHeaders(status, body.length);
+            outputStream.write(body);
+        }
+        catch (IOException e)
+        {
+            // The client has gone away
+        }
+    }
+
+    /**
+     * Gets a query parameter from the request.
+     *
+     * @param exchange the exchange.
+     * @param name     the parameter name.
+     * @return the value, or {@code null} if the parameter is missing.
+     */
+    private static String queryParameter(HttpExchange exchange, String name)
+    {
+        return new URIBuilder(exchange.getRequestURI()).getQueryParams().stream()
+            .filter(pair -> name.equals(pair.getName()))
+            .map(NameValuePair::getValue)
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * Gets the last segment of the request path.
+     *
+     * @param exchange the exchange.
+     * @return the segment.
+     */
+    private static String lastSegment(HttpExchange exchange)
+    {
+        String path = exchange.getRequestURI().getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Handles a request once the route behaviour has been applied.
+     */
+    private interface RouteHandler
+    {
+        void handle(HttpExchange exchange, byte[] body) throws IOException;
+    }
+
+    /**
+     * A builder for {@link ICloudSimulator}.
+     */
+    public static class Builder
+    {
+        private int folderFanOut = 10;
+        private int filesPerFolder = 10;
+        private int depth = 2;
+        private long fileSize = 4096;
+        private int deviceCount = 3;
+        private int albumCount = 5;
+        private int backlog = 1024;
+        private String dsid = "10000000001";
+        private Duration sessionCookieMaxAge;
+        private final Map<SimulatorRoute, RouteBehaviour> behaviours = new EnumMap<>(SimulatorRoute.class);
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Sets the number of sub-folders in each folder above the maximum depth.
+         *
+         * @param folderFanOut the number of sub-folders.
+         * @return this builder.
+         */
+        public Builder folderFanOut(int folderFanOut)
+        {
+            Preconditions.checkArgument(folderFanOut >= 0, "folderFanOut must not be negative");
+            this.folderFanOut = folderFanOut;
+            return this;
+        }
+
+        /**
+         * Sets the number of files in each folder.
+         *
+         * @param filesPerFolder the number of files.
+         * @return this builder.
+         */
+        public Builder filesPerFolder(int filesPerFolder)
+        {
+            Preconditions.checkArgument(filesPerFolder >= 0, "filesPerFolder must not be negative");
+            this.filesPerFolder = filesPerFolder;
+            return this;
+        }
+
+        /**
+         * Sets the depth of the deepest folders, the root being at depth zero. For example a fan-out of 10 and a depth
+         * of 6 gives 1,111,111 folders.
+         *
+         * @param depth the depth.
+         * @return this builder.
+         */
+        public Builder depth(int depth)
+        {
+            Preconditions.checkArgument(depth >= 0, "depth must not be negative");
+            this.depth = depth;
+            return this;
+        }
+
+        /**
+         * Sets the size of every file. Content is generated while streaming, so sizes of many gigabytes are fine.
+         *
+         * @param fileSize the size in bytes.
+         * @return this builder.
+         */
+        public Builder fileSize(long fileSize)
+        {
+            Preconditions.checkArgument(fileSize >= 0, "fileSize must not be negative");
+            this.fileSize = fileSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of devices returned by 'find my iPhone'.
+         *
+         * @param deviceCount the number of devices.
+         * @return this builder.
+         */
+        public Builder deviceCount(int deviceCount)
+        {
+            this.deviceCount = deviceCount;
+            return this;
+        }
+
+        /**
+         * Sets the number of photo albums, the first being 'all-photos'.
+         *
+         * @param albumCount the number of albums.
+         * @return this builder.
+         */
+        public Builder albumCount(int albumCount)
+        {
+            this.albumCount = albumCount;
+            return this;
+        }
+
+        /**
+         * Sets the session ID returned by login.
+         *
+         * @param dsid the session ID.
+         * @return this builder.
+         */
+        public Builder dsid(String dsid)
+        {
+            this.dsid = dsid;
+            return this;
+        }
+
+        /**
+         * Sets the lifetime of the session cookie set by login and validate. By default it is a session cookie,
+         * without any expiry.
+         *
+         * @param sessionCookieMaxAge the lifetime, or {@code null} for none.
+         * @return this builder.
+         */
+        public Builder sessionCookieMaxAge(Duration sessionCookieMaxAge)
+        {
+            this.sessionCookieMaxAge = sessionCookieMaxAge;
+            return this;
+        }
+
+        /**
+         * Sets the server socket backlog.
+         *
+         * @param backlog the backlog.
+         * @return this builder.
+         */
+        public Builder backlog(int backlog)
+        {
+            this.backlog = backlog;
+            return this;
+        }
+
+        /**
+         * Sets the latency and faults for a route.
+         *
+         * @param route     the route.
+         * @param behaviour the behaviour.
+         * @return this builder.
+         */
+        public Builder behaviour(SimulatorRoute route, RouteBehaviour behaviour)
+        {
+            behaviours.put(route, behaviour);
+            return this;
+        }
+
+        /**
+         * Starts the simulator on a loopback port.
+         *
+         * @return the simulator.
+         * @throws IOException if the server can't be started.
+         */
+        public ICloudSimulator start() throws IOException
+        {
+            return new ICloudSimulator(this);
+        }
+    }
+
+    /**
+     * Thrown by a handler to drop the connection part way through a response.
+     */
+    private static class ConnectionDropException extends IOException
+    {
+        private ConnectionDropException()
+        {
+            super("Simulated connection drop");
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.simulator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The latency and faults injected into a {@link SimulatorRoute}. Instances are immutable, except for the rate limiter
+ * state, and are created with {@link #builder()}.
+ */
+public class RouteBehaviour
+{
+    /**
+     * A behaviour with no latency and no faults.
+     */
+    public static final RouteBehaviour NONE = builder().build();
+
+    /**
+     * The fixed latency added to every request.
+     */
+    private final Duration latency;
+
+    /**
+     * The maximum random latency added on top of {@link #latency}.
+     */
+    private final Duration jitter;
+
+    /**
+     * The probability that a request takes {@link #tailLatency} instead of the normal latency.
+     */
+    private final double tailProbability;
+
+    /**
+     * The latency of tail requests.
+     */
+    private final Duration tailLatency;
+
+    /**
+     * The probability that a request is rejected with {@link #faultStatus}.
+     */
+    private final double faultProbability;
+
+    /**
+     * The status code for injected faults, e.g. 429 or 503.
+     */
+    private final int faultStatus;
+
+    /**
+     * The 'Retry-After' value sent with throttled responses, or {@code null} for none.
+     */
+    private final Duration retryAfter;
+
+    /**
+     * The rate limiter, or {@code null} for no rate limit.
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Creates a new behaviour from the builder.
+     *
+     * @param builder the builder.
+     */
+    private RouteBehaviour(Builder builder)
+    {
+        this.latency = builder.latency;
+        this.jitter = builder.jitter;
+        this.tailProbability = builder.tailProbability;
+        this.tailLatency = builder.tailLatency;
+        this.faultProbability = builder.faultProbability;
+        this.faultStatus = builder.faultStatus;
+        this.retryAfter = builder.retryAfter;
+        this.rateLimiter = builder.requestsPerSecond > 0 ? RateLimiter.create(builder.requestsPerSecond) : null;
+    }
+
+    /**
+     * Creates a new builder.
+     *
+     * @return the builder.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Picks the latency for a single request.
+     *
+     * @return the latency in milliseconds.
+     */
+    long nextLatencyMillis()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (tailProbability > 0 && random.nextDouble() < tailProbability)
+        {
+            return tailLatency.toMillis();
+        }
+
+        long jitterMillis = jitter.toMillis();
+        return latency.toMillis() + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+    }
+
+    /**
+     * Decides whether a single request should be rejected.
+     *
+     * @return the status code to reject the request with, or zero to serve it.
+     */
+    int nextRejection()
+    {
+        if (rateLimiter != null && !rateLimiter.tryAcquire())
+        {
+            return 429;
+        }
+
+        if (faultProbability > 0 && ThreadLocalRandom.current().nextDouble() < faultProbability)
+        {
+            return faultStatus;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Gets the 'Retry-After' value sent with rejected responses.
+     *
+     * @return the value, or {@code null} for none.
+     */
+    Duration getRetryAfter()
+    {
+        return retryAfter;
+    }
+
+    /**
+     * A builder for {@link RouteBehaviour}.
+     */
+    public static class Builder
+    {
+        private Duration latency = Duration.ZERO;
+        private Duration jitter = Duration.ZERO;
+        private double tailProbability;
+        private Duration tailLatency = Duration.ZERO;
+        private double faultProbability;
+        private int faultStatus = 503;
+        private Duration retryAfter;
+        private double requestsPerSecond;
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Sets the latency of each request.
+         *
+         * @param latency the fixed latency.
+         * @param jitter  the maximum uniformly distributed latency added on top.
+         * @return this builder.
+         */
+        public Builder latency(Duration latency, Duration jitter)
+        {
+            this.latency = latency;
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Makes a fraction of requests much slower than the rest, to model tail latency.
+         *
+         * @param probability the fraction of slow requests.
+         * @param tailLatency the latency of slow requests.
+         * @return this builder.
+         */
+        public Builder tailLatency(double probability, Duration tailLatency)
+        {
+            Preconditions.checkArgument(probability >= 0 && probability <= 1, "probability must be in [0, 1]");
+            this.tailProbability = probability;
+            this.tailLatency = tailLatency;
+            return this;
+        }
+
+        /**
+         * Rejects a fraction of requests, e.g. with '503 Service Unavailable'.
+         *
+         * @param probability the fraction of rejected requests.
+         * @param status      the status code.
+         * @return this builder.
+         */
+        public Builder fault(double probability, int status)
+        {
+            Preconditions.checkArgument(probability >= 0 && probability <= 1, "probability must be in [0, 1]");
+            this.faultProbability = probability;
+            this.faultStatus = status;
+            return this;
+        }
+
+        /**
+         * Rejects requests beyond the given rate with '429 Too Many Requests'.
+         *
+         * @param requestsPerSecond the sustained rate.
+         * @return this builder.
+         */
+        public Builder rateLimit(double requestsPerSecond)
+        {
+            Preconditions.checkArgument(requestsPerSecond > 0, "requestsPerSecond must be positive");
+            this.requestsPerSecond = requestsPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets the 'Retry-After' header sent with rejected responses.
+         *
+         * @param retryAfter the delay, rounded up to whole seconds.
+         * @return this builder.
+         */
+        public Builder retryAfter(Duration retryAfter)
+        {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        /**
+         * Builds the behaviour.
+         *
+         * @return the behaviour.
+         */
+        public RouteBehaviour build()
+        {
+            return new RouteBehaviour(this);
+        }
+    }
+}
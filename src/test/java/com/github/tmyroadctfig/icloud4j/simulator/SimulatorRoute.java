@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.simulator;
+
+/**
+ * The iCloud routes served by the {@link ICloudSimulator}.
+ */
+public enum SimulatorRoute
+{
+    /**
+     * setup/ws/1/login
+     */
+    LOGIN,
+
+    /**
+     * setup/ws/1/validate
+     */
+    VALIDATE,
+
+    /**
+     * setup/ws/1/listDevices
+     */
+    LIST_DEVICES,
+
+    /**
+     * setup/ws/1/storageUsageInfo
+     */
+    STORAGE_USAGE,
+
+    /**
+     * drivews/retrieveItemDetailsInFolders
+     */
+    DRIVE_ITEM_DETAILS,
+
+    /**
+     * docws/ws/{zone}/download/by_id
+     */
+    DOCS_DOWNLOAD_BY_ID,
+
+    /**
+     * The content URL returned by {@link #DOCS_DOWNLOAD_BY_ID}.
+     */
+    DOCS_CONTENT,
+
+    /**
+     * docws/ws/{zone}/upload/web
+     */
+    DOCS_UPLOAD_WEB,
+
+    /**
+     * The upload URL returned by {@link #DOCS_UPLOAD_WEB}.
+     */
+    DOCS_UPLOAD_CONTENT,
+
+    /**
+     * docws/ws/{zone}/update/documents
+     */
+    DOCS_UPDATE_DOCUMENTS,
+
+    /**
+     * ubiquity/ws/{dsid}/item/{id}
+     */
+    UBIQUITY_ITEM,
+
+    /**
+     * ubiquity/ws/{dsid}/parent/{id}
+     */
+    UBIQUITY_PARENT,
+
+    /**
+     * ubiquity/ws/{dsid}/file/{id}
+     */
+    UBIQUITY_FILE,
+
+    /**
+     * photos/ph/startup
+     */
+    PHOTOS_STARTUP,
+
+    /**
+     * photos/ph/folders
+     */
+    PHOTOS_FOLDERS,
+
+    /**
+     * findme/fmipservice/client/web/refreshClient
+     */
+    FIND_MY_IPHONE_REFRESH
+}
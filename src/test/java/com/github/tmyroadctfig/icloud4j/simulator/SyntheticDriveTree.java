@@ -0,0 +1,832 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.simulator;
+
+import com.google.gson.stream.JsonWriter;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * A synthetic, deterministic folder tree served by the {@link ICloudSimulator} for both iCloud Drive and ubiquity.
+ *
+ * <p>Nodes are never stored: every folder has the same number of sub-folders and files, and a node's details are
+ * derived from its ID, so trees with millions of nodes cost no memory. Folder IDs encode the path from the root, e.g.
+ * "D3-0-7" is the eighth sub-folder of the first sub-folder of the fourth folder in the root, and "F3-0_2" is the
+ * third file in folder "D3-0". The root is "root" in iCloud Drive and "0" in ubiquity.</p>
+ *
+ * <p>Files uploaded to iCloud Drive are the exception: they are kept, without their content, and listed in their
+ * folders alongside the synthetic files.</p>
+ */
+public class SyntheticDriveTree
+{
+    /**
+     * The iCloud Drive zone.
+     */
+    public static final String ZONE = "com.apple.CloudDocs";
+
+    /**
+     * The drive webservice ID of the root folder.
+     */
+    public static final String ROOT_ID = "FOLDER::" + ZONE + "::root";
+
+    /**
+     * The time all synthetic timestamps are relative to.
+     */
+    private static final Instant BASE_TIME = Instant.parse("2016-06-22T05:21:34Z");
+
+    /**
+     * The number of sub-folders in each folder above the maximum depth.
+     */
+    private final int folderFanOut;
+
+    /**
+     * The number of files in each folder.
+     */
+    private final int filesPerFolder;
+
+    /**
+     * The depth of the deepest folders, the root being at depth zero.
+     */
+    private final int depth;
+
+    /**
+     * The size of each file in bytes.
+     */
+    private final long fileSize;
+
+    /**
+     * The number of times each node has been modified, keyed by node token.
+     */
+    private final Map<String, Integer> generations = new ConcurrentHashMap<>();
+
+    /**
+     * The number of document IDs reserved for uploads.
+     */
+    private final AtomicInteger uploadCount = new AtomicInteger();
+
+    /**
+     * The content stored by uploads which have not yet been added to a folder, keyed by document ID.
+     */
+    private final Map<String, UploadedFile> stagedUploads = new ConcurrentHashMap<>();
+
+    /**
+     * The files added by uploads, keyed by document ID. Unlike the synthetic nodes these are stored, but only their
+     * size and digest are kept.
+     */
+    private final Map<String, UploadedFile> uploadedFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new tree.
+     *
+     * @param folderFanOut   the number of sub-folders in each folder above the maximum depth.
+     * @param filesPerFolder the number of files in each folder.
+     * @param depth          the depth of the deepest folders.
+     * @param fileSize       the size of each file in bytes.
+     */
+    SyntheticDriveTree(int folderFanOut, int filesPerFolder, int depth, long fileSize)
+    {
+        this.folderFanOut = folderFanOut;
+        this.filesPerFolder = filesPerFolder;
+        this.depth = depth;
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * Gets the total number of folders, including the root.
+     *
+     * @return the number of folders.
+     */
+    public long getFolderCount()
+    {
+        long count = 0;
+        long level = 1;
+        for (int i = 0; i <= depth; i++)
+        {
+            count += level;
+            level *= folderFanOut;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the total number of nodes, including the root.
+     *
+     * @return the number of nodes.
+     */
+    public long getNodeCount()
+    {
+        return getFolderCount() * (1 + filesPerFolder);
+    }
+
+    /**
+     * Gets the size of each file.
+     *
+     * @return the size in bytes.
+     */
+    public long getFileSize()
+    {
+        return fileSize;
+    }
+
+    /**
+     * Marks a node as modified, changing its etag and change date.
+     *
+     * @param drivewsid the drive webservice ID of the node.
+     */
+    public void touch(String drivewsid)
+    {
+        generations.merge(tokenOf(drivewsid), 1, Integer::sum);
+    }
+
+    /**
+     * Gets the drive webservice ID of the folder at the given path.
+     *
+     * @param path the sub-folder index at each level, empty for the root.
+     * @return the ID.
+     */
+    public static String folderId(int... path)
+    {
+        if (path.length == 0)
+        {
+            return ROOT_ID;
+        }
+
+        StringBuilder builder = new StringBuilder("FOLDER::").append(ZONE).append("::D");
+        for (int i = 0; i < path.length; i++)
+        {
+            builder.append(i == 0 ? "" : "-").append(path[i]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Gets a file added by an upload.
+     *
+     * @param documentId the document ID returned for the upload.
+     * @return the file, or {@code null} if no upload has been added with that ID.
+     */
+    @Nullable
+    public UploadedFile getUploadedFile(String documentId)
+    {
+        return uploadedFiles.get(documentId);
+    }
+
+    /**
+     * Gets the number of files added by uploads.
+     *
+     * @return the number of files.
+     */
+    public int getUploadedFileCount()
+    {
+        return uploadedFiles.size();
+    }
+
+    /**
+     * Reserves a document ID for an upload, e.g. "U1".
+     *
+     * @return the ID.
+     */
+    String reserveUpload()
+    {
+        return "U" + uploadCount.incrementAndGet();
+    }
+
+    /**
+     * Checks whether a document ID has been reserved for an upload.
+     *
+     * @param documentId the document ID.
+     * @return {@code true} if the ID was reserved.
+     */
+    boolean isReservedUpload(String documentId)
+    {
+        if (!documentId.startsWith("U"))
+        {
+            return false;
+        }
+
+        try
+        {
+            int index = Integer.parseInt(documentId.substring(1));
+            return index > 0 && index <= uploadCount.get();
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Records the content posted for an upload.
+     *
+     * @param documentId the reserved document ID.
+     * @param size       the content size.
+     * @param sha256     the SHA-256 digest of the content, as lower-case hex.
+     */
+    void stageUpload(String documentId, long size, String sha256)
+    {
+        stagedUploads.put(documentId, new UploadedFile(documentId, null, null, size, sha256, null));
+    }
+
+    /**
+     * Gets the content posted for an upload which has not yet been added to a folder.
+     *
+     * @param documentId the reserved document ID.
+     * @return the content, or {@code null} if none has been posted.
+     */
+    @Nullable
+    UploadedFile getStagedUpload(String documentId)
+    {
+        return stagedUploads.get(documentId);
+    }
+
+    /**
+     * Adds the content posted for an upload to a folder.
+     *
+     * @param documentId  the reserved document ID.
+     * @param folderToken the docwsid of the folder, e.g. "root" or "D3-0".
+     * @param name        the file name, including any extension.
+     * @param modified    the modification time.
+     * @return the new file, or {@code null} if no content was posted or the folder does not exist.
+     */
+    @Nullable
+    UploadedFile addUpload(String documentId, String folderToken, String name, Instant modified)
+    {
+        NodeRef folder = NodeRef.parse(folderToken);
+        if (folder == null || folder.isFile() || !exists(folder))
+        {
+            return null;
+        }
+
+        UploadedFile staged = stagedUploads.remove(documentId);
+        if (staged == null)
+        {
+            return null;
+        }
+
+        UploadedFile file = new UploadedFile(documentId, folder.token, name, staged.size, staged.sha256, modified);
+        uploadedFiles.put(documentId, file);
+        return file;
+    }
+
+    /**
+     * Gets the file content byte at the given offset. The content is derived from the file ID, so any range of any file
+     * can be generated and verified without storing it.
+     *
+     * @param documentId the document ID, e.g. "F3-0_2".
+     * @param offset     the offset.
+     * @return the byte.
+     */
+    public static byte contentByte(String documentId, long offset)
+    {
+        long x = (offset + documentId.hashCode()) * 0x9E3779B97F4A7C15L;
+        return (byte) (x >>> 56);
+    }
+
+    /**
+     * Checks whether a document ID refers to a file in this tree.
+     *
+     * @param documentId the document ID, e.g. "F3-0_2".
+     * @return {@code true} if the file exists.
+     */
+    boolean isFile(String documentId)
+    {
+        NodeRef node = NodeRef.parse(documentId);
+        return node != null && node.isFile() && exists(node);
+    }
+
+    /**
+     * Writes the 'retrieveItemDetailsInFolders' entry for a node.
+     *
+     * @param writer    the writer.
+     * @param drivewsid the drive webservice ID.
+     * @throws IOException if the JSON can't be written.
+     */
+    void writeDriveDetails(JsonWriter writer, String drivewsid) throws IOException
+    {
+        UploadedFile uploadedFile = uploadedFiles.get(tokenOf(drivewsid));
+        if (uploadedFile != null)
+        {
+            writer.beginObject();
+            writeDriveFields(writer, uploadedFile);
+            writer.endObject();
+            return;
+        }
+
+        NodeRef node = NodeRef.parse(tokenOf(drivewsid));
+        if (node == null || !exists(node))
+        {
+            writer.beginObject();
+            writer.name("drivewsid").value(drivewsid);
+            writer.name("status").value("ID_INVALID");
+            writer.endObject();
+            return;
+        }
+
+        writer.beginObject();
+        writeDriveFields(writer, node);
+        if (!node.isFile())
+        {
+            writer.name("status").value("OK");
+            writer.name("items").beginArray();
+            for (int i = 0; i < childFolderCount(node); i++)
+            {
+                writer.beginObject();
+                writeDriveFields(writer, node.childFolder(i));
+                writer.endObject();
+            }
+            for (int i = 0; i < filesPerFolder; i++)
+            {
+                writer.beginObject();
+                writeDriveFields(writer, node.file(i));
+                writer.endObject();
+            }
+            for (UploadedFile child : uploadsIn(node))
+            {
+                writer.beginObject();
+                writeDriveFields(writer, child);
+                writer.endObject();
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Checks whether a ubiquity item exists in this tree.
+     *
+     * @param itemId the ubiquity item ID.
+     * @param folder {@code true} to only accept folders.
+     * @return {@code true} if the item exists.
+     */
+    boolean hasUbiquityItem(String itemId, boolean folder)
+    {
+        NodeRef node = parseUbiquityId(itemId);
+        return node != null && exists(node) && !(folder && node.isFile());
+    }
+
+    /**
+     * Writes the ubiquity details for a node, which must exist.
+     *
+     * @param writer the writer.
+     * @param itemId the ubiquity item ID.
+     * @throws IOException if the JSON can't be written.
+     */
+    void writeUbiquityItem(JsonWriter writer, String itemId) throws IOException
+    {
+        writeUbiquityFields(writer, parseUbiquityId(itemId));
+    }
+
+    /**
+     * Writes the ubiquity children of a folder, which must exist.
+     *
+     * @param writer the writer.
+     * @param itemId the ubiquity item ID of the folder.
+     * @throws IOException if the JSON can't be written.
+     */
+    void writeUbiquityChildren(JsonWriter writer, String itemId) throws IOException
+    {
+        NodeRef node = parseUbiquityId(itemId);
+        writer.beginObject();
+        writer.name("item_list").beginArray();
+        for (int i = 0; i < childFolderCount(node); i++)
+        {
+            writeUbiquityFields(writer, node.childFolder(i));
+        }
+        for (int i = 0; i < filesPerFolder; i++)
+        {
+            writeUbiquityFields(writer, node.file(i));
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    /**
+     * Parses a ubiquity item ID, where the root is "0".
+     *
+     * @param itemId the item ID.
+     * @return the node, or {@code null} if the ID is malformed.
+     */
+    @Nullable
+    private static NodeRef parseUbiquityId(String itemId)
+    {
+        return NodeRef.parse("0".equals(itemId) ? "root" : itemId);
+    }
+
+    /**
+     * Writes the iCloud Drive fields of a node.
+     *
+     * @param writer the writer.
+     * @param node   the node.
+     * @throws IOException if the JSON can't be written.
+     */
+    private void writeDriveFields(JsonWriter writer, NodeRef node) throws IOException
+    {
+        String drivewsid = (node.isFile() ? "FILE::" : "FOLDER::") + ZONE + "::" + node.token;
+        writer.name("dateCreated").value(BASE_TIME.plusSeconds(seconds(node)).toString());
+        writer.name("drivewsid").value(drivewsid);
+        writer.name("docwsid").value(node.token);
+        writer.name("zone").value(ZONE);
+        writer.name("name").value(node.isFile() ? "File " + node.fileIndex : node.isRoot() ? "" : "Folder " + node.lastIndex());
+        if (!node.isRoot())
+        {
+            writer.name("parentId").value("FOLDER::" + ZONE + "::" + node.parent().token);
+        }
+        writer.name("dateChanged").value(changeDate(node));
+        writer.name("etag").value(etag(node));
+        if (node.isFile())
+        {
+            writer.name("dateModified").value(changeDate(node));
+            writer.name("size").value(fileSize);
+            writer.name("extension").value("bin");
+            writer.name("type").value("FILE");
+        } else
+        {
+            int uploads = uploadsIn(node).size();
+            int children = childFolderCount(node) + filesPerFolder + uploads;
+            writer.name("type").value("FOLDER");
+            writer.name("fileCount").value(filesPerFolder + uploads);
+            writer.name("directChildrenCount").value(children);
+            writer.name("numberOfItems").value(children);
+        }
+    }
+
+    /**
+     * Writes the iCloud Drive fields of an uploaded file.
+     *
+     * @param writer the writer.
+     * @param file   the file.
+     * @throws IOException if the JSON can't be written.
+     */
+    private static void writeDriveFields(JsonWriter writer, UploadedFile file) throws IOException
+    {
+        int extensionStart = file.name.lastIndexOf('.');
+        writer.name("dateCreated").value(file.modified.toString());
+        writer.name("drivewsid").value("FILE::" + ZONE + "::" + file.documentId);
+        writer.name("docwsid").value(file.documentId);
+        writer.name("zone").value(ZONE);
+        writer.name("name").value(extensionStart > 0 ? file.name.substring(0, extensionStart) : file.name);
+        writer.name("parentId").value("FOLDER::" + ZONE + "::" + file.folderToken);
+        writer.name("dateChanged").value(file.modified.toString());
+        writer.name("etag").value(file.sha256.substring(0, 8) + "::0");
+        writer.name("dateModified").value(file.modified.toString());
+        writer.name("size").value(file.size);
+        if (extensionStart > 0)
+        {
+            writer.name("extension").value(file.name.substring(extensionStart + 1));
+        }
+        writer.name("type").value("FILE");
+    }
+
+    /**
+     * Gets the files uploaded into a folder.
+     *
+     * @param folder the folder.
+     * @return the files, in upload order.
+     */
+    private List<UploadedFile> uploadsIn(NodeRef folder)
+    {
+        if (uploadedFiles.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+
+        return uploadedFiles.values().stream()
+            .filter(file -> folder.token.equals(file.folderToken))
+            .sorted(Comparator.comparingInt(file -> Integer.parseInt(file.documentId.substring(1))))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Writes the ubiquity fields of a node.
+     *
+     * @param writer the writer.
+     * @param node   the node.
+     * @throws IOException if the JSON can't be written.
+     */
+    private void writeUbiquityFields(JsonWriter writer, NodeRef node) throws IOException
+    {
+        writer.beginObject();
+        writer.name("peer_id").value(0);
+        writer.name("in_cloud").value(true);
+        writer.name("item_id").value(node.isRoot() ? "0" : node.token);
+        writer.name("name").value(node.isFile() ? "File " + node.fileIndex + ".bin" : node.isRoot() ? "" : "Folder " + node.lastIndex());
+        if (!node.isRoot())
+        {
+            writer.name("parent_item_id").value(node.parent().isRoot() ? "0" : node.parent().token);
+        }
+        writer.name("type").value(node.isFile() ? "file" : "folder");
+        writer.name("modified").value(changeDate(node));
+        writer.name("size").value(node.isFile() ? fileSize : 0);
+        writer.name("change_id").value(etag(node));
+        writer.endObject();
+    }
+
+    /**
+     * Checks whether a parsed node is within the bounds of this tree.
+     *
+     * @param node the node.
+     * @return {@code true} if the node exists.
+     */
+    private boolean exists(NodeRef node)
+    {
+        if (node.path.length > depth || (node.isFile() && node.fileIndex >= filesPerFolder))
+        {
+            return false;
+        }
+
+        for (int index : node.path)
+        {
+            if (index >= folderFanOut)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of sub-folders of a folder.
+     *
+     * @param node the folder.
+     * @return the number of sub-folders.
+     */
+    private int childFolderCount(NodeRef node)
+    {
+        return node.path.length < depth ? folderFanOut : 0;
+    }
+
+    /**
+     * Gets the etag of a node.
+     *
+     * @param node the node.
+     * @return the etag.
+     */
+    private String etag(NodeRef node)
+    {
+        return Integer.toString(node.token.hashCode() & 0xfffff, 36) + "::" + generations.getOrDefault(node.token, 0);
+    }
+
+    /**
+     * Gets the last change date of a node.
+     *
+     * @param node the node.
+     * @return the date.
+     */
+    private String changeDate(NodeRef node)
+    {
+        return BASE_TIME.plusSeconds(seconds(node) + 60L * generations.getOrDefault(node.token, 0)).toString();
+    }
+
+    /**
+     * Gets a stable offset in seconds from the base time for a node.
+     *
+     * @param node the node.
+     * @return the offset.
+     */
+    private static long seconds(NodeRef node)
+    {
+        return node.token.hashCode() & 0xffffff;
+    }
+
+    /**
+     * Gets the node token from a drive webservice ID, e.g. "D3-0" from "FOLDER::com.apple.CloudDocs::D3-0".
+     *
+     * @param drivewsid the ID.
+     * @return the token.
+     */
+    private static String tokenOf(String drivewsid)
+    {
+        int separator = drivewsid.lastIndexOf("::");
+        return separator >= 0 ? drivewsid.substring(separator + 2) : drivewsid;
+    }
+
+    /**
+     * A file added by an upload.
+     */
+    public static class UploadedFile
+    {
+        private final String documentId;
+        private final String folderToken;
+        private final String name;
+        private final long size;
+        private final String sha256;
+        private final Instant modified;
+
+        UploadedFile(String documentId, String folderToken, String name, long size, String sha256, Instant modified)
+        {
+            this.documentId = documentId;
+            this.folderToken = folderToken;
+            this.name = name;
+            this.size = size;
+            this.sha256 = sha256;
+            this.modified = modified;
+        }
+
+        /**
+         * Gets the docwsid of the folder the file was added to.
+         *
+         * @return the folder token, e.g. "root" or "D3-0".
+         */
+        public String getFolderToken()
+        {
+            return folderToken;
+        }
+
+        /**
+         * Gets the file name, including any extension.
+         *
+         * @return the name.
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Gets the size of the content received.
+         *
+         * @return the size in bytes.
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * Gets the digest of the content received.
+         *
+         * @return the SHA-256 digest as lower-case hex.
+         */
+        public String getSha256()
+        {
+            return sha256;
+        }
+
+        /**
+         * Gets the modification time sent with the upload.
+         *
+         * @return the time.
+         */
+        public Instant getModified()
+        {
+            return modified;
+        }
+    }
+
+    /**
+     * A parsed node token.
+     */
+    private static class NodeRef
+    {
+        /**
+         * The token, e.g. "root", "D3-0" or "F3-0_2".
+         */
+        final String token;
+
+        /**
+         * The sub-folder index at each level, for the node's folder.
+         */
+        final int[] path;
+
+        /**
+         * The file index, or -1 for a folder.
+         */
+        final int fileIndex;
+
+        NodeRef(int[] path, int fileIndex)
+        {
+            this.path = path;
+            this.fileIndex = fileIndex;
+            this.token = toToken(path, fileIndex);
+        }
+
+        /**
+         * Parses a token.
+         *
+         * @param token the token.
+         * @return the node, or {@code null} if the token is malformed.
+         */
+        @Nullable
+        static NodeRef parse(String token)
+        {
+            if ("root".equals(token))
+            {
+                return new NodeRef(new int[0], -1);
+            }
+
+            try
+            {
+                if (token.startsWith("D") && token.length() > 1)
+                {
+                    return new NodeRef(parsePath(token.substring(1)), -1);
+                }
+
+                if (token.startsWith("F"))
+                {
+                    int separator = token.lastIndexOf('_');
+                    int fileIndex = Integer.parseInt(token.substring(separator + 1));
+                    return fileIndex < 0 ? null : new NodeRef(parsePath(token.substring(1, separator)), fileIndex);
+                }
+            }
+            catch (NumberFormatException | StringIndexOutOfBoundsException e)
+            {
+                return null;
+            }
+
+            return null;
+        }
+
+        private static int[] parsePath(String path)
+        {
+            if (path.isEmpty())
+            {
+                return new int[0];
+            }
+
+            String[] parts = path.split("-");
+            int[] indices = new int[parts.length];
+            for (int i = 0; i < parts.length; i++)
+            {
+                indices[i] = Integer.parseInt(parts[i]);
+                if (indices[i] < 0)
+                {
+                    throw new NumberFormatException(path);
+                }
+            }
+            return indices;
+        }
+
+        private static String toToken(int[] path, int fileIndex)
+        {
+            if (path.length == 0 && fileIndex < 0)
+            {
+                return "root";
+            }
+
+            StringBuilder builder = new StringBuilder(fileIndex < 0 ? "D" : "F");
+            for (int i = 0; i < path.length; i++)
+            {
+                builder.append(i == 0 ? "" : "-").append(path[i]);
+            }
+            if (fileIndex >= 0)
+            {
+                builder.append('_').append(fileIndex);
+            }
+            return builder.toString();
+        }
+
+        boolean isFile()
+        {
+            return fileIndex >= 0;
+        }
+
+        boolean isRoot()
+        {
+            return path.length == 0 && !isFile();
+        }
+
+        int lastIndex()
+        {
+            return path[path.length - 1];
+        }
+
+        NodeRef parent()
+        {
+            return isFile() ? new NodeRef(path, -1) : new NodeRef(Arrays.copyOf(path, path.length - 1), -1);
+        }
+
+        NodeRef childFolder(int index)
+        {
+            int[] childPath = Arrays.copyOf(path, path.length + 1);
+            childPath[path.length] = index;
+            return new NodeRef(childPath, -1);
+        }
+
+        NodeRef file(int index)
+        {
+            return new NodeRef(path, index);
+        }
+    }
+}
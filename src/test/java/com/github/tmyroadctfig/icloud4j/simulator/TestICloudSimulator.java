@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.simulator;
+
+import com.github.tmyroadctfig.icloud4j.DriveNode;
+import com.github.tmyroadctfig.icloud4j.DriveService;
+import com.github.tmyroadctfig.icloud4j.FindMyIPhoneService;
+import com.github.tmyroadctfig.icloud4j.ICloudService;
+import com.github.tmyroadctfig.icloud4j.PhotosService;
+import com.github.tmyroadctfig.icloud4j.UbiquityNode;
+import com.github.tmyroadctfig.icloud4j.UbiquityService;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link ICloudSimulator}, driven through the library.
+ */
+public class TestICloudSimulator
+{
+    @Test
+    public void testDriveListingAndDownload() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder()
+            .folderFanOut(3).filesPerFolder(2).depth(2).fileSize(100_000)
+            .start();
+             ICloudService iCloudService = simulator.login())
+        {
+            DriveService driveService = new DriveService(iCloudService);
+
+            // Act
+            List<DriveNode> children = driveService.getRoot().getChildren();
+            DriveNode file = children.get(children.size() - 1);
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            file.downloadFileData(content);
+
+            // Assert
+            assertThat(children.size(), is(5));
+            assertThat(file.getType(), is("FILE"));
+            assertThat(content.size(), is(100_000));
+            byte[] bytes = content.toByteArray();
+            for (int i = 0; i < bytes.length; i++)
+            {
+                assertThat(bytes[i], is(SyntheticDriveTree.contentByte(file.getNodeDetails().docwsid, i)));
+            }
+            assertThat(simulator.getTree().getFolderCount(), is(13L));
+        }
+    }
+
+    @Test
+    public void testUbiquityPhotosAndFindMyIPhone() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder()
+            .folderFanOut(4).filesPerFolder(1).depth(1).deviceCount(7).albumCount(3)
+            .start();
+             ICloudService iCloudService = simulator.login())
+        {
+            // Act
+            UbiquityNode root = new UbiquityService(iCloudService).getRoot();
+            List<UbiquityNode> children = root.getChildren();
+            List<UbiquityNode> grandChildren = children.get(0).getChildren();
+            PhotosService photosService = new PhotosService(iCloudService);
+
+            // Assert
+            assertThat(children.size(), is(5));
+            assertThat(grandChildren.size(), is(1));
+            assertThat(grandChildren.get(0).getType(), is("file"));
+            assertThat(photosService.getAlbums().size(), is(3));
+            assertThat(photosService.getAllPhotosAlbum().serverId, is("all-photos"));
+            assertThat(new FindMyIPhoneService(iCloudService).getDevices().size(), is(7));
+            assertThat(iCloudService.getStorageUsage().containsKey("storageUsageInfo"), is(true));
+            assertThat(iCloudService.getTrustedDevices().size(), is(1));
+        }
+    }
+
+    @Test
+    public void testThrottlingAndRanges() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().fileSize(1000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            simulator.setBehaviour(SimulatorRoute.STORAGE_USAGE,
+                RouteBehaviour.builder().fault(1.0, 429).retryAfter(Duration.ofMillis(1500)).build());
+            // The library's client retries 429 responses, so the throttled route is called directly
+            HttpURLConnection throttled = (HttpURLConnection)
+                new URL(simulator.getSetupEndPoint() + "/storageUsageInfo").openConnection();
+            HttpGet ranged = new HttpGet(simulator.getBaseUrl() + "/docws/content/F_1");
+            ranged.setHeader("Range", "bytes=990-");
+
+            // Act
+            int throttledStatus = throttled.getResponseCode();
+            String retryAfter = throttled.getHeaderField("Retry-After");
+            int rangedStatus = iCloudService.getHttpClient().execute(ranged, response -> response.getCode());
+            simulator.expireSessions();
+            int expiredStatus = iCloudService.getHttpClient().execute(ranged, response -> response.getCode());
+
+            // Assert
+            assertThat(throttledStatus, is(429));
+            assertThat(retryAfter, is("2"));
+            assertThat(rangedStatus, is(206));
+            assertThat(expiredStatus, is(401));
+            assertThat(simulator.getRequestCount(SimulatorRoute.STORAGE_USAGE), is(1L));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.util;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link BoundedReplayInputStream}.
+ */
+public class TestBoundedReplayInputStream
+{
+    @Test
+    public void testReplayWithinLimit() throws IOException
+    {
+        // Arrange
+        byte[] body = "{\"error\":\"bad\",\"success\":false}".getBytes(StandardCharsets.UTF_8);
+        BoundedReplayInputStream stream = new BoundedReplayInputStream(new ByteArrayInputStream(body), 1024);
+
+        // Act
+        byte[] prefix = new byte[5];
+        IOUtils.readFully(stream, prefix);
+        InputStream replay = stream.replay();
+
+        // Assert
+        assertThat(IOUtils.toByteArray(replay), is(body));
+    }
+
+    @Test
+    public void testReplayDroppedOverLimit() throws IOException
+    {
+        // Arrange
+        byte[] body = new byte[4096];
+        BoundedReplayInputStream stream = new BoundedReplayInputStream(new ByteArrayInputStream(body), 1024);
+
+        // Act
+        IOUtils.toByteArray(stream);
+
+        // Assert
+        assertThat(stream.isReplayable(), is(false));
+        assertThat(stream.replay(), is(nullValue()));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link ChannelTransfer} and {@link DirectBufferPool}.
+ */
+public class TestChannelTransfer
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testPoolReusesReleasedBuffers()
+    {
+        // Arrange
+        DirectBufferPool pool = new DirectBufferPool(1024, 1);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        first.put((byte) 1);
+
+        // Act
+        pool.release(first);
+        pool.release(second);
+        pool.release(ByteBuffer.allocate(1024));
+        ByteBuffer reused = pool.acquire();
+
+        // Assert
+        assertThat(reused, is(sameInstance(first)));
+        assertThat(reused.position(), is(0));
+        assertThat(reused.isDirect(), is(true));
+        assertThat(pool.getPooledCount(), is(0));
+    }
+
+    @Test
+    public void testTransferToStreamChannel() throws IOException
+    {
+        // Arrange
+        byte[] data = randomBytes(200_000);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // Act
+        long copied = ChannelTransfer.transfer(new ByteArrayInputStream(data), Channels.newChannel(outputStream));
+
+        // Assert
+        assertThat(copied, is((long) data.length));
+        assertThat(outputStream.toByteArray(), is(data));
+    }
+
+    @Test
+    public void testTransferToFileChannelAdvancesPosition() throws IOException
+    {
+        // Arrange
+        byte[] data = randomBytes(200_000);
+        Path target = temporaryFolder.getRoot().toPath().resolve("transfer.bin");
+
+        // Act
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+        {
+            channel.write(ByteBuffer.wrap(new byte[]{42}));
+            ChannelTransfer.transfer(new ByteArrayInputStream(data), channel);
+
+            // Assert
+            assertThat(channel.position(), is(data.length + 1L));
+        }
+        byte[] written = Files.readAllBytes(target);
+        assertThat(written.length, is(data.length + 1));
+        assertThat(written[0], is((byte) 42));
+        assertThat(written[data.length], is(data[data.length - 1]));
+    }
+
+    private static byte[] randomBytes(int length)
+    {
+        byte[] data = new byte[length];
+        new Random(7).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Luke Quinane
+ * Copyright 2025 JaLooNz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tmyroadctfig.icloud4j.util;
+
+import com.github.tmyroadctfig.icloud4j.ICloudService;
+import com.github.tmyroadctfig.icloud4j.UbiquityNode;
+import com.github.tmyroadctfig.icloud4j.UbiquityService;
+import com.github.tmyroadctfig.icloud4j.simulator.ICloudSimulator;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ICloudResponseStream}.
+ */
+public class TestICloudResponseStream
+{
+    @Test
+    public void testHoldsConnectionUntilClosed() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(1).fileSize(1_000_000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            UbiquityNode file = findFile(new UbiquityService(iCloudService));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            // Act
+            int leasedWhileOpen;
+            long contentLength;
+            int statusCode;
+            try (ICloudResponseStream stream = file.openStream())
+            {
+                leasedWhileOpen = iCloudService.getPoolStats().getLeased();
+                contentLength = stream.getContentLength();
+                statusCode = stream.getStatusCode();
+                stream.transferTo(Channels.newChannel(output));
+            }
+
+            // Assert
+            assertThat(statusCode, is(200));
+            assertThat(contentLength, is(1_000_000L));
+            assertThat(output.size(), is(1_000_000));
+            assertThat(leasedWhileOpen, is(1));
+            assertThat(iCloudService.getPoolStats().getLeased(), is(0));
+            assertTrue(iCloudService.getPoolStats().getAvailable() > 0);
+        }
+    }
+
+    @Test
+    public void testEarlyCloseDropsConnectionWithoutReadingBody() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(1).fileSize(1L << 31).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            UbiquityNode file = findFile(new UbiquityService(iCloudService));
+            byte[] buffer = new byte[4096];
+
+            // Act
+            long start = System.nanoTime();
+            int read;
+            try (ICloudResponseStream stream = file.openStream())
+            {
+                read = stream.read(buffer);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Assert
+            assertTrue(read > 0);
+            assertThat(iCloudService.getPoolStats().getLeased(), is(0));
+            assertTrue("Closed in " + elapsedMillis + "ms", elapsedMillis < 2000);
+        }
+    }
+
+    @Test
+    public void testDownloadFileDataStreams() throws Exception
+    {
+        // Arrange
+        try (ICloudSimulator simulator = ICloudSimulator.builder().filesPerFolder(1).fileSize(300_000).start();
+             ICloudService iCloudService = simulator.login())
+        {
+            UbiquityNode file = findFile(new UbiquityService(iCloudService));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            // Act
+            file.downloadFileData(output);
+
+            // Assert
+            assertThat(output.size(), is(300_000));
+            assertThat(iCloudService.getPoolStats().getLeased(), is(0));
+        }
+    }
+
+    private static UbiquityNode findFile(UbiquityService ubiquityService)
+    {
+        return ubiquityService.getRoot().getChildren().stream()
+            .filter(node -> "file".equals(node.getType()))
+            .findFirst()
+            .get();
+    }
+}